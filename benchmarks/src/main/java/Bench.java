@@ -0,0 +1,183 @@
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A small measurement harness for the benchmarks: it warms an operation up,
+ * then times every invocation with {@link System#nanoTime()} and reports
+ * throughput, latency percentiles and the bytes allocated per operation.
+ * <p>
+ * With -Dbench.csv=file every benchmark also appends its results to 'file'
+ * as CSV, one line per operation with a timestamp, so the numbers of
+ * successive runs can be compared to track regressions.
+ * <p>
+ * (JMH cannot be used here: it refuses benchmark classes in the default
+ * package, which is where all classes of this project live.)
+ */
+public final class Bench {
+
+    /**
+     * An operation to measure. 'i' counts the invocations, so an operation can
+     * cycle through its inputs.
+     */
+    public interface Operation {
+        Object run(int i) throws Exception;
+    }
+
+    /**
+     * Prevents the JIT from eliminating the work of an operation.
+     */
+    private static volatile Object sink;
+
+    private Bench() {
+    }
+
+    /**
+     * Runs 'operation' 'warmup' times unmeasured, then 'iterations' times
+     * measured.
+     *
+     * @return The measurements
+     */
+    public static Result measure(String name, int warmup, int iterations, Operation operation)
+            throws Exception {
+        for (int i = 0; i < warmup; i++) {
+            sink = operation.run(i);
+        }
+        long[] nanos = new long[iterations];
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            long t = System.nanoTime();
+            sink = operation.run(warmup + i);
+            nanos[i] = System.nanoTime() - t;
+        }
+        long elapsed = System.nanoTime() - start;
+        allocated = allocatedBytes() - allocated;
+        return new Result(name, nanos, elapsed, allocated);
+    }
+
+    /**
+     * Prints 'results' as a table, and appends them to the file of the system
+     * property 'bench.csv' if it is set.
+     *
+     * @param benchmark the name of the benchmark, e.g. its class
+     * @param results   the measurements
+     */
+    public static void report(String benchmark, List<Result> results) throws IOException {
+        System.out.println(Result.header());
+        for (Result result : results) {
+            System.out.println(result);
+        }
+        String csv = System.getProperty("bench.csv");
+        if (csv == null) {
+            return;
+        }
+        File file = new File(csv);
+        boolean header = !file.exists() || file.length() == 0;
+        try (PrintWriter out = new PrintWriter(new FileWriter(file, true))) {
+            if (header) {
+                out.println("time,benchmark,operation,ops_per_s,mean_ns,p50_ns,p90_ns,p99_ns,max_ns,"
+                        + "alloc_bytes_per_op,alloc_bytes_per_s");
+            }
+            long now = System.currentTimeMillis();
+            for (Result result : results) {
+                out.println(now + "," + benchmark + "," + result.toCsv());
+            }
+        }
+    }
+
+    /**
+     * @return The bytes allocated by the current thread so far, or 0 if the
+     * JVM cannot tell
+     */
+    static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    /**
+     * The measurements of one operation.
+     */
+    public static class Result {
+        private final String name;
+        private final long[] sorted;
+        private final long elapsedNanos;
+        private final long allocatedBytes;
+
+        Result(String name, long[] nanos, long elapsedNanos, long allocatedBytes) {
+            this.name = name;
+            this.sorted = nanos.clone();
+            Arrays.sort(this.sorted);
+            this.elapsedNanos = elapsedNanos;
+            this.allocatedBytes = allocatedBytes;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        /**
+         * @return The operations per second
+         */
+        public double getThroughput() {
+            return this.sorted.length * 1e9 / this.elapsedNanos;
+        }
+
+        /**
+         * @param p a percentile in [0, 100]
+         * @return The latency at the percentile, in nanoseconds
+         */
+        public long getPercentile(double p) {
+            int index = (int) Math.ceil(p / 100 * this.sorted.length) - 1;
+            return this.sorted[Math.max(0, Math.min(index, this.sorted.length - 1))];
+        }
+
+        public double getMeanNanos() {
+            return (double) this.elapsedNanos / this.sorted.length;
+        }
+
+        /**
+         * @return The bytes allocated per operation
+         */
+        public double getAllocatedBytesPerOp() {
+            return (double) this.allocatedBytes / this.sorted.length;
+        }
+
+        /**
+         * @return The bytes allocated per second
+         */
+        public double getAllocationRate() {
+            return this.allocatedBytes * 1e9 / this.elapsedNanos;
+        }
+
+        public static String header() {
+            return String.format(Locale.ROOT, "%-40s %12s %12s %12s %12s %14s %12s",
+                    "benchmark", "ops/s", "mean us", "p50 us", "p99 us", "alloc B/op", "alloc MB/s");
+        }
+
+        /**
+         * @return The measurements as CSV, see {@link Bench#report}
+         */
+        public String toCsv() {
+            return String.format(Locale.ROOT, "\"%s\",%.3f,%.0f,%d,%d,%d,%d,%.0f,%.0f",
+                    this.name.replace("\"", "\"\""), getThroughput(), getMeanNanos(), getPercentile(50),
+                    getPercentile(90), getPercentile(99), getPercentile(100), getAllocatedBytesPerOp(),
+                    getAllocationRate());
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%-40s %12.1f %12.1f %12.1f %12.1f %14.0f %12.1f",
+                    this.name, getThroughput(), getMeanNanos() / 1000, getPercentile(50) / 1000.0,
+                    getPercentile(99) / 1000.0, getAllocatedBytesPerOp(), getAllocationRate() / (1024 * 1024));
+        }
+    }
+}
@@ -0,0 +1,94 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Time and heap of Workhorse, Uncreative Writers and Magic Couples counted
+ * exactly against counted in bounded memory by {@link HeavyHitters}, with
+ * and without the second pass which counts the candidates exactly, over a
+ * synthetic corpus. The allocation per query in the report is what the
+ * counters cost. Verified results which claim to be complete must equal
+ * the exact ones; for the others the share of the exact rows they found is
+ * printed.
+ * <p>
+ * Call with: HeavyHitterBenchmark [seedDir] [movies] [counters] [epsilon] [k]
+ */
+public class HeavyHitterBenchmark {
+
+    public static void main(String argv[]) throws Exception {
+        File seedDir = new File(argv.length > 0 ? argv[0] : "src/main/test_data");
+        int size = argv.length > 1 ? Integer.parseInt(argv[1]) : 100000;
+        int counters = argv.length > 2 ? Integer.parseInt(argv[2]) : 10000;
+        double epsilon = argv.length > 3 ? Double.parseDouble(argv[3]) : 1e-4;
+        int k = argv.length > 4 ? Integer.parseInt(argv[4]) : 10;
+
+        SyntheticCorpus corpus = SyntheticCorpus.fromDirectory(seedDir, 42);
+        MovieTable table = new MovieTable(corpus.generate(size));
+        IMDBQueries queries = new IMDBQueries();
+        HeavyHitters.Settings approximate = new HeavyHitters.Settings(counters, epsilon, 0.01, false);
+        HeavyHitters.Settings verified = new HeavyHitters.Settings(counters, epsilon, 0.01, true);
+        System.out.println(size + " movies, " + approximate);
+
+        int mismatches = 0;
+        List<Bench.Result> results = new ArrayList<>();
+
+        mismatches += compare("Workhorse", queries.queryWorkHorse(table, k),
+                queries.queryWorkHorse(table, k, approximate), queries.queryWorkHorse(table, k, verified));
+        results.add(Bench.measure("Workhorse (exact)", 2, 5, i -> queries.queryWorkHorse(table, k)));
+        results.add(Bench.measure("Workhorse (approximate)", 2, 5, i -> queries.queryWorkHorse(table, k, approximate)));
+        results.add(Bench.measure("Workhorse (verified)", 2, 5, i -> queries.queryWorkHorse(table, k, verified)));
+
+        mismatches += compare("Uncreative writers", queries.queryUncreativeWriters(table, k),
+                queries.queryUncreativeWriters(table, k, approximate),
+                queries.queryUncreativeWriters(table, k, verified));
+        results.add(Bench.measure("Uncreative writers (exact)", 2, 5,
+                i -> queries.queryUncreativeWriters(table, k)));
+        results.add(Bench.measure("Uncreative writers (approximate)", 2, 5,
+                i -> queries.queryUncreativeWriters(table, k, approximate)));
+        results.add(Bench.measure("Uncreative writers (verified)", 2, 5,
+                i -> queries.queryUncreativeWriters(table, k, verified)));
+
+        mismatches += compare("Magic Couples", queries.queryMagicCouple(table, k),
+                queries.queryMagicCouple(table, k, approximate), queries.queryMagicCouple(table, k, verified));
+        results.add(Bench.measure("Magic Couples (exact)", 2, 5, i -> queries.queryMagicCouple(table, k)));
+        results.add(Bench.measure("Magic Couples (approximate)", 2, 5,
+                i -> queries.queryMagicCouple(table, k, approximate)));
+        results.add(Bench.measure("Magic Couples (verified)", 2, 5,
+                i -> queries.queryMagicCouple(table, k, verified)));
+
+        Bench.report("HeavyHitterBenchmark", results);
+        System.out.println(mismatches + " mismatches");
+    }
+
+    /**
+     * Prints how much of 'exact' the approximate results found.
+     *
+     * @return 1 if the verified result claims to be complete but differs
+     * from the exact one, or a bound does not hold, else 0
+     */
+    private static <T> int compare(String name, List<IMDBQueries.Tuple<T, Integer>> exact,
+                                   HeavyHitters.Result<T> approximate, HeavyHitters.Result<T> verified) {
+        System.out.println(name + ": " + approximate);
+        System.out.println(name + ": " + verified);
+        int found = 0;
+        int mismatches = 0;
+        for (IMDBQueries.Tuple<T, Integer> row : exact) {
+            for (int i = 0; i < approximate.getRows().size(); i++) {
+                if (approximate.getRows().get(i).first.equals(row.first)) {
+                    found++;
+                    if (row.second < approximate.getLower(i) || row.second > approximate.getUpper(i)) {
+                        mismatches = 1;
+                        System.out.println(name + ": " + row + " outside of [" + approximate.getLower(i) + ", "
+                                + approximate.getUpper(i) + "]");
+                    }
+                }
+            }
+        }
+        System.out.println(String.format("%s: approximate rows found %d of %d", name, found, exact.size()));
+        if (verified.isComplete() && !verified.getRows().equals(exact)) {
+            mismatches = 1;
+            System.out.println(name + " differ: " + verified.getRows() + " != " + exact);
+        }
+        return mismatches;
+    }
+}
@@ -0,0 +1,131 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Time of selecting movies with the secondary indexes of a {@link MovieTable}
+ * ({@link YearIndex}, and {@link AttributeIndex}es of {@link IdBitmap}s)
+ * against a scan which calls {@link List#contains} on every movie, for
+ * predicates of different selectivity and for growing synthetic corpora.
+ * Both must select the same movies.
+ * <p>
+ * Call with: IndexBenchmark [seedDir] [movies]...
+ */
+public class IndexBenchmark {
+
+    public static void main(String argv[]) throws Exception {
+        File seedDir = new File(argv.length > 0 ? argv[0] : "src/main/test_data");
+        int[] sizes = {10000, 50000, 200000};
+        if (argv.length > 1) {
+            sizes = new int[argv.length - 1];
+            for (int i = 1; i < argv.length; i++) {
+                sizes[i - 1] = Integer.parseInt(argv[i]);
+            }
+        }
+
+        int mismatches = 0;
+        List<Bench.Result> results = new ArrayList<>();
+        for (int size : sizes) {
+            SyntheticCorpus corpus = SyntheticCorpus.fromDirectory(seedDir, 42);
+            MovieTable table = new MovieTable(corpus.generate(size));
+            mismatches += check(table);
+
+            String[][] predicates = {{"Drama", "USA"}, {"Sci-Fi", "USA"}, {"Western", "Italy"}};
+            for (String[] predicate : predicates) {
+                String genre = predicate[0];
+                String country = predicate[1];
+                int[] scanned = scan(table, genre, country, 1990, 2010);
+                int[] indexed = byIndex(table, genre, country, 1990, 2010);
+                if (!Arrays.equals(scanned, indexed)) {
+                    mismatches++;
+                    System.out.println(genre + " and " + country + " differ for " + size + " movies");
+                }
+                String name = String.format("%s+%s+1990-2010 (%.2f%%), %d", genre, country,
+                        100.0 * indexed.length / size, size);
+                int iterations = Math.max(5, 2000000 / size);
+                results.add(Bench.measure(name + " scan", 3, iterations, i -> scan(table, genre, country, 1990, 2010)));
+                results.add(Bench.measure(name + " index", 3, iterations, i -> byIndex(table, genre, country, 1990, 2010)));
+            }
+            IMDBQueries queries = new IMDBQueries();
+            int iterations = Math.max(5, 2000000 / size);
+            results.add(Bench.measure("Must See, " + size + " (per-year index)", 3, iterations,
+                    i -> queries.queryMustSee(table)));
+            results.add(Bench.measure("Under the Radar, " + size + " (USA index)", 3, iterations,
+                    i -> queries.queryUnderTheRadar(table)));
+        }
+
+        Bench.report("IndexBenchmark", results);
+        System.out.println(mismatches + " mismatches");
+    }
+
+    private static int[] scan(MovieTable table, String genre, String country, int fromYear, int toYear) {
+        IntList ids = new IntList();
+        for (int id = 0; id < table.size(); id++) {
+            int year = table.year(id);
+            Movie movie = table.movie(id);
+            if (year >= fromYear && year <= toYear
+                    && movie.getGenreList().contains(genre) && movie.getCountryList().contains(country)) {
+                ids.add(id);
+            }
+        }
+        return ids.toArray();
+    }
+
+    private static int[] byIndex(MovieTable table, String genre, String country, int fromYear, int toYear) {
+        // Intersect the most selective sets first
+        IdBitmap genres = table.genres().get(genre);
+        IdBitmap countries = table.countries().get(country);
+        IdBitmap both = genres.cardinality() < countries.cardinality()
+                ? genres.and(countries) : countries.and(genres);
+        IntList ids = new IntList();
+        both.forEach(0, table.size(), id -> {
+            int year = table.year(id);
+            if (year >= fromYear && year <= toYear) ids.add(id);
+        });
+        return ids.toArray();
+    }
+
+    /**
+     * Compares every set of the indexes with a scan, and ranges of them and
+     * the year index against the columns.
+     */
+    private static int check(MovieTable table) {
+        int mismatches = 0;
+        for (String genre : table.genres().values()) {
+            IntList expected = new IntList();
+            for (int id = 0; id < table.size(); id++) {
+                if (table.movie(id).getGenreList().contains(genre)) expected.add(id);
+            }
+            IdBitmap ids = table.genres().get(genre);
+            IntList inRange = new IntList();
+            int from = table.size() / 3;
+            int to = 2 * table.size() / 3 + 1;
+            ids.forEach(from, to, inRange::add);
+            int[] all = expected.toArray();
+            int lo = lowerBound(all, from);
+            int hi = lowerBound(all, to);
+            if (!Arrays.equals(all, ids.toArray()) || ids.cardinality() != all.length
+                    || !Arrays.equals(Arrays.copyOfRange(all, lo, hi), inRange.toArray())) {
+                mismatches++;
+                System.out.println("The index of genre " + genre + " is wrong");
+            }
+        }
+        YearIndex years = table.years();
+        for (int year = 1900; year <= 2020; year++) {
+            for (int pos = years.start(year); pos < years.end(year); pos++) {
+                if (table.year(years.get(pos)) != year || (pos > years.start(year) && years.get(pos - 1) >= years.get(pos))) {
+                    mismatches++;
+                    System.out.println("The year index is wrong for " + year);
+                    break;
+                }
+            }
+        }
+        return mismatches;
+    }
+
+    private static int lowerBound(int[] a, int value) {
+        int i = Arrays.binarySearch(a, value);
+        return i < 0 ? -i - 1 : i;
+    }
+}
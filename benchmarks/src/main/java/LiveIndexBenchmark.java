@@ -0,0 +1,205 @@
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * A {@link MovieWatcher} over a directory of synthetic movie files, to which
+ * rounds of new, rewritten and deleted files are applied. Measures the lag
+ * from writing a round to its movies being queryable, the time of the
+ * queries of the {@link LiveMovieIndex} against reloading the directory and
+ * running the table queries, and the time to apply one changed movie.
+ * After loading the index must answer as the table queries; after the
+ * rounds too, except that names with equal counts may be ordered
+ * differently (the index keeps the order in which names were first seen,
+ * also of removed movies), so only the counts of those queries are compared.
+ * <p>
+ * Call with: LiveIndexBenchmark [seedDir] [movies] [rounds]
+ */
+public class LiveIndexBenchmark {
+
+    private static final int ADDED = 50;
+    private static final int REWRITTEN = 20;
+    private static final int DELETED = 10;
+
+    public static void main(String argv[]) throws Exception {
+        File seedDir = new File(argv.length > 0 ? argv[0] : "src/main/test_data");
+        int size = argv.length > 1 ? Integer.parseInt(argv[1]) : 10000;
+        int rounds = argv.length > 2 ? Integer.parseInt(argv[2]) : 20;
+
+        File dir = Files.createTempDirectory("movies-live").toFile();
+        try {
+            SyntheticCorpus corpus = SyntheticCorpus.fromDirectory(seedDir, 42);
+            MovieSink sink = new MovieFileSink(dir);
+            corpus.writeTo(sink, size);
+            List<String> names = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                names.add("synthetic_" + i);
+            }
+
+            LiveMovieIndex index = new LiveMovieIndex();
+            MovieWatcher watcher = new MovieWatcher(dir, index);
+            long time = System.nanoTime();
+            watcher.load();
+            System.out.println(String.format("Loaded %d movies in %.0f ms", index.size(), (System.nanoTime() - time) / 1e6));
+            int mismatches = compare(index, new MovieTable(MovieReader.readMoviesFrom(dir)), false);
+
+            Thread thread = new Thread(watcher, "movie-watcher");
+            thread.setDaemon(true);
+            thread.start();
+            Random random = new Random(7);
+            int written = size;
+            long[] lags = new long[rounds];
+            for (int round = 0; round < rounds; round++) {
+                long start = System.nanoTime();
+                String last = null;
+                for (int i = 0; i < ADDED; i++) {
+                    last = "synthetic_" + written++;
+                    names.add(last);
+                    sink.write(corpus.next(), last);
+                }
+                for (int i = 0; i < REWRITTEN; i++) {
+                    sink.write(corpus.next(), names.get(random.nextInt(names.size())));
+                }
+                for (int i = 0; i < DELETED; i++) {
+                    String name = names.remove(random.nextInt(names.size() - ADDED));
+                    Files.delete(new File(dir, name + ".json").toPath());
+                }
+                // Wait until the last movie added and the deletions are visible
+                String lastKey = last + ".json";
+                while (index.movie(lastKey) == null || index.size() != names.size()) {
+                    Thread.sleep(1);
+                }
+                lags[round] = System.nanoTime() - start;
+            }
+            // Let the rewrites settle, then compare with a table of the same movies
+            long batches;
+            do {
+                batches = watcher.getBatches();
+                Thread.sleep(500);
+            } while (watcher.getBatches() != batches);
+            watcher.close();
+            mismatches += compare(index, new MovieTable(index.movies()), true);
+            Arrays.sort(lags);
+            System.out.println(String.format("Lag of %d rounds of %d new, %d rewritten and %d deleted files: "
+                            + "p50 %.1f ms, max %.1f ms", rounds, ADDED, REWRITTEN, DELETED,
+                    lags[rounds / 2] / 1e6, lags[rounds - 1] / 1e6));
+
+            IMDBQueries queries = new IMDBQueries();
+            Movie first = index.movie("synthetic_" + (size - 1) + ".json");
+            Movie second = corpus.next();
+            Map<String, Movie> change = new LinkedHashMap<>();
+            List<Bench.Result> results = new ArrayList<>();
+            results.add(Bench.measure("10 queries, live index", 5, 50, i -> runAll(index)));
+            results.add(Bench.measure("reload + table + 10 queries", 1, 5, i -> {
+                MovieTable table = new MovieTable(MovieReader.readMoviesFrom(dir));
+                return runAll(queries, table);
+            }));
+            results.add(Bench.measure("apply 1 changed movie", 100, 2000, i -> {
+                change.put("synthetic_" + (size - 1) + ".json", i % 2 == 0 ? second : first);
+                index.update(change, Collections.<String>emptyList());
+                return index;
+            }));
+            Bench.report("LiveIndexBenchmark", results);
+            System.out.println(mismatches + " mismatches");
+        } finally {
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            dir.delete();
+        }
+    }
+
+    /**
+     * @return The number of queries for which 'index' and 'table' differ
+     */
+    private static int compare(LiveMovieIndex index, MovieTable table, boolean countsOfNames) {
+        IMDBQueries queries = new IMDBQueries();
+        Map<String, Supplier<List<?>>> expected = new LinkedHashMap<>();
+        Map<String, Supplier<List<?>>> actual = new LinkedHashMap<>();
+        expected.put("All-rounder", () -> queries.queryAllRounder(table));
+        actual.put("All-rounder", index::queryAllRounder);
+        expected.put("Under the radar", () -> queries.queryUnderTheRadar(table));
+        actual.put("Under the radar", index::queryUnderTheRadar);
+        expected.put("Pillars of storytelling", () -> queries.queryPillarsOfStorytelling(table));
+        actual.put("Pillars of storytelling", index::queryPillarsOfStorytelling);
+        expected.put("Red planet", () -> queries.queryRedPlanet(table));
+        actual.put("Red planet", index::queryRedPlanet);
+        expected.put("Colossal failure", () -> queries.queryColossalFailure(table));
+        actual.put("Colossal failure", index::queryColossalFailure);
+        expected.put("Uncreative writers", () -> queries.queryUncreativeWriters(table));
+        actual.put("Uncreative writers", index::queryUncreativeWriters);
+        expected.put("Workhorse", () -> queries.queryWorkHorse(table));
+        actual.put("Workhorse", index::queryWorkHorse);
+        expected.put("Must see", () -> queries.queryMustSee(table));
+        actual.put("Must see", index::queryMustSee);
+        expected.put("Rotten tomatoes", () -> queries.queryRottenTomatoes(table));
+        actual.put("Rotten tomatoes", index::queryRottenTomatoes);
+        expected.put("Magic Couples", () -> queries.queryMagicCouple(table));
+        actual.put("Magic Couples", index::queryMagicCouple);
+        expected.put("Search \"Mars\"", () -> moviesOf(table, table.descriptionIndex().findSubstring("Mars", false)));
+        actual.put("Search \"Mars\"", () -> index.searchDescriptions("Mars", false));
+
+        int mismatches = 0;
+        List<String> names = Arrays.asList("Uncreative writers", "Workhorse", "Magic Couples");
+        for (String query : expected.keySet()) {
+            boolean countsOnly = countsOfNames && names.contains(query);
+            if (!describe(expected.get(query).get(), countsOnly).equals(describe(actual.get(query).get(), countsOnly))) {
+                mismatches++;
+                System.out.println(query + " differs for " + table.size() + " movies");
+            }
+        }
+        return mismatches;
+    }
+
+    private static List<Movie> moviesOf(MovieTable table, Postings postings) {
+        List<Movie> movies = new ArrayList<>();
+        for (int i = 0; i < postings.size(); i++) {
+            movies.add(table.movie(postings.doc(i)));
+        }
+        return movies;
+    }
+
+    private static List<Object> runAll(LiveMovieIndex index) {
+        return Arrays.asList(index.queryAllRounder(), index.queryUnderTheRadar(),
+                index.queryPillarsOfStorytelling(), index.queryRedPlanet(), index.queryColossalFailure(),
+                index.queryUncreativeWriters(), index.queryWorkHorse(), index.queryMustSee(),
+                index.queryRottenTomatoes(), index.queryMagicCouple());
+    }
+
+    private static List<Object> runAll(IMDBQueries queries, MovieTable table) {
+        return Arrays.asList(queries.queryAllRounder(table), queries.queryUnderTheRadar(table),
+                queries.queryPillarsOfStorytelling(table), queries.queryRedPlanet(table),
+                queries.queryColossalFailure(table), queries.queryUncreativeWriters(table),
+                queries.queryWorkHorse(table), queries.queryMustSee(table), queries.queryRottenTomatoes(table),
+                queries.queryMagicCouple(table));
+    }
+
+    private static String describe(List<?> result, boolean countsOnly) {
+        StringBuilder text = new StringBuilder();
+        for (Object item : result) {
+            text.append(describeItem(countsOnly ? ((IMDBQueries.Tuple<?, ?>) item).second : item)).append('\n');
+        }
+        return text.toString();
+    }
+
+    private static String describeItem(Object item) {
+        if (item instanceof Movie) {
+            return ((Movie) item).getTitle() + " " + ((Movie) item).getUrl();
+        }
+        if (item instanceof IMDBQueries.Tuple) {
+            IMDBQueries.Tuple<?, ?> tuple = (IMDBQueries.Tuple<?, ?>) item;
+            return describeItem(tuple.first) + "\t" + describeItem(tuple.second);
+        }
+        return String.valueOf(item);
+    }
+}
@@ -0,0 +1,107 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Time of loading a synthetic corpus written to disk: with
+ * {@link MovieReader#readMoviesFrom} from one JSON file per movie (with all
+ * processors and with one thread) and from NDJSON segments, from a
+ * {@link MovieSnapshot}, and of building a {@link MovieTable} from the
+ * loaded movies. Every way must load the same movies.
+ * <p>
+ * The allocation is that of the calling thread, which leaves out the files
+ * parsed by the other threads of the pool.
+ * <p>
+ * Call with: LoaderBenchmark [seedDir] [movies]...
+ */
+public class LoaderBenchmark {
+
+    public static void main(String argv[]) throws Exception {
+        File seedDir = new File(argv.length > 0 ? argv[0] : "src/main/test_data");
+        int[] sizes = {1000, 10000};
+        if (argv.length > 1) {
+            sizes = new int[argv.length - 1];
+            for (int i = 1; i < argv.length; i++) {
+                sizes[i - 1] = Integer.parseInt(argv[i]);
+            }
+        }
+
+        int mismatches = 0;
+        List<Bench.Result> results = new ArrayList<>();
+        for (int size : sizes) {
+            File filesDir = Files.createTempDirectory("movies-files").toFile();
+            File segmentsDir = Files.createTempDirectory("movies-ndjson").toFile();
+            File snapshot = new File(segmentsDir.getParentFile(), segmentsDir.getName() + ".snapshot");
+            try {
+                write(seedDir, filesDir, size, MovieSink.Format.FILES);
+                write(seedDir, segmentsDir, size, MovieSink.Format.NDJSON);
+                List<String> expected = urls(SyntheticCorpus.fromDirectory(seedDir, 42).generate(size));
+                List<Movie> files = MovieReader.readMoviesFrom(filesDir);
+                mismatches += check("JSON files", expected, files);
+                mismatches += check("NDJSON", expected, MovieReader.readMoviesFrom(segmentsDir));
+                mismatches += check("snapshot", expected,
+                        MovieReader.readMovieTableFrom(segmentsDir, snapshot).movies());
+
+                int iterations = Math.max(3, 100000 / size);
+                results.add(Bench.measure(size + " movies, JSON files", 1, iterations,
+                        i -> MovieReader.readMoviesFrom(filesDir)));
+                results.add(Bench.measure(size + " movies, JSON files, 1 thread", 1, iterations,
+                        i -> MovieReader.readMoviesFrom(filesDir, 1, new LoadStats())));
+                results.add(Bench.measure(size + " movies, NDJSON", 1, iterations,
+                        i -> MovieReader.readMoviesFrom(segmentsDir)));
+                results.add(Bench.measure(size + " movies, snapshot", 1, iterations,
+                        i -> MovieReader.readMovieTableFrom(segmentsDir, snapshot)));
+                results.add(Bench.measure(size + " movies, MovieTable", 1, iterations,
+                        i -> new MovieTable(files)));
+            } finally {
+                delete(filesDir);
+                delete(segmentsDir);
+                Files.deleteIfExists(snapshot.toPath());
+            }
+        }
+
+        Bench.report("LoaderBenchmark", results);
+        System.out.println(mismatches + " mismatches");
+    }
+
+    private static void write(File seedDir, File outputDir, int size, MovieSink.Format format) throws IOException {
+        try (MovieSink sink = MovieSink.open(format, outputDir, 64L << 20)) {
+            SyntheticCorpus.fromDirectory(seedDir, 42).writeTo(sink, size);
+        }
+    }
+
+    /**
+     * @return The number of differences, 0 or 1; the order of the files in a
+     * directory is not the order they were written in, so the movies are
+     * compared by their sorted URLs
+     */
+    private static int check(String way, List<String> expected, List<Movie> movies) {
+        if (expected.equals(urls(movies))) {
+            return 0;
+        }
+        System.out.println("The movies loaded from " + way + " differ");
+        return 1;
+    }
+
+    private static List<String> urls(List<Movie> movies) {
+        List<String> urls = new ArrayList<>();
+        for (Movie movie : movies) {
+            urls.add(movie.getUrl());
+        }
+        Collections.sort(urls);
+        return urls;
+    }
+
+    private static void delete(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+}
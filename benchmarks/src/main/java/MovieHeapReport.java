@@ -0,0 +1,125 @@
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The heap which the movies of a synthetic corpus of JSON files take once
+ * loaded, as plain {@link Movie}s and compacted by a {@link MovieCompactor}
+ * with each way of keeping descriptions, with the time and GC time of the
+ * load. Then the cost of the getters of compact movies: building a
+ * {@link MovieTable}, and a query on the list of movies which reads every
+ * description. The getters of the compact movies must return what those of
+ * the plain movies do.
+ * <p>
+ * The heap is measured as used heap after a full GC, before and after the
+ * load, so run with a heap large enough for all variants at once.
+ * <p>
+ * Call with: MovieHeapReport [seedDir] [movies]
+ */
+public class MovieHeapReport {
+
+    /**
+     * Keeps the loaded movies reachable while the heap is measured.
+     */
+    private static final List<List<Movie>> LOADED = new ArrayList<>();
+
+    public static void main(String argv[]) throws Exception {
+        File seedDir = new File(argv.length > 0 ? argv[0] : "src/main/test_data");
+        int size = argv.length > 1 ? Integer.parseInt(argv[1]) : 50000;
+
+        File dir = Files.createTempDirectory("movies-heap").toFile();
+        try {
+            SyntheticCorpus.fromDirectory(seedDir, 42).writeTo(new MovieFileSink(dir), size);
+
+            List<String> names = new ArrayList<>();
+            List<MovieCompactor.Descriptions> modes = new ArrayList<>();
+            names.add("plain");
+            modes.add(null);
+            for (MovieCompactor.Descriptions mode : MovieCompactor.Descriptions.values()) {
+                names.add("compact, " + mode);
+                modes.add(mode);
+            }
+
+            System.out.println(String.format("%-24s %12s %12s %10s %10s %12s", "movies of " + size, "heap MB",
+                    "B/movie", "load ms", "GC ms", "shared"));
+            double plainBytes = 0;
+            for (int m = 0; m < modes.size(); m++) {
+                MovieCompactor compactor = modes.get(m) == null ? null : new MovieCompactor(modes.get(m));
+                long before = usedHeap();
+                long gcBefore = gcMillis();
+                long time = System.nanoTime();
+                ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+                List<Movie> movies;
+                try {
+                    movies = MovieReader.readMoviesFrom(dir, pool, new LoadStats(), compactor);
+                } finally {
+                    pool.shutdown();
+                }
+                long millis = (System.nanoTime() - time) / 1000000;
+                long gc = gcMillis() - gcBefore;
+                LOADED.add(movies);
+                double bytes = usedHeap() - before;
+                if (m == 0) {
+                    plainBytes = bytes;
+                }
+                System.out.println(String.format("%-24s %12.1f %12.0f %10d %10d %12s%s", names.get(m),
+                        bytes / (1024 * 1024), bytes / size, millis, gc,
+                        compactor == null ? "-" : Integer.toString(compactor.sharedStrings()),
+                        m == 0 ? "" : String.format("   %.0f%% of plain", 100 * bytes / plainBytes)));
+            }
+
+            List<Movie> plain = LOADED.get(0);
+            int mismatches = 0;
+            for (int m = 1; m < LOADED.size(); m++) {
+                List<Movie> compact = LOADED.get(m);
+                for (int i = 0; i < plain.size(); i++) {
+                    if (!MovieField.changed(plain.get(i), compact.get(i)).isEmpty()) {
+                        mismatches++;
+                        System.out.println(names.get(m) + " differs in " + MovieField.changed(plain.get(i),
+                                compact.get(i)) + " of " + plain.get(i).getUrl());
+                    }
+                }
+            }
+
+            IMDBQueries queries = new IMDBQueries();
+            List<Bench.Result> results = new ArrayList<>();
+            for (int m = 0; m < LOADED.size(); m++) {
+                List<Movie> movies = LOADED.get(m);
+                results.add(Bench.measure("build table, " + names.get(m), 1, 5, i -> new MovieTable(movies)));
+                results.add(Bench.measure("Pillars on list, " + names.get(m), 1, 5,
+                        i -> queries.queryPillarsOfStorytelling(movies)));
+            }
+            Bench.report("MovieHeapReport", results);
+            System.out.println(mismatches + " mismatches");
+        } finally {
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            dir.delete();
+        }
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return millis;
+    }
+}
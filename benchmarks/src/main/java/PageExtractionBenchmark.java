@@ -0,0 +1,95 @@
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Time of {@link MoviePageExtractor#extract} against the CSS queries of
+ * {@link IMDBSpider#parseMoviePageBySelectors} on saved IMDB title pages
+ * (parsing the HTML is not measured), and of the regex-free
+ * {@link IMDBSpider#cleanText} against the three regexes it replaces. Both
+ * extractions must give the same movies.
+ * <p>
+ * Call with: PageExtractionBenchmark [page.html or directory of pages]...
+ * (by default the title page of Avatar in src/main/resources/example)
+ */
+public class PageExtractionBenchmark {
+
+    public static void main(String argv[]) throws Exception {
+        List<Document> pages = new ArrayList<>();
+        for (String arg : argv) {
+            File file = new File(arg);
+            File[] files = file.isDirectory() ? file.listFiles((d, name) -> name.endsWith(".html")) : new File[]{file};
+            for (File page : files) {
+                pages.add(Jsoup.parse(page, null, "http://www.imdb.com/"));
+            }
+        }
+        if (pages.isEmpty()) {
+            try (InputStream in = PageExtractionBenchmark.class.getResourceAsStream("/example/imdb_title_avatar.html")) {
+                pages.add(Jsoup.parse(in, null, "http://www.imdb.com/"));
+            }
+        }
+
+        int mismatches = 0;
+        for (Document page : pages) {
+            Movie expected = new Movie();
+            Movie actual = new Movie();
+            IMDBSpider.parseMoviePageBySelectors(page, expected);
+            MoviePageExtractor.extract(page, actual);
+            if (!describe(expected).equals(describe(actual))) {
+                mismatches++;
+                System.out.println("Extractions differ for " + page.title());
+            }
+        }
+
+        List<String> texts = new ArrayList<>();
+        for (Document page : pages) {
+            page.select("#titleStoryLine, #titleDetails, div.subtext, table.cast_list tr")
+                    .forEach(element -> texts.add(element.outerHtml()));
+        }
+        for (String text : texts) {
+            if (!IMDBSpider.cleanText(text).equals(cleanTextByRegex(text))) {
+                mismatches++;
+                System.out.println("cleanText differs for " + text);
+            }
+        }
+
+        int warmup = Math.max(2000, 20 * pages.size());
+        List<Bench.Result> results = new ArrayList<>();
+        results.add(Bench.measure("extract (single pass)", warmup, warmup, i -> {
+            Movie movie = new Movie();
+            MoviePageExtractor.extract(pages.get(i % pages.size()), movie);
+            return movie;
+        }));
+        results.add(Bench.measure("extract (CSS queries)", warmup, warmup, i -> {
+            Movie movie = new Movie();
+            IMDBSpider.parseMoviePageBySelectors(pages.get(i % pages.size()), movie);
+            return movie;
+        }));
+        results.add(Bench.measure("cleanText (loop)", 20000, 50000,
+                i -> IMDBSpider.cleanText(texts.get(i % texts.size()))));
+        results.add(Bench.measure("cleanText (regexes)", 20000, 50000,
+                i -> cleanTextByRegex(texts.get(i % texts.size()))));
+
+        Bench.report("PageExtractionBenchmark", results);
+        System.out.println(String.format("Speedup: extract %.1fx, cleanText %.1fx, %d mismatches in %d pages",
+                results.get(1).getMeanNanos() / results.get(0).getMeanNanos(),
+                results.get(3).getMeanNanos() / results.get(2).getMeanNanos(), mismatches, pages.size()));
+    }
+
+    private static String describe(Movie movie) {
+        return Arrays.asList(movie.getTitle(), movie.getYear(), movie.getDescription(), movie.getBudget(),
+                movie.getGross(), movie.getRatingValue(), movie.getRatingCount(), movie.getDuration(),
+                movie.getGenreList(), movie.getCountryList(), movie.getCastList(), movie.getCharacterList(),
+                movie.getDirectorList()).toString();
+    }
+
+    private static String cleanTextByRegex(String text) {
+        return text.replaceAll("\\<.*?>", "").replace("&nbsp;", " ")
+                .replace("\n", " ").replaceAll("\\s+", " ").trim();
+    }
+}
@@ -0,0 +1,92 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Latency, throughput and allocation of every query of {@link IMDBQueries}
+ * over a synthetic corpus, once on the list of movies and once on a
+ * {@link MovieTable} (without the time to build the table and its indexes).
+ * Both must give the same results; for Uncreative writers, Workhorse and
+ * Magic Couples the same counts, as the list versions order tied names by
+ * their hash.
+ * <p>
+ * Call with: QueryBenchmark [seedDir] [movies]
+ */
+public class QueryBenchmark {
+
+    private static final List<String> TIES_IN_HASH_ORDER = Arrays.asList("Uncreative writers", "Workhorse", "Magic Couples");
+
+    public static void main(String argv[]) throws Exception {
+        File seedDir = new File(argv.length > 0 ? argv[0] : "src/main/test_data");
+        int size = argv.length > 1 ? Integer.parseInt(argv[1]) : 10000;
+
+        List<Movie> movies = SyntheticCorpus.fromDirectory(seedDir, 42).generate(size);
+        MovieTable table = new MovieTable(movies);
+        table.descriptionIndex();
+        IMDBQueries queries = new IMDBQueries();
+
+        List<String> names = new ArrayList<>();
+        List<Function<List<Movie>, List<?>>> onList = new ArrayList<>();
+        List<Function<MovieTable, List<?>>> onTable = new ArrayList<>();
+        add(names, "All-rounder", onList, queries::queryAllRounder, onTable, queries::queryAllRounder);
+        add(names, "Under the radar", onList, queries::queryUnderTheRadar, onTable, queries::queryUnderTheRadar);
+        add(names, "Pillars of storytelling", onList, queries::queryPillarsOfStorytelling,
+                onTable, queries::queryPillarsOfStorytelling);
+        add(names, "Red planet", onList, queries::queryRedPlanet, onTable, queries::queryRedPlanet);
+        add(names, "Colossal failure", onList, queries::queryColossalFailure,
+                onTable, queries::queryColossalFailure);
+        add(names, "Uncreative writers", onList, queries::queryUncreativeWriters,
+                onTable, queries::queryUncreativeWriters);
+        add(names, "Workhorse", onList, queries::queryWorkHorse, onTable, queries::queryWorkHorse);
+        add(names, "Must see", onList, queries::queryMustSee, onTable, queries::queryMustSee);
+        add(names, "Rotten tomatoes", onList, queries::queryRottenTomatoes, onTable, queries::queryRottenTomatoes);
+        add(names, "Magic Couples", onList, queries::queryMagicCouple, onTable, queries::queryMagicCouple);
+
+        int mismatches = 0;
+        List<Bench.Result> results = new ArrayList<>();
+        for (int q = 0; q < names.size(); q++) {
+            Function<List<Movie>, List<?>> list = onList.get(q);
+            Function<MovieTable, List<?>> tabled = onTable.get(q);
+            boolean countsOnly = TIES_IN_HASH_ORDER.contains(names.get(q));
+            if (!describe(list.apply(movies), countsOnly).equals(describe(tabled.apply(table), countsOnly))) {
+                mismatches++;
+                System.out.println(names.get(q) + " differs");
+            }
+            results.add(Bench.measure(names.get(q) + ", list", 2, 10, i -> list.apply(movies)));
+            results.add(Bench.measure(names.get(q) + ", table", 3, 30, i -> tabled.apply(table)));
+        }
+
+        System.out.println(size + " movies");
+        Bench.report("QueryBenchmark", results);
+        System.out.println(mismatches + " mismatches");
+    }
+
+    private static void add(List<String> names, String name,
+                            List<Function<List<Movie>, List<?>>> onList, Function<List<Movie>, List<?>> list,
+                            List<Function<MovieTable, List<?>>> onTable, Function<MovieTable, List<?>> table) {
+        names.add(name);
+        onList.add(list);
+        onTable.add(table);
+    }
+
+    private static String describe(List<?> result, boolean countsOnly) {
+        StringBuilder text = new StringBuilder();
+        for (Object item : result) {
+            text.append(describeItem(countsOnly ? ((IMDBQueries.Tuple<?, ?>) item).second : item)).append('\n');
+        }
+        return text.toString();
+    }
+
+    private static String describeItem(Object item) {
+        if (item instanceof Movie) {
+            return ((Movie) item).getTitle();
+        }
+        if (item instanceof IMDBQueries.Tuple) {
+            IMDBQueries.Tuple<?, ?> tuple = (IMDBQueries.Tuple<?, ?>) item;
+            return describeItem(tuple.first) + "\t" + describeItem(tuple.second);
+        }
+        return String.valueOf(item);
+    }
+}
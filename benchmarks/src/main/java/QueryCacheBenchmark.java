@@ -0,0 +1,194 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * A dashboard which refreshes the ten queries and two description searches
+ * of a {@link LiveMovieIndex} over and over, through a {@link QueryCache}
+ * and without one, while every tenth refresh changes a movie: mostly its
+ * description, sometimes its rating, and sometimes a movie is added. The
+ * cached answers must equal those of the index, and a description change
+ * must not make Uncreative writers, Workhorse or Magic Couples compute
+ * again.
+ * <p>
+ * Call with: QueryCacheBenchmark [seedDir] [movies] [refreshes]
+ */
+public class QueryCacheBenchmark {
+
+    private static final int CHANGE_EVERY = 10;
+    private static final List<String> NOT_ON_DESCRIPTIONS = Arrays.asList(
+            "Uncreative writers", "Workhorse", "Magic Couples");
+
+    public static void main(String argv[]) throws Exception {
+        File seedDir = new File(argv.length > 0 ? argv[0] : "src/main/test_data");
+        int size = argv.length > 1 ? Integer.parseInt(argv[1]) : 10000;
+        int refreshes = argv.length > 2 ? Integer.parseInt(argv[2]) : 1000;
+
+        SyntheticCorpus corpus = SyntheticCorpus.fromDirectory(seedDir, 42);
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            keys.add("synthetic_" + i);
+        }
+        LiveMovieIndex index = new LiveMovieIndex();
+        index.load(keys, corpus.generate(size));
+        QueryCache cache = new QueryCache(index, 100);
+        Map<String, Supplier<List<?>>> cached = queries(cache);
+        Map<String, Supplier<List<?>>> direct = queries(index);
+        Random random = new Random(7);
+
+        int mismatches = 0;
+        boolean descriptionOnly = false;
+        for (int refresh = 0; refresh < refreshes; refresh++) {
+            // The first refresh fills the cache
+            if (refresh % CHANGE_EVERY == CHANGE_EVERY - 1) {
+                descriptionOnly = change(index, corpus, keys, random, refresh / CHANGE_EVERY);
+            }
+            for (String query : cached.keySet()) {
+                long misses = cache.getMisses();
+                List<?> answer = cached.get(query).get();
+                if (descriptionOnly && NOT_ON_DESCRIPTIONS.contains(query) && cache.getMisses() != misses) {
+                    mismatches++;
+                    System.out.println(query + " computed again after a description changed");
+                }
+                if (!describe(answer).equals(describe(direct.get(query).get()))) {
+                    mismatches++;
+                    System.out.println(query + " differs at refresh " + refresh);
+                }
+            }
+            descriptionOnly = false;
+        }
+        System.out.println(refreshes + " refreshes of " + cached.size() + " queries: " + cache);
+
+        List<Bench.Result> results = new ArrayList<>();
+        results.add(Bench.measure("refresh, no cache", 50, 1000, i -> {
+            if (i % CHANGE_EVERY == 0) {
+                change(index, corpus, keys, random, 0);
+            }
+            return refresh(direct);
+        }));
+        results.add(Bench.measure("refresh, cache", 50, 1000, i -> {
+            if (i % CHANGE_EVERY == 0) {
+                change(index, corpus, keys, random, 0);
+            }
+            return refresh(cached);
+        }));
+        results.add(Bench.measure("refresh, cache, no changes", 50, 1000, i -> refresh(cached)));
+        Bench.report("QueryCacheBenchmark", results);
+        System.out.println(cache);
+        System.out.println(mismatches + " mismatches");
+    }
+
+    /**
+     * Changes the description of a random movie, or for every fourth and
+     * eighth change its rating or adds a movie.
+     *
+     * @return Whether only a description changed
+     */
+    private static boolean change(LiveMovieIndex index, SyntheticCorpus corpus, List<String> keys, Random random,
+                                  int number) {
+        Movie fresh = corpus.next();
+        if (number % 8 == 7) {
+            keys.add("synthetic_" + keys.size());
+            index.update(Collections.singletonMap(keys.get(keys.size() - 1), fresh), Collections.<String>emptyList());
+            index.maintain();
+            return false;
+        }
+        String key = keys.get(random.nextInt(keys.size()));
+        Movie movie = copy(index.movie(key));
+        boolean descriptionOnly = number % 4 != 3;
+        if (descriptionOnly) {
+            movie.setDescription(fresh.getDescription());
+        } else {
+            movie.setRatingValue(fresh.getRatingValue());
+        }
+        index.update(Collections.singletonMap(key, movie), Collections.<String>emptyList());
+        index.maintain();
+        return descriptionOnly;
+    }
+
+    private static Movie copy(Movie movie) {
+        Movie copy = new Movie();
+        copy.setTitle(movie.getTitle());
+        copy.setYear(movie.getYear());
+        copy.setUrl(movie.getUrl());
+        copy.setGenreList(movie.getGenreList());
+        copy.setCountryList(movie.getCountryList());
+        copy.setDescription(movie.getDescription());
+        copy.setBudget(movie.getBudget());
+        copy.setGross(movie.getGross());
+        copy.setRatingValue(movie.getRatingValue());
+        copy.setRatingCount(movie.getRatingCount());
+        copy.setDuration(movie.getDuration());
+        copy.setCastList(movie.getCastList());
+        copy.setCharacterList(movie.getCharacterList());
+        copy.setDirectorList(movie.getDirectorList());
+        return copy;
+    }
+
+    private static Map<String, Supplier<List<?>>> queries(QueryCache cache) {
+        Map<String, Supplier<List<?>>> queries = new LinkedHashMap<>();
+        queries.put("All-rounder", cache::queryAllRounder);
+        queries.put("Under the radar", cache::queryUnderTheRadar);
+        queries.put("Pillars of storytelling", cache::queryPillarsOfStorytelling);
+        queries.put("Red planet", cache::queryRedPlanet);
+        queries.put("Colossal failure", cache::queryColossalFailure);
+        queries.put("Uncreative writers", cache::queryUncreativeWriters);
+        queries.put("Workhorse", cache::queryWorkHorse);
+        queries.put("Must see", cache::queryMustSee);
+        queries.put("Rotten tomatoes", cache::queryRottenTomatoes);
+        queries.put("Magic Couples", cache::queryMagicCouple);
+        queries.put("Search \"Mars\"", () -> cache.searchDescriptions("Mars", false));
+        queries.put("Search \"love\"", () -> cache.searchDescriptions("love", true));
+        return queries;
+    }
+
+    private static Map<String, Supplier<List<?>>> queries(LiveMovieIndex index) {
+        Map<String, Supplier<List<?>>> queries = new LinkedHashMap<>();
+        queries.put("All-rounder", index::queryAllRounder);
+        queries.put("Under the radar", index::queryUnderTheRadar);
+        queries.put("Pillars of storytelling", index::queryPillarsOfStorytelling);
+        queries.put("Red planet", index::queryRedPlanet);
+        queries.put("Colossal failure", index::queryColossalFailure);
+        queries.put("Uncreative writers", index::queryUncreativeWriters);
+        queries.put("Workhorse", index::queryWorkHorse);
+        queries.put("Must see", index::queryMustSee);
+        queries.put("Rotten tomatoes", index::queryRottenTomatoes);
+        queries.put("Magic Couples", index::queryMagicCouple);
+        queries.put("Search \"Mars\"", () -> index.searchDescriptions("Mars", false));
+        queries.put("Search \"love\"", () -> index.searchDescriptions("love", true));
+        return queries;
+    }
+
+    private static int refresh(Map<String, Supplier<List<?>>> queries) {
+        int rows = 0;
+        for (Supplier<List<?>> query : queries.values()) {
+            rows += query.get().size();
+        }
+        return rows;
+    }
+
+    private static String describe(List<?> result) {
+        StringBuilder text = new StringBuilder();
+        for (Object item : result) {
+            text.append(describeItem(item)).append('\n');
+        }
+        return text.toString();
+    }
+
+    private static String describeItem(Object item) {
+        if (item instanceof Movie) {
+            return ((Movie) item).getTitle() + " " + ((Movie) item).getUrl();
+        }
+        if (item instanceof IMDBQueries.Tuple) {
+            IMDBQueries.Tuple<?, ?> tuple = (IMDBQueries.Tuple<?, ?>) item;
+            return describeItem(tuple.first) + "\t" + describeItem(tuple.second);
+        }
+        return String.valueOf(item);
+    }
+}
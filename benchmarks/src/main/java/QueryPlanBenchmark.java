@@ -0,0 +1,250 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * The ten queries of {@link IMDBQueries}, written as {@link MovieQuery}s,
+ * against the hand-written table queries: both must give the same results
+ * on the seed movies and on a synthetic corpus, and their times are
+ * compared on the latter. The plans of the {@link MovieQuery}s are printed.
+ * A {@link MovieQuery} keeps its plan, so its runs after the first are not
+ * planned again; the planning is measured on its own.
+ * <p>
+ * Call with: QueryPlanBenchmark [seedDir] [movies]
+ */
+public class QueryPlanBenchmark {
+
+    public static void main(String argv[]) throws Exception {
+        File seedDir = new File(argv.length > 0 ? argv[0] : "src/main/test_data");
+        int size = argv.length > 1 ? Integer.parseInt(argv[1]) : 50000;
+
+        IMDBQueries queries = new IMDBQueries();
+        int mismatches = check(queries, new MovieTable(MovieReader.readMoviesFrom(seedDir)));
+        MovieTable table = new MovieTable(SyntheticCorpus.fromDirectory(seedDir, 42).generate(size));
+        mismatches += check(queries, table);
+
+        String[] names = names();
+        List<Supplier<String>> handWritten = handWritten(queries, table);
+        List<Supplier<String>> declarative = declarative(table);
+        List<MovieQuery> movieQueries = movieQueries();
+        List<Bench.Result> results = new ArrayList<>();
+        for (int i = 0; i < names.length; i++) {
+            int query = i;
+            System.out.println(names[i] + ":\n" + movieQueries.get(i).plan(table).explain());
+            Supplier<String> hand = handWritten.get(i);
+            Supplier<String> declared = declarative.get(i);
+            results.add(Bench.measure(names[i] + ", hand-written", 3, 20, n -> hand.get()));
+            results.add(Bench.measure(names[i] + ", MovieQuery", 3, 20, n -> declared.get()));
+            results.add(Bench.measure(names[i] + ", planning", 3, 20, n -> movieQueries().get(query).plan(table)));
+        }
+
+        Bench.report("QueryPlanBenchmark", results);
+        System.out.println(mismatches + " mismatches");
+    }
+
+    private static int check(IMDBQueries queries, MovieTable table) {
+        int mismatches = 0;
+        String[] names = names();
+        List<Supplier<String>> handWritten = handWritten(queries, table);
+        List<Supplier<String>> declarative = declarative(table);
+        for (int i = 0; i < names.length; i++) {
+            if (!handWritten.get(i).get().equals(declarative.get(i).get())) {
+                mismatches++;
+                System.out.println(names[i] + " differs for " + table.size() + " movies");
+            }
+        }
+        return mismatches;
+    }
+
+    private static String[] names() {
+        return new String[]{"All-rounder", "Under the radar", "Pillars of storytelling", "Red planet",
+                "Colossal failure", "Uncreative writers", "Workhorse", "Must see", "Rotten tomatoes", "Magic Couples"};
+    }
+
+    private static List<Supplier<String>> handWritten(IMDBQueries queries, MovieTable table) {
+        List<Supplier<String>> results = new ArrayList<>();
+        results.add(() -> describe(queries.queryAllRounder(table)));
+        results.add(() -> describe(queries.queryUnderTheRadar(table)));
+        results.add(() -> describe(queries.queryPillarsOfStorytelling(table)));
+        results.add(() -> describe(queries.queryRedPlanet(table)));
+        results.add(() -> describe(queries.queryColossalFailure(table)));
+        results.add(() -> describe(queries.queryUncreativeWriters(table)));
+        results.add(() -> describe(queries.queryWorkHorse(table)));
+        results.add(() -> describe(queries.queryMustSee(table)));
+        results.add(() -> describe(queries.queryRottenTomatoes(table)));
+        results.add(() -> describe(queries.queryMagicCouple(table)));
+        return results;
+    }
+
+    private static final Column LOSS = Column.of("loss", (table, id) -> table.budgetOrZero(id) - table.grossOrZero(id));
+    private static final Column KILL_AND_LOVE = Column.of("kill + love", (table, id) ->
+            TextIndex.countOccurrences(table.movie(id).getDescription(), "kill", true)
+                    + TextIndex.countOccurrences(table.movie(id).getDescription(), "love", true));
+
+    private static List<MovieQuery> movieQueries() {
+        List<MovieQuery> queries = new ArrayList<>();
+        queries.add(new MovieQuery()
+                .where(Filter.of("a director is in the cast", (table, id) -> director(table, id) != -1))
+                .orderBy(Column.RATING, true)
+                .limit(10));
+        queries.add(new MovieQuery()
+                .where(Filter.country("USA"))
+                .where(Filter.compare(Column.RATING, Filter.Op.GT, 8.0))
+                .where(Filter.compare(Column.RATING_COUNT, Filter.Op.GE, 1000))
+                .where(Filter.between(Column.YEAR, 1, 2015))
+                .orderBy(LOSS, true)
+                .limit(10));
+        queries.add(new MovieQuery()
+                .where(Filter.descriptionContains("kill", true))
+                .where(Filter.descriptionContains("love", true))
+                .orderBy(KILL_AND_LOVE, true)
+                .limit(10));
+        queries.add(new MovieQuery()
+                .where(Filter.descriptionContains("Mars", false))
+                .where(Filter.genre("Sci-Fi"))
+                .orderBy(Column.YEAR, false));
+        queries.add(new MovieQuery()
+                .where(Filter.country("USA"))
+                .where(Filter.compare(Column.DURATION, Filter.Op.GT, 120))
+                .where(Filter.compare(Column.RATING, Filter.Op.LT, 5.0))
+                .where(Filter.compare(Column.RATING, Filter.Op.GT, 0))
+                .where(Filter.compare(Column.BUDGET, Filter.Op.GT, 1000000))
+                .orderBy(Column.RATING, false));
+        queries.add(new MovieQuery()
+                .groupBy(Group.CHARACTERS)
+                .aggregate(Aggregate.count())
+                .having(name -> !name.isEmpty()
+                        && TextIndex.countOccurrences(name, "doctor", true) == 0
+                        && TextIndex.countOccurrences(name, "himself", true) == 0
+                        && TextIndex.countOccurrences(name, "herself", true) == 0)
+                .orderByAggregate(0, true)
+                .limit(10));
+        queries.add(new MovieQuery()
+                .groupBy(Group.CAST)
+                .aggregate(Aggregate.count())
+                .orderByAggregate(0, true)
+                .limit(10));
+        queries.add(new MovieQuery()
+                .where(Filter.between(Column.YEAR, 1990, 2010))
+                .where(Filter.compare(Column.RATING_COUNT, Filter.Op.GT, 10000))
+                .groupBy(Group.YEAR)
+                .aggregate(Aggregate.argMax(Column.RATING)));
+        queries.add(new MovieQuery()
+                .where(Filter.between(Column.YEAR, 1990, 2010))
+                .where(Filter.compare(Column.RATING, Filter.Op.GT, 0))
+                .groupBy(Group.YEAR)
+                .aggregate(Aggregate.argMin(Column.RATING)));
+        queries.add(new MovieQuery()
+                .groupBy(Group.CAST_PAIRS)
+                .aggregate(Aggregate.count())
+                .orderByAggregate(0, true)
+                .limit(10));
+        return queries;
+    }
+
+    /**
+     * @return The queries of {@link #movieQueries()}, each with its result
+     * in the format of {@link #describe}
+     */
+    private static List<Supplier<String>> declarative(MovieTable table) {
+        List<MovieQuery> queries = movieQueries();
+        NameDictionary names = table.names();
+        List<Supplier<String>> results = new ArrayList<>();
+        results.add(() -> {
+            QueryResult result = queries.get(0).run(table);
+            StringBuilder text = new StringBuilder();
+            for (int row = 0; row < result.size(); row++) {
+                text.append(result.movie(row).getTitle()).append('\t')
+                        .append(names.name(director(table, result.id(row)))).append('\n');
+            }
+            return text.toString();
+        });
+        results.add(() -> {
+            QueryResult result = queries.get(1).run(table);
+            StringBuilder text = new StringBuilder();
+            for (int row = 0; row < result.size(); row++) {
+                text.append(result.movie(row).getTitle()).append('\t')
+                        .append(Math.abs((long) LOSS.get(table, result.id(row)))).append('\n');
+            }
+            return text.toString();
+        });
+        results.add(() -> {
+            QueryResult result = queries.get(2).run(table);
+            StringBuilder text = new StringBuilder();
+            for (int row = 0; row < result.size(); row++) {
+                text.append(result.movie(row).getTitle()).append('\t')
+                        .append((int) KILL_AND_LOVE.get(table, result.id(row))).append('\n');
+            }
+            return text.toString();
+        });
+        results.add(() -> describe(queries.get(3).run(table).movies()));
+        results.add(() -> describe(queries.get(4).run(table).movies()));
+        results.add(() -> describeCounts(queries.get(5).run(table)));
+        results.add(() -> describeCounts(queries.get(6).run(table)));
+        results.add(() -> describeArgs(table, queries.get(7).run(table)));
+        results.add(() -> describeArgs(table, queries.get(8).run(table)));
+        results.add(() -> {
+            QueryResult result = queries.get(9).run(table);
+            StringBuilder text = new StringBuilder();
+            for (int row = 0; row < result.size(); row++) {
+                long key = result.key(row);
+                text.append(names.name((int) (key >>> 32))).append('\t').append(names.name((int) key))
+                        .append('\t').append(result.count(row)).append('\n');
+            }
+            return text.toString();
+        });
+        return results;
+    }
+
+    /**
+     * @return The id of the first director of the movie who is in its cast, or -1
+     */
+    private static int director(MovieTable table, int id) {
+        NameColumn cast = table.cast();
+        NameColumn directors = table.directors();
+        for (int j = directors.start(id); j < directors.end(id); j++) {
+            for (int i = cast.start(id); i < cast.end(id); i++) {
+                if (cast.get(i) == directors.get(j)) {
+                    return directors.get(j);
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static String describeCounts(QueryResult result) {
+        StringBuilder text = new StringBuilder();
+        for (int row = 0; row < result.size(); row++) {
+            text.append(result.label(row)).append('\t').append(result.count(row)).append('\n');
+        }
+        return text.toString();
+    }
+
+    private static String describeArgs(MovieTable table, QueryResult result) {
+        StringBuilder text = new StringBuilder();
+        for (int row = 0; row < result.size(); row++) {
+            text.append(table.movie(result.argId(row, 0)).getTitle()).append('\n');
+        }
+        return text.toString();
+    }
+
+    private static String describe(List<?> result) {
+        StringBuilder text = new StringBuilder();
+        for (Object item : result) {
+            text.append(describeItem(item)).append('\n');
+        }
+        return text.toString();
+    }
+
+    private static String describeItem(Object item) {
+        if (item instanceof Movie) {
+            return ((Movie) item).getTitle();
+        }
+        if (item instanceof IMDBQueries.Tuple) {
+            IMDBQueries.Tuple<?, ?> tuple = (IMDBQueries.Tuple<?, ?>) item;
+            return describeItem(tuple.first) + "\t" + describeItem(tuple.second);
+        }
+        return String.valueOf(item);
+    }
+}
@@ -0,0 +1,100 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Time of the queries on a {@link MovieTable} over a synthetic corpus with
+ * 1, 2, 4, 8 and 16 threads (1 is the sequential mode). Every thread count
+ * must give the same results as the sequential mode.
+ * <p>
+ * Call with: QueryScalingBenchmark [seedDir] [movies] [threads]...
+ */
+public class QueryScalingBenchmark {
+
+    public static void main(String argv[]) throws Exception {
+        File seedDir = new File(argv.length > 0 ? argv[0] : "src/main/test_data");
+        int size = argv.length > 1 ? Integer.parseInt(argv[1]) : 50000;
+        int[] threadCounts = {1, 2, 4, 8, 16};
+        if (argv.length > 2) {
+            threadCounts = new int[argv.length - 2];
+            for (int i = 2; i < argv.length; i++) {
+                threadCounts[i - 2] = Integer.parseInt(argv[i]);
+            }
+        }
+
+        SyntheticCorpus corpus = SyntheticCorpus.fromDirectory(seedDir, 42);
+        MovieTable table = new MovieTable(corpus.generate(size));
+        table.descriptionIndex();
+        System.out.println(size + " movies, " + Runtime.getRuntime().availableProcessors() + " processors");
+
+        Map<String, String> expected = null;
+        int mismatches = 0;
+        List<Bench.Result> results = new ArrayList<>();
+        for (int threads : threadCounts) {
+            ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+            IMDBQueries queries = new IMDBQueries(pool);
+            Map<String, String> actual = runAll(queries, table);
+            if (expected == null) {
+                expected = actual;
+            } else {
+                for (String query : expected.keySet()) {
+                    if (!expected.get(query).equals(actual.get(query))) {
+                        mismatches++;
+                        System.out.println(query + " differs with " + threads + " threads");
+                    }
+                }
+            }
+            results.add(Bench.measure("all queries, " + threads + " thread(s)", 2, 5, i -> runAll(queries, table)));
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+
+        Bench.report("QueryScalingBenchmark", results);
+        for (int i = 1; i < results.size(); i++) {
+            System.out.println(String.format("Speedup with %d threads: %.2fx", threadCounts[i],
+                    results.get(0).getMeanNanos() / results.get(i).getMeanNanos()));
+        }
+        System.out.println(mismatches + " mismatches");
+    }
+
+    /**
+     * Runs every query, the results are compared by their text.
+     */
+    private static Map<String, String> runAll(IMDBQueries queries, MovieTable table) {
+        Map<String, String> results = new LinkedHashMap<>();
+        results.put("All-rounder", describe(queries.queryAllRounder(table)));
+        results.put("Under the radar", describe(queries.queryUnderTheRadar(table)));
+        results.put("The pillars of storytelling", describe(queries.queryPillarsOfStorytelling(table)));
+        results.put("The red planet", describe(queries.queryRedPlanet(table)));
+        results.put("Colossal failure", describe(queries.queryColossalFailure(table)));
+        results.put("Uncreative writers", describe(queries.queryUncreativeWriters(table)));
+        results.put("Workhorse", describe(queries.queryWorkHorse(table)));
+        results.put("Must see", describe(queries.queryMustSee(table)));
+        results.put("Rotten tomatoes", describe(queries.queryRottenTomatoes(table)));
+        results.put("Magic Couples", describe(queries.queryMagicCouple(table)));
+        return results;
+    }
+
+    private static String describe(List<?> result) {
+        StringBuilder text = new StringBuilder();
+        for (Object item : result) {
+            text.append(describeItem(item)).append('\n');
+        }
+        return text.toString();
+    }
+
+    private static String describeItem(Object item) {
+        if (item instanceof Movie) {
+            return ((Movie) item).getTitle();
+        }
+        if (item instanceof IMDBQueries.Tuple) {
+            IMDBQueries.Tuple<?, ?> tuple = (IMDBQueries.Tuple<?, ?>) item;
+            return describeItem(tuple.first) + "\t" + describeItem(tuple.second);
+        }
+        return String.valueOf(item);
+    }
+}
@@ -0,0 +1,84 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Latency and throughput of {@link SearchEngine#search(String, int)} (MaxScore
+ * over the postings) against {@link SearchEngine#searchByScan(String, int)}
+ * (a brute-force scan of all movies) for top-10 queries over a synthetic
+ * corpus. Both must return the same movies.
+ * <p>
+ * Call with: SearchBenchmark [seedDir] [movies] [queries]
+ */
+public class SearchBenchmark {
+
+    public static void main(String argv[]) throws Exception {
+        File seedDir = new File(argv.length > 0 ? argv[0] : "src/main/test_data");
+        int size = argv.length > 1 ? Integer.parseInt(argv[1]) : 100000;
+        int queryCount = argv.length > 2 ? Integer.parseInt(argv[2]) : 500;
+
+        SyntheticCorpus corpus = SyntheticCorpus.fromDirectory(seedDir, 42);
+        MovieTable table = new MovieTable(corpus.generate(size));
+        long time = System.currentTimeMillis();
+        SearchEngine engine = new SearchEngine(table);
+        System.out.println("Indexed " + size + " movies in " + (System.currentTimeMillis() - time) + " ms");
+
+        List<String> queries = queries(table, queryCount, 7);
+        int mismatches = 0;
+        for (int i = 0; i < Math.min(queries.size(), 20); i++) {
+            if (!sameMovies(engine.search(queries.get(i), 10), engine.searchByScan(queries.get(i), 10))) {
+                mismatches++;
+                System.out.println("Results differ for query: " + queries.get(i));
+            }
+        }
+
+        List<Bench.Result> results = new ArrayList<>();
+        results.add(Bench.measure("search top-10 (MaxScore)", queries.size(), queries.size(),
+                i -> engine.search(queries.get(i % queries.size()), 10)));
+        int scans = Math.max(3, Math.min(queries.size(), 2000000 / Math.max(size, 1)));
+        results.add(Bench.measure("search top-10 (brute-force scan)", 2, scans,
+                i -> engine.searchByScan(queries.get(i % queries.size()), 10)));
+
+        Bench.report("SearchBenchmark", results);
+        System.out.println(String.format("Speedup: %.0fx, %d of %d checked queries differ",
+                results.get(1).getMeanNanos() / results.get(0).getMeanNanos(),
+                mismatches, Math.min(queries.size(), 20)));
+    }
+
+    /**
+     * Builds queries of one to three words taken from random descriptions, so
+     * they mix frequent and rare terms like real queries.
+     */
+    static List<String> queries(MovieTable table, int count, long seed) {
+        Random random = new Random(seed);
+        List<String> queries = new ArrayList<>(count);
+        while (queries.size() < count) {
+            List<String> words = Tokenizer.tokenize(table.movie(random.nextInt(table.size())).getDescription(), true);
+            if (words.isEmpty()) {
+                continue;
+            }
+            StringBuilder query = new StringBuilder();
+            int length = 1 + random.nextInt(3);
+            for (int i = 0; i < length; i++) {
+                query.append(words.get(random.nextInt(words.size()))).append(' ');
+            }
+            queries.add(query.toString().trim());
+        }
+        return queries;
+    }
+
+    private static boolean sameMovies(List<SearchHit> a, List<SearchHit> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            // Scores may differ in the last bits as the sums are added up in another order
+            if (a.get(i).getId() != b.get(i).getId()
+                    && Math.abs(a.get(i).getScore() - b.get(i).getScore()) > 1e-9) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
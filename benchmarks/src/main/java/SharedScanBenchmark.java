@@ -0,0 +1,99 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Time of the queries which scan the movies run one after another, each
+ * with its own scan, against one {@link QueryBatch} over a synthetic corpus:
+ * once all of them, once without Magic Couples, whose pair counting
+ * outweighs the scans. Both must give the same results.
+ * <p>
+ * Call with: SharedScanBenchmark [seedDir] [movies]
+ */
+public class SharedScanBenchmark {
+
+    public static void main(String argv[]) throws Exception {
+        File seedDir = new File(argv.length > 0 ? argv[0] : "src/main/test_data");
+        int size = argv.length > 1 ? Integer.parseInt(argv[1]) : 50000;
+
+        SyntheticCorpus corpus = SyntheticCorpus.fromDirectory(seedDir, 42);
+        MovieTable table = new MovieTable(corpus.generate(size));
+        IMDBQueries queries = new IMDBQueries();
+
+        int mismatches = 0;
+        List<Object> separate = separately(queries, table, true);
+        List<Object> batched = batched(queries, table, true);
+        for (int i = 0; i < separate.size(); i++) {
+            if (!separate.get(i).toString().equals(batched.get(i).toString())) {
+                mismatches++;
+                System.out.println("Query " + i + " differs");
+            }
+        }
+
+        List<Bench.Result> results = new ArrayList<>();
+        results.add(Bench.measure("8 queries, separate scans", 2, 10, i -> separately(queries, table, true)));
+        results.add(Bench.measure("8 queries, shared scan", 2, 10, i -> batched(queries, table, true)));
+        results.add(Bench.measure("7 queries w/o Magic Couples, separate", 3, 20,
+                i -> separately(queries, table, false)));
+        results.add(Bench.measure("7 queries w/o Magic Couples, shared", 3, 20,
+                i -> batched(queries, table, false)));
+
+        Bench.report("SharedScanBenchmark", results);
+        System.out.println(mismatches + " mismatches");
+    }
+
+    private static List<Object> separately(IMDBQueries queries, MovieTable table, boolean magicCouple) {
+        List<Object> results = new ArrayList<>();
+        results.add(describe(queries.queryAllRounder(table)));
+        results.add(describe(queries.queryUnderTheRadar(table)));
+        results.add(describe(queries.queryColossalFailure(table)));
+        results.add(describe(queries.queryUncreativeWriters(table)));
+        results.add(describe(queries.queryWorkHorse(table)));
+        results.add(describe(queries.queryMustSee(table)));
+        results.add(describe(queries.queryRottenTomatoes(table)));
+        if (magicCouple) {
+            results.add(describe(queries.queryMagicCouple(table)));
+        }
+        return results;
+    }
+
+    private static List<Object> batched(IMDBQueries queries, MovieTable table, boolean magicCouple) {
+        QueryBatch batch = new QueryBatch(table, null);
+        List<QueryBatch.Result<? extends List<?>>> results = new ArrayList<>();
+        results.add(batch.add("All-rounder", queries.allRounder(table, 10)));
+        results.add(batch.add("Under the radar", queries.underTheRadar(table, 10)));
+        results.add(batch.add("Colossal failure", queries.colossalFailure(table)));
+        results.add(batch.add("Uncreative writers", queries.uncreativeWriters(table, 10)));
+        results.add(batch.add("Workhorse", queries.workHorse(table, 10)));
+        results.add(batch.add("Must see", queries.mustSee(table)));
+        results.add(batch.add("Rotten tomatoes", queries.rottenTomatoes(table)));
+        if (magicCouple) {
+            results.add(batch.add("Magic Couples", queries.magicCouple(table, 10)));
+        }
+        batch.run();
+        List<Object> values = new ArrayList<>();
+        for (QueryBatch.Result<? extends List<?>> result : results) {
+            values.add(describe(result.get()));
+        }
+        return values;
+    }
+
+    private static String describe(List<?> result) {
+        StringBuilder text = new StringBuilder();
+        for (Object item : result) {
+            text.append(describeItem(item)).append('\n');
+        }
+        return text.toString();
+    }
+
+    private static String describeItem(Object item) {
+        if (item instanceof Movie) {
+            return ((Movie) item).getTitle();
+        }
+        if (item instanceof IMDBQueries.Tuple) {
+            IMDBQueries.Tuple<?, ?> tuple = (IMDBQueries.Tuple<?, ?>) item;
+            return describeItem(tuple.first) + "\t" + describeItem(tuple.second);
+        }
+        return String.valueOf(item);
+    }
+}
@@ -0,0 +1,52 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Time and heap of exact Magic Couples counted in memory against counted
+ * by {@link SpillingCounter} in a fixed budget, which spills the pairs to
+ * run files when they do not fit, over a synthetic corpus. Sequentially
+ * and in a pool; the smallest budget makes partitions split again. All
+ * must give the same pairs.
+ * <p>
+ * Call with: SpillBenchmark [seedDir] [movies] [threads] [budgetMB,...]
+ */
+public class SpillBenchmark {
+
+    public static void main(String argv[]) throws Exception {
+        File seedDir = new File(argv.length > 0 ? argv[0] : "src/main/test_data");
+        int size = argv.length > 1 ? Integer.parseInt(argv[1]) : 100000;
+        int threads = argv.length > 2 ? Integer.parseInt(argv[2]) : 4;
+        String[] budgets = (argv.length > 3 ? argv[3] : "1024,64,8,1").split(",");
+
+        SyntheticCorpus corpus = SyntheticCorpus.fromDirectory(seedDir, 42);
+        MovieTable table = new MovieTable(corpus.generate(size));
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        IMDBQueries sequential = new IMDBQueries();
+        IMDBQueries parallel = new IMDBQueries(pool);
+        List<IMDBQueries.Tuple<IMDBQueries.Tuple<String, String>, Integer>> expected =
+                sequential.queryMagicCouple(table, 10);
+
+        int mismatches = 0;
+        List<Bench.Result> results = new ArrayList<>();
+        results.add(Bench.measure("Magic Couples, " + size + " movies (in memory)", 1, 3,
+                i -> sequential.queryMagicCouple(table, 10)));
+        for (String budget : budgets) {
+            long bytes = Long.parseLong(budget) << 20;
+            for (IMDBQueries queries : new IMDBQueries[]{sequential, parallel}) {
+                String name = "Magic Couples, " + size + " movies (" + budget + " MB, "
+                        + (queries == sequential ? "1 thread" : threads + " threads") + ")";
+                if (!queries.queryMagicCouple(table, 10, bytes, null).equals(expected)) {
+                    mismatches++;
+                    System.out.println(name + " differ");
+                }
+                results.add(Bench.measure(name, 1, 3, i -> queries.queryMagicCouple(table, 10, bytes, null)));
+            }
+        }
+        pool.shutdown();
+
+        Bench.report("SpillBenchmark", results);
+        System.out.println(mismatches + " mismatches");
+    }
+}
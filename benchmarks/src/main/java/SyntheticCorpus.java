@@ -0,0 +1,185 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates any number of synthetic movies which resemble a seed corpus, e.g.
+ * src/main/test_data. Words of descriptions and titles, cast and character
+ * names are drawn from the pooled values of the seed movies, so popular names
+ * and frequent words stay as frequent as in the seed; a share of the cast is
+ * made of new first/last name combinations to get a long tail of rare actors.
+ * The numeric attributes, genres and countries are copied from a random seed
+ * movie, keeping their original formats ("$25,000,000", "2h 22min").
+ * <p>
+ * The movies can also be written to a directory which {@link MovieReader}
+ * reads, one at a time, so corpora of millions of movies fit on disk even
+ * if not in the heap:
+ * <p>
+ * SyntheticCorpus seedDir outputDir movies [FILES|NDJSON|NDJSON_GZIP]
+ */
+public class SyntheticCorpus {
+
+    public static void main(String argv[]) throws Exception {
+        if (argv.length < 3) {
+            System.err.println("Usage: SyntheticCorpus seedDir outputDir movies [FILES|NDJSON|NDJSON_GZIP]");
+            System.exit(1);
+        }
+        File outputDir = new File(argv[1]);
+        int count = Integer.parseInt(argv[2]);
+        MovieSink.Format format = argv.length > 3 ? MovieSink.Format.valueOf(argv[3]) : MovieSink.Format.NDJSON;
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new IOException("Cannot create " + outputDir);
+        }
+        long start = System.nanoTime();
+        try (MovieSink sink = MovieSink.open(format, outputDir, 64L << 20)) {
+            fromDirectory(new File(argv[0]), 42).writeTo(sink, count);
+        }
+        System.out.println(String.format("Wrote %d movies as %s to %s in %.1f s", count, format, outputDir,
+                (System.nanoTime() - start) / 1e9));
+    }
+
+    private static final double NEW_NAME_SHARE = 0.3;
+
+    private final List<Movie> seed;
+    private final Random random;
+    private final List<String> descriptionWords = new ArrayList<>();
+    private final List<String> titleWords = new ArrayList<>();
+    private final List<String> castNames = new ArrayList<>();
+    private final List<String> firstNames = new ArrayList<>();
+    private final List<String> lastNames = new ArrayList<>();
+    private final List<String> characterNames = new ArrayList<>();
+    private final List<String> directorNames = new ArrayList<>();
+    private int next;
+
+    /**
+     * @param seed       the movies to imitate
+     * @param randomSeed the seed of the random generator, the same seed gives
+     *                   the same corpus
+     */
+    public SyntheticCorpus(List<Movie> seed, long randomSeed) {
+        if (seed.isEmpty()) {
+            throw new IllegalArgumentException("The seed corpus is empty");
+        }
+        this.seed = seed;
+        this.random = new Random(randomSeed);
+        for (Movie movie : seed) {
+            this.descriptionWords.addAll(Tokenizer.tokenize(movie.getDescription(), false));
+            String title = movie.getTitle() == null ? "" : movie.getTitle().replaceAll("\\(\\d{4}\\)", "");
+            this.titleWords.addAll(Tokenizer.tokenize(title, false));
+            for (String name : movie.getCastList()) {
+                this.castNames.add(name);
+                int space = name.lastIndexOf(' ');
+                if (space > 0) {
+                    this.firstNames.add(name.substring(0, space));
+                    this.lastNames.add(name.substring(space + 1));
+                }
+            }
+            for (String name : movie.getCharacterList()) {
+                if (!name.isEmpty()) {
+                    this.characterNames.add(name);
+                }
+            }
+            this.directorNames.addAll(movie.getDirectorList());
+        }
+        addIfEmpty(this.descriptionWords, "story");
+        addIfEmpty(this.titleWords, "Movie");
+        addIfEmpty(this.castNames, "Jane Doe");
+        addIfEmpty(this.firstNames, "Jane");
+        addIfEmpty(this.lastNames, "Doe");
+        addIfEmpty(this.characterNames, "Herself");
+        addIfEmpty(this.directorNames, "John Doe");
+    }
+
+    /**
+     * Reads the seed movies from a directory of JSON files.
+     *
+     * @param seedDir    the directory, e.g. src/main/test_data
+     * @param randomSeed the seed of the random generator
+     * @return The generator
+     */
+    public static SyntheticCorpus fromDirectory(File seedDir, long randomSeed) throws IOException {
+        return new SyntheticCorpus(MovieReader.readMoviesFrom(seedDir), randomSeed);
+    }
+
+    /**
+     * @param count the number of movies
+     * @return The next 'count' synthetic movies
+     */
+    public List<Movie> generate(int count) {
+        List<Movie> movies = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            movies.add(next());
+        }
+        return movies;
+    }
+
+    /**
+     * Writes the next 'count' synthetic movies to 'sink', one at a time. The
+     * movies are named after their number, as titles repeat.
+     *
+     * @param sink  the sink
+     * @param count the number of movies
+     */
+    public void writeTo(MovieSink sink, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            int number = this.next;
+            sink.write(next(), "synthetic_" + number);
+        }
+        sink.flush();
+    }
+
+    /**
+     * @return The next synthetic movie
+     */
+    public Movie next() {
+        Movie template = pick(this.seed);
+        Movie movie = new Movie();
+        int number = this.next++;
+
+        StringBuilder title = new StringBuilder();
+        int titleLength = 1 + this.random.nextInt(4);
+        for (int i = 0; i < titleLength; i++) {
+            title.append(pick(this.titleWords)).append(' ');
+        }
+        movie.setTitle(title.append('(').append(template.getYear()).append(')').toString());
+        movie.setUrl("http://www.imdb.com/title/tt" + (10000000 + number) + "/");
+        movie.setYear(template.getYear());
+        movie.setGenreList(new ArrayList<>(template.getGenreList()));
+        movie.setCountryList(new ArrayList<>(template.getCountryList()));
+        movie.setBudget(template.getBudget());
+        movie.setGross(template.getGross());
+        movie.setRatingValue(template.getRatingValue());
+        movie.setRatingCount(template.getRatingCount());
+        movie.setDuration(template.getDuration());
+
+        StringBuilder description = new StringBuilder();
+        int descriptionLength = Tokenizer.tokenize(pick(this.seed).getDescription(), false).size();
+        for (int i = 0; i < descriptionLength; i++) {
+            if (i > 0) description.append(' ');
+            description.append(pick(this.descriptionWords));
+        }
+        movie.setDescription(description.append('.').toString());
+
+        int castSize = pick(this.seed).getCastList().size();
+        for (int i = 0; i < castSize; i++) {
+            String actor = this.random.nextDouble() < NEW_NAME_SHARE
+                    ? pick(this.firstNames) + " " + pick(this.lastNames) : pick(this.castNames);
+            movie.getCastList().add(actor);
+            movie.getCharacterList().add(pick(this.characterNames));
+        }
+        movie.getDirectorList().add(pick(this.directorNames));
+        return movie;
+    }
+
+    private <T> T pick(List<T> values) {
+        return values.get(this.random.nextInt(values.size()));
+    }
+
+    private static void addIfEmpty(List<String> values, String value) {
+        if (values.isEmpty()) {
+            values.add(value);
+        }
+    }
+}
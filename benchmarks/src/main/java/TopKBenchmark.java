@@ -0,0 +1,121 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Time of selecting the top k with {@link IntTopK} against sorting all
+ * candidates with {@link IntSort} and taking the first k, which is what the
+ * queries on a {@link MovieTable} did before: once on random scores, and
+ * once for the actor pairs of Magic Couples over a synthetic corpus. Both
+ * must select the same ids.
+ * <p>
+ * Call with: TopKBenchmark [seedDir] [movies] [candidates]
+ */
+public class TopKBenchmark {
+
+    public static void main(String argv[]) throws Exception {
+        File seedDir = new File(argv.length > 0 ? argv[0] : "src/main/test_data");
+        int size = argv.length > 1 ? Integer.parseInt(argv[1]) : 20000;
+        int candidates = argv.length > 2 ? Integer.parseInt(argv[2]) : 1000000;
+
+        // Few distinct scores, so the order of ties is checked as well
+        Random random = new Random(42);
+        int[] scores = new int[candidates];
+        for (int i = 0; i < candidates; i++) {
+            scores[i] = random.nextInt(1000);
+        }
+        IntComparator byScore = (a, b) -> scores[b] - scores[a];
+
+        int mismatches = 0;
+        List<Bench.Result> results = new ArrayList<>();
+        for (int k : new int[]{10, 1000}) {
+            if (!Arrays.equals(sortAndTake(scores.length, byScore, k), select(scores.length, byScore, k))) {
+                mismatches++;
+                System.out.println("Top " + k + " of the random scores differ");
+            }
+            results.add(Bench.measure("top-" + k + " of " + candidates + " (sort)", 3, 10,
+                    i -> sortAndTake(scores.length, byScore, k)));
+            results.add(Bench.measure("top-" + k + " of " + candidates + " (heap)", 3, 10,
+                    i -> select(scores.length, byScore, k)));
+        }
+
+        SyntheticCorpus corpus = SyntheticCorpus.fromDirectory(seedDir, 42);
+        MovieTable table = new MovieTable(corpus.generate(size));
+        IMDBQueries queries = new IMDBQueries();
+        if (!magicCoupleBySort(table, 10).equals(describe(queries.queryMagicCouple(table, 10)))) {
+            mismatches++;
+            System.out.println("Magic Couples differ");
+        }
+        results.add(Bench.measure("Magic Couples, " + size + " movies (sort)", 2, 5,
+                i -> magicCoupleBySort(table, 10)));
+        results.add(Bench.measure("Magic Couples, " + size + " movies (heap)", 2, 5,
+                i -> queries.queryMagicCouple(table, 10)));
+
+        Bench.report("TopKBenchmark", results);
+        System.out.println(mismatches + " mismatches");
+    }
+
+    private static int[] sortAndTake(int n, IntComparator cmp, int k) {
+        int[] ids = new int[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = i;
+        }
+        IntSort.sort(ids, 0, n, cmp);
+        return Arrays.copyOf(ids, Math.min(k, n));
+    }
+
+    private static int[] select(int n, IntComparator cmp, int k) {
+        IntTopK top = new IntTopK(k, cmp);
+        for (int i = 0; i < n; i++) {
+            top.offer(i);
+        }
+        return top.toSortedArray();
+    }
+
+    /**
+     * Magic Couples as it was before {@link IntTopK}: all pairs are copied
+     * out of the map and sorted.
+     */
+    private static List<String> magicCoupleBySort(MovieTable table, int k) {
+        NameColumn cast = table.cast();
+        LongIntMap counts = new LongIntMap();
+        for (int id = 0; id < table.size(); id++) {
+            int end = cast.end(id);
+            for (int i = cast.start(id); i < end; i++)
+                for (int j = i + 1; j < end; j++) {
+                    int a = cast.get(i);
+                    int b = cast.get(j);
+                    counts.addTo(a < b ? (long) a << 32 | b : (long) b << 32 | a, 1);
+                }
+        }
+        long[] keys = new long[counts.size()];
+        int[] values = new int[counts.size()];
+        int[] next = new int[1];
+        counts.forEach((key, value) -> {
+            keys[next[0]] = key;
+            values[next[0]++] = value;
+        });
+        int[] order = new int[keys.length];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        IntSort.sort(order, 0, order.length, (a, b) -> values[a] != values[b]
+                ? values[b] - values[a] : Long.compare(keys[a], keys[b]));
+
+        List<String> pairs = new ArrayList<>();
+        for (int i = 0; i < Math.min(k, order.length); i++) {
+            long key = keys[order[i]];
+            pairs.add(table.names().name((int) (key >>> 32)) + ":" + table.names().name((int) key)
+                    + "=" + values[order[i]]);
+        }
+        return pairs;
+    }
+
+    private static List<String> describe(List<IMDBQueries.Tuple<IMDBQueries.Tuple<String, String>, Integer>> result) {
+        List<String> pairs = new ArrayList<>();
+        for (IMDBQueries.Tuple<IMDBQueries.Tuple<String, String>, Integer> tuple : result) {
+            pairs.add(tuple.first.first + ":" + tuple.first.second + "=" + tuple.second);
+        }
+        return pairs;
+    }
+}
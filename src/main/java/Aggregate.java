@@ -0,0 +1,82 @@
+/**
+ * A value a {@link MovieQuery} computes for every group of movies.
+ */
+public final class Aggregate {
+
+    /**
+     * The kinds of aggregates. ARG_MIN and ARG_MAX find the movie with the
+     * smallest or largest value, of equal ones that with the lowest id.
+     */
+    public enum Kind {
+        COUNT, SUM, MIN, MAX, AVG, ARG_MIN, ARG_MAX
+    }
+
+    final Kind kind;
+    final Column column;
+
+    private Aggregate(Kind kind, Column column) {
+        this.kind = kind;
+        this.column = column;
+    }
+
+    /**
+     * @return The number of movies of a group, counting a movie as often as
+     * it is in the group
+     */
+    public static Aggregate count() {
+        return new Aggregate(Kind.COUNT, null);
+    }
+
+    /**
+     * @param column a column
+     * @return The sum of the values of the movies of a group
+     */
+    public static Aggregate sum(Column column) {
+        return new Aggregate(Kind.SUM, column);
+    }
+
+    /**
+     * @param column a column
+     * @return The smallest value of the movies of a group
+     */
+    public static Aggregate min(Column column) {
+        return new Aggregate(Kind.MIN, column);
+    }
+
+    /**
+     * @param column a column
+     * @return The largest value of the movies of a group
+     */
+    public static Aggregate max(Column column) {
+        return new Aggregate(Kind.MAX, column);
+    }
+
+    /**
+     * @param column a column
+     * @return The average value of the movies of a group
+     */
+    public static Aggregate avg(Column column) {
+        return new Aggregate(Kind.AVG, column);
+    }
+
+    /**
+     * @param column a column
+     * @return The movie of a group with the smallest value, see {@link QueryResult#argId}
+     */
+    public static Aggregate argMin(Column column) {
+        return new Aggregate(Kind.ARG_MIN, column);
+    }
+
+    /**
+     * @param column a column
+     * @return The movie of a group with the largest value, see {@link QueryResult#argId}
+     */
+    public static Aggregate argMax(Column column) {
+        return new Aggregate(Kind.ARG_MAX, column);
+    }
+
+    @Override
+    public String toString() {
+        return this.kind == Kind.COUNT ? "count" : this.kind.name().toLowerCase().replace("_", "") + "(" + this.column + ")";
+    }
+}
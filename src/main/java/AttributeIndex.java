@@ -0,0 +1,93 @@
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+/**
+ * An index from the values of a list-valued attribute of the movies, such as
+ * the genres or countries, to the ids of the movies which list them.
+ */
+public class AttributeIndex {
+
+    private final Map<String, IdBitmap> index;
+
+    private AttributeIndex(Map<String, IdBitmap> index) {
+        this.index = index;
+    }
+
+    /**
+     * @param movies    the movies, in id order
+     * @param attribute the values of a movie, e.g. {@link Movie#getGenreList()}
+     * @return The index
+     */
+    static AttributeIndex build(List<Movie> movies, Function<Movie, List<String>> attribute) {
+        Map<String, IntList> ids = new HashMap<>();
+        for (int id = 0; id < movies.size(); id++) {
+            for (String value : attribute.apply(movies.get(id))) {
+                IntList list = ids.computeIfAbsent(value, v -> new IntList());
+                // A movie may list a value twice
+                if (list.size() == 0 || list.get(list.size() - 1) != id) {
+                    list.add(id);
+                }
+            }
+        }
+        Map<String, IdBitmap> index = new HashMap<>();
+        ids.forEach((value, list) -> index.put(value, IdBitmap.of(list.toArray(), 0, list.size())));
+        return new AttributeIndex(index);
+    }
+
+    /**
+     * Builds the index from values which are already ids, e.g. those of a
+     * {@link MovieSnapshot}, so every distinct value is decoded only once.
+     *
+     * @param offsets the position of the first value of every movie, and
+     *                the end of the last one
+     * @param values  the ids of the values of all movies
+     * @param decode  decodes the id of a value
+     * @return The index
+     */
+    static AttributeIndex build(int[] offsets, int[] values, IntFunction<String> decode) {
+        Map<Integer, IntList> ids = new HashMap<>();
+        for (int id = 0; id + 1 < offsets.length; id++) {
+            for (int i = offsets[id]; i < offsets[id + 1]; i++) {
+                IntList list = ids.computeIfAbsent(values[i], v -> new IntList());
+                // A movie may list a value twice
+                if (list.size() == 0 || list.get(list.size() - 1) != id) {
+                    list.add(id);
+                }
+            }
+        }
+        Map<String, IdBitmap> index = new HashMap<>();
+        ids.forEach((value, list) -> index.put(decode.apply(value), IdBitmap.of(list.toArray(), 0, list.size())));
+        return new AttributeIndex(index);
+    }
+
+    /**
+     * @param value a value, e.g. "Sci-Fi"
+     * @return The ids of the movies which list 'value', empty if none does
+     */
+    public IdBitmap get(String value) {
+        return this.index.getOrDefault(value, IdBitmap.EMPTY);
+    }
+
+    /**
+     * @return The values of all movies
+     */
+    public Set<String> values() {
+        return Collections.unmodifiableSet(this.index.keySet());
+    }
+
+    /**
+     * @return The approximate number of bytes the sets of ids take
+     */
+    public long sizeInBytes() {
+        long bytes = 0;
+        for (IdBitmap ids : this.index.values()) {
+            bytes += ids.sizeInBytes();
+        }
+        return bytes;
+    }
+}
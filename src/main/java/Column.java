@@ -0,0 +1,159 @@
+/**
+ * A numeric attribute of the movies of a {@link MovieTable}, which a
+ * {@link MovieQuery} filters, orders and aggregates by. Missing values read
+ * as 0, like the getters of {@link Movie} do.
+ * <p>
+ * Plans read columns a batch of ids at a time. Every column of the table has
+ * its own batch loop, so the call in the loop goes to one known getter.
+ */
+public abstract class Column {
+
+    /**
+     * Reads the value of a column.
+     */
+    public interface Accessor {
+        /**
+         * @param table the table
+         * @param id    the id of a movie
+         * @return The value of the movie
+         */
+        double get(MovieTable table, int id);
+    }
+
+    public static final Column RATING = new Column("rating") {
+        @Override
+        public double get(MovieTable table, int id) {
+            return table.ratingOrZero(id);
+        }
+
+        @Override
+        void get(MovieTable table, int[] ids, int n, double[] values) {
+            for (int i = 0; i < n; i++) {
+                values[i] = table.ratingOrZero(ids[i]);
+            }
+        }
+    };
+
+    public static final Column RATING_COUNT = new Column("ratingCount") {
+        @Override
+        public double get(MovieTable table, int id) {
+            return Math.max(0, table.ratingCount(id));
+        }
+
+        @Override
+        void get(MovieTable table, int[] ids, int n, double[] values) {
+            for (int i = 0; i < n; i++) {
+                values[i] = Math.max(0, table.ratingCount(ids[i]));
+            }
+        }
+    };
+
+    public static final Column YEAR = new Column("year") {
+        @Override
+        public double get(MovieTable table, int id) {
+            return table.yearOrZero(id);
+        }
+
+        @Override
+        void get(MovieTable table, int[] ids, int n, double[] values) {
+            for (int i = 0; i < n; i++) {
+                values[i] = table.yearOrZero(ids[i]);
+            }
+        }
+    };
+
+    public static final Column BUDGET = new Column("budget") {
+        @Override
+        public double get(MovieTable table, int id) {
+            return table.budgetOrZero(id);
+        }
+
+        @Override
+        void get(MovieTable table, int[] ids, int n, double[] values) {
+            for (int i = 0; i < n; i++) {
+                values[i] = table.budgetOrZero(ids[i]);
+            }
+        }
+    };
+
+    public static final Column GROSS = new Column("gross") {
+        @Override
+        public double get(MovieTable table, int id) {
+            return table.grossOrZero(id);
+        }
+
+        @Override
+        void get(MovieTable table, int[] ids, int n, double[] values) {
+            for (int i = 0; i < n; i++) {
+                values[i] = table.grossOrZero(ids[i]);
+            }
+        }
+    };
+
+    public static final Column DURATION = new Column("duration") {
+        @Override
+        public double get(MovieTable table, int id) {
+            return Math.max(0, table.durationMinutes(id));
+        }
+
+        @Override
+        void get(MovieTable table, int[] ids, int n, double[] values) {
+            for (int i = 0; i < n; i++) {
+                values[i] = Math.max(0, table.durationMinutes(ids[i]));
+            }
+        }
+    };
+
+    private final String name;
+
+    private Column(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @param name     the name of the column, for plans and results
+     * @param accessor computes the value of a movie, e.g. from other columns
+     * @return The column
+     */
+    public static Column of(String name, Accessor accessor) {
+        return new Column(name) {
+            @Override
+            public double get(MovieTable table, int id) {
+                return accessor.get(table, id);
+            }
+        };
+    }
+
+    /**
+     * @return The name of the column
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * @param table the table
+     * @param id    the id of a movie
+     * @return The value of the movie
+     */
+    public abstract double get(MovieTable table, int id);
+
+    /**
+     * Reads the values of a batch of movies.
+     *
+     * @param table  the table
+     * @param ids    the ids of the movies
+     * @param n      the number of ids
+     * @param values receives the value of each movie
+     */
+    void get(MovieTable table, int[] ids, int n, double[] values) {
+        for (int i = 0; i < n; i++) {
+            values[i] = get(table, ids[i]);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return this.name;
+    }
+}
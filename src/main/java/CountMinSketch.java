@@ -0,0 +1,136 @@
+/**
+ * A Count-Min sketch of a stream of long keys (Cormode and Muthukrishnan)
+ * with conservative update: 'depth' rows of 'width' counters, and a key
+ * counted in one counter of every row. The estimate of a key, the smallest
+ * of its counters, is never below its true frequency, and with probability
+ * at least 1 - delta at most epsilon * n above it for a stream of n keys,
+ * for width = ceil(e / epsilon) and depth = ceil(ln(1 / delta)). The width is
+ * rounded up to a power of two, which only tightens the bound, so that a
+ * counter is found by masking the hash rather than dividing it.
+ * <p>
+ * Sketches of the same size add up to the sketch of both streams.
+ */
+public class CountMinSketch {
+
+    private final int width;
+    private final int mask;
+    private final int depth;
+    private final int[] counters;
+    private long length;
+
+    /**
+     * @param epsilon the error relative to the length of the stream
+     * @param delta   the probability that an estimate exceeds that error
+     */
+    public CountMinSketch(double epsilon, double delta) {
+        this((int) Math.ceil(Math.E / epsilon), (int) Math.ceil(Math.log(1 / delta)));
+    }
+
+    /**
+     * @param width the counters per row, rounded up to a power of two
+     * @param depth the number of rows
+     */
+    public CountMinSketch(int width, int depth) {
+        if (width < 1 || depth < 1) {
+            throw new IllegalArgumentException("width and depth must be positive: " + width + ", " + depth);
+        }
+        this.width = width > 1 ? Integer.highestOneBit(width - 1) << 1 : 1;
+        this.mask = this.width - 1;
+        this.depth = depth;
+        this.counters = new int[this.width * depth];
+    }
+
+    /**
+     * Counts one occurrence of 'key', raising only the counters which are
+     * at its current estimate.
+     *
+     * @param key the key
+     */
+    public void offer(long key) {
+        this.length++;
+        long hash = mix(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < this.depth; row++) {
+            estimate = Math.min(estimate, this.counters[index(row, h1, h2)]);
+        }
+        for (int row = 0; row < this.depth; row++) {
+            int index = index(row, h1, h2);
+            if (this.counters[index] == estimate) {
+                this.counters[index]++;
+            }
+        }
+    }
+
+    /**
+     * @param key a key
+     * @return An upper bound of how often 'key' occurred
+     */
+    public long estimate(long key) {
+        long hash = mix(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < this.depth; row++) {
+            estimate = Math.min(estimate, this.counters[index(row, h1, h2)]);
+        }
+        return estimate;
+    }
+
+    /**
+     * @return The number of keys offered
+     */
+    public long length() {
+        return this.length;
+    }
+
+    /**
+     * @return The most an estimate exceeds the true frequency, with the
+     * probability the sketch was sized for: e / width times the length
+     */
+    public double errorBound() {
+        return Math.E / this.width * this.length;
+    }
+
+    /**
+     * @return The heap this sketch takes
+     */
+    public long bytes() {
+        return 4L * this.counters.length;
+    }
+
+    /**
+     * Adds the counts of 'other', a sketch of the same size, to this.
+     *
+     * @param other a sketch
+     * @return This
+     */
+    public CountMinSketch add(CountMinSketch other) {
+        if (other.width != this.width || other.depth != this.depth) {
+            throw new IllegalArgumentException("Sketches of different sizes");
+        }
+        for (int i = 0; i < this.counters.length; i++) {
+            this.counters[i] += other.counters[i];
+        }
+        this.length += other.length;
+        return this;
+    }
+
+    /**
+     * The counter of 'row' for a key with the hashes h1 and h2, one
+     * independent-enough hash per row (Kirsch and Mitzenmacher).
+     */
+    private int index(int row, int h1, int h2) {
+        return row * this.width + ((h1 + row * h2) & this.mask);
+    }
+
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+}
@@ -0,0 +1,101 @@
+import java.util.Arrays;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Counts of long keys which go up and down as movies come and go, e.g. in
+ * how many movies an actor played, ranked so that the keys with the highest
+ * counts can be listed without looking at every key. Keys counted more than
+ * once are kept in a sorted bucket per count; the keys counted once, usually
+ * the bulk of them, are only in the counter and searched when the buckets
+ * do not fill the top. A key whose count drops to 0 is removed, so the
+ * ranking holds just the keys of the movies which are there.
+ */
+class CountRanking {
+
+    private final LongIntMap counts = new LongIntMap();
+    private final TreeMap<Integer, TreeSet<Long>> buckets = new TreeMap<>();
+    private int size;
+
+    /**
+     * @param key   a key
+     * @param delta the change of its count, which must not drop below 0
+     */
+    void add(long key, int delta) {
+        int before = this.counts.get(key, 0);
+        int after = before + delta;
+        if (after < 0) {
+            throw new IllegalStateException("Count of " + key + " drops below 0");
+        }
+        if (after == 0) {
+            this.counts.remove(key, 0);
+        } else {
+            this.counts.put(key, after);
+        }
+        if (before > 1) {
+            TreeSet<Long> bucket = this.buckets.get(before);
+            bucket.remove(key);
+            if (bucket.isEmpty()) {
+                this.buckets.remove(before);
+            }
+        }
+        if (after > 1) {
+            this.buckets.computeIfAbsent(after, count -> new TreeSet<>()).add(key);
+        }
+        if (before == 0 && after > 0) {
+            this.size++;
+        } else if (before > 0 && after == 0) {
+            this.size--;
+        }
+    }
+
+    /**
+     * @param key a key
+     * @return The count of the key, 0 if it was never counted
+     */
+    int count(long key) {
+        return this.counts.get(key, 0);
+    }
+
+    /**
+     * @return The number of keys with a count above 0
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * @param k the number of keys to return
+     * @return The (at most) 'k' keys with the highest counts, in decreasing
+     * order of count; keys with equal counts in increasing order
+     */
+    long[] top(int k) {
+        long[] top = new long[k];
+        int n = 0;
+        for (TreeSet<Long> bucket : this.buckets.descendingMap().values()) {
+            for (long key : bucket) {
+                if (n == k) {
+                    return top;
+                }
+                top[n++] = key;
+            }
+        }
+        if (n < k) {
+            // The smallest keys counted once
+            int missing = k - n;
+            TreeSet<Long> ones = new TreeSet<>();
+            this.counts.forEach((key, count) -> {
+                if (count == 1 && (ones.size() < missing || key < ones.last())) {
+                    ones.add(key);
+                    if (ones.size() > missing) {
+                        ones.pollLast();
+                    }
+                }
+            });
+            for (long key : ones) {
+                top[n++] = key;
+            }
+        }
+        return Arrays.copyOf(top, n);
+    }
+}
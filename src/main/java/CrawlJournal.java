@@ -0,0 +1,399 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The persistent state of a crawl, so a crawl which died can be resumed:
+ * an append-only log with one line per finished attempt,
+ * <pre>
+ * D  title  url  file                       written
+ * F  title  attempts  time  error           failed
+ * </pre>
+ * which is written through on every line and fsynced in batches of
+ * {@link #BATCH_SIZE} lines. A line which was torn by a crash is ignored.
+ * <p>
+ * The first line is a checkpoint {@code C prefix lastTitle}: all of the
+ * first 'prefix' titles of the crawled list have been written or have
+ * failed. When the log has grown by {@link #COMPACT_AFTER} lines it is
+ * rewritten to the checkpoint plus the lines about failed titles and titles
+ * after the checkpoint, so a restart reads only what is left to do and not
+ * the whole corpus.
+ * <p>
+ * Failed titles are retried with exponential backoff until they failed
+ * {@code maxAttempts} times.
+ */
+public class CrawlJournal implements AutoCloseable {
+
+    static final int BATCH_SIZE = 64;
+    static final int COMPACT_AFTER = 4096;
+
+    private static final Logger LOGGER = Logger.getLogger("IMDBSpider");
+
+    private final File file;
+    private final int maxAttempts;
+    private final long backoffMillis;
+    /**
+     * The latest line per title which is failed or after the checkpoint.
+     */
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private FileOutputStream out;
+    private int unsynced;
+    private int appended;
+
+    private List<String> titles = new ArrayList<>();
+    /**
+     * Index of the titles after the checkpoint.
+     */
+    private Map<String, Integer> positions = new HashMap<>();
+    private int prefix;
+    private String prefixTitle = "";
+    private int done;
+    private int failed;
+
+    private CrawlJournal(File file, int maxAttempts, long backoffMillis) {
+        this.file = file;
+        this.maxAttempts = maxAttempts;
+        this.backoffMillis = backoffMillis;
+    }
+
+    /**
+     * Opens a journal, creating it if it does not exist.
+     *
+     * @param file          the journal, e.g. outputDir/crawl.journal
+     * @param maxAttempts   the number of times a title is tried
+     * @param backoffMillis the delay before the first retry, doubled on every further one
+     * @return The journal
+     * @throws IOException if the journal cannot be read or written
+     */
+    public static CrawlJournal open(File file, int maxAttempts, long backoffMillis) throws IOException {
+        if (maxAttempts < 1 || backoffMillis < 0) {
+            throw new IllegalArgumentException("At least one attempt and a non-negative backoff needed");
+        }
+        CrawlJournal journal = new CrawlJournal(file, maxAttempts, backoffMillis);
+        if (file.exists()) {
+            journal.load();
+        }
+        journal.compact();
+        return journal;
+    }
+
+    private void load() throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                Files.newInputStream(this.file.toPath()), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = split(line);
+                try {
+                    if (fields[0].equals("C") && fields.length == 3) {
+                        this.prefix = Integer.parseInt(fields[1]);
+                        this.prefixTitle = fields[2];
+                    } else if (fields[0].equals("D") && fields.length == 4) {
+                        this.entries.put(fields[1], new Entry(fields[2], fields[3]));
+                    } else if (fields[0].equals("F") && fields.length == 5) {
+                        this.entries.put(fields[1], new Entry(Integer.parseInt(fields[2]),
+                                Long.parseLong(fields[3]), fields[4]));
+                    } else {
+                        LOGGER.log(Level.WARNING, "Skipping broken journal line: " + line);
+                    }
+                } catch (NumberFormatException e) {
+                    LOGGER.log(Level.WARNING, "Skipping broken journal line: " + line);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the titles to crawl now: those which were neither written nor
+     * failed yet and the failed ones whose backoff is over. Titles before the
+     * checkpoint are not looked at.
+     *
+     * @param movieNames the titles of the whole crawl, always in the same order
+     * @param now        the current time in milliseconds
+     * @return The titles to crawl
+     */
+    public synchronized List<String> pending(List<String> movieNames, long now) {
+        if (this.titles != movieNames) {
+            if (this.prefix > movieNames.size()
+                    || (this.prefix > 0 && !movieNames.get(this.prefix - 1).equals(this.prefixTitle))) {
+                LOGGER.log(Level.WARNING, "The titles do not match the checkpoint of " + this.file
+                        + ", crawling them again.");
+                this.prefix = 0;
+                this.prefixTitle = "";
+            }
+            this.titles = movieNames;
+            this.positions = new HashMap<>();
+            for (int i = this.prefix; i < movieNames.size(); i++) {
+                this.positions.put(movieNames.get(i), i);
+            }
+            this.done = this.prefix;
+            this.failed = 0;
+            for (Map.Entry<String, Entry> entry : this.entries.entrySet()) {
+                if (entry.getValue().url == null) {
+                    this.failed++;
+                    if (!this.positions.containsKey(entry.getKey())) this.done--;
+                } else if (this.positions.containsKey(entry.getKey())) {
+                    this.done++;
+                }
+            }
+        }
+        List<String> pending = new ArrayList<>();
+        for (Map.Entry<String, Entry> entry : this.entries.entrySet()) {
+            if (!this.positions.containsKey(entry.getKey()) && isDue(entry.getValue(), now)) {
+                pending.add(entry.getKey());
+            }
+        }
+        for (int i = this.prefix; i < movieNames.size(); i++) {
+            Entry entry = this.entries.get(movieNames.get(i));
+            if (entry == null || isDue(entry, now)) {
+                pending.add(movieNames.get(i));
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * @return The time in milliseconds at which the next failed title may
+     * be retried, or -1 if no title is left to retry
+     */
+    public synchronized long nextRetryTime() {
+        long next = -1;
+        for (Entry entry : this.entries.values()) {
+            if (entry.url == null && entry.attempts < this.maxAttempts) {
+                long time = retryTime(entry);
+                if (next < 0 || time < next) next = time;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Records that a movie has been written.
+     *
+     * @throws IOException if the journal cannot be written
+     */
+    public synchronized void completed(String movieName, String url, File output) throws IOException {
+        Entry previous = this.entries.put(movieName, new Entry(url, output.getPath()));
+        if (previous == null || previous.url == null) {
+            this.done++;
+            if (previous != null) this.failed--;
+        }
+        append("D", movieName, url, output.getPath());
+        advance();
+    }
+
+    /**
+     * Records that a movie could not be read.
+     *
+     * @throws IOException if the journal cannot be written
+     */
+    public synchronized void failed(String movieName, Throwable error) throws IOException {
+        Entry previous = this.entries.get(movieName);
+        int attempts = previous != null && previous.url == null ? previous.attempts + 1 : 1;
+        Entry entry = new Entry(attempts, System.currentTimeMillis(), String.valueOf(error));
+        this.entries.put(movieName, entry);
+        if (previous == null || previous.url != null) {
+            this.failed++;
+            if (previous != null) this.done--;
+        }
+        append("F", movieName, Integer.toString(attempts), Long.toString(entry.time), entry.error);
+        advance();
+    }
+
+    /**
+     * @param movieName a title
+     * @return The number of times the title failed, 0 if it was written or
+     * never tried
+     */
+    public synchronized int getAttempts(String movieName) {
+        Entry entry = this.entries.get(movieName);
+        return entry == null || entry.url != null ? 0 : entry.attempts;
+    }
+
+    /**
+     * @return The number of titles written so far, including earlier runs
+     */
+    public synchronized int getDone() {
+        return this.done;
+    }
+
+    /**
+     * @return The number of titles which failed and have not been written since
+     */
+    public synchronized int getFailed() {
+        return this.failed;
+    }
+
+    /**
+     * @return The number of titles which were neither written nor failed for good
+     */
+    public synchronized int getRemaining() {
+        int remaining = this.titles.size() - this.done;
+        for (Entry entry : this.entries.values()) {
+            if (entry.url == null && entry.attempts >= this.maxAttempts) remaining--;
+        }
+        return remaining;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.out != null) {
+            compact();
+            this.out.close();
+            this.out = null;
+        }
+    }
+
+    private boolean isDue(Entry entry, long now) {
+        return entry.url == null && entry.attempts < this.maxAttempts && retryTime(entry) <= now;
+    }
+
+    private long retryTime(Entry entry) {
+        return entry.time + (this.backoffMillis << Math.min(entry.attempts - 1, 20));
+    }
+
+    /**
+     * Moves the checkpoint over the titles which are finished.
+     */
+    private void advance() throws IOException {
+        while (this.prefix < this.titles.size() && this.entries.containsKey(this.titles.get(this.prefix))) {
+            String title = this.titles.get(this.prefix++);
+            this.positions.remove(title);
+            this.prefixTitle = title;
+        }
+        if (this.appended >= COMPACT_AFTER) {
+            compact();
+        }
+    }
+
+    private void append(String... fields) throws IOException {
+        // Written through at once, so only a crash of the OS can lose the unsynced lines
+        this.out.write(line(fields).getBytes(StandardCharsets.UTF_8));
+        this.appended++;
+        if (++this.unsynced >= BATCH_SIZE) {
+            sync();
+        }
+    }
+
+    private void sync() throws IOException {
+        this.out.getChannel().force(false);
+        this.unsynced = 0;
+    }
+
+    /**
+     * Rewrites the journal to the checkpoint and the lines which are still
+     * needed, then continues appending to the new file.
+     */
+    private void compact() throws IOException {
+        if (this.out != null) {
+            sync();
+            this.out.close();
+        }
+        File tmp = new File(this.file.getPath() + ".tmp");
+        try (FileOutputStream fileOut = new FileOutputStream(tmp);
+             Writer writer = new OutputStreamWriter(new BufferedOutputStream(fileOut), StandardCharsets.UTF_8)) {
+            writer.write(line("C", Integer.toString(this.prefix), this.prefixTitle));
+            for (Iterator<Map.Entry<String, Entry>> it = this.entries.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<String, Entry> mapEntry = it.next();
+                Entry entry = mapEntry.getValue();
+                if (entry.url == null) {
+                    writer.write(line("F", mapEntry.getKey(), Integer.toString(entry.attempts),
+                            Long.toString(entry.time), entry.error));
+                } else if (this.titles.isEmpty() || this.positions.containsKey(mapEntry.getKey())) {
+                    writer.write(line("D", mapEntry.getKey(), entry.url, entry.file));
+                } else {
+                    it.remove();
+                }
+            }
+            writer.flush();
+            fileOut.getChannel().force(false);
+        }
+        Files.move(tmp.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        this.out = new FileOutputStream(this.file, true);
+        this.appended = 0;
+        this.unsynced = 0;
+    }
+
+    private static String line(String... fields) {
+        StringBuilder line = new StringBuilder();
+        for (String field : fields) {
+            if (line.length() > 0) line.append('\t');
+            escape(field, line);
+        }
+        return line.append('\n').toString();
+    }
+
+    private static void escape(String field, StringBuilder out) {
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == '\t') out.append("\\t");
+            else if (c == '\n') out.append("\\n");
+            else if (c == '\r') out.append("\\r");
+            else if (c == '\\') out.append("\\\\");
+            else out.append(c);
+        }
+    }
+
+    private static String[] split(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\t') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\\' && i + 1 < line.length()) {
+                char next = line.charAt(++i);
+                field.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields.toArray(new String[fields.size()]);
+    }
+
+    /**
+     * The outcome of the latest attempt for a title: written if 'url' is set,
+     * failed otherwise.
+     */
+    private static class Entry {
+        final String url;
+        final String file;
+        final int attempts;
+        final long time;
+        final String error;
+
+        Entry(String url, String file) {
+            this.url = url;
+            this.file = file;
+            this.attempts = 0;
+            this.time = 0;
+            this.error = null;
+        }
+
+        Entry(int attempts, long time, String error) {
+            this.url = null;
+            this.file = null;
+            this.attempts = attempts;
+            this.time = time;
+            this.error = error;
+        }
+    }
+}
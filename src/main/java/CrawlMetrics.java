@@ -0,0 +1,412 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+/**
+ * What a crawl of the {@link IMDBSpider} is doing, while it runs:
+ * <ul>
+ * <li>a {@link LatencyHistogram} per {@link Stage} of the
+ * {@link CrawlPipeline},</li>
+ * <li>counters of movies written and failed, of retried movies, of HTTP
+ * responses by status class and of requests without a response, and</li>
+ * <li>gauges of the requests in flight and of the movies waiting in each
+ * queue between the stages.</li>
+ * </ul>
+ * {@link #export(int)} makes them visible over JMX, as
+ * {@value #OBJECT_NAME}, and in the Prometheus text format at
+ * http://localhost:port/metrics. All methods may be called from any thread.
+ */
+public class CrawlMetrics implements DynamicMBean {
+
+    static final String OBJECT_NAME = "IMDBSpider:type=CrawlMetrics";
+
+    /**
+     * The stages of a crawl which are timed.
+     */
+    public enum Stage {
+        SEARCH_FETCH("search_fetch", "SearchFetch"),
+        DETAIL_FETCH("detail_fetch", "DetailFetch"),
+        PARSE("parse", "Parse"),
+        WRITE("write", "Write");
+
+        final String label;
+        final String attribute;
+
+        Stage(String label, String attribute) {
+            this.label = label;
+            this.attribute = attribute;
+        }
+    }
+
+    private static final String[] STATUS_CLASSES = {"1xx", "2xx", "3xx", "4xx", "5xx"};
+
+    private final Map<Stage, LatencyHistogram> stages = new EnumMap<>(Stage.class);
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder[] statuses = new LongAdder[STATUS_CLASSES.length];
+    private final LongAdder requestErrors = new LongAdder();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    /**
+     * The depth of each queue by its name, in the order of the stages.
+     */
+    private final Map<String, IntSupplier> queues = new ConcurrentHashMap<>();
+    private final List<String> queueOrder = new ArrayList<>();
+
+    public CrawlMetrics() {
+        for (Stage stage : Stage.values()) {
+            this.stages.put(stage, new LatencyHistogram());
+        }
+        for (int i = 0; i < this.statuses.length; i++) {
+            this.statuses[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @param stage a stage
+     * @param nanos the time a movie spent in it
+     */
+    public void record(Stage stage, long nanos) {
+        this.stages.get(stage).record(nanos);
+    }
+
+    /**
+     * @param stage a stage
+     * @return The times of the movies in the stage
+     */
+    public LatencyHistogram get(Stage stage) {
+        return this.stages.get(stage);
+    }
+
+    public void succeeded() {
+        this.succeeded.increment();
+    }
+
+    public void failed() {
+        this.failed.increment();
+    }
+
+    /**
+     * Counts a movie which is crawled again after it failed.
+     */
+    public void retried() {
+        this.retries.increment();
+    }
+
+    /**
+     * Counts a request which is sent; call {@link #requestFinished} after.
+     */
+    public void requestStarted() {
+        this.inFlight.incrementAndGet();
+    }
+
+    /**
+     * @param status the HTTP status of the response, or -1 if there was none
+     */
+    public void requestFinished(int status) {
+        this.inFlight.decrementAndGet();
+        if (status >= 100 && status < 600) {
+            this.statuses[status / 100 - 1].increment();
+        } else {
+            this.requestErrors.increment();
+        }
+    }
+
+    /**
+     * @param name  the name of a queue between two stages
+     * @param depth tells how many movies wait in it, or null to remove the
+     *              queue once its crawl is over
+     */
+    public void queue(String name, IntSupplier depth) {
+        synchronized (this.queueOrder) {
+            if (depth == null) {
+                this.queues.remove(name);
+                this.queueOrder.remove(name);
+            } else {
+                if (this.queues.put(name, depth) == null) {
+                    this.queueOrder.add(name);
+                }
+            }
+        }
+    }
+
+    public long getSucceeded() {
+        return this.succeeded.sum();
+    }
+
+    public long getFailed() {
+        return this.failed.sum();
+    }
+
+    public long getRetries() {
+        return this.retries.sum();
+    }
+
+    /**
+     * @param statusClass 1 for 1xx up to 5 for 5xx
+     * @return The number of responses of the class
+     */
+    public long getResponses(int statusClass) {
+        return this.statuses[statusClass - 1].sum();
+    }
+
+    /**
+     * @return The number of requests which got no response
+     */
+    public long getRequestErrors() {
+        return this.requestErrors.sum();
+    }
+
+    public int getInFlight() {
+        return this.inFlight.get();
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server and, if 'port' is
+     * not negative, serves them in the Prometheus text format at /metrics on
+     * that port of localhost.
+     *
+     * @param port the port, 0 for a free one, or -1 for JMX only
+     * @return Undoes both when closed
+     * @throws IOException if the metrics cannot be registered or served
+     */
+    public Closeable export(int port) throws IOException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name;
+        try {
+            name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (JMException e) {
+            throw new IOException("Could not register " + OBJECT_NAME, e);
+        }
+        HttpServer http = null;
+        ExecutorService executor = null;
+        if (port >= 0) {
+            http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+            http.createContext("/metrics", this::respond);
+            executor = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "crawl-metrics");
+                thread.setDaemon(true);
+                return thread;
+            });
+            http.setExecutor(executor);
+            http.start();
+        }
+        HttpServer started = http;
+        ExecutorService serving = executor;
+        return () -> {
+            if (started != null) {
+                started.stop(0);
+                serving.shutdownNow();
+            }
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException e) {
+                throw new IOException("Could not unregister " + OBJECT_NAME, e);
+            }
+        };
+    }
+
+    /**
+     * @return The metrics in the Prometheus text format, version 0.0.4
+     */
+    public String toPrometheus() {
+        StringBuilder text = new StringBuilder();
+        text.append("# HELP imdb_crawl_stage_duration_seconds Time a movie spent in a stage of the crawl.\n");
+        text.append("# TYPE imdb_crawl_stage_duration_seconds histogram\n");
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram histogram = this.stages.get(stage);
+            long[] buckets = histogram.getBuckets();
+            long cumulative = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                cumulative += buckets[i];
+                String le = i < LatencyHistogram.BOUNDS.length ? number(LatencyHistogram.BOUNDS[i]) : "+Inf";
+                text.append("imdb_crawl_stage_duration_seconds_bucket{stage=\"").append(stage.label)
+                        .append("\",le=\"").append(le).append("\"} ").append(cumulative).append('\n');
+            }
+            text.append("imdb_crawl_stage_duration_seconds_sum{stage=\"").append(stage.label).append("\"} ")
+                    .append(number(histogram.getSumNanos() / 1e9)).append('\n');
+            text.append("imdb_crawl_stage_duration_seconds_count{stage=\"").append(stage.label).append("\"} ")
+                    .append(cumulative).append('\n');
+        }
+        text.append("# HELP imdb_crawl_movies_total Movies written or failed.\n");
+        text.append("# TYPE imdb_crawl_movies_total counter\n");
+        text.append("imdb_crawl_movies_total{outcome=\"succeeded\"} ").append(getSucceeded()).append('\n');
+        text.append("imdb_crawl_movies_total{outcome=\"failed\"} ").append(getFailed()).append('\n');
+        text.append("# HELP imdb_crawl_retries_total Movies crawled again after they failed.\n");
+        text.append("# TYPE imdb_crawl_retries_total counter\n");
+        text.append("imdb_crawl_retries_total ").append(getRetries()).append('\n');
+        text.append("# HELP imdb_crawl_http_responses_total HTTP responses by status class.\n");
+        text.append("# TYPE imdb_crawl_http_responses_total counter\n");
+        for (int i = 0; i < STATUS_CLASSES.length; i++) {
+            text.append("imdb_crawl_http_responses_total{class=\"").append(STATUS_CLASSES[i]).append("\"} ")
+                    .append(getResponses(i + 1)).append('\n');
+        }
+        text.append("# HELP imdb_crawl_http_errors_total Requests which got no response.\n");
+        text.append("# TYPE imdb_crawl_http_errors_total counter\n");
+        text.append("imdb_crawl_http_errors_total ").append(getRequestErrors()).append('\n');
+        text.append("# HELP imdb_crawl_in_flight_requests Requests sent and not answered yet.\n");
+        text.append("# TYPE imdb_crawl_in_flight_requests gauge\n");
+        text.append("imdb_crawl_in_flight_requests ").append(getInFlight()).append('\n');
+        text.append("# HELP imdb_crawl_queue_depth Movies waiting for the next stage.\n");
+        text.append("# TYPE imdb_crawl_queue_depth gauge\n");
+        for (Map.Entry<String, IntSupplier> queue : queues().entrySet()) {
+            text.append("imdb_crawl_queue_depth{queue=\"").append(queue.getKey()).append("\"} ")
+                    .append(queue.getValue().getAsInt()).append('\n');
+        }
+        return text.toString();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        text.append(getSucceeded()).append(" written, ").append(getFailed()).append(" failed, ")
+                .append(getRetries()).append(" retried; responses");
+        for (int i = 0; i < STATUS_CLASSES.length; i++) {
+            text.append(' ').append(STATUS_CLASSES[i]).append(' ').append(getResponses(i + 1));
+        }
+        text.append(", ").append(getRequestErrors()).append(" without response");
+        for (Stage stage : Stage.values()) {
+            text.append("; ").append(stage.label).append(' ').append(this.stages.get(stage));
+        }
+        return text.toString();
+    }
+
+    /**
+     * @return The values of the JMX attributes by their names
+     */
+    private Map<String, Supplier<Object>> attributes() {
+        Map<String, Supplier<Object>> attributes = new LinkedHashMap<>();
+        attributes.put("Succeeded", this::getSucceeded);
+        attributes.put("Failed", this::getFailed);
+        attributes.put("Retries", this::getRetries);
+        for (int i = 0; i < STATUS_CLASSES.length; i++) {
+            int statusClass = i + 1;
+            attributes.put("Responses" + STATUS_CLASSES[i], () -> getResponses(statusClass));
+        }
+        attributes.put("RequestErrors", this::getRequestErrors);
+        attributes.put("InFlight", () -> (long) getInFlight());
+        for (Map.Entry<String, IntSupplier> queue : queues().entrySet()) {
+            IntSupplier depth = queue.getValue();
+            attributes.put("QueueDepth_" + queue.getKey(), () -> (long) depth.getAsInt());
+        }
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram histogram = this.stages.get(stage);
+            attributes.put(stage.attribute + "Count", histogram::getCount);
+            attributes.put(stage.attribute + "MeanMillis", histogram::getMeanMillis);
+            attributes.put(stage.attribute + "P50Millis", () -> histogram.getPercentileMillis(0.5));
+            attributes.put(stage.attribute + "P99Millis", () -> histogram.getPercentileMillis(0.99));
+            attributes.put(stage.attribute + "MaxMillis", () -> histogram.getMaxNanos() / 1e6);
+        }
+        return attributes;
+    }
+
+    private Map<String, IntSupplier> queues() {
+        Map<String, IntSupplier> queues = new LinkedHashMap<>();
+        synchronized (this.queueOrder) {
+            for (String name : this.queueOrder) {
+                queues.put(name, this.queues.get(name));
+            }
+        }
+        return queues;
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Supplier<Object> value = attributes().get(attribute);
+        if (value == null) {
+            throw new AttributeNotFoundException(attribute);
+        }
+        return value.get();
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] names) {
+        Map<String, Supplier<Object>> attributes = attributes();
+        AttributeList list = new AttributeList();
+        for (String name : names) {
+            Supplier<Object> value = attributes.get(name);
+            if (value != null) {
+                list.add(new Attribute(name, value.get()));
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("The metrics are read-only: " + attribute.getName());
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName), "The metrics have no operations");
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> infos = new ArrayList<>();
+        for (Map.Entry<String, Supplier<Object>> attribute : attributes().entrySet()) {
+            String type = attribute.getKey().endsWith("Millis") ? Double.class.getName() : Long.class.getName();
+            infos.add(new MBeanAttributeInfo(attribute.getKey(), type, attribute.getKey(), true, false, false));
+        }
+        return new MBeanInfo(getClass().getName(), "Metrics of a running crawl",
+                infos.toArray(new MBeanAttributeInfo[0]), null, null, null);
+    }
+
+    private void respond(HttpExchange exchange) throws IOException {
+        try {
+            byte[] body = toPrometheus().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static String number(double value) {
+        return value == Math.rint(value) && Math.abs(value) < 1e15 ? Long.toString((long) value)
+                : BigDecimal.valueOf(value).stripTrailingZeros().toPlainString();
+    }
+}
@@ -0,0 +1,303 @@
+import org.jsoup.nodes.Document;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Crawls movies in four stages: search fetch -> detail fetch -> parse ->
+ * write. The stages are connected by bounded queues, so a slow stage holds the
+ * ones before it back instead of piling up pages in memory. Each stage has its
+ * own pool: the two network stages get 'fetchThreads' threads each, parsing
+ * gets 'parseThreads' threads and a single thread writes the files.
+ * <p>
+ * When the last worker of a stage is done it puts one {@link #END} per worker
+ * of the next stage into the queue, so the pipeline drains in order and
+ * {@link #run(List)} returns once every movie has been written or has failed.
+ */
+public class CrawlPipeline {
+
+    private static final Logger LOGGER = Logger.getLogger("IMDBSpider");
+    private static final int PROGRESS_SECONDS = 10;
+
+    /**
+     * Marks the end of a queue, one per consuming worker.
+     */
+    private static final Item END = new Item(null);
+
+    private final IMDBSpider spider;
+    private final MovieSink sink;
+    private final int fetchThreads;
+    private final int parseThreads;
+    private final int queueCapacity;
+    private final CrawlJournal journal;
+    private final CrawlMetrics metrics;
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    /**
+     * @param spider        the spider doing the fetching, parsing and writing
+     * @param sink          where to store the movies
+     * @param fetchThreads  the number of threads of each network stage
+     * @param parseThreads  the number of threads parsing title pages
+     * @param queueCapacity the number of movies which may wait between two stages
+     * @param journal       the journal to record every movie in, or null
+     */
+    public CrawlPipeline(IMDBSpider spider, MovieSink sink, int fetchThreads, int parseThreads,
+                         int queueCapacity, CrawlJournal journal) {
+        if (fetchThreads < 1 || parseThreads < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Thread counts and queue capacity must be positive");
+        }
+        this.spider = spider;
+        this.sink = sink;
+        this.fetchThreads = fetchThreads;
+        this.parseThreads = parseThreads;
+        this.queueCapacity = queueCapacity;
+        this.journal = journal;
+        this.metrics = spider.getMetrics();
+    }
+
+    /**
+     * Crawls the movies and waits until all of them are done.
+     *
+     * @param movieNames the titles to search for
+     * @throws InterruptedException if interrupted while waiting, the workers
+     *                              are interrupted too
+     */
+    public void run(List<String> movieNames) throws InterruptedException {
+        BlockingQueue<Item> names = new ArrayBlockingQueue<>(this.queueCapacity);
+        BlockingQueue<Item> found = new ArrayBlockingQueue<>(this.queueCapacity);
+        BlockingQueue<Item> fetched = new ArrayBlockingQueue<>(this.queueCapacity);
+        BlockingQueue<Item> parsed = new ArrayBlockingQueue<>(this.queueCapacity);
+
+        this.metrics.queue("names", names::size);
+        this.metrics.queue("found", found::size);
+        this.metrics.queue("fetched", fetched::size);
+        this.metrics.queue("parsed", parsed::size);
+
+        List<ExecutorService> pools = new ArrayList<>();
+        pools.add(start("search", CrawlMetrics.Stage.SEARCH_FETCH, this.fetchThreads, names, found,
+                this.fetchThreads, item -> {
+                    item.movie = this.spider.parseSearchPage(this.spider.fetchSearchPage(item.movieName));
+                }));
+        pools.add(start("detail", CrawlMetrics.Stage.DETAIL_FETCH, this.fetchThreads, found, fetched,
+                this.parseThreads, item -> {
+                    item.page = this.spider.fetchMoviePage(item.movie);
+                }));
+        pools.add(start("parse", CrawlMetrics.Stage.PARSE, this.parseThreads, fetched, parsed, 1, item -> {
+            this.spider.parseMoviePage(item.page, item.movie);
+            item.page = null;
+        }));
+        pools.add(start("write", CrawlMetrics.Stage.WRITE, 1, parsed, null, 0, new WriteStage(parsed)));
+
+        try {
+            for (String movieName : movieNames) {
+                names.put(new Item(movieName));
+            }
+            for (int i = 0; i < this.fetchThreads; i++) {
+                names.put(END);
+            }
+            for (ExecutorService pool : pools) {
+                pool.shutdown();
+            }
+            for (ExecutorService pool : pools) {
+                while (!pool.awaitTermination(PROGRESS_SECONDS, TimeUnit.SECONDS)) {
+                    LOGGER.log(Level.INFO, "Crawled " + this.succeeded.sum() + " of " + movieNames.size()
+                            + " movies, " + this.failed.sum() + " failed.");
+                }
+            }
+        } finally {
+            for (ExecutorService pool : pools) {
+                pool.shutdownNow();
+            }
+            this.metrics.queue("names", null);
+            this.metrics.queue("found", null);
+            this.metrics.queue("fetched", null);
+            this.metrics.queue("parsed", null);
+        }
+    }
+
+    /**
+     * @return The number of movies written
+     */
+    public long getSucceeded() {
+        return this.succeeded.sum();
+    }
+
+    /**
+     * @return The number of movies which could not be read
+     */
+    public long getFailed() {
+        return this.failed.sum();
+    }
+
+    /**
+     * Starts the workers of a stage, each taking items from 'in', running
+     * 'stage' on them and passing them on to 'out'. An item for which 'stage'
+     * fails, even with an Error, is logged and dropped. The time of every
+     * item is recorded as 'timed'. However a worker ends, the last one to
+     * end passes END on to the next stage.
+     */
+    private ExecutorService start(String name, CrawlMetrics.Stage timed, int threads, BlockingQueue<Item> in,
+                                  BlockingQueue<Item> out, int consumers, Stage stage) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "crawl-" + name + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger running = new AtomicInteger(threads);
+        for (int i = 0; i < threads; i++) {
+            pool.execute(() -> {
+                try {
+                    for (Item item = in.take(); item != END; item = in.take()) {
+                        long start = System.nanoTime();
+                        try {
+                            stage.run(item);
+                        } catch (InterruptedException e) {
+                            throw e;
+                        } catch (Throwable e) {
+                            fail(item, e);
+                            continue;
+                        } finally {
+                            this.metrics.record(timed, System.nanoTime() - start);
+                        }
+                        if (out != null) {
+                            out.put(item);
+                        }
+                    }
+                    try {
+                        stage.finish();
+                    } catch (Exception e) {
+                        LOGGER.log(Level.WARNING, "Could not finish the " + name + " stage", e);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    if (running.decrementAndGet() == 0 && out != null) {
+                        end(out, consumers);
+                    }
+                }
+            });
+        }
+        return pool;
+    }
+
+    /**
+     * Passes END on to every consumer of 'out'. If the pipeline is shut down
+     * meanwhile the consumers are interrupted as well and need none.
+     */
+    private static void end(BlockingQueue<Item> out, int consumers) {
+        try {
+            for (int j = 0; j < consumers; j++) {
+                out.put(END);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void fail(Item item, Throwable e) {
+        this.failed.increment();
+        this.metrics.failed();
+        LOGGER.log(Level.WARNING, "Could not read information for movie: " + item.movieName, e);
+        if (this.journal != null) {
+            try {
+                this.journal.failed(item.movieName, e);
+            } catch (IOException journalError) {
+                LOGGER.log(Level.WARNING, "Could not record failure of movie: " + item.movieName, journalError);
+            }
+        }
+    }
+
+    /**
+     * The work of one stage on one movie.
+     */
+    private interface Stage {
+        void run(Item item) throws Exception;
+
+        /**
+         * Called by each worker after the last item.
+         */
+        default void finish() throws Exception {
+        }
+    }
+
+    /**
+     * Writes the movies to the sink. They are only recorded in the journal
+     * once the sink has been flushed, so the journal never claims a movie
+     * which a crash could still lose. The sink is flushed every
+     * {@link CrawlJournal#BATCH_SIZE} movies and whenever the writer would
+     * wait for the next one.
+     */
+    private class WriteStage implements Stage {
+        private final BlockingQueue<Item> in;
+        private final List<Item> unflushed = new ArrayList<>();
+        private final List<File> files = new ArrayList<>();
+
+        WriteStage(BlockingQueue<Item> in) {
+            this.in = in;
+        }
+
+        @Override
+        public void run(Item item) throws Exception {
+            this.files.add(spider.writeMovieJson(item.movie, item.movieName, sink));
+            this.unflushed.add(item);
+            if (this.unflushed.size() >= CrawlJournal.BATCH_SIZE || this.in.isEmpty()) {
+                finish();
+            }
+        }
+
+        @Override
+        public void finish() {
+            try {
+                sink.flush();
+            } catch (IOException e) {
+                for (Item item : this.unflushed) {
+                    fail(item, e);
+                }
+                this.unflushed.clear();
+                this.files.clear();
+                return;
+            }
+            for (int i = 0; i < this.unflushed.size(); i++) {
+                Item item = this.unflushed.get(i);
+                succeeded.increment();
+                metrics.succeeded();
+                if (journal != null) {
+                    try {
+                        journal.completed(item.movieName, item.movie.getUrl(), this.files.get(i));
+                    } catch (IOException e) {
+                        // The movie is written, a resumed crawl would just fetch it again
+                        LOGGER.log(Level.WARNING, "Could not record movie: " + item.movieName, e);
+                    }
+                }
+            }
+            this.unflushed.clear();
+            this.files.clear();
+        }
+    }
+
+    /**
+     * A movie on its way through the stages.
+     */
+    private static class Item {
+        final String movieName;
+        Movie movie;
+        Document page;
+
+        Item(String movieName) {
+            this.movieName = movieName;
+        }
+    }
+}
@@ -0,0 +1,460 @@
+import java.util.function.IntConsumer;
+
+/**
+ * A condition on the movies of a {@link MovieTable}, which a
+ * {@link MovieQuery} combines with AND. Some filters can look up their
+ * movies in an index of the table (the genre, country or year index, or the
+ * description index), which lets the planner visit only those instead of
+ * scanning all movies.
+ */
+public abstract class Filter {
+
+    /**
+     * A comparison of a {@link Column} with a constant.
+     */
+    public enum Op {
+        LT("<"), LE("<="), EQ("="), GE(">="), GT(">");
+
+        private final String symbol;
+
+        Op(String symbol) {
+            this.symbol = symbol;
+        }
+
+        boolean test(double value, double constant) {
+            switch (this) {
+                case LT:
+                    return value < constant;
+                case LE:
+                    return value <= constant;
+                case EQ:
+                    return value == constant;
+                case GE:
+                    return value >= constant;
+                default:
+                    return value > constant;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return this.symbol;
+        }
+    }
+
+    /**
+     * A condition which no index can answer.
+     */
+    public interface Test {
+        /**
+         * @param table the table
+         * @param id    the id of a movie
+         * @return Whether the movie matches
+         */
+        boolean test(MovieTable table, int id);
+    }
+
+    /**
+     * The cost of testing a movie against a column, the unit of all costs.
+     */
+    static final int COLUMN_COST = 1;
+    static final int BITMAP_COST = 4;
+    static final int POSTINGS_COST = 6;
+    static final int DEFAULT_TEST_COST = 25;
+
+    private final String description;
+
+    private Filter(String description) {
+        this.description = description;
+    }
+
+    /**
+     * @param column   a column
+     * @param op       the comparison
+     * @param constant the value to compare with
+     * @return The filter 'column op constant'. A comparison of
+     * {@link Column#YEAR} which excludes 0, i.e. the movies without a year,
+     * can use the year index.
+     */
+    public static Filter compare(Column column, Op op, double constant) {
+        String description = column + " " + op + " " + format(constant);
+        return new Filter(description) {
+            @Override
+            Bound bind(MovieTable table) {
+                Candidates years = column == Column.YEAR ? yearCandidates(table, from(op, constant), to(op, constant)) : null;
+                double selectivity = years != null ? (double) years.size() / Math.max(1, table.size())
+                        : op == Op.EQ ? 0.1 : 0.33;
+                return new Bound(description, COLUMN_COST, selectivity, years) {
+                    @Override
+                    boolean test(int id) {
+                        return op.test(column.get(table, id), constant);
+                    }
+
+                    @Override
+                    int retain(int[] ids, int n, double[] values) {
+                        column.get(table, ids, n, values);
+                        return Filter.retain(op, constant, ids, n, values);
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * @param column a column
+     * @param from   the smallest value (inclusive)
+     * @param to     the largest value (inclusive)
+     * @return The filter 'from <= column <= to'. A range of {@link Column#YEAR}
+     * which excludes 0 can use the year index.
+     */
+    public static Filter between(Column column, double from, double to) {
+        String description = format(from) + " <= " + column + " <= " + format(to);
+        return new Filter(description) {
+            @Override
+            Bound bind(MovieTable table) {
+                Candidates years = column == Column.YEAR ? yearCandidates(table, Math.ceil(from), Math.floor(to)) : null;
+                double selectivity = years != null ? (double) years.size() / Math.max(1, table.size()) : 0.25;
+                return new Bound(description, COLUMN_COST, selectivity, years) {
+                    @Override
+                    boolean test(int id) {
+                        double value = column.get(table, id);
+                        return value >= from && value <= to;
+                    }
+
+                    @Override
+                    int retain(int[] ids, int n, double[] values) {
+                        column.get(table, ids, n, values);
+                        int kept = 0;
+                        for (int i = 0; i < n; i++) {
+                            if (values[i] >= from && values[i] <= to) ids[kept++] = ids[i];
+                        }
+                        return kept;
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * @param genre a genre, e.g. "Sci-Fi"
+     * @return The filter of the movies which list 'genre', from the genre index
+     */
+    public static Filter genre(String genre) {
+        return new Filter("genre = " + genre) {
+            @Override
+            Bound bind(MovieTable table) {
+                return bitmap(this, table, table.genres().get(genre));
+            }
+        };
+    }
+
+    /**
+     * @param country a country, e.g. "USA"
+     * @return The filter of the movies which list 'country', from the country index
+     */
+    public static Filter country(String country) {
+        return new Filter("country = " + country) {
+            @Override
+            Bound bind(MovieTable table) {
+                return bitmap(this, table, table.countries().get(country));
+            }
+        };
+    }
+
+    /**
+     * @param text       the text to search for, also inside words
+     * @param ignoreCase whether to match regardless of case
+     * @return The filter of the movies whose description contains 'text',
+     * from {@link MovieTable#descriptionIndex()}
+     */
+    public static Filter descriptionContains(String text, boolean ignoreCase) {
+        String description = "description contains \"" + text + "\"" + (ignoreCase ? " ignoring case" : "");
+        return new Filter(description) {
+            @Override
+            Bound bind(MovieTable table) {
+                Postings postings = table.descriptionIndex().findSubstring(text, ignoreCase);
+                Candidates candidates = new Candidates() {
+                    @Override
+                    int size() {
+                        return postings.size();
+                    }
+
+                    @Override
+                    void forEach(int from, int to, IntConsumer consumer) {
+                        for (int i = postings.lowerBound(from); i < postings.size() && postings.doc(i) < to; i++) {
+                            consumer.accept(postings.doc(i));
+                        }
+                    }
+                };
+                return new Bound(description, POSTINGS_COST, (double) postings.size() / Math.max(1, table.size()),
+                        candidates) {
+                    @Override
+                    boolean test(int id) {
+                        int i = postings.lowerBound(id);
+                        return i < postings.size() && postings.doc(i) == id;
+                    }
+
+                    @Override
+                    int retain(int[] ids, int n, double[] values) {
+                        int kept = 0;
+                        for (int i = 0; i < n; i++) {
+                            int pos = postings.lowerBound(ids[i]);
+                            if (pos < postings.size() && postings.doc(pos) == ids[i]) ids[kept++] = ids[i];
+                        }
+                        return kept;
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * @param description what the test checks, for plans
+     * @param cost        the cost of the test relative to reading a column,
+     *                    see {@link #compare}
+     * @param test        the test
+     * @return A filter which runs 'test' on the movies
+     */
+    public static Filter of(String description, int cost, Test test) {
+        return new Filter(description) {
+            @Override
+            Bound bind(MovieTable table) {
+                return new Bound(description, cost, 0.5, null) {
+                    @Override
+                    boolean test(int id) {
+                        return test.test(table, id);
+                    }
+
+                    @Override
+                    int retain(int[] ids, int n, double[] values) {
+                        int kept = 0;
+                        for (int i = 0; i < n; i++) {
+                            if (test.test(table, ids[i])) ids[kept++] = ids[i];
+                        }
+                        return kept;
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * @param description what the test checks, for plans
+     * @param test        the test
+     * @return A filter which runs 'test' on the movies, of a default cost
+     */
+    public static Filter of(String description, Test test) {
+        return of(description, DEFAULT_TEST_COST, test);
+    }
+
+    /**
+     * @param table the table to filter
+     * @return The filter for 'table', with its cost and estimated selectivity
+     */
+    abstract Bound bind(MovieTable table);
+
+    @Override
+    public String toString() {
+        return this.description;
+    }
+
+    /**
+     * A filter bound to a table.
+     */
+    abstract static class Bound {
+        final String description;
+        /**
+         * The cost of {@link #test(int)}, see {@link #COLUMN_COST}.
+         */
+        final int cost;
+        /**
+         * The estimated fraction of the movies which match.
+         */
+        final double selectivity;
+        /**
+         * The matching movies from an index, or null.
+         */
+        final Candidates candidates;
+
+        Bound(String description, int cost, double selectivity, Candidates candidates) {
+            this.description = description;
+            this.cost = cost;
+            this.selectivity = selectivity;
+            this.candidates = candidates;
+        }
+
+        /**
+         * @param id the id of a movie
+         * @return Whether the movie matches
+         */
+        abstract boolean test(int id);
+
+        /**
+         * Removes the movies which do not match from a batch, keeping the
+         * order of the others.
+         *
+         * @param ids    the ids of the movies
+         * @param n      the number of ids
+         * @param values room for a value per id, for the filter to use
+         * @return The number of ids kept at the start of 'ids'
+         */
+        int retain(int[] ids, int n, double[] values) {
+            int kept = 0;
+            for (int i = 0; i < n; i++) {
+                if (test(ids[i])) ids[kept++] = ids[i];
+            }
+            return kept;
+        }
+    }
+
+    /**
+     * The movies which match a filter, from an index.
+     */
+    abstract static class Candidates {
+        /**
+         * @return The number of movies
+         */
+        abstract int size();
+
+        /**
+         * Passes the movies with ids in [from, to) to 'consumer'.
+         *
+         * @param from     the first id (inclusive)
+         * @param to       the last id (exclusive)
+         * @param consumer receives the ids
+         */
+        abstract void forEach(int from, int to, IntConsumer consumer);
+    }
+
+    /**
+     * @return The number of ids kept, those whose values compare to
+     * 'constant' as 'op' says; one loop per comparison
+     */
+    private static int retain(Op op, double constant, int[] ids, int n, double[] values) {
+        int kept = 0;
+        switch (op) {
+            case LT:
+                for (int i = 0; i < n; i++) {
+                    if (values[i] < constant) ids[kept++] = ids[i];
+                }
+                break;
+            case LE:
+                for (int i = 0; i < n; i++) {
+                    if (values[i] <= constant) ids[kept++] = ids[i];
+                }
+                break;
+            case EQ:
+                for (int i = 0; i < n; i++) {
+                    if (values[i] == constant) ids[kept++] = ids[i];
+                }
+                break;
+            case GE:
+                for (int i = 0; i < n; i++) {
+                    if (values[i] >= constant) ids[kept++] = ids[i];
+                }
+                break;
+            default:
+                for (int i = 0; i < n; i++) {
+                    if (values[i] > constant) ids[kept++] = ids[i];
+                }
+        }
+        return kept;
+    }
+
+    private static Bound bitmap(Filter filter, MovieTable table, IdBitmap ids) {
+        Candidates candidates = new Candidates() {
+            @Override
+            int size() {
+                return ids.cardinality();
+            }
+
+            @Override
+            void forEach(int from, int to, IntConsumer consumer) {
+                ids.forEach(from, to, consumer);
+            }
+        };
+        return new Bound(filter.description, BITMAP_COST, (double) ids.cardinality() / Math.max(1, table.size()),
+                candidates) {
+            @Override
+            boolean test(int id) {
+                return ids.contains(id);
+            }
+
+            @Override
+            int retain(int[] batch, int n, double[] values) {
+                int kept = 0;
+                for (int i = 0; i < n; i++) {
+                    if (ids.contains(batch[i])) batch[kept++] = batch[i];
+                }
+                return kept;
+            }
+        };
+    }
+
+    /**
+     * @return The smallest integer which compares to 'constant' as 'op' says
+     */
+    private static double from(Op op, double constant) {
+        switch (op) {
+            case EQ:
+            case GE:
+                return Math.ceil(constant);
+            case GT:
+                return Math.floor(constant) + 1;
+            default:
+                return Double.NEGATIVE_INFINITY;
+        }
+    }
+
+    /**
+     * @return The largest integer which compares to 'constant' as 'op' says
+     */
+    private static double to(Op op, double constant) {
+        switch (op) {
+            case LT:
+                return Math.ceil(constant) - 1;
+            case LE:
+            case EQ:
+                return Math.floor(constant);
+            default:
+                return Double.POSITIVE_INFINITY;
+        }
+    }
+
+    /**
+     * @param from the first year (inclusive)
+     * @param to   the last year (inclusive)
+     * @return The movies of the years in [from, to] from the year index, or
+     * null if these include year 0, which stands for the movies without a
+     * year that the index leaves out
+     */
+    private static Candidates yearCandidates(MovieTable table, double from, double to) {
+        YearIndex years = table.years();
+        if (from <= 0 && to >= 0) {
+            return null;
+        }
+        // Years below 0 and beyond the index are empty
+        int fromYear = (int) Math.max(from, years.minYear());
+        int toYear = (int) Math.min(to, years.maxYear());
+        return new Candidates() {
+            @Override
+            int size() {
+                return fromYear > toYear ? 0 : years.end(toYear) - years.start(fromYear);
+            }
+
+            @Override
+            void forEach(int from, int to, IntConsumer consumer) {
+                for (int year = fromYear; year <= toYear; year++) {
+                    int end = years.lowerBound(year, to);
+                    for (int pos = years.lowerBound(year, from); pos < end; pos++) {
+                        consumer.accept(years.get(pos));
+                    }
+                }
+            }
+        };
+    }
+
+    private static String format(double value) {
+        return value == Math.rint(value) && Math.abs(value) < 1e15 ? Long.toString((long) value) : Double.toString(value);
+    }
+}
@@ -0,0 +1,195 @@
+import java.util.function.Function;
+
+/**
+ * What a {@link MovieQuery} groups the movies by. Every movie belongs to
+ * zero or more groups, each identified by a long key, e.g. the year or the
+ * id in {@link MovieTable#names()} of each of its actors.
+ */
+public abstract class Group {
+
+    /**
+     * Receives the groups of a movie.
+     */
+    interface KeySink {
+        /**
+         * @param key the key of a group of the movie
+         * @param id  the id of the movie
+         */
+        void add(long key, int id);
+
+        /**
+         * Adds every name of the movies [from, to) of 'names' as a key, the
+         * same as calling {@link #add} for each.
+         *
+         * @param names a name column
+         * @param from  the first id (inclusive)
+         * @param to    the last id (exclusive)
+         */
+        default void addNames(NameColumn names, int from, int to) {
+            for (int id = from; id < to; id++) {
+                int end = names.end(id);
+                for (int pos = names.start(id); pos < end; pos++) {
+                    add(names.get(pos), id);
+                }
+            }
+        }
+    }
+
+    /**
+     * The year of publication, 0 for the movies without one.
+     */
+    public static final Group YEAR = new Group("year") {
+        @Override
+        void keys(MovieTable table, int id, KeySink sink) {
+            sink.add(table.yearOrZero(id), id);
+        }
+
+        @Override
+        int denseSize(MovieTable table) {
+            return Math.max(0, table.years().maxYear()) + 1;
+        }
+
+        @Override
+        String describe(MovieTable table, long key) {
+            return Long.toString(key);
+        }
+    };
+
+    /**
+     * Every actor of {@link Movie#getCastList()}.
+     */
+    public static final Group CAST = new NameGroup("cast", MovieTable::cast);
+
+    /**
+     * Every character of {@link Movie#getCharacterList()}.
+     */
+    public static final Group CHARACTERS = new NameGroup("characters", MovieTable::characters);
+
+    /**
+     * Every director of {@link Movie#getDirectorList()}.
+     */
+    public static final Group DIRECTORS = new NameGroup("directors", MovieTable::directors);
+
+    /**
+     * Every pair of actors of {@link Movie#getCastList()}, see {@link #pairKey}.
+     */
+    public static final Group CAST_PAIRS = new Group("cast pairs") {
+        @Override
+        void keys(MovieTable table, int id, KeySink sink) {
+            keys(table, id, id + 1, sink);
+        }
+
+        @Override
+        void keys(MovieTable table, int from, int to, KeySink sink) {
+            NameColumn cast = table.cast();
+            for (int id = from; id < to; id++) {
+                int end = cast.end(id);
+                for (int i = cast.start(id); i < end; i++) {
+                    for (int j = i + 1; j < end; j++) {
+                        sink.add(pairKey(cast.get(i), cast.get(j)), id);
+                    }
+                }
+            }
+        }
+
+        @Override
+        int denseSize(MovieTable table) {
+            return -1;
+        }
+
+        @Override
+        String describe(MovieTable table, long key) {
+            NameDictionary names = table.names();
+            return names.name((int) (key >>> 32)) + " & " + names.name((int) key);
+        }
+    };
+
+    private final String name;
+
+    private Group(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return The same key for (a, b) and (b, a): the smaller id in the high
+     * and the larger one in the low 32 bits
+     */
+    static long pairKey(int a, int b) {
+        return a < b ? (long) a << 32 | b : (long) b << 32 | a;
+    }
+
+    /**
+     * Passes the keys of the groups of a movie to 'sink', once per occurrence.
+     *
+     * @param table the table
+     * @param id    the id of a movie
+     * @param sink  receives the keys
+     */
+    abstract void keys(MovieTable table, int id, KeySink sink);
+
+    /**
+     * Passes the keys of the groups of the movies [from, to) to 'sink', see
+     * {@link #keys(MovieTable, int, KeySink)}.
+     *
+     * @param table the table
+     * @param from  the first id (inclusive)
+     * @param to    the last id (exclusive)
+     * @param sink  receives the keys
+     */
+    void keys(MovieTable table, int from, int to, KeySink sink) {
+        for (int id = from; id < to; id++) {
+            keys(table, id, sink);
+        }
+    }
+
+    /**
+     * @param table the table
+     * @return The bound of all keys if they are small enough to index an
+     * array by, else -1
+     */
+    abstract int denseSize(MovieTable table);
+
+    /**
+     * @param table the table
+     * @param key   the key of a group
+     * @return The group as text, e.g. the name of an actor
+     */
+    abstract String describe(MovieTable table, long key);
+
+    @Override
+    public String toString() {
+        return this.name;
+    }
+
+    /**
+     * Groups by the names of a {@link NameColumn}, keyed by their ids.
+     */
+    private static final class NameGroup extends Group {
+        private final Function<MovieTable, NameColumn> column;
+
+        NameGroup(String name, Function<MovieTable, NameColumn> column) {
+            super(name);
+            this.column = column;
+        }
+
+        @Override
+        void keys(MovieTable table, int id, KeySink sink) {
+            keys(table, id, id + 1, sink);
+        }
+
+        @Override
+        void keys(MovieTable table, int from, int to, KeySink sink) {
+            sink.addNames(this.column.apply(table), from, to);
+        }
+
+        @Override
+        int denseSize(MovieTable table) {
+            return table.names().size();
+        }
+
+        @Override
+        String describe(MovieTable table, long key) {
+            return table.names().name((int) key);
+        }
+    }
+}
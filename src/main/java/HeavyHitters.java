@@ -0,0 +1,308 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongFunction;
+
+/**
+ * The most frequent long keys of a stream, counted approximately in bounded
+ * memory: a {@link SpaceSaving} summary picks the candidates and bounds
+ * their counts, and a {@link CountMinSketch} tightens the upper bounds.
+ * Unlike an exact counter of every key, e.g. of every pair of actors, the
+ * memory does not grow with the stream. Partial results of ranges of a
+ * stream merge, so they can be counted in parallel.
+ * <p>
+ * {@link #topK} takes the k most frequent candidates with the bounds of
+ * their counts, optionally with exact counts from a second pass over the
+ * stream which only counts the candidates.
+ */
+public class HeavyHitters {
+
+    /**
+     * The size of the summary and the sketch, and whether to count the
+     * candidates exactly in a second pass.
+     */
+    public static class Settings {
+
+        private final int counters;
+        private final double epsilon;
+        private final double delta;
+        private final boolean verify;
+
+        /**
+         * @param counters the counters of the Space-Saving summary, i.e. the
+         *                 number of candidates; a key more frequent than
+         *                 n / counters is always one
+         * @param epsilon  the error of the Count-Min sketch relative to the
+         *                 length of the stream, 0 for no sketch
+         * @param delta    the probability that an estimate of the sketch
+         *                 exceeds that error
+         * @param verify   whether to count the candidates exactly
+         */
+        public Settings(int counters, double epsilon, double delta, boolean verify) {
+            if (counters < 1 || epsilon < 0 || delta <= 0 || delta >= 1) {
+                throw new IllegalArgumentException("Invalid settings: " + counters + " counters, epsilon "
+                        + epsilon + ", delta " + delta);
+            }
+            this.counters = counters;
+            this.epsilon = epsilon;
+            this.delta = delta;
+            this.verify = verify;
+        }
+
+        public int getCounters() {
+            return this.counters;
+        }
+
+        public double getEpsilon() {
+            return this.epsilon;
+        }
+
+        public double getDelta() {
+            return this.delta;
+        }
+
+        public boolean isVerify() {
+            return this.verify;
+        }
+
+        @Override
+        public String toString() {
+            return this.counters + " counters, epsilon " + this.epsilon + ", delta " + this.delta
+                    + (this.verify ? ", verified" : "");
+        }
+    }
+
+    private final Settings settings;
+    private final SpaceSaving summary;
+    private final CountMinSketch sketch;
+
+    /**
+     * @param settings the size of the summary and the sketch
+     */
+    public HeavyHitters(Settings settings) {
+        this(settings, new SpaceSaving(settings.counters),
+                settings.epsilon == 0 ? null : new CountMinSketch(settings.epsilon, settings.delta));
+    }
+
+    private HeavyHitters(Settings settings, SpaceSaving summary, CountMinSketch sketch) {
+        this.settings = settings;
+        this.summary = summary;
+        this.sketch = sketch;
+    }
+
+    /**
+     * Counts one occurrence of 'key'.
+     *
+     * @param key the key
+     */
+    public void offer(long key) {
+        this.summary.offer(key);
+        if (this.sketch != null) {
+            this.sketch.offer(key);
+        }
+    }
+
+    /**
+     * @param other the counts of the part of the stream after that of this
+     * @return The counts of both parts; this and 'other' are not to be used
+     * any more
+     */
+    public HeavyHitters merge(HeavyHitters other) {
+        return new HeavyHitters(this.settings, SpaceSaving.merge(this.summary, other.summary),
+                this.sketch == null ? null : this.sketch.add(other.sketch));
+    }
+
+    /**
+     * @return The number of keys offered
+     */
+    public long length() {
+        return this.summary.length();
+    }
+
+    /**
+     * @param key a key
+     * @return An upper bound of how often 'key' occurred
+     */
+    public long upper(long key) {
+        long count = this.summary.count(key);
+        return this.sketch == null ? count : Math.min(count, this.sketch.estimate(key));
+    }
+
+    /**
+     * @param key a key
+     * @return A lower bound of how often 'key' occurred
+     */
+    public long lower(long key) {
+        return this.summary.count(key) - this.summary.error(key);
+    }
+
+    /**
+     * @return The candidates, in decreasing order of their upper bounds, of
+     * equal bounds in increasing order of key
+     */
+    public long[] candidates() {
+        long[] keys = this.summary.keys();
+        long[] upper = new long[keys.length];
+        int[] order = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            upper[i] = upper(keys[i]);
+            order[i] = i;
+        }
+        IntSort.sort(order, 0, order.length, (a, b) -> upper[a] != upper[b]
+                ? Long.compare(upper[b], upper[a]) : Long.compare(keys[a], keys[b]));
+        long[] candidates = new long[keys.length];
+        for (int i = 0; i < candidates.length; i++) {
+            candidates[i] = keys[order[i]];
+        }
+        return candidates;
+    }
+
+    /**
+     * @return The heap the summary and the sketch take, roughly
+     */
+    public long bytes() {
+        return this.summary.bytes() + (this.sketch == null ? 0 : this.sketch.bytes());
+    }
+
+    /**
+     * @param k          the number of keys to return
+     * @param candidates the candidates, see {@link #candidates()}
+     * @param exact      the exact count of every candidate, or null to take
+     *                   the upper bounds
+     * @param decode     makes the row of a key
+     * @return The k most frequent candidates, by exact count if given, else
+     * by upper bound; of equal counts in increasing order of key
+     */
+    public <T> Result<T> topK(int k, long[] candidates, int[] exact, LongFunction<T> decode) {
+        int[] order = new int[candidates.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        if (exact != null) {
+            IntSort.sort(order, 0, order.length, (a, b) -> exact[a] != exact[b]
+                    ? exact[b] - exact[a] : Long.compare(candidates[a], candidates[b]));
+        }
+        int size = Math.min(k, order.length);
+        Result<T> result = new Result<>(size);
+        for (int i = 0; i < size; i++) {
+            long key = candidates[order[i]];
+            long count = exact != null ? exact[order[i]] : upper(key);
+            result.rows.add(new IMDBQueries.Tuple<>(decode.apply(key), (int) count));
+            result.lower[i] = exact != null ? count : lower(key);
+            result.upper[i] = exact != null ? count : upper(key);
+        }
+        result.exact = exact != null;
+        result.length = length();
+        result.unmonitored = this.summary.minCount();
+        result.sketchError = this.sketch == null ? Double.NaN : this.sketch.errorBound();
+        result.delta = this.settings.delta;
+        result.bytes = bytes();
+
+        // Nothing outside the rows may reach the count of the last row
+        long outside = result.unmonitored;
+        if (size < order.length) {
+            long next = candidates[order[size]];
+            outside = Math.max(outside, exact != null ? exact[order[size]] : upper(next));
+        }
+        result.complete = size == 0 ? outside == 0 : result.lower[size - 1] > outside;
+        return result;
+    }
+
+    /**
+     * The k most frequent keys found, with bounds of their counts.
+     *
+     * @param <T> the row of a key
+     */
+    public static class Result<T> {
+        private final List<IMDBQueries.Tuple<T, Integer>> rows;
+        private final long[] lower;
+        private final long[] upper;
+        private boolean exact;
+        private boolean complete;
+        private long length;
+        private long unmonitored;
+        private double sketchError;
+        private double delta;
+        private long bytes;
+
+        Result(int size) {
+            this.rows = new ArrayList<>(size);
+            this.lower = new long[size];
+            this.upper = new long[size];
+        }
+
+        /**
+         * @return The rows with their counts: exact ones if verified, else
+         * upper bounds
+         */
+        public List<IMDBQueries.Tuple<T, Integer>> getRows() {
+            return this.rows;
+        }
+
+        /**
+         * @return A lower bound of the count of row 'i'
+         */
+        public long getLower(int i) {
+            return this.lower[i];
+        }
+
+        /**
+         * @return An upper bound of the count of row 'i'
+         */
+        public long getUpper(int i) {
+            return this.upper[i];
+        }
+
+        /**
+         * @return Whether the counts are exact, from a second pass
+         */
+        public boolean isExact() {
+            return this.exact;
+        }
+
+        /**
+         * @return Whether the rows are certainly the k most frequent keys:
+         * the last one occurred more often than any other key may have
+         */
+        public boolean isComplete() {
+            return this.complete;
+        }
+
+        /**
+         * @return The number of keys counted
+         */
+        public long getLength() {
+            return this.length;
+        }
+
+        /**
+         * @return The most a key which is not a candidate may have occurred
+         */
+        public long getUnmonitored() {
+            return this.unmonitored;
+        }
+
+        /**
+         * @return The error of the Count-Min sketch, which the upper bounds
+         * exceed by at most with probability 1 - delta; NaN without one
+         */
+        public double getSketchError() {
+            return this.sketchError;
+        }
+
+        /**
+         * @return The heap the counting took per partial result, roughly
+         */
+        public long getBytes() {
+            return this.bytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("top %d of %d keys, %s counts, %s; other keys at most %d times, sketch error"
+                            + " %s (p >= %.3f), %d KB", this.rows.size(), this.length,
+                    this.exact ? "exact" : "approximate", this.complete ? "complete" : "possibly incomplete",
+                    this.unmonitored, Double.isNaN(this.sketchError) ? "-" : String.format("%.1f", this.sketchError),
+                    1 - this.delta, this.bytes / 1024);
+        }
+    }
+}
@@ -0,0 +1,352 @@
+import org.jsoup.Connection;
+import org.jsoup.Jsoup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * An on-disk cache of HTTP responses for the {@link IMDBSpider}. A response
+ * is stored in one file named by the SHA-256 of its URL, holding the URL,
+ * the ETag and Last-Modified headers, the charset and the gzipped body.
+ * <p>
+ * A cached URL is revalidated with a conditional GET, so an unchanged page
+ * costs a 304 instead of its body. In replay mode the network is not used at
+ * all: cached pages are served as they are and a missing page is an error,
+ * so the parser can be re-run over a crawl at disk speed.
+ * <p>
+ * The cache is bounded by the size of its files; the least recently used
+ * ones are deleted first. The order of use survives restarts through the
+ * modification times of the files.
+ */
+public class HttpCache {
+
+    private static final int MAGIC = 0x48434831;
+    private static final String SUFFIX = ".page";
+
+    private final File dir;
+    private final long maxBytes;
+    private final boolean replayOnly;
+    /**
+     * Sizes of the cached files by key, in the order of their last use.
+     */
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong revalidated = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong bytesSaved = new AtomicLong();
+    private final AtomicLong bytesFetched = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Opens a cache, creating its directory if needed.
+     *
+     * @param dir        the directory of the cache
+     * @param maxBytes   the size of the cache files above which the least
+     *                   recently used ones are deleted
+     * @param replayOnly whether to serve cached pages without the network
+     * @throws IOException if the directory cannot be created
+     */
+    public HttpCache(File dir, long maxBytes, boolean replayOnly) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create cache directory " + dir);
+        }
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        this.replayOnly = replayOnly;
+        File[] files = dir.listFiles((d, name) -> name.endsWith(SUFFIX));
+        List<File> sorted = new ArrayList<>();
+        if (files != null) {
+            for (File file : files) sorted.add(file);
+        }
+        sorted.sort(Comparator.comparingLong(File::lastModified));
+        for (File file : sorted) {
+            String name = file.getName();
+            this.index.put(name.substring(0, name.length() - SUFFIX.length()), file.length());
+            this.size += file.length();
+        }
+        evict();
+    }
+
+    /**
+     * Returns the page at 'url': from the cache if it is unchanged or in
+     * replay mode, from the network otherwise.
+     *
+     * @param url     the URL of the page
+     * @param limiter the limiter a request has to pass, or null
+     * @return The page
+     * @throws IOException if the page cannot be fetched, or is not cached in replay mode
+     */
+    public Page fetch(String url, RateLimiter limiter) throws IOException, InterruptedException {
+        return fetch(url, limiter, null);
+    }
+
+    /**
+     * Returns the page at 'url', see {@link #fetch(String, RateLimiter)}.
+     *
+     * @param url     the URL of the page
+     * @param limiter the limiter a request has to pass, or null
+     * @param metrics counts the requests sent and their responses, or null
+     * @return The page
+     * @throws IOException if the page cannot be fetched, or is not cached in replay mode
+     */
+    public Page fetch(String url, RateLimiter limiter, CrawlMetrics metrics) throws IOException, InterruptedException {
+        String key = key(url);
+        Page cached = read(key);
+        if (cached != null && !cached.url.equals(url)) {
+            cached = null;
+        }
+        if (this.replayOnly) {
+            if (cached == null) {
+                this.misses.incrementAndGet();
+                throw new FileNotFoundException("Not cached in replay mode: " + url);
+            }
+            this.hits.incrementAndGet();
+            this.bytesSaved.addAndGet(cached.body.length);
+            return cached;
+        }
+
+        if (limiter != null) {
+            limiter.acquire(url);
+        }
+        Connection connection = Jsoup.connect(url).ignoreHttpErrors(true).timeout(10000);
+        if (cached != null) {
+            if (!cached.etag.isEmpty()) connection.header("If-None-Match", cached.etag);
+            if (!cached.lastModified.isEmpty()) connection.header("If-Modified-Since", cached.lastModified);
+        }
+        Connection.Response response = IMDBSpider.execute(connection, metrics);
+        if (cached != null && response.statusCode() == 304) {
+            this.revalidated.incrementAndGet();
+            this.bytesSaved.addAndGet(cached.body.length);
+            touch(key);
+            return cached;
+        }
+        this.misses.incrementAndGet();
+        Page page = new Page(url, header(response, "ETag"), header(response, "Last-Modified"),
+                response.charset() == null ? "" : response.charset(), response.bodyAsBytes());
+        this.bytesFetched.addAndGet(page.body.length);
+        if (response.statusCode() == 200) {
+            write(key, page);
+        }
+        return page;
+    }
+
+    /**
+     * @return The number of pages served from the cache without a request
+     */
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    /**
+     * @return The number of pages served from the cache after a 304
+     */
+    public long getRevalidated() {
+        return this.revalidated.get();
+    }
+
+    /**
+     * @return The number of pages fetched because they were not cached or changed
+     */
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    /**
+     * @return The body bytes served from the cache instead of the network
+     */
+    public long getBytesSaved() {
+        return this.bytesSaved.get();
+    }
+
+    /**
+     * @return The body bytes fetched from the network
+     */
+    public long getBytesFetched() {
+        return this.bytesFetched.get();
+    }
+
+    /**
+     * @return The number of pages deleted to stay within the size bound
+     */
+    public long getEvictions() {
+        return this.evictions.get();
+    }
+
+    /**
+     * @return The size of the cache files
+     */
+    public synchronized long getSize() {
+        return this.size;
+    }
+
+    @Override
+    public String toString() {
+        return this.hits + " hits, " + this.revalidated + " revalidated, " + this.misses + " misses, "
+                + this.bytesSaved.get() / 1024 + " KB saved, " + this.bytesFetched.get() / 1024 + " KB fetched, "
+                + this.evictions + " evicted";
+    }
+
+    private Page read(String key) throws IOException {
+        File file = file(key);
+        synchronized (this) {
+            if (!this.index.containsKey(key)) {
+                return null;
+            }
+        }
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file.toPath()))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a cache file");
+            }
+            String url = in.readUTF();
+            String etag = in.readUTF();
+            String lastModified = in.readUTF();
+            String charset = in.readUTF();
+            byte[] body = readAll(new GZIPInputStream(in));
+            if (this.replayOnly) {
+                touch(key);
+            }
+            return new Page(url, etag, lastModified, charset, body);
+        } catch (IOException e) {
+            // Evicted meanwhile, or torn: fetch it again
+            Logger.getLogger("IMDBSpider").log(Level.FINE, "Could not read cache file " + file, e);
+            remove(key);
+            return null;
+        }
+    }
+
+    private void write(String key, Page page) throws IOException {
+        File tmp = new File(this.dir, key + "." + Thread.currentThread().getId() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(tmp.toPath()))) {
+            out.writeInt(MAGIC);
+            out.writeUTF(page.url);
+            out.writeUTF(page.etag);
+            out.writeUTF(page.lastModified);
+            out.writeUTF(page.charset);
+            GZIPOutputStream gzip = new GZIPOutputStream(out);
+            gzip.write(page.body);
+            gzip.finish();
+        }
+        File file = file(key);
+        long length = tmp.length();
+        synchronized (this) {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            Long previous = this.index.put(key, length);
+            this.size += length - (previous == null ? 0 : previous);
+            evict();
+        }
+    }
+
+    private synchronized void touch(String key) {
+        if (this.index.get(key) != null) {
+            file(key).setLastModified(System.currentTimeMillis());
+        }
+    }
+
+    private synchronized void remove(String key) {
+        Long length = this.index.remove(key);
+        if (length != null) {
+            this.size -= length;
+            file(key).delete();
+        }
+    }
+
+    private synchronized void evict() {
+        Iterator<Map.Entry<String, Long>> it = this.index.entrySet().iterator();
+        while (this.size > this.maxBytes && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            it.remove();
+            this.size -= eldest.getValue();
+            file(eldest.getKey()).delete();
+            this.evictions.incrementAndGet();
+        }
+    }
+
+    private File file(String key) {
+        return new File(this.dir, key + SUFFIX);
+    }
+
+    private static String header(Connection.Response response, String name) {
+        String value = response.header(name);
+        return value == null ? "" : value;
+    }
+
+    static String key(String url) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(url.getBytes(StandardCharsets.UTF_8));
+            StringBuilder key = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        for (int n = in.read(buffer); n > 0; n = in.read(buffer)) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * A cached or fetched page.
+     */
+    public static class Page {
+        private final String url;
+        private final String etag;
+        private final String lastModified;
+        private final String charset;
+        private final byte[] body;
+
+        Page(String url, String etag, String lastModified, String charset, byte[] body) {
+            this.url = url;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.charset = charset;
+            this.body = body;
+        }
+
+        public String getUrl() {
+            return this.url;
+        }
+
+        /**
+         * @return The charset of the body, or null if the server did not tell
+         */
+        public String getCharset() {
+            return this.charset.isEmpty() ? null : this.charset;
+        }
+
+        public byte[] getBody() {
+            return this.body;
+        }
+    }
+}
@@ -1,20 +1,48 @@
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.function.LongFunction;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 @SuppressWarnings("static-method")
 public class IMDBQueries {
 
+    /**
+     * The pool the queries on a {@link MovieTable} run in, or null to run
+     * them in the calling thread.
+     */
+    private final ForkJoinPool pool;
+
+    public IMDBQueries() {
+        this(null);
+    }
+
+    /**
+     * Runs the queries on a {@link MovieTable} in 'pool': the filter and sort
+     * queries on ranges of the table whose results are merged, the counting
+     * queries into one partial counter per thread of the pool which are
+     * added up. The results are the same as those of sequential queries.
+     *
+     * @param pool the pool to run the queries in, or null to run them in the
+     *             calling thread
+     */
+    public IMDBQueries(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
     /**
      * A helper class for pairs of objects of generic types 'K' and 'V'.
      *
      * @param <K> first value
      * @param <V> second value
      */
-    class Tuple<K, V> {
+    static class Tuple<K, V> {
         K first;
         V second;
 
@@ -25,7 +53,7 @@ public class IMDBQueries {
 
         @Override
         public int hashCode() {
-            return this.first.hashCode() + this.second.hashCode();
+            return 31 * this.first.hashCode() + this.second.hashCode();
         }
 
         @Override
@@ -43,6 +71,7 @@ public class IMDBQueries {
      * @return top ten movies and the director, sorted by decreasing IMDB rating
      */
     public List<Tuple<Movie, String>> queryAllRounder(List<Movie> movies) {
+        QueryEvent event = QueryEvent.start("All-rounder", "list", movies.size());
 
         List<Tuple<Movie, String>> allrounder = new ArrayList<>();
 
@@ -66,7 +95,68 @@ public class IMDBQueries {
             }
         });
 
-        return allrounder.subList(0,10);
+        event.matched(allrounder.size());
+        return event.end(allrounder.subList(0, Math.min(10, allrounder.size())));
+    }
+
+    /**
+     * All-rounder on a {@link MovieTable}, see {@link #queryAllRounder(List)}.
+     *
+     * @param table the table of movies which is to be queried
+     * @return top ten movies and the director, sorted by decreasing IMDB rating
+     */
+    public List<Tuple<Movie, String>> queryAllRounder(MovieTable table) {
+        return queryAllRounder(table, 10);
+    }
+
+    /**
+     * All-rounder on a {@link MovieTable}, see {@link #queryAllRounder(List)}.
+     * Directors are matched against the cast by their ids in
+     * {@link MovieTable#names()}.
+     *
+     * @param table the table of movies which is to be queried
+     * @param k     the number of movies to return
+     * @return top k movies and the director, sorted by decreasing IMDB rating
+     */
+    public List<Tuple<Movie, String>> queryAllRounder(MovieTable table, int k) {
+        return ParallelScan.run(this.pool, table.size(), allRounder(table, k),
+                QueryEvent.start("All-rounder", "table", table.size()));
+    }
+
+    /**
+     * All-rounder as a {@link TableQuery}, see {@link #queryAllRounder(MovieTable, int)}.
+     *
+     * @param table the table of movies which is to be queried
+     * @param k     the number of movies to return
+     * @return The query, for one run
+     */
+    public TableQuery<IntTopK, List<Tuple<Movie, String>>> allRounder(MovieTable table, int k) {
+        NameColumn cast = table.cast();
+        NameColumn directors = table.directors();
+        int[] director = new int[table.size()];
+        IntComparator byRating = (a, b) -> Float.compare(table.ratingOrZero(b), table.ratingOrZero(a));
+        return new TopKQuery<Tuple<Movie, String>>(k, byRating) {
+            @Override
+            public void scan(IntTopK top, int from, int to) {
+                for (int id = from; id < to; id++) {
+                    director[id] = -1;
+                    for (int j = directors.start(id); j < directors.end(id) && director[id] == -1; j++) {
+                        for (int i = cast.start(id); i < cast.end(id); i++) {
+                            if (cast.get(i) == directors.get(j)) {
+                                director[id] = directors.get(j);
+                                top.offer(id);
+                                break;
+                            }
+                        }
+                    }
+                }
+            }
+
+            @Override
+            Tuple<Movie, String> row(int id) {
+                return new Tuple<>(table.movie(id), table.names().name(director[id]));
+            }
+        };
     }
 
     /**
@@ -80,6 +170,7 @@ public class IMDBQueries {
      * monetary loss, which is also returned
      */
     public List<Tuple<Movie, Long>> queryUnderTheRadar(List<Movie> movies) {
+        QueryEvent event = QueryEvent.start("Under the radar", "list", movies.size());
 
         ArrayList<Movie> movies1 = movies.stream().filter(movie -> Float.valueOf(movie.getRatingValue()) > 8.0
                 && Integer.valueOf(movie.getRatingCount().replaceAll(",", "")) >= 1000
@@ -99,7 +190,65 @@ public class IMDBQueries {
         List<Tuple<Movie, Long>> returner = new ArrayList<>();
         movies1.forEach(f -> returner.add(new Tuple<>(f, Math.abs(Long.valueOf(f.getBudget().replaceAll("[^\\d]", ""))
                 - Long.valueOf(f.getGross().replaceAll("[^\\d]", ""))))));
-     return returner.subList(0, 10);
+        event.matched(movies1.size());
+        return event.end(returner.subList(0, Math.min(10, returner.size())));
+    }
+
+    /**
+     * Under the Radar on a {@link MovieTable}, see {@link #queryUnderTheRadar(List)}.
+     *
+     * @param table the table of movies which is to be queried
+     * @return top ten highest rated US-American movie until 2015, sorted by
+     * monetary loss, which is also returned
+     */
+    public List<Tuple<Movie, Long>> queryUnderTheRadar(MovieTable table) {
+        return queryUnderTheRadar(table, 10);
+    }
+
+    /**
+     * Under the Radar on a {@link MovieTable}, see {@link #queryUnderTheRadar(List)}.
+     * Movies without a year, whose year is 0 or {@link MovieTable#MISSING_SHORT},
+     * are left out.
+     *
+     * @param table the table of movies which is to be queried
+     * @param k     the number of movies to return
+     * @return top k highest rated US-American movie until 2015, sorted by
+     * monetary loss, which is also returned
+     */
+    public List<Tuple<Movie, Long>> queryUnderTheRadar(MovieTable table, int k) {
+        return ParallelScan.run(this.pool, table.size(), underTheRadar(table, k),
+                QueryEvent.start("Under the radar", "table", table.size()));
+    }
+
+    /**
+     * Under the Radar as a {@link TableQuery}, see
+     * {@link #queryUnderTheRadar(MovieTable, int)}.
+     *
+     * @param table the table of movies which is to be queried
+     * @param k     the number of movies to return
+     * @return The query, for one run
+     */
+    public TableQuery<IntTopK, List<Tuple<Movie, Long>>> underTheRadar(MovieTable table, int k) {
+        long[] loss = new long[table.size()];
+        IdBitmap usa = table.countries().get("USA");
+        return new TopKQuery<Tuple<Movie, Long>>(k, (a, b) -> Long.compare(loss[b], loss[a])) {
+            @Override
+            public void scan(IntTopK top, int from, int to) {
+                usa.forEach(from, to, id -> {
+                    if (table.rating(id) > 8.0
+                            && table.ratingCount(id) >= 1000
+                            && table.year(id) > 0 && table.year(id) <= 2015) {
+                        loss[id] = table.budgetOrZero(id) - table.grossOrZero(id);
+                        top.offer(id);
+                    }
+                });
+            }
+
+            @Override
+            Tuple<Movie, Long> row(int id) {
+                return new Tuple<>(table.movie(id), Math.abs(loss[id]));
+            }
+        };
     }
 
     /**
@@ -115,6 +264,7 @@ public class IMDBQueries {
      */
     public List<Tuple<Movie, Integer>> queryPillarsOfStorytelling(
             List<Movie> movies) {
+        QueryEvent event = QueryEvent.start("Pillars of storytelling", "list", movies.size());
 
         List<Movie> filtered = movies.stream().filter(new Predicate<Movie>() {
             @Override
@@ -137,7 +287,7 @@ public class IMDBQueries {
 
         ArrayList<Tuple<Movie, Integer>> returner = new ArrayList<>();
 
-        filtered.subList(0, 10).forEach(new Consumer<Movie>() {
+        filtered.subList(0, Math.min(10, filtered.size())).forEach(new Consumer<Movie>() {
             @Override
             public void accept(Movie f) {
                 returner.add(new Tuple<>(f, IMDBQueries.this.countSubString(f.getDescription().toLowerCase(), "kill")
@@ -145,7 +295,61 @@ public class IMDBQueries {
             }
         });
 
-        return returner;
+        event.matched(filtered.size());
+        return event.end(returner);
+    }
+
+    /**
+     * The Pillars of Storytelling on a {@link MovieTable}, see
+     * {@link #queryPillarsOfStorytelling(List)}. The movies are taken from the
+     * substring postings of the description index instead of a scan.
+     *
+     * @param table the table of movies which is to be queried
+     * @return top ten movies, which have the words "kill" and "love" as part of
+     * their lowercase description, sorted by the number of appearances of
+     * these words, which is also returned.
+     */
+    public List<Tuple<Movie, Integer>> queryPillarsOfStorytelling(MovieTable table) {
+        return queryPillarsOfStorytelling(table, 10);
+    }
+
+    /**
+     * The Pillars of Storytelling on a {@link MovieTable}, see
+     * {@link #queryPillarsOfStorytelling(List)}.
+     *
+     * @param table the table of movies which is to be queried
+     * @param k     the number of movies to return
+     * @return top k movies, which have the words "kill" and "love" as part of
+     * their lowercase description, sorted by the number of appearances of
+     * these words, which is also returned.
+     */
+    public List<Tuple<Movie, Integer>> queryPillarsOfStorytelling(MovieTable table, int k) {
+        TextIndex index = table.descriptionIndex();
+        Postings kill = index.findSubstring("kill", true);
+        Postings love = index.findSubstring("love", true);
+        QueryEvent event = QueryEvent.start("Pillars of storytelling", "table", kill.size() + love.size());
+
+        int[] counts = new int[table.size()];
+        IntTopK top = new IntTopK(k, (a, b) -> counts[b] - counts[a]);
+        for (int i = 0, j = 0; i < kill.size() && j < love.size(); ) {
+            if (kill.doc(i) < love.doc(j)) {
+                i++;
+            } else if (kill.doc(i) > love.doc(j)) {
+                j++;
+            } else {
+                counts[kill.doc(i)] = kill.freq(i) + love.freq(j);
+                top.offer(kill.doc(i));
+                i++;
+                j++;
+            }
+        }
+
+        List<Tuple<Movie, Integer>> returner = new ArrayList<>();
+        for (int id : top.toSortedArray()) {
+            returner.add(new Tuple<>(table.movie(id), counts[id]));
+        }
+        event.matched(top.offered());
+        return event.end(returner);
     }
 
     private int countSubString(String full, String sub) {
@@ -170,6 +374,7 @@ public class IMDBQueries {
      * publication.
      */
     public List<Movie> queryRedPlanet(List<Movie> movies) {
+        QueryEvent event = QueryEvent.start("Red planet", "list", movies.size());
         List<Movie> filtered = movies.stream().filter(f ->
                 f.getDescription().contains("Mars") && f.getGenreList().contains("Sci-Fi"))
                 .collect(Collectors.toList());
@@ -180,10 +385,56 @@ public class IMDBQueries {
             return year1 - year2;
         });
 
-        return filtered;
+        event.matched(filtered.size());
+        return event.end(filtered);
 
     }
 
+    /**
+     * The Red Planet on a {@link MovieTable}, see {@link #queryRedPlanet(List)}.
+     * The movies are taken from the substring postings of the description index
+     * instead of a scan, and checked against the genre index.
+     *
+     * @param table the table of movies which is to be queried
+     * @return list of Sci-Fi movies involving Mars in ascending order of
+     * publication.
+     */
+    public List<Movie> queryRedPlanet(MovieTable table) {
+        return queryRedPlanet(table, "Mars", "Sci-Fi");
+    }
+
+    /**
+     * The Red Planet on a {@link MovieTable} for any term and genre, see
+     * {@link #queryRedPlanet(MovieTable)}.
+     *
+     * @param table the table of movies which is to be queried
+     * @param term  the text the description must contain (case-aware)
+     * @param genre the genre the movies must have
+     * @return list of movies of 'genre' involving 'term' in ascending order
+     * of publication.
+     */
+    public List<Movie> queryRedPlanet(MovieTable table, String term, String genre) {
+        Postings mars = table.descriptionIndex().findSubstring(term, false);
+        QueryEvent event = QueryEvent.start("Red planet", "table", mars.size());
+        IdBitmap sciFi = table.genres().get(genre);
+        int[] ids = new int[mars.size()];
+        int count = 0;
+        for (int i = 0; i < mars.size(); i++) {
+            if (sciFi.contains(mars.doc(i))) {
+                ids[count++] = mars.doc(i);
+            }
+        }
+
+        IntSort.sort(ids, 0, count, (a, b) -> table.yearOrZero(a) - table.yearOrZero(b));
+
+        List<Movie> filtered = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            filtered.add(table.movie(ids[i]));
+        }
+        event.matched(count);
+        return event.end(filtered);
+    }
+
     /**
      * Colossal Failure: Determine all US-American movies with a duration beyond 2
      * hours, a budget beyond 1 million and an IMDB rating below 5.0. Sort results
@@ -194,7 +445,8 @@ public class IMDBQueries {
      * bad IMDB rating, sorted by ascending IMDB rating
      */
     public List<Movie> queryColossalFailure(List<Movie> movies) {
-       return movies.stream().filter(f ->
+        QueryEvent event = QueryEvent.start("Colossal failure", "list", movies.size());
+        List<Movie> returner = movies.stream().filter(f ->
                 (getDurationAsInt(f)) > 120 &&
                         Float.valueOf(f.getRatingValue()) < 5.0
                         && Float.valueOf(f.getRatingValue())>0
@@ -203,7 +455,73 @@ public class IMDBQueries {
                 .sorted((m1, m2) ->
                         (Float.compare(Float.valueOf(m1.getRatingValue()),
                                 Float.valueOf(m2.getRatingValue())))).collect(Collectors.toList());
+        event.matched(returner.size());
+        return event.end(returner);
+    }
+
+    /**
+     * Colossal Failure on a {@link MovieTable}, see {@link #queryColossalFailure(List)}.
+     * Durations are taken from {@link MovieTable#durationMinutes(int)}, so "95min"
+     * counts as 95 minutes and movies without a duration are skipped.
+     *
+     * @param table the table of movies which is to be queried
+     * @return list of US-American movies with high duration, large budgets and a
+     * bad IMDB rating, sorted by ascending IMDB rating
+     */
+    public List<Movie> queryColossalFailure(MovieTable table) {
+        return ParallelScan.run(this.pool, table.size(), colossalFailure(table),
+                QueryEvent.start("Colossal failure", "table", table.size()));
+    }
+
+    /**
+     * Colossal Failure as a {@link TableQuery}, see
+     * {@link #queryColossalFailure(MovieTable)}.
+     *
+     * @param table the table of movies which is to be queried
+     * @return The query, for one run
+     */
+    public TableQuery<IntList, List<Movie>> colossalFailure(MovieTable table) {
+        IdBitmap usa = table.countries().get("USA");
+        return new TableQuery<IntList, List<Movie>>() {
+            @Override
+            public IntList newPartial() {
+                return new IntList();
+            }
+
+            @Override
+            public void scan(IntList ids, int from, int to) {
+                usa.forEach(from, to, id -> {
+                    float rating = table.rating(id);
+                    if (table.durationMinutes(id) > 120
+                            && rating < 5.0 && rating > 0
+                            && table.budget(id) > 1000000) {
+                        ids.add(id);
+                    }
+                });
+            }
+
+            @Override
+            public IntList merge(IntList left, IntList right) {
+                left.addAll(right);
+                return left;
+            }
 
+            @Override
+            public long matched(IntList ids) {
+                return ids.size();
+            }
+
+            @Override
+            public List<Movie> finish(IntList partial) {
+                int[] ids = partial.toArray();
+                IntSort.sort(ids, 0, ids.length, (a, b) -> Float.compare(table.rating(a), table.rating(b)));
+                List<Movie> returner = new ArrayList<>(ids.length);
+                for (int id : ids) {
+                    returner.add(table.movie(id));
+                }
+                return returner;
+            }
+        };
     }
 
     private int getDurationAsInt(Movie movie) {
@@ -230,6 +548,7 @@ public class IMDBQueries {
      * sorted in decreasing order of frequency
      */
     public List<Tuple<String, Integer>> queryUncreativeWriters(List<Movie> movies) {
+        QueryEvent event = QueryEvent.start("Uncreative writers", "list", movies.size());
         ArrayList<Tuple<String, Integer>> returner = new ArrayList<>();
 
         Map<String, Integer> map = new HashMap<>();
@@ -251,7 +570,96 @@ public class IMDBQueries {
                 Integer.compare(t2.second, t1.second)
         );
 
-        return returner.subList(0, 10);
+        return event.end(returner.subList(0, Math.min(10, returner.size())));
+    }
+
+    /**
+     * Uncreative Writers on a {@link MovieTable}, see
+     * {@link #queryUncreativeWriters(List)}.
+     *
+     * @param table the table of movies which is to be queried
+     * @return the top 10 character names and their frequency of occurrence;
+     * sorted in decreasing order of frequency
+     */
+    public List<Tuple<String, Integer>> queryUncreativeWriters(MovieTable table) {
+        return queryUncreativeWriters(table, 10);
+    }
+
+    /**
+     * Uncreative Writers on a {@link MovieTable}, see
+     * {@link #queryUncreativeWriters(List)}.
+     *
+     * @param table the table of movies which is to be queried
+     * @param k     the number of character names to return
+     * @return the top k character names and their frequency of occurrence;
+     * sorted in decreasing order of frequency
+     */
+    public List<Tuple<String, Integer>> queryUncreativeWriters(MovieTable table, int k) {
+        return ParallelScan.run(this.pool, table.size(), uncreativeWriters(table, k),
+                QueryEvent.start("Uncreative writers", "table", table.size()));
+    }
+
+    /**
+     * Uncreative Writers on a {@link MovieTable} in bounded memory, see
+     * {@link #queryUncreativeWriters(MovieTable, int)} and {@link HeavyHitters}.
+     *
+     * @param table    the table of movies which is to be queried
+     * @param k        the number of character names to return
+     * @param settings the size of the counters and whether to verify
+     * @return the top k character names found and their frequency of
+     * occurrence, with bounds of the frequencies
+     */
+    public HeavyHitters.Result<String> queryUncreativeWriters(MovieTable table, int k,
+                                                              HeavyHitters.Settings settings) {
+        NameColumn characters = table.characters();
+        NameDictionary names = table.names();
+        // 0 while unknown, 1 to count, 2 to leave out; threads racing to fill in a name agree
+        byte[] counted = new byte[names.size()];
+        return heavyHitters("Uncreative writers", table, k, settings, (from, to, out) -> {
+            for (int pos = characters.start(from); pos < characters.start(to); pos++) {
+                int name = characters.get(pos);
+                if (counted[name] == 0) {
+                    String character = names.name(name);
+                    counted[name] = (byte) (character.isEmpty()
+                            || TextIndex.countOccurrences(character, "doctor", true) != 0
+                            || TextIndex.countOccurrences(character, "himself", true) != 0
+                            || TextIndex.countOccurrences(character, "herself", true) != 0 ? 2 : 1);
+                }
+                if (counted[name] == 1) {
+                    out.accept(name);
+                }
+            }
+        }, key -> names.name((int) key));
+    }
+
+    /**
+     * Uncreative Writers as a {@link TableQuery}, see
+     * {@link #queryUncreativeWriters(MovieTable, int)}.
+     *
+     * @param table the table of movies which is to be queried
+     * @param k     the number of character names to return
+     * @return The query, for one run
+     */
+    public TableQuery<int[], List<Tuple<String, Integer>>> uncreativeWriters(MovieTable table, int k) {
+        NameDictionary names = table.names();
+        return new NameCountQuery(table, table.characters(), k) {
+            @Override
+            public List<Tuple<String, Integer>> finish(int[] counts) {
+                // The filter runs once per distinct name, not once per occurrence
+                for (int name = 0; name < counts.length; name++) {
+                    if (counts[name] > 0) {
+                        String character = names.name(name);
+                        if (character.isEmpty()
+                                || TextIndex.countOccurrences(character, "doctor", true) != 0
+                                || TextIndex.countOccurrences(character, "himself", true) != 0
+                                || TextIndex.countOccurrences(character, "herself", true) != 0) {
+                            counts[name] = 0;
+                        }
+                    }
+                }
+                return super.finish(counts);
+            }
+        };
     }
 
     /**
@@ -263,6 +671,7 @@ public class IMDBQueries {
      * sorted by the latter.
      */
     public List<Tuple<String, Integer>> queryWorkHorse(List<Movie> movies) {
+        QueryEvent event = QueryEvent.start("Workhorse", "list", movies.size());
 
         ArrayList<Tuple<String, Integer>> returner = new ArrayList<>();
 
@@ -283,7 +692,169 @@ public class IMDBQueries {
         returner.sort((t1, t2) -> Integer.compare(t2.second, t1.second)
         );
 
-        return returner.subList(0, 10);
+        return event.end(returner.subList(0, Math.min(10, returner.size())));
+    }
+
+    /**
+     * Workhorse on a {@link MovieTable}, see {@link #queryWorkHorse(List)}.
+     *
+     * @param table the table of movies which is to be queried
+     * @return the top ten actors and the number of movies they had a role in,
+     * sorted by the latter.
+     */
+    public List<Tuple<String, Integer>> queryWorkHorse(MovieTable table) {
+        return queryWorkHorse(table, 10);
+    }
+
+    /**
+     * Workhorse on a {@link MovieTable}, see {@link #queryWorkHorse(List)}.
+     *
+     * @param table the table of movies which is to be queried
+     * @param k     the number of actors to return
+     * @return the top k actors and the number of movies they had a role in,
+     * sorted by the latter.
+     */
+    public List<Tuple<String, Integer>> queryWorkHorse(MovieTable table, int k) {
+        return ParallelScan.run(this.pool, table.size(), workHorse(table, k),
+                QueryEvent.start("Workhorse", "table", table.size()));
+    }
+
+    /**
+     * Workhorse on a {@link MovieTable} in bounded memory, see
+     * {@link #queryWorkHorse(MovieTable, int)} and {@link HeavyHitters}.
+     *
+     * @param table    the table of movies which is to be queried
+     * @param k        the number of actors to return
+     * @param settings the size of the counters and whether to verify
+     * @return the top k actors found and the number of movies they had a
+     * role in, with bounds of those numbers
+     */
+    public HeavyHitters.Result<String> queryWorkHorse(MovieTable table, int k, HeavyHitters.Settings settings) {
+        NameColumn cast = table.cast();
+        return heavyHitters("Workhorse", table, k, settings, (from, to, out) -> {
+            for (int pos = cast.start(from); pos < cast.start(to); pos++) {
+                out.accept(cast.get(pos));
+            }
+        }, key -> table.names().name((int) key));
+    }
+
+    /**
+     * Workhorse as a {@link TableQuery}, see {@link #queryWorkHorse(MovieTable, int)}.
+     *
+     * @param table the table of movies which is to be queried
+     * @param k     the number of actors to return
+     * @return The query, for one run
+     */
+    public TableQuery<int[], List<Tuple<String, Integer>>> workHorse(MovieTable table, int k) {
+        return new NameCountQuery(table, table.cast(), k);
+    }
+
+    /**
+     * Counts how often every name occurs in a {@link NameColumn} and returns
+     * the k most frequent names, see {@link #topCounts}.
+     */
+    private class NameCountQuery implements TableQuery<int[], List<Tuple<String, Integer>>> {
+        private final MovieTable table;
+        private final NameColumn column;
+        private final int k;
+
+        NameCountQuery(MovieTable table, NameColumn column, int k) {
+            this.table = table;
+            this.column = column;
+            this.k = k;
+        }
+
+        @Override
+        public int[] newPartial() {
+            return new int[this.table.names().size()];
+        }
+
+        @Override
+        public void scan(int[] counts, int from, int to) {
+            for (int pos = this.column.start(from); pos < this.column.start(to); pos++) {
+                counts[this.column.get(pos)]++;
+            }
+        }
+
+        @Override
+        public int[] merge(int[] left, int[] right) {
+            for (int name = 0; name < left.length; name++) {
+                left[name] += right[name];
+            }
+            return left;
+        }
+
+        @Override
+        public List<Tuple<String, Integer>> finish(int[] counts) {
+            return topCounts(this.table.names(), counts, this.k);
+        }
+
+        @Override
+        public boolean largePartials() {
+            return true;
+        }
+    }
+
+    /**
+     * Selects the k first ids with an {@link IntTopK}; the subclass scans
+     * and makes the rows of the result.
+     */
+    private abstract class TopKQuery<T> implements TableQuery<IntTopK, List<T>> {
+        private final int k;
+        private final IntComparator cmp;
+
+        TopKQuery(int k, IntComparator cmp) {
+            this.k = k;
+            this.cmp = cmp;
+        }
+
+        /**
+         * @return The row of the result for the movie 'id'
+         */
+        abstract T row(int id);
+
+        @Override
+        public IntTopK newPartial() {
+            return new IntTopK(this.k, this.cmp);
+        }
+
+        @Override
+        public IntTopK merge(IntTopK left, IntTopK right) {
+            return left.offerAll(right);
+        }
+
+        @Override
+        public long matched(IntTopK top) {
+            return top.offered();
+        }
+
+        @Override
+        public List<T> finish(IntTopK top) {
+            List<T> returner = new ArrayList<>();
+            for (int id : top.toSortedArray()) {
+                returner.add(row(id));
+            }
+            return returner;
+        }
+    }
+
+    /**
+     * @param names  the dictionary the counts are indexed by
+     * @param counts the count of every name id, 0 for those to leave out
+     * @param k      the number of names to return
+     * @return The 'k' names with the highest counts, in decreasing order of
+     * count; names with equal counts in id order, i.e. in order of appearance
+     */
+    private List<Tuple<String, Integer>> topCounts(NameDictionary names, int[] counts, int k) {
+        IntTopK top = new IntTopK(k, (a, b) -> counts[b] - counts[a]);
+        for (int name = 0; name < counts.length; name++) {
+            if (counts[name] > 0) top.offer(name);
+        }
+        List<Tuple<String, Integer>> returner = new ArrayList<>();
+        for (int name : top.toSortedArray()) {
+            returner.add(new Tuple<>(names.name(name), counts[name]));
+        }
+        return returner;
     }
 
     /**
@@ -295,6 +866,7 @@ public class IMDBQueries {
      * @return best movies by year, starting from 1990 until 2010.
      */
     public List<Movie> queryMustSee(List<Movie> movies) {
+        QueryEvent event = QueryEvent.start("Must see", "list", movies.size());
         ArrayList<Movie> returner = new ArrayList<>();
         for (short i = 1990; i <= 2010; i++) {
             int finalI = i;
@@ -305,7 +877,34 @@ public class IMDBQueries {
             if (top != null) returner.add(top);
 
         }
-        return returner;
+        return event.end(returner);
+    }
+
+    /**
+     * Must See on a {@link MovieTable}, see {@link #queryMustSee(List)}. All
+     * years are answered in a single pass over the table.
+     *
+     * @param table the table of movies which is to be queried
+     * @return best movies by year, starting from 1990 until 2010.
+     */
+    public List<Movie> queryMustSee(MovieTable table) {
+        return ParallelScan.run(this.pool, table.size(), mustSee(table),
+                QueryEvent.start("Must see", "table", table.size()));
+    }
+
+    /**
+     * Must See as a {@link TableQuery}, see {@link #queryMustSee(MovieTable)}.
+     *
+     * @param table the table of movies which is to be queried
+     * @return The query, for one run
+     */
+    public TableQuery<int[], List<Movie>> mustSee(MovieTable table) {
+        return new FirstPerYearQuery(table, (a, b) -> Float.compare(table.ratingOrZero(b), table.ratingOrZero(a))) {
+            @Override
+            boolean accept(int id) {
+                return table.ratingCount(id) > 10000;
+            }
+        };
     }
 
     /**
@@ -317,6 +916,7 @@ public class IMDBQueries {
      * @return worst movies by year, starting from 1990 till (including) 2010.
      */
     public List<Movie> queryRottenTomatoes(List<Movie> movies) {
+        QueryEvent event = QueryEvent.start("Rotten tomatoes", "list", movies.size());
         ArrayList<Movie> returner = new ArrayList<>();
         for (short i = 1990; i <= 2010; i++) {
             int finalI = i;
@@ -327,6 +927,99 @@ public class IMDBQueries {
             if (top != null) returner.add(top);
 
         }
+        return event.end(returner);
+    }
+
+    /**
+     * Rotten Tomatoes on a {@link MovieTable}, see {@link #queryRottenTomatoes(List)}.
+     * All years are answered in a single pass over the table.
+     *
+     * @param table the table of movies which is to be queried
+     * @return worst movies by year, starting from 1990 till (including) 2010.
+     */
+    public List<Movie> queryRottenTomatoes(MovieTable table) {
+        return ParallelScan.run(this.pool, table.size(), rottenTomatoes(table),
+                QueryEvent.start("Rotten tomatoes", "table", table.size()));
+    }
+
+    /**
+     * Rotten Tomatoes as a {@link TableQuery}, see
+     * {@link #queryRottenTomatoes(MovieTable)}.
+     *
+     * @param table the table of movies which is to be queried
+     * @return The query, for one run
+     */
+    public TableQuery<int[], List<Movie>> rottenTomatoes(MovieTable table) {
+        return new FirstPerYearQuery(table, (a, b) -> Float.compare(table.rating(a), table.rating(b))) {
+            @Override
+            boolean accept(int id) {
+                return table.rating(id) > 0f;
+            }
+        };
+    }
+
+    /**
+     * Finds the first movie in an order for every year from 1990 to 2010,
+     * among those the subclass accepts; of movies which compare equal the
+     * one with the lowest id.
+     */
+    private abstract class FirstPerYearQuery implements TableQuery<int[], List<Movie>> {
+        private final MovieTable table;
+        private final IntComparator cmp;
+
+        FirstPerYearQuery(MovieTable table, IntComparator cmp) {
+            this.table = table;
+            this.cmp = cmp;
+        }
+
+        /**
+         * @return Whether the movie 'id' is a candidate
+         */
+        abstract boolean accept(int id);
+
+        @Override
+        public int[] newPartial() {
+            int[] first = new int[2010 - 1990 + 1];
+            Arrays.fill(first, -1);
+            return first;
+        }
+
+        @Override
+        public void scan(int[] first, int from, int to) {
+            YearIndex years = this.table.years();
+            for (int year = 1990; year <= 2010; year++) {
+                int slot = year - 1990;
+                int end = years.lowerBound(year, to);
+                for (int pos = years.lowerBound(year, from); pos < end; pos++) {
+                    int id = years.get(pos);
+                    if (accept(id) && (first[slot] == -1 || this.cmp.compare(id, first[slot]) < 0)) {
+                        first[slot] = id;
+                    }
+                }
+            }
+        }
+
+        @Override
+        public int[] merge(int[] left, int[] right) {
+            for (int slot = 0; slot < left.length; slot++) {
+                if (left[slot] == -1 || (right[slot] != -1 && this.cmp.compare(right[slot], left[slot]) < 0)) {
+                    left[slot] = right[slot];
+                }
+            }
+            return left;
+        }
+
+        @Override
+        public List<Movie> finish(int[] first) {
+            return moviesOf(this.table, first);
+        }
+    }
+
+    private List<Movie> moviesOf(MovieTable table, int[] ids) {
+        List<Movie> returner = new ArrayList<>();
+        for (int id : ids) {
+            if (id != -1) returner.add(table.movie(id));
+        }
         return returner;
     }
 
@@ -342,6 +1035,7 @@ public class IMDBQueries {
      */
     public List<Tuple<Tuple<String, String>, Integer>> queryMagicCouple(
             List<Movie> movies) {
+        QueryEvent event = QueryEvent.start("Magic Couples", "list", movies.size());
         ArrayList<Tuple<Tuple<String,String>, Integer>> returner = new ArrayList<>();
 
         Map<Tuple<String,String>, Integer> map = new HashMap<>();
@@ -365,29 +1059,365 @@ public class IMDBQueries {
         returner.sort((t1, t2) ->
                 Integer.compare(t2.second, t1.second));
 
-        return returner.subList(0, 10);
+        return event.end(returner.subList(0, Math.min(10, returner.size())));
+    }
+
+    /**
+     * Magic Couples on a {@link MovieTable}, see {@link #queryMagicCouple(List)}.
+     *
+     * @param table the table of movies which is to be queried
+     * @return report the top 10 pairs of actors and the number of movies they
+     * feature together. Sort by number of movies.
+     */
+    public List<Tuple<Tuple<String, String>, Integer>> queryMagicCouple(MovieTable table) {
+        return queryMagicCouple(table, 10);
+    }
+
+    /**
+     * Magic Couples on a {@link MovieTable}, see {@link #queryMagicCouple(List)}.
+     * Pairs with equal counts are sorted by the ids of their actors.
+     *
+     * @param table the table of movies which is to be queried
+     * @param k     the number of pairs to return
+     * @return report the top k pairs of actors and the number of movies they
+     * feature together. Sort by number of movies.
+     */
+    public List<Tuple<Tuple<String, String>, Integer>> queryMagicCouple(MovieTable table, int k) {
+        return ParallelScan.run(this.pool, table.size(), magicCouple(table, k),
+                QueryEvent.start("Magic Couples", "table", table.size()));
+    }
+
+    /**
+     * Magic Couples on a {@link MovieTable} in bounded memory, see
+     * {@link #queryMagicCouple(MovieTable, int)} and {@link HeavyHitters}:
+     * the exact query keeps a counter for every pair of actors who ever
+     * played together, this one a fixed number of counters.
+     *
+     * @param table    the table of movies which is to be queried
+     * @param k        the number of pairs to return
+     * @param settings the size of the counters and whether to verify
+     * @return the top k pairs of actors found and the number of movies they
+     * feature together, with bounds of those numbers
+     */
+    public HeavyHitters.Result<Tuple<String, String>> queryMagicCouple(MovieTable table, int k,
+                                                                       HeavyHitters.Settings settings) {
+        NameColumn cast = table.cast();
+        NameDictionary names = table.names();
+        return heavyHitters("Magic Couples", table, k, settings, (from, to, out) -> {
+            for (int id = from; id < to; id++) {
+                int end = cast.end(id);
+                for (int i = cast.start(id); i < end; i++)
+                    for (int j = i + 1; j < end; j++) {
+                        out.accept(pairKey(cast.get(i), cast.get(j)));
+                    }
+            }
+        }, key -> new Tuple<>(names.name((int) (key >>> 32)), names.name((int) key)));
+    }
+
+    /**
+     * Magic Couples on a {@link MovieTable} with exact counts in a fixed
+     * amount of memory, see {@link #queryMagicCouple(MovieTable, int)} and
+     * {@link SpillingCounter}: the pairs which do not fit into
+     * 'memoryBytes' are spilled to run files and added up partition by
+     * partition.
+     *
+     * @param table       the table of movies which is to be queried
+     * @param k           the number of pairs to return
+     * @param memoryBytes the heap the counts of the pairs may take
+     * @param tempDir     the directory to spill to, or null for the default
+     *                    temporary directory
+     * @return report the top k pairs of actors and the number of movies they
+     * feature together. Sort by number of movies.
+     * @throws IOException if spilling fails
+     */
+    public List<Tuple<Tuple<String, String>, Integer>> queryMagicCouple(MovieTable table, int k, long memoryBytes,
+                                                                         Path tempDir) throws IOException {
+        QueryEvent event = QueryEvent.start("Magic Couples, spilling", "table", table.size());
+        NameColumn cast = table.cast();
+        NameDictionary names = table.names();
+        List<Tuple<Long, Integer>> top;
+        try (SpillingCounter counter = new SpillingCounter(tempDir, SpillingCounter.maxKeys(this.pool, memoryBytes))) {
+            counter.count(this.pool, table.size(), (from, to, out) -> {
+                for (int id = from; id < to; id++) {
+                    int end = cast.end(id);
+                    for (int i = cast.start(id); i < end; i++)
+                        for (int j = i + 1; j < end; j++) {
+                            out.accept(pairKey(cast.get(i), cast.get(j)));
+                        }
+                }
+            });
+            top = counter.topK(this.pool, k);
+        }
+        List<Tuple<Tuple<String, String>, Integer>> returner = new ArrayList<>();
+        for (Tuple<Long, Integer> pair : top) {
+            returner.add(new Tuple<>(new Tuple<>(names.name((int) (pair.first >>> 32)),
+                    names.name((int) (long) pair.first)), pair.second));
+        }
+        return event.end(returner);
+    }
+
+    /**
+     * Magic Couples as a {@link TableQuery}, see
+     * {@link #queryMagicCouple(MovieTable, int)}.
+     *
+     * @param table the table of movies which is to be queried
+     * @param k     the number of pairs to return
+     * @return The query, for one run
+     */
+    public TableQuery<LongIntMap, List<Tuple<Tuple<String, String>, Integer>>> magicCouple(MovieTable table, int k) {
+        NameColumn cast = table.cast();
+        return new TableQuery<LongIntMap, List<Tuple<Tuple<String, String>, Integer>>>() {
+            @Override
+            public LongIntMap newPartial() {
+                return new LongIntMap();
+            }
+
+            @Override
+            public void scan(LongIntMap counts, int from, int to) {
+                for (int id = from; id < to; id++) {
+                    int end = cast.end(id);
+                    for (int i = cast.start(id); i < end; i++)
+                        for (int j = i + 1; j < end; j++) {
+                            counts.addTo(pairKey(cast.get(i), cast.get(j)), 1);
+                        }
+                }
+            }
+
+            @Override
+            public LongIntMap merge(LongIntMap left, LongIntMap right) {
+                // Add the smaller counter to the larger one
+                LongIntMap into = left.size() >= right.size() ? left : right;
+                (into == left ? right : left).forEach((key, value) -> into.addTo(key, value));
+                return into;
+            }
+
+            @Override
+            public List<Tuple<Tuple<String, String>, Integer>> finish(LongIntMap counts) {
+                NameDictionary names = table.names();
+                List<Tuple<Tuple<String, String>, Integer>> returner = new ArrayList<>();
+                for (Tuple<Long, Integer> pair : topCounts(counts, k)) {
+                    long key = pair.first;
+                    returner.add(new Tuple<>(new Tuple<>(names.name((int) (key >>> 32)), names.name((int) key)),
+                            pair.second));
+                }
+                return returner;
+            }
+
+            @Override
+            public boolean largePartials() {
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Emits the keys to count for a range of movies.
+     */
+    interface KeyScan {
+        void scan(int from, int to, LongConsumer out);
+    }
+
+    /**
+     * Counts the keys of all movies into {@link HeavyHitters}, in parallel
+     * like {@link ParallelScan#run}, and if the settings ask for it counts
+     * the candidates exactly in a second scan.
+     *
+     * @param name   the name of the query, for its {@link QueryEvent}s
+     * @param decode makes the row of a key
+     */
+    private <T> HeavyHitters.Result<T> heavyHitters(String name, MovieTable table, int k,
+                                                    HeavyHitters.Settings settings, KeyScan keys,
+                                                    LongFunction<T> decode) {
+        HeavyHitters counts = ParallelScan.run(this.pool, table.size(),
+                new TableQuery<HeavyHitters, HeavyHitters>() {
+                    @Override
+                    public HeavyHitters newPartial() {
+                        return new HeavyHitters(settings);
+                    }
+
+                    @Override
+                    public void scan(HeavyHitters partial, int from, int to) {
+                        keys.scan(from, to, partial::offer);
+                    }
+
+                    @Override
+                    public HeavyHitters merge(HeavyHitters left, HeavyHitters right) {
+                        return left.merge(right);
+                    }
+
+                    @Override
+                    public HeavyHitters finish(HeavyHitters partial) {
+                        return partial;
+                    }
+
+                    @Override
+                    public boolean largePartials() {
+                        return true;
+                    }
+                }, QueryEvent.start(name + ", approximate", "table", table.size()));
+        long[] candidates = counts.candidates();
+        if (!settings.isVerify()) {
+            return counts.topK(k, candidates, null, decode);
+        }
+
+        LongIntMap index = new LongIntMap(candidates.length);
+        for (int i = 0; i < candidates.length; i++) {
+            index.put(candidates[i], i);
+        }
+        int[] exact = ParallelScan.run(this.pool, table.size(), new TableQuery<int[], int[]>() {
+            @Override
+            public int[] newPartial() {
+                return new int[candidates.length];
+            }
+
+            @Override
+            public void scan(int[] partial, int from, int to) {
+                keys.scan(from, to, key -> {
+                    int candidate = index.get(key, -1);
+                    if (candidate >= 0) {
+                        partial[candidate]++;
+                    }
+                });
+            }
+
+            @Override
+            public int[] merge(int[] left, int[] right) {
+                for (int i = 0; i < left.length; i++) {
+                    left[i] += right[i];
+                }
+                return left;
+            }
+
+            @Override
+            public int[] finish(int[] partial) {
+                return partial;
+            }
+
+            @Override
+            public boolean largePartials() {
+                return true;
+            }
+        }, QueryEvent.start(name + ", verify", "table", table.size()));
+        return counts.topK(k, candidates, exact, decode);
+    }
+
+    /**
+     * @param counts the counts of keys
+     * @param k      the number of keys to return
+     * @return The 'k' keys of 'counts' with the highest counts, in
+     * decreasing order of count, keys with equal counts in increasing order
+     */
+    static List<Tuple<Long, Integer>> topCounts(LongIntMap counts, int k) {
+        // The heap holds slots of these arrays. The one slot not in the heap
+        // takes the next key, offering it frees either that slot or another
+        long[] keys = new long[k + 1];
+        int[] values = new int[k + 1];
+        IntTopK top = new IntTopK(k, (a, b) -> values[a] != values[b]
+                ? values[b] - values[a] : Long.compare(keys[a], keys[b]));
+        int[] free = new int[1];
+        counts.forEach((key, value) -> {
+            int slot = free[0];
+            keys[slot] = key;
+            values[slot] = value;
+            int displaced = top.offer(slot);
+            free[0] = displaced == -1 ? slot + 1 : displaced;
+        });
+        List<Tuple<Long, Integer>> returner = new ArrayList<>();
+        for (int slot : top.toSortedArray()) {
+            returner.add(new Tuple<>(keys[slot], values[slot]));
+        }
+        return returner;
+    }
+
+    /**
+     * @return The same key for (a, b) and (b, a): the smaller id in the high
+     * and the larger one in the low 32 bits
+     */
+    private static long pairKey(int a, int b) {
+        return a < b ? (long) a << 32 | b : (long) b << 32 | a;
     }
 
 
     public static void main(String argv[]) throws IOException {
         String moviesPath = "./data/movies/";
-
-        if (argv.length == 1) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        String snapshotPath = null;
+        int queryThreads = 1;
+        MovieCompactor compactor = null;
+        String jfrPath = null;
+
+        int jfr = Arrays.asList(argv).indexOf("--jfr");
+        if (jfr >= 0 && jfr + 1 < argv.length) {
+            jfrPath = argv[jfr + 1];
+            List<String> rest = new ArrayList<>(Arrays.asList(argv));
+            rest.subList(jfr, jfr + 2).clear();
+            argv = rest.toArray(new String[0]);
+        }
+        if (argv.length >= 1 && argv.length <= 5 && !Arrays.asList(argv).contains("--jfr")) {
             moviesPath = argv[0];
+            if (argv.length >= 2) threads = Integer.parseInt(argv[1]);
+            if (argv.length >= 3 && !argv[2].equals("-")) snapshotPath = argv[2];
+            if (argv.length >= 4) queryThreads = Integer.parseInt(argv[3]);
+            if (argv.length == 5) compactor = new MovieCompactor(MovieCompactor.Descriptions.valueOf(argv[4]));
         } else if (argv.length != 0) {
-            System.out.println("Call with: IMDBQueries.jar <moviesPath>");
+            System.out.println("Call with: IMDBQueries.jar <moviesPath> [loaderThreads] [snapshotFile or -] [queryThreads]"
+                    + " [compact movies, keeping descriptions as STRING, UTF8 or DEFLATE] [--jfr recordingFile]");
             System.exit(0);
         }
         System.out.println(moviesPath);
+        QueryProfiler profiler = jfrPath == null ? null : new QueryProfiler(Paths.get(jfrPath));
+        ForkJoinPool queryPool = queryThreads > 1 ? new ForkJoinPool(queryThreads) : null;
+
+        MovieTable movies;
+        if (snapshotPath != null) {
+            long time = System.currentTimeMillis();
+            movies = MovieReader.readMovieTableFrom(new File(moviesPath), new File(snapshotPath));
+            System.out.println("Opened " + movies.size() + " movies in " + (System.currentTimeMillis() - time) + " ms");
+        } else {
+            LoadStats stats = new LoadStats();
+            ForkJoinPool loaders = new ForkJoinPool(threads);
+            try {
+                movies = new MovieTable(MovieReader.readMoviesFrom(new File(moviesPath), loaders, stats, compactor));
+            } finally {
+                loaders.shutdown();
+            }
+            System.out.println("Loaded " + stats);
+        }
+        {
+            long time = System.currentTimeMillis();
+            TextIndex index = movies.descriptionIndex();
+            System.out.println("Indexed " + index.termCount() + " description terms in "
+                    + (System.currentTimeMillis() - time) + " ms");
+        }
+        System.out.println("");
 
-        List<Movie> movies = MovieReader.readMoviesFrom(new File(moviesPath));
+        // The queries which scan the movies share one scan, the others use the description index
+        IMDBQueries batchQueries = new IMDBQueries(queryPool);
+        QueryBatch batch = new QueryBatch(movies, queryPool);
+        QueryBatch.Result<List<Tuple<Movie, String>>> allRounder = batch.add(
+                "All-rounder", batchQueries.allRounder(movies, 10));
+        QueryBatch.Result<List<Tuple<Movie, Long>>> underTheRadar = batch.add(
+                "Under the radar", batchQueries.underTheRadar(movies, 10));
+        QueryBatch.Result<List<Movie>> colossalFailure = batch.add(
+                "Colossal failure", batchQueries.colossalFailure(movies));
+        QueryBatch.Result<List<Tuple<String, Integer>>> uncreativeWriters = batch.add(
+                "Uncreative writers", batchQueries.uncreativeWriters(movies, 10));
+        QueryBatch.Result<List<Tuple<String, Integer>>> workHorse = batch.add(
+                "Workhorse", batchQueries.workHorse(movies, 10));
+        QueryBatch.Result<List<Movie>> mustSee = batch.add("Must see", batchQueries.mustSee(movies));
+        QueryBatch.Result<List<Movie>> rottenTomatoes = batch.add(
+                "Rotten tomatoes", batchQueries.rottenTomatoes(movies));
+        QueryBatch.Result<List<Tuple<Tuple<String, String>, Integer>>> magicCouple = batch.add(
+                "Magic Couples", batchQueries.magicCouple(movies, 10));
+        batch.run();
+        System.out.println("Ran " + batch.size() + " queries in one scan of " + movies.size() + " movies in "
+                + batch.getMillis() + " ms");
+        System.out.println("");
 
         System.out.println("All-rounder");
         {
-            IMDBQueries queries = new IMDBQueries();
-            long time = System.currentTimeMillis();
-            List<Tuple<Movie, String>> result = queries.queryAllRounder(movies);
-            System.out.println("Time:" + (System.currentTimeMillis() - time));
+            List<Tuple<Movie, String>> result = allRounder.get();
+            System.out.println("Time:" + allRounder.getMillis());
 
             if (result != null && !result.isEmpty() && result.size() == 10) {
                 for (Tuple<Movie, String> tuple : result) {
@@ -402,10 +1432,8 @@ public class IMDBQueries {
 
         System.out.println("Under the radar");
         {
-            IMDBQueries queries = new IMDBQueries();
-            long time = System.currentTimeMillis();
-            List<Tuple<Movie, Long>> result = queries.queryUnderTheRadar(movies);
-            System.out.println("Time:" + (System.currentTimeMillis() - time));
+            List<Tuple<Movie, Long>> result = underTheRadar.get();
+            System.out.println("Time:" + underTheRadar.getMillis());
 
             if (result != null && !result.isEmpty() && result.size() <= 10) {
                 for (Tuple<Movie, Long> tuple : result) {
@@ -421,7 +1449,7 @@ public class IMDBQueries {
 
         System.out.println("The pillars of storytelling");
         {
-            IMDBQueries queries = new IMDBQueries();
+            IMDBQueries queries = new IMDBQueries(queryPool);
             long time = System.currentTimeMillis();
             List<Tuple<Movie, Integer>> result = queries
                     .queryPillarsOfStorytelling(movies);
@@ -440,7 +1468,7 @@ public class IMDBQueries {
 
         System.out.println("The red planet");
         {
-            IMDBQueries queries = new IMDBQueries();
+            IMDBQueries queries = new IMDBQueries(queryPool);
             long time = System.currentTimeMillis();
             List<Movie> result = queries.queryRedPlanet(movies);
             System.out.println("Time:" + (System.currentTimeMillis() - time));
@@ -457,10 +1485,8 @@ public class IMDBQueries {
 
         System.out.println("ColossalFailure");
         {
-            IMDBQueries queries = new IMDBQueries();
-            long time = System.currentTimeMillis();
-            List<Movie> result = queries.queryColossalFailure(movies);
-            System.out.println("Time:" + (System.currentTimeMillis() - time));
+            List<Movie> result = colossalFailure.get();
+            System.out.println("Time:" + colossalFailure.getMillis());
 
             if (result != null && !result.isEmpty()) {
                 for (Movie movie : result) {
@@ -475,11 +1501,8 @@ public class IMDBQueries {
 
         System.out.println("Uncreative writers");
         {
-            IMDBQueries queries = new IMDBQueries();
-            long time = System.currentTimeMillis();
-            List<Tuple<String, Integer>> result = queries
-                    .queryUncreativeWriters(movies);
-            System.out.println("Time:" + (System.currentTimeMillis() - time));
+            List<Tuple<String, Integer>> result = uncreativeWriters.get();
+            System.out.println("Time:" + uncreativeWriters.getMillis());
 
             if (result != null && !result.isEmpty() && result.size() <= 10) {
                 for (Tuple<String, Integer> tuple : result) {
@@ -493,10 +1516,8 @@ public class IMDBQueries {
 
         System.out.println("Workhorse");
         {
-            IMDBQueries queries = new IMDBQueries();
-            long time = System.currentTimeMillis();
-            List<Tuple<String, Integer>> result = queries.queryWorkHorse(movies);
-            System.out.println("Time:" + (System.currentTimeMillis() - time));
+            List<Tuple<String, Integer>> result = workHorse.get();
+            System.out.println("Time:" + workHorse.getMillis());
 
             if (result != null && !result.isEmpty() && result.size() <= 10) {
                 for (Tuple<String, Integer> actor : result) {
@@ -510,10 +1531,8 @@ public class IMDBQueries {
 
         System.out.println("Must see");
         {
-            IMDBQueries queries = new IMDBQueries();
-            long time = System.currentTimeMillis();
-            List<Movie> result = queries.queryMustSee(movies);
-            System.out.println("Time:" + (System.currentTimeMillis() - time));
+            List<Movie> result = mustSee.get();
+            System.out.println("Time:" + mustSee.getMillis());
 
             if (result != null && !result.isEmpty() && !result.isEmpty()) {
                 for (Movie m : result) {
@@ -528,10 +1547,8 @@ public class IMDBQueries {
 
         System.out.println("Rotten tomatoes");
         {
-            IMDBQueries queries = new IMDBQueries();
-            long time = System.currentTimeMillis();
-            List<Movie> result = queries.queryRottenTomatoes(movies);
-            System.out.println("Time:" + (System.currentTimeMillis() - time));
+            List<Movie> result = rottenTomatoes.get();
+            System.out.println("Time:" + rottenTomatoes.getMillis());
 
             if (result != null && !result.isEmpty() && !result.isEmpty()) {
                 for (Movie m : result) {
@@ -546,11 +1563,8 @@ public class IMDBQueries {
 
         System.out.println("Magic Couples");
         {
-            IMDBQueries queries = new IMDBQueries();
-            long time = System.currentTimeMillis();
-            List<Tuple<Tuple<String, String>, Integer>> result = queries
-                    .queryMagicCouple(movies);
-            System.out.println("Time:" + (System.currentTimeMillis() - time));
+            List<Tuple<Tuple<String, String>, Integer>> result = magicCouple.get();
+            System.out.println("Time:" + magicCouple.getMillis());
 
             if (result != null && !result.isEmpty()) {
                 for (Tuple<Tuple<String, String>, Integer> tuple : result) {
@@ -563,5 +1577,11 @@ public class IMDBQueries {
             System.out.println("");
 
         }
+
+        if (profiler != null) {
+            profiler.close();
+            System.out.println("Recorded " + jfrPath);
+            QueryProfiler.printSummary(Paths.get(jfrPath), System.out);
+        }
     }
 }
\ No newline at end of file
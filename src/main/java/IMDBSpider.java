@@ -1,26 +1,47 @@
-import com.fasterxml.jackson.core.JsonEncoding;
-import com.fasterxml.jackson.core.JsonFactory;
-import com.fasterxml.jackson.core.JsonGenerator;
-import com.fasterxml.jackson.core.util.DefaultIndenter;
-import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.jsoup.Connection;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class IMDBSpider {
-    ExecutorService executorService;
+
+    /**
+     * Where search and title pages are fetched from, see {@link #setBaseUrl(String)}.
+     */
+    private String baseUrl = "http://akas.imdb.com";
+    /**
+     * The network stages mostly wait, so their threads don't depend on the cores.
+     */
+    private int fetchThreads = 8;
+    private int parseThreads = Runtime.getRuntime().availableProcessors();
+    private int queueCapacity = 64;
+    private RateLimiter rateLimiter = new RateLimiter(10, 10);
+    private HttpCache cache;
+    private MovieSink.Format format = MovieSink.Format.FILES;
+    private long segmentBytes = DEFAULT_SEGMENT_BYTES;
+    private int maxAttempts = 3;
+    private long backoffMillis = 5000;
+    private final CrawlMetrics metrics = new CrawlMetrics();
+
+    /**
+     * The journal in the output directory which makes a crawl resumable.
+     */
+    static final String JOURNAL_FILE = "crawl.journal";
+    static final long DEFAULT_CACHE_BYTES = 1L << 30;
+    static final long DEFAULT_SEGMENT_BYTES = 64L << 20;
 
     public IMDBSpider() {
     }
@@ -39,6 +60,10 @@ public class IMDBSpider {
      * from movie’s URL and store to a JSON file in directory 'outputDir':
      *    http://www.imdb.com/title/tt0499549/?ref_=fn_al_tt_1 for Avatar - store
      * </pre>
+     * The titles go through a {@link CrawlPipeline}; the method returns when all
+     * of them have been written or have failed {@link #setRetries(int, long) too
+     * often}. Every movie is recorded in a {@link CrawlJournal} in 'outputDir', so
+     * a second call skips the movies written before.
      *
      * @param movieListJSON JSON file containing movie titles
      * @param outputDir     output directory for JSON files with metadata of movies.
@@ -48,15 +73,108 @@ public class IMDBSpider {
             throws IOException {
         ObjectMapper mapper = new ObjectMapper();
         JsonNode m = mapper.readValue(new File(movieListJSON), JsonNode.class);
-        int threads = Runtime.getRuntime().availableProcessors();
-        if (threads>8) threads=8;
-        Logger.getAnonymousLogger().log(Level.INFO, "Going to use " + threads + " threads.");
-        executorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        List<String> movieNames = new ArrayList<>();
+        m.forEach(f -> movieNames.add(f.get("movie_name").asText()));
+
+        Logger.getAnonymousLogger().log(Level.INFO, "Going to use " + this.fetchThreads
+                + " fetch threads and " + this.parseThreads + " parse threads.");
+        try (CrawlJournal journal = CrawlJournal.open(new File(outputDir, JOURNAL_FILE),
+                this.maxAttempts, this.backoffMillis);
+             MovieSink sink = MovieSink.open(this.format, new File(outputDir), this.segmentBytes)) {
+            while (true) {
+                long now = System.currentTimeMillis();
+                List<String> pending = journal.pending(movieNames, now);
+                if (pending.isEmpty()) {
+                    long retry = journal.nextRetryTime();
+                    if (retry < 0) break;
+                    Thread.sleep(Math.max(0, retry - now));
+                    continue;
+                }
+                Logger.getAnonymousLogger().log(Level.INFO, "Crawling " + pending.size() + " movies, "
+                        + journal.getDone() + " of " + movieNames.size() + " done before.");
+                for (String movieName : pending) {
+                    if (journal.getAttempts(movieName) > 0) {
+                        this.metrics.retried();
+                    }
+                }
+                new CrawlPipeline(this, sink, this.fetchThreads, this.parseThreads,
+                        this.queueCapacity, journal).run(pending);
+            }
+            Logger.getAnonymousLogger().log(Level.INFO, "Crawled " + journal.getDone() + " of "
+                    + movieNames.size() + " movies, " + journal.getFailed() + " failed.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while crawling", e);
+        }
+    }
+
+    /**
+     * @return The metrics of the crawls of this spider
+     */
+    public CrawlMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * @param baseUrl The scheme and host to fetch pages from instead of
+     *                http://akas.imdb.com, e.g. a {@link StubImdbServer}
+     */
+    public void setBaseUrl(String baseUrl) {
+        this.baseUrl = baseUrl;
+    }
+
+    /**
+     * @param fetchThreads The number of threads of each of the two network stages
+     */
+    public void setFetchThreads(int fetchThreads) {
+        this.fetchThreads = fetchThreads;
+    }
+
+    /**
+     * @param parseThreads The number of threads parsing title pages
+     */
+    public void setParseThreads(int parseThreads) {
+        this.parseThreads = parseThreads;
+    }
 
-        m.forEach(f -> writeMovieThreaded(f.get("movie_name").asText(), outputDir));
+    /**
+     * @param queueCapacity The number of movies which may wait between two stages
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
 
-        executorService.shutdown();
+    /**
+     * @param rateLimiter The limiter every request has to pass, per host
+     */
+    public void setRateLimiter(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
 
+    /**
+     * @param cache The cache to fetch pages through, or null to always fetch them
+     */
+    public void setCache(HttpCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * @param format       How to store the movies in the output directory
+     * @param segmentBytes The size at which a segment file is closed, for the
+     *                     segment formats
+     */
+    public void setOutputFormat(MovieSink.Format format, long segmentBytes) {
+        this.format = format;
+        this.segmentBytes = segmentBytes;
+    }
+
+    /**
+     * @param maxAttempts   The number of times a movie is tried
+     * @param backoffMillis The delay before the first retry, doubled on every further one
+     */
+    public void setRetries(int maxAttempts, long backoffMillis) {
+        this.maxAttempts = maxAttempts;
+        this.backoffMillis = backoffMillis;
     }
 
     /**
@@ -66,162 +184,295 @@ public class IMDBSpider {
      * @return clean text
      */
     protected static String cleanText(String text) {
-        return text.replaceAll("\\<.*?>", "").replace("&nbsp;", " ")
-                .replace("\n", " ").replaceAll("\\s+", " ").trim();
+        // Same as removing "\\<.*?>", replacing "&nbsp;" and "\n" by spaces and
+        // collapsing "\\s+", in two passes without regexes
+        StringBuilder withoutTags = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '<') {
+                int end = i + 1;
+                while (end < text.length() && text.charAt(end) != '>' && !isLineTerminator(text.charAt(end))) {
+                    end++;
+                }
+                if (end < text.length() && text.charAt(end) == '>') {
+                    i = end;
+                    continue;
+                }
+            }
+            withoutTags.append(c);
+        }
+        StringBuilder clean = new StringBuilder(withoutTags.length());
+        boolean space = false;
+        for (int i = 0; i < withoutTags.length(); i++) {
+            char c = withoutTags.charAt(i);
+            if (c == '&' && i + 6 <= withoutTags.length() && withoutTags.substring(i, i + 6).equals("&nbsp;")) {
+                space = true;
+                i += 5;
+            } else if (c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r') {
+                space = true;
+            } else {
+                if (space) clean.append(' ');
+                space = false;
+                clean.append(c);
+            }
+        }
+        if (space) clean.append(' ');
+        return clean.toString().trim();
     }
 
-    protected void writeMovieThreaded(String movieName, String outputDir) {
-        executorService.submit(new Callable<Void>() {
-            public Void call() {
-                writeMovie(movieName, outputDir);
-                return null;
-            }
-        });
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
     }
 
+    /**
+     * Fetches, parses and writes a single movie on the calling thread.
+     *
+     * @param movieName the title to search for
+     * @param outputDir output directory for the JSON file
+     */
     protected void writeMovie(String movieName, String outputDir) {
         try {
-            Movie movie = new Movie();
-            Document doc = Jsoup.connect(
-                    "http://akas.imdb.com/find?q=" +
-                            movieName.replaceAll("[^\\x00-\\x7F]", "") +
-                            "&s=tt&ttype=ft")
-                    .ignoreHttpErrors(true).timeout(10000).get();
-
-            // Get URL
-            Element firstElementInTable = doc.select("td.result_text").first();
-            if (firstElementInTable != null && firstElementInTable.children().size() > 0) {
-                movie.setTitle(firstElementInTable.child(0).text());
-                movie.setUrl(firstElementInTable.child(0).attr("abs:href"));
-            }
+            Movie movie = parseSearchPage(fetchSearchPage(movieName));
+            parseMoviePage(fetchMoviePage(movie), movie);
+            writeMovieJson(movie, movieName, outputDir);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            Logger.getLogger("IMDBSpider").log(Level.WARNING, "Could not read information for movie: " + movieName, e);
+        }
+    }
 
-            doc = Jsoup.connect(movie.getUrl()).ignoreHttpErrors(true).timeout(10000).get();
-
-            // Get Cast
-            Element actors = doc.select("table.cast_list").first();
-            if (actors != null && actors.children().size() > 0) {
-                for (int i = 1; i < actors.child(0).children().size(); i++) {
-                    Element child = actors.child(0).child(i);
-                    if (child.className().equals("odd") || child.className().equals("even")) {
-                        String actor = child.select("span.itemprop").text();
-                        String role = child.select("td.character").first().child(0).text();
-                        movie.getCastList().add(actor);
-                        movie.getCharacterList().add(role);
-                    }
+    /**
+     * @param movieName the title to search for
+     * @return The IMDB search results for the title
+     * @throws IOException if the page cannot be fetched
+     */
+    protected Document fetchSearchPage(String movieName) throws IOException, InterruptedException {
+        return fetch(this.baseUrl + "/find?q=" +
+                movieName.replaceAll("[^\\x00-\\x7F]", "") +
+                "&s=tt&ttype=ft");
+    }
+
+    /**
+     * @param doc the IMDB search results
+     * @return A movie with the title and URL of the first result
+     * @throws IOException if there is no result
+     */
+    protected Movie parseSearchPage(Document doc) throws IOException {
+        Movie movie = new Movie();
+        // Get URL
+        Element firstElementInTable = doc.select("td.result_text").first();
+        if (firstElementInTable != null && firstElementInTable.children().size() > 0) {
+            movie.setTitle(firstElementInTable.child(0).text());
+            movie.setUrl(firstElementInTable.child(0).attr("abs:href"));
+        }
+        if (movie.getUrl() == null || movie.getUrl().isEmpty()) {
+            throw new IOException("No search result");
+        }
+        return movie;
+    }
+
+    /**
+     * @param movie a movie with its URL
+     * @return The title page of the movie
+     * @throws IOException if the page cannot be fetched
+     */
+    protected Document fetchMoviePage(Movie movie) throws IOException, InterruptedException {
+        return fetch(movie.getUrl());
+    }
+
+    /**
+     * Extracts the metadata of a movie from its title page.
+     *
+     * @param doc   the title page
+     * @param movie the movie to fill in
+     */
+    protected void parseMoviePage(Document doc, Movie movie) {
+        MoviePageExtractor.extract(doc, movie);
+    }
+
+    /**
+     * Extracts the metadata of a movie from its title page with one CSS query
+     * per attribute. This is what {@link MoviePageExtractor} does in a single
+     * pass; it is kept as reference.
+     *
+     * @param doc   the title page
+     * @param movie the movie to fill in
+     */
+    static void parseMoviePageBySelectors(Document doc, Movie movie) {
+        // Get Cast
+        Element actors = doc.select("table.cast_list").first();
+        if (actors != null && actors.children().size() > 0) {
+            for (int i = 1; i < actors.child(0).children().size(); i++) {
+                Element child = actors.child(0).child(i);
+                if (child.className().equals("odd") || child.className().equals("even")) {
+                    String actor = child.select("span.itemprop").text();
+                    String role = child.select("td.character").first().child(0).text();
+                    movie.getCastList().add(actor);
+                    movie.getCharacterList().add(role);
                 }
             }
-            // Get Director
-            Elements directors = doc.select("div.credit_summary_item > span[itemprop=director]");
-            directors.forEach(d -> movie.getDirectorList().add(d.text().replace(",","")));
-
-            // Get Year
-            Element year = doc.select("#titleYear").first();
-            if (year != null) {
-                movie.setYear(year.text().substring(1, 5));
-            }
+        }
+        // Get Director
+        Elements directors = doc.select("div.credit_summary_item > span[itemprop=director]");
+        directors.forEach(d -> movie.getDirectorList().add(d.text().replace(",","")));
+
+        // Get Year
+        Element year = doc.select("#titleYear").first();
+        if (year != null) {
+            movie.setYear(year.text().substring(1, 5));
+        }
 
-            //Get RatingValue
-            Element ratingVal = doc.select("div.ratingValue span[itemprop*=ratingValue]").first();
-            if (ratingVal != null) movie.setRatingValue(ratingVal.text());
+        //Get RatingValue
+        Element ratingVal = doc.select("div.ratingValue span[itemprop*=ratingValue]").first();
+        if (ratingVal != null) movie.setRatingValue(ratingVal.text());
 
-            //Get RatingCount
-            Element ratingCount = doc.select("div.imdbRating span[itemprop*=ratingCount]").first();
-            if (ratingCount != null) movie.setRatingCount(ratingCount.text());
+        //Get RatingCount
+        Element ratingCount = doc.select("div.imdbRating span[itemprop*=ratingCount]").first();
+        if (ratingCount != null) movie.setRatingCount(ratingCount.text());
 
-            //Get Duration
-            Element duration = doc.select("div.subtext").first().select("time").first();
-            if (duration != null) movie.setDuration(duration.text());
+        //Get Duration
+        Element duration = doc.select("div.subtext").first().select("time").first();
+        if (duration != null) movie.setDuration(duration.text());
 
-            // Get Story
-            Element story = doc.select("#titleStoryLine p").first();
-            if (story != null) movie.setDescription(story.text());
+        // Get Story
+        Element story = doc.select("#titleStoryLine p").first();
+        if (story != null) movie.setDescription(story.text());
 
-            // Get Gengres
-            Elements genres = doc.select("div[itemprop*=genre]").first().select("a[href^=/genre");
-            if (genres != null) genres.forEach(f -> movie.getGenreList().add(f.text()));
+        // Get Gengres
+        Elements genres = doc.select("div[itemprop*=genre]").first().select("a[href^=/genre");
+        if (genres != null) genres.forEach(f -> movie.getGenreList().add(f.text()));
 
-            Element details = doc.select("#titleDetails").first();
-            // Get Countries
-            Elements countries = details.select("a[href*=/search/title?countries");
-            if (countries != null) countries.forEach(f -> movie.getCountryList().add(f.text()));
+        Element details = doc.select("#titleDetails").first();
+        // Get Countries
+        Elements countries = details.select("a[href*=/search/title?countries");
+        if (countries != null) countries.forEach(f -> movie.getCountryList().add(f.text()));
 
-            // Get Budget and Gross
-            Element gross = details.select(":containsOwn(Gross:)").first();
-            Element budget = details.select(":containsOwn(Budget:)").first();
-            if (budget!=null) movie.setBudget(budget.parent().ownText());
-            if (gross!=null) movie.setGross(gross.parent().ownText());
+        // Get Budget and Gross
+        Element gross = details.select(":containsOwn(Gross:)").first();
+        Element budget = details.select(":containsOwn(Budget:)").first();
+        if (budget!=null) movie.setBudget(budget.parent().ownText());
+        if (gross!=null) movie.setGross(gross.parent().ownText());
+    }
 
+    /**
+     * Stores a movie as JSON file in 'outputDir', named after 'movieName'.
+     *
+     * @param movie     the movie
+     * @param movieName the title the movie was searched by
+     * @param outputDir output directory for JSON files with metadata of movies.
+     * @return The file written
+     * @throws IOException if the file cannot be written
+     */
+    protected File writeMovieJson(Movie movie, String movieName, String outputDir) throws IOException {
+        return writeMovieJson(movie, movieName, new MovieFileSink(new File(outputDir)));
+    }
 
+    /**
+     * Stores a movie in 'sink'.
+     *
+     * @param movie     the movie
+     * @param movieName the title the movie was searched by
+     * @param sink      where to store the movie
+     * @return The file the movie is stored in
+     * @throws IOException if the movie cannot be written
+     */
+    protected File writeMovieJson(Movie movie, String movieName, MovieSink sink) throws IOException {
         System.out.println(movie.toString());
+        return sink.write(movie, movieName);
+    }
 
+    /**
+     * Fetches a page once the rate limiter allows another request to its host,
+     * through the cache if there is one.
+     *
+     * @param url the URL of the page
+     * @return The page
+     * @throws IOException if the page cannot be fetched
+     */
+    protected Document fetch(String url) throws IOException, InterruptedException {
+        if (this.cache != null) {
+            HttpCache.Page page = this.cache.fetch(url, this.rateLimiter, this.metrics);
+            return Jsoup.parse(new ByteArrayInputStream(page.getBody()), page.getCharset(), page.getUrl());
+        }
+        this.rateLimiter.acquire(url);
+        return execute(Jsoup.connect(url).ignoreHttpErrors(true).timeout(10000), this.metrics).parse();
+    }
 
-        JsonFactory jfactory = new JsonFactory();
-        JsonGenerator jGenerator = null;
+    /**
+     * Sends a request, counting it as in flight and its response in 'metrics'.
+     *
+     * @param connection the request
+     * @param metrics    the metrics to count in, or null
+     * @return The response
+     * @throws IOException if there is no response
+     */
+    static Connection.Response execute(Connection connection, CrawlMetrics metrics) throws IOException {
+        if (metrics == null) {
+            return connection.execute();
+        }
+        metrics.requestStarted();
+        int status = -1;
         try {
-            jGenerator = jfactory.createGenerator(new File(
-                    outputDir + "/" + movieName.replaceAll("[^a-zA-Z0-9.-]", "_") + ".json"), JsonEncoding.UTF8);
-            DefaultPrettyPrinter pp = new DefaultPrettyPrinter();
-            pp.indentArraysWith( DefaultIndenter.SYSTEM_LINEFEED_INSTANCE );
-            jGenerator.setPrettyPrinter(pp);
-            jGenerator.writeStartArray();
-            jGenerator.writeStartObject();
-            jGenerator.writeStringField("url", movie.getUrl());
-            jGenerator.writeStringField("title", movie.getTitle());
-            jGenerator.writeStringField("year", movie.getYear());
-            arrayListToJSONString(jGenerator, "genreList", movie.getGenreList());
-            arrayListToJSONString(jGenerator, "countryList", movie.getCountryList());
-            jGenerator.writeStringField("description", movie.getDescription());
-            jGenerator.writeStringField("budget", movie.getBudget());
-            jGenerator.writeStringField("gross", movie.getGross());
-            jGenerator.writeStringField("ratingValue", movie.getRatingValue());
-            jGenerator.writeStringField("ratingCount", movie.getRatingCount());
-            jGenerator.writeStringField("duration", movie.getDuration());
-            arrayListToJSONString(jGenerator, "castList", movie.getCastList());
-            arrayListToJSONString(jGenerator, "directorList", movie.getDirectorList());
-            arrayListToJSONString(jGenerator, "characterList", movie.getCharacterList());
-
-            jGenerator.writeEndObject();
-            jGenerator.writeEndArray();
-            jGenerator.close();
-
-
-        } catch (IOException e) {
-            e.printStackTrace();
+            Connection.Response response = connection.execute();
+            status = response.statusCode();
+            return response;
+        } finally {
+            metrics.requestFinished(status);
         }
-
-
-    } catch(Exception e) {
-        Logger.getLogger("IMDBSpider").log(Level.WARNING, "Could not read information for movie: " + movieName, e);
     }
 
-}
-
 
     public static void main(String argv[]) throws IOException {
         String moviesPath = "./data/movies.json";
         String outputDir = "./data";
 
-        if (argv.length == 2) {
+        IMDBSpider sp = new IMDBSpider();
+        String cacheDir = null;
+        boolean replay = false;
+        int metricsPort = -1;
+        int i = 0;
+        if (argv.length >= 2 && !argv[0].startsWith("--")) {
             moviesPath = argv[0];
             outputDir = argv[1];
-        } else if (argv.length != 0) {
-            System.out.println("Call with: IMDBSpider.jar <moviesPath> <outputDir>");
-            System.exit(0);
+            i = 2;
         }
-
-        IMDBSpider sp = new IMDBSpider();
-        sp.fetchIMDBMovies(moviesPath, outputDir);
-    }
-
-    private void arrayListToJSONString(JsonGenerator jGenerator, String field, List<String> list) throws IOException {
-        jGenerator.writeArrayFieldStart(field);
-        list.forEach(f -> {
-            try {
-                jGenerator.writeString(f);
-            } catch (IOException e) {
-                e.printStackTrace();
+        for (; i < argv.length; i++) {
+            if (argv[i].equals("--base-url") && i + 1 < argv.length) {
+                sp.setBaseUrl(argv[++i]);
+            } else if (argv[i].equals("--cache") && i + 1 < argv.length) {
+                cacheDir = argv[++i];
+            } else if (argv[i].equals("--replay")) {
+                replay = true;
+            } else if (argv[i].equals("--metrics-port") && i + 1 < argv.length) {
+                metricsPort = Integer.parseInt(argv[++i]);
+            } else if (argv[i].equals("--format") && i + 1 < argv.length
+                    && Arrays.asList("files", "ndjson", "ndjson.gz").contains(argv[i + 1])) {
+                String format = argv[++i];
+                sp.setOutputFormat(format.equals("ndjson") ? MovieSink.Format.NDJSON
+                        : format.equals("ndjson.gz") ? MovieSink.Format.NDJSON_GZIP
+                        : MovieSink.Format.FILES, DEFAULT_SEGMENT_BYTES);
+            } else {
+                System.out.println("Call with: IMDBSpider.jar <moviesPath> <outputDir> [--base-url URL] [--cache DIR [--replay]] [--format files|ndjson|ndjson.gz] [--metrics-port PORT]");
+                System.exit(0);
             }
-        });
-        jGenerator.writeEndArray();
+        }
+        // The metrics are always visible over JMX, over HTTP with --metrics-port
+        Closeable exported = sp.getMetrics().export(metricsPort);
+        try {
+            if (cacheDir != null) {
+                HttpCache cache = new HttpCache(new File(cacheDir), DEFAULT_CACHE_BYTES, replay);
+                sp.setCache(cache);
+                // A page missing from the cache will not turn up by retrying
+                if (replay) sp.setRetries(1, 0);
+                sp.fetchIMDBMovies(moviesPath, outputDir);
+                Logger.getAnonymousLogger().log(Level.INFO, "Cache: " + cache);
+            } else {
+                sp.fetchIMDBMovies(moviesPath, outputDir);
+            }
+            Logger.getAnonymousLogger().log(Level.INFO, "Metrics: " + sp.getMetrics());
+        } finally {
+            exported.close();
+        }
     }
 }
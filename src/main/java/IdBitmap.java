@@ -0,0 +1,247 @@
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * An immutable compressed set of movie ids, laid out like a Roaring bitmap:
+ * the ids are split into chunks of 65536 by their upper 16 bits, and every
+ * chunk stores the lower 16 bits either as a sorted array, if it holds at
+ * most {@link #ARRAY_MAX} ids, or as a bitmap of 65536 bits. Rare values thus
+ * take two bytes per id and frequent ones at most one bit per id.
+ */
+public final class IdBitmap {
+
+    static final IdBitmap EMPTY = new IdBitmap(new int[0], new Object[0], 0);
+
+    /**
+     * The most ids a chunk stores as an array, at which the array takes as
+     * many bytes as the bitmap (8 KB).
+     */
+    static final int ARRAY_MAX = 4096;
+
+    private static final int BITMAP_WORDS = 65536 / 64;
+
+    /**
+     * The upper 16 bits of the ids of every chunk, in increasing order.
+     */
+    private final int[] keys;
+    /**
+     * The lower 16 bits of the ids of every chunk, a sorted char[] or a
+     * long[{@link #BITMAP_WORDS}]. No chunk is empty.
+     */
+    private final Object[] chunks;
+    private final int cardinality;
+
+    private IdBitmap(int[] keys, Object[] chunks, int cardinality) {
+        this.keys = keys;
+        this.chunks = chunks;
+        this.cardinality = cardinality;
+    }
+
+    /**
+     * @param ids  ids in increasing order, without duplicates
+     * @param from the first index of 'ids' (inclusive)
+     * @param to   the last index of 'ids' (exclusive)
+     * @return The set of the ids
+     */
+    public static IdBitmap of(int[] ids, int from, int to) {
+        int chunkCount = 0;
+        for (int i = from; i < to; i++) {
+            if (i == from || ids[i] >>> 16 != ids[i - 1] >>> 16) chunkCount++;
+        }
+        int[] keys = new int[chunkCount];
+        Object[] chunks = new Object[chunkCount];
+        int chunk = 0;
+        for (int start = from; start < to; ) {
+            int key = ids[start] >>> 16;
+            int end = start;
+            while (end < to && ids[end] >>> 16 == key) end++;
+            keys[chunk] = key;
+            if (end - start <= ARRAY_MAX) {
+                char[] values = new char[end - start];
+                for (int i = start; i < end; i++) values[i - start] = (char) ids[i];
+                chunks[chunk] = values;
+            } else {
+                long[] bits = new long[BITMAP_WORDS];
+                for (int i = start; i < end; i++) bits[(ids[i] & 0xFFFF) >>> 6] |= 1L << ids[i];
+                chunks[chunk] = bits;
+            }
+            chunk++;
+            start = end;
+        }
+        return new IdBitmap(keys, chunks, to - from);
+    }
+
+    /**
+     * @return The number of ids in the set
+     */
+    public int cardinality() {
+        return this.cardinality;
+    }
+
+    /**
+     * @param id an id
+     * @return Whether 'id' is in the set
+     */
+    public boolean contains(int id) {
+        int chunk = Arrays.binarySearch(this.keys, id >>> 16);
+        if (chunk < 0) {
+            return false;
+        }
+        Object values = this.chunks[chunk];
+        if (values instanceof char[]) {
+            return Arrays.binarySearch((char[]) values, (char) id) >= 0;
+        }
+        return (((long[]) values)[(id & 0xFFFF) >>> 6] & 1L << id) != 0;
+    }
+
+    /**
+     * Passes the ids of the set in [from, to) to 'consumer', in increasing order.
+     *
+     * @param from     the first id (inclusive)
+     * @param to       the last id (exclusive)
+     * @param consumer receives the ids
+     */
+    public void forEach(int from, int to, IntConsumer consumer) {
+        if (from >= to) {
+            return;
+        }
+        int chunk = Arrays.binarySearch(this.keys, from >>> 16);
+        if (chunk < 0) chunk = -chunk - 1;
+        for (; chunk < this.keys.length && this.keys[chunk] <= (to - 1) >>> 16; chunk++) {
+            int high = this.keys[chunk] << 16;
+            int low = Math.max(from - high, 0);
+            int lowEnd = Math.min(to - high, 65536);
+            Object values = this.chunks[chunk];
+            if (values instanceof char[]) {
+                char[] array = (char[]) values;
+                int i = low == 0 ? 0 : Arrays.binarySearch(array, (char) low);
+                for (i = i < 0 ? -i - 1 : i; i < array.length && array[i] < lowEnd; i++) {
+                    consumer.accept(high | array[i]);
+                }
+            } else {
+                long[] bits = (long[]) values;
+                for (int word = low >>> 6; word < BITMAP_WORDS && word << 6 < lowEnd; word++) {
+                    long w = bits[word];
+                    if (word == low >>> 6) w &= -1L << low;
+                    while (w != 0) {
+                        int value = word << 6 | Long.numberOfTrailingZeros(w);
+                        if (value >= lowEnd) break;
+                        consumer.accept(high | value);
+                        w &= w - 1;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The ids of the set, in increasing order
+     */
+    public int[] toArray() {
+        int[] ids = new int[this.cardinality];
+        int[] next = new int[1];
+        forEach(0, Integer.MAX_VALUE, id -> ids[next[0]++] = id);
+        return ids;
+    }
+
+    /**
+     * @param other another set
+     * @return The ids in both sets
+     */
+    public IdBitmap and(IdBitmap other) {
+        int[] keys = new int[Math.min(this.keys.length, other.keys.length)];
+        Object[] chunks = new Object[keys.length];
+        int count = 0;
+        int cardinality = 0;
+        for (int i = 0, j = 0; i < this.keys.length && j < other.keys.length; ) {
+            if (this.keys[i] < other.keys[j]) {
+                i++;
+            } else if (this.keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                Object chunk = and(this.chunks[i], other.chunks[j]);
+                int size = size(chunk);
+                if (size > 0) {
+                    keys[count] = this.keys[i];
+                    chunks[count++] = chunk;
+                    cardinality += size;
+                }
+                i++;
+                j++;
+            }
+        }
+        return new IdBitmap(Arrays.copyOf(keys, count), Arrays.copyOf(chunks, count), cardinality);
+    }
+
+    /**
+     * @return The approximate number of bytes the set takes
+     */
+    public long sizeInBytes() {
+        long bytes = 16 + 8L * this.keys.length;
+        for (Object chunk : this.chunks) {
+            bytes += chunk instanceof char[] ? 16 + 2 * ((char[]) chunk).length : 16 + 8 * BITMAP_WORDS;
+        }
+        return bytes;
+    }
+
+    private static Object and(Object a, Object b) {
+        if (a instanceof char[] && b instanceof char[]) {
+            char[] x = (char[]) a;
+            char[] y = (char[]) b;
+            char[] both = new char[Math.min(x.length, y.length)];
+            int count = 0;
+            for (int i = 0, j = 0; i < x.length && j < y.length; ) {
+                if (x[i] < y[j]) {
+                    i++;
+                } else if (x[i] > y[j]) {
+                    j++;
+                } else {
+                    both[count++] = x[i];
+                    i++;
+                    j++;
+                }
+            }
+            return Arrays.copyOf(both, count);
+        }
+        if (a instanceof char[] || b instanceof char[]) {
+            char[] array = (char[]) (a instanceof char[] ? a : b);
+            long[] bits = (long[]) (a instanceof char[] ? b : a);
+            char[] both = new char[array.length];
+            int count = 0;
+            for (char value : array) {
+                if ((bits[value >>> 6] & 1L << value) != 0) both[count++] = value;
+            }
+            return Arrays.copyOf(both, count);
+        }
+        long[] x = (long[]) a;
+        long[] y = (long[]) b;
+        long[] both = new long[BITMAP_WORDS];
+        int count = 0;
+        for (int i = 0; i < BITMAP_WORDS; i++) {
+            both[i] = x[i] & y[i];
+            count += Long.bitCount(both[i]);
+        }
+        if (count > ARRAY_MAX) {
+            return both;
+        }
+        char[] array = new char[count];
+        int next = 0;
+        for (int i = 0; i < BITMAP_WORDS; i++) {
+            for (long w = both[i]; w != 0; w &= w - 1) {
+                array[next++] = (char) (i << 6 | Long.numberOfTrailingZeros(w));
+            }
+        }
+        return array;
+    }
+
+    private static int size(Object chunk) {
+        if (chunk instanceof char[]) {
+            return ((char[]) chunk).length;
+        }
+        int count = 0;
+        for (long w : (long[]) chunk) {
+            count += Long.bitCount(w);
+        }
+        return count;
+    }
+}
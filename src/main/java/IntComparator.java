@@ -0,0 +1,14 @@
+/**
+ * A comparator over primitive ints, typically row ids of a {@link MovieTable}.
+ * Unlike {@link java.util.Comparator} it never boxes its arguments.
+ */
+public interface IntComparator {
+
+    /**
+     * @param a the first id
+     * @param b the second id
+     * @return a negative integer, zero, or a positive integer as 'a' sorts
+     * before, together with, or after 'b'
+     */
+    int compare(int a, int b);
+}
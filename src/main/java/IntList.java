@@ -0,0 +1,71 @@
+import java.util.Arrays;
+
+/**
+ * A growable list of primitive ints.
+ */
+public class IntList {
+
+    private int[] values;
+    private int size;
+
+    public IntList() {
+        this(8);
+    }
+
+    /**
+     * @param capacity the initial capacity
+     */
+    public IntList(int capacity) {
+        this.values = new int[Math.max(1, capacity)];
+    }
+
+    /**
+     * @param value the value to append
+     */
+    public void add(int value) {
+        if (this.size == this.values.length) {
+            this.values = Arrays.copyOf(this.values, this.size * 2);
+        }
+        this.values[this.size++] = value;
+    }
+
+    /**
+     * @param other the list whose values to append
+     */
+    public void addAll(IntList other) {
+        if (this.size + other.size > this.values.length) {
+            this.values = Arrays.copyOf(this.values, Math.max(this.size * 2, this.size + other.size));
+        }
+        System.arraycopy(other.values, 0, this.values, this.size, other.size);
+        this.size += other.size;
+    }
+
+    /**
+     * @param index the index of a value
+     * @return The value at the index
+     */
+    public int get(int index) {
+        if (index >= this.size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+        }
+        return this.values[index];
+    }
+
+    /**
+     * @return The number of values
+     */
+    public int size() {
+        return this.size;
+    }
+
+    public void clear() {
+        this.size = 0;
+    }
+
+    /**
+     * @return A copy of the values
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(this.values, this.size);
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ * Stable sorting of int arrays with an {@link IntComparator}.
+ */
+public final class IntSort {
+
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    private IntSort() {
+    }
+
+    /**
+     * Sorts the range [from, to) of 'a' with a stable merge sort, so ids that
+     * compare equal keep their original order (as {@link java.util.Collections#sort}
+     * would).
+     *
+     * @param a    the ids to sort
+     * @param from the first index (inclusive)
+     * @param to   the last index (exclusive)
+     * @param cmp  the order to sort by
+     */
+    public static void sort(int[] a, int from, int to, IntComparator cmp) {
+        if (to - from < 2) {
+            return;
+        }
+        int[] buffer = new int[to - from];
+        mergeSort(a, buffer, from, to, cmp);
+    }
+
+    private static void mergeSort(int[] a, int[] buffer, int from, int to, IntComparator cmp) {
+        if (to - from <= INSERTION_SORT_THRESHOLD) {
+            insertionSort(a, from, to, cmp);
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        mergeSort(a, buffer, from, mid, cmp);
+        mergeSort(a, buffer, mid, to, cmp);
+        if (cmp.compare(a[mid - 1], a[mid]) <= 0) {
+            return;
+        }
+        int length = mid - from;
+        System.arraycopy(a, from, buffer, 0, length);
+        int i = 0;
+        int j = mid;
+        int k = from;
+        while (i < length && j < to) {
+            if (cmp.compare(a[j], buffer[i]) < 0) {
+                a[k++] = a[j++];
+            } else {
+                a[k++] = buffer[i++];
+            }
+        }
+        System.arraycopy(buffer, i, a, k, length - i);
+    }
+
+    private static void insertionSort(int[] a, int from, int to, IntComparator cmp) {
+        for (int i = from + 1; i < to; i++) {
+            int value = a[i];
+            int j = i - 1;
+            while (j >= from && cmp.compare(a[j], value) > 0) {
+                a[j + 1] = a[j];
+                j--;
+            }
+            a[j + 1] = value;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * Selects the k first ids of a stream in the order of an {@link IntComparator}
+ * without sorting all of them: a bounded heap keeps the k best ids seen so
+ * far, which takes O(k) memory and O(n log k) time for n ids.
+ * <p>
+ * Ids which compare equal keep the order in which they were offered, so the
+ * result is the same as that of a stable sort of all ids (see {@link IntSort})
+ * followed by taking the first k.
+ */
+public class IntTopK {
+
+    private final int k;
+    private final IntComparator cmp;
+    /**
+     * A heap with the worst of the kept ids at the root.
+     */
+    private final int[] ids;
+    private final long[] sequence;
+    private int size;
+    private long offered;
+
+    /**
+     * @param k   the number of ids to keep
+     * @param cmp the order, the first ids in this order are kept
+     */
+    public IntTopK(int k, IntComparator cmp) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k must not be negative: " + k);
+        }
+        this.k = k;
+        this.cmp = cmp;
+        this.ids = new int[k];
+        this.sequence = new long[k];
+    }
+
+    /**
+     * Keeps 'id' if it is among the first k ids offered so far.
+     *
+     * @param id a non-negative id
+     * @return The id which is no longer kept, i.e. 'id' itself or the one it
+     * displaced, or -1 if fewer than k ids have been offered
+     */
+    public int offer(int id) {
+        long seq = this.offered++;
+        if (this.size < this.k) {
+            int i = this.size++;
+            this.ids[i] = id;
+            this.sequence[i] = seq;
+            siftUp(i);
+            return -1;
+        }
+        if (this.k == 0 || !before(id, seq, this.ids[0], this.sequence[0])) {
+            return id;
+        }
+        int displaced = this.ids[0];
+        this.ids[0] = id;
+        this.sequence[0] = seq;
+        siftDown(0);
+        return displaced;
+    }
+
+    /**
+     * Offers the ids kept by 'other', in their order. If all ids offered to
+     * 'other' come after those offered to this, this then keeps what one
+     * IntTopK offered all of them would have kept.
+     *
+     * @param other an IntTopK with the same order
+     * @return This
+     */
+    public IntTopK offerAll(IntTopK other) {
+        for (int id : other.toSortedArray()) {
+            offer(id);
+        }
+        return this;
+    }
+
+    /**
+     * @return The number of ids kept, at most k
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @return The number of ids offered, including those of {@link #offerAll}
+     */
+    public long offered() {
+        return this.offered;
+    }
+
+    /**
+     * @return The ids kept, in order
+     */
+    public int[] toSortedArray() {
+        int[] order = new int[this.size];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        IntSort.sort(order, 0, order.length,
+                (a, b) -> before(this.ids[a], this.sequence[a], this.ids[b], this.sequence[b]) ? -1 : 1);
+        int[] sorted = new int[this.size];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = this.ids[order[i]];
+        }
+        return sorted;
+    }
+
+    /**
+     * @return Whether 'id1', offered as number 'seq1', sorts before 'id2'
+     */
+    private boolean before(int id1, long seq1, int id2, long seq2) {
+        int c = this.cmp.compare(id1, id2);
+        return c < 0 || (c == 0 && seq1 < seq2);
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!before(this.ids[parent], this.sequence[parent], this.ids[i], this.sequence[i])) {
+                break;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= this.size) {
+                break;
+            }
+            if (child + 1 < this.size
+                    && before(this.ids[child], this.sequence[child], this.ids[child + 1], this.sequence[child + 1])) {
+                child++;
+            }
+            if (!before(this.ids[i], this.sequence[i], this.ids[child], this.sequence[child])) {
+                break;
+            }
+            swap(i, child);
+            i = child;
+        }
+    }
+
+    private void swap(int i, int j) {
+        int id = this.ids[i];
+        this.ids[i] = this.ids[j];
+        this.ids[j] = id;
+        long seq = this.sequence[i];
+        this.sequence[i] = this.sequence[j];
+        this.sequence[j] = seq;
+    }
+}
@@ -0,0 +1,130 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts durations in fixed buckets from 100 microseconds to 30 seconds, as
+ * a Prometheus histogram does, so it can be exported as one and still
+ * estimate percentiles. Recording is lock-free and may happen from any
+ * number of threads.
+ */
+public class LatencyHistogram {
+
+    /**
+     * The upper bounds of the buckets in seconds; a last bucket takes the
+     * longer durations.
+     */
+    static final double[] BOUNDS = {0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1,
+            0.25, 0.5, 1, 2.5, 5, 10, 30};
+    private static final long[] BOUND_NANOS = new long[BOUNDS.length];
+
+    static {
+        for (int i = 0; i < BOUNDS.length; i++) {
+            BOUND_NANOS[i] = Math.round(BOUNDS[i] * 1e9);
+        }
+    }
+
+    private final LongAdder[] buckets = new LongAdder[BOUNDS.length + 1];
+    private final LongAdder sumNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < this.buckets.length; i++) {
+            this.buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @param nanos a duration in nanoseconds
+     */
+    public void record(long nanos) {
+        int bucket = 0;
+        while (bucket < BOUND_NANOS.length && nanos > BOUND_NANOS[bucket]) {
+            bucket++;
+        }
+        this.buckets[bucket].increment();
+        this.sumNanos.add(nanos);
+        if (nanos > this.maxNanos.get()) {
+            this.maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+    }
+
+    /**
+     * @return The number of durations recorded
+     */
+    public long getCount() {
+        long count = 0;
+        for (LongAdder bucket : this.buckets) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    /**
+     * @return The sum of the durations in nanoseconds
+     */
+    public long getSumNanos() {
+        return this.sumNanos.sum();
+    }
+
+    /**
+     * @return The longest duration in nanoseconds
+     */
+    public long getMaxNanos() {
+        return this.maxNanos.get();
+    }
+
+    /**
+     * @return The number of durations per bucket, see {@link #BOUNDS};
+     * they are read one by one while recording goes on, so they may be off
+     * by the durations recorded meanwhile
+     */
+    long[] getBuckets() {
+        long[] counts = new long[this.buckets.length];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = this.buckets[i].sum();
+        }
+        return counts;
+    }
+
+    /**
+     * @return The mean duration in milliseconds, 0 if there is none
+     */
+    public double getMeanMillis() {
+        long count = getCount();
+        return count == 0 ? 0 : getSumNanos() / 1e6 / count;
+    }
+
+    /**
+     * @param quantile a quantile, e.g. 0.99
+     * @return The duration in milliseconds below which 'quantile' of the
+     * durations are, interpolated within its bucket; 0 if there is none
+     */
+    public double getPercentileMillis(double quantile) {
+        long[] counts = getBuckets();
+        long count = 0;
+        for (long c : counts) {
+            count += c;
+        }
+        if (count == 0) {
+            return 0;
+        }
+        double rank = quantile * count;
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0 && seen + counts[i] >= rank) {
+                double lower = i == 0 ? 0 : BOUNDS[i - 1] * 1000;
+                // The last bucket has no bound, the longest duration closes it
+                double upper = i < BOUNDS.length ? BOUNDS[i] * 1000 : Math.max(lower, getMaxNanos() / 1e6);
+                return Math.min(lower + (upper - lower) * (rank - seen) / counts[i], getMaxNanos() / 1e6);
+            }
+            seen += counts[i];
+        }
+        return getMaxNanos() / 1e6;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d, mean %.1f ms, p50 %.1f ms, p99 %.1f ms, max %.1f ms", getCount(), getMeanMillis(),
+                getPercentileMillis(0.5), getPercentileMillis(0.99), getMaxNanos() / 1e6);
+    }
+}
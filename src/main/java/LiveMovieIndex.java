@@ -0,0 +1,689 @@
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The answers to the queries of {@link IMDBQueries} over a set of movies
+ * which changes while they are asked, e.g. the output directory of a running
+ * {@link IMDBSpider}, see {@link MovieWatcher}. Instead of a table which has
+ * to be rebuilt and scanned again, every query keeps its own view which a
+ * change of a movie updates in logarithmic time:
+ * <ul>
+ * <li>the movies a query lists, in sorted sets in the order of the query,</li>
+ * <li>the best and worst movie of every year from 1990 to 2010, in a sorted
+ * set per year,</li>
+ * <li>the counts of characters, actors and pairs of actors, in
+ * {@link CountRanking}s, and</li>
+ * <li>the descriptions, in a {@link TextIndex} over the movies up to some
+ * point and a list of the movies added since, which is folded into a new
+ * index by {@link #maintain()} when it grows.</li>
+ * </ul>
+ * Each movie has a key, e.g. the name of its file, and its place in the
+ * order of arrival; a changed movie keeps its place. Movies which compare
+ * equal are listed in that order, names with equal counts in the order in
+ * which they were first seen. After {@link #load} this is the order of a
+ * {@link MovieTable} of the same movies, so the answers are the same as
+ * those of the table queries.
+ * <p>
+ * Names are counted by their id in a {@link NameDictionary}. The counts of
+ * the names of a removed movie go down and vanish at 0, but the dictionary
+ * keeps every name it has seen, so it grows with the names ever indexed
+ * rather than with those of the current movies.
+ * <p>
+ * Queries may run in any number of threads; updates must come from one,
+ * and {@link #maintain()} may run in another.
+ */
+public class LiveMovieIndex {
+
+    private static final int FIRST_YEAR = 1990;
+    private static final int LAST_YEAR = 2010;
+    private static final int TOP = 10;
+
+    private static final Comparator<Entry> BY_ARRIVAL = Comparator.comparingInt(entry -> entry.seq);
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final TreeSet<Entry> all = new TreeSet<>(BY_ARRIVAL);
+    private final NameDictionary names = new NameDictionary();
+    /**
+     * The names which Uncreative Writers leaves out, and those already checked.
+     */
+    private final BitSet excludedCharacters = new BitSet();
+    private final BitSet checkedCharacters = new BitSet();
+    private int nextSeq;
+    private long version;
+    /**
+     * The last version which changed each {@link MovieField}.
+     */
+    private final long[] fieldVersions = new long[MovieField.values().length];
+
+    private final TreeSet<Entry> allRounder = new TreeSet<>((a, b) ->
+            then(Float.compare(ratingOrZero(b), ratingOrZero(a)), a, b));
+    private final TreeSet<Entry> underTheRadar = new TreeSet<>((a, b) -> then(Long.compare(b.loss, a.loss), a, b));
+    private final TreeSet<Entry> pillars = new TreeSet<>((a, b) -> then(b.killAndLove - a.killAndLove, a, b));
+    private final TreeSet<Entry> redPlanet = new TreeSet<>((a, b) -> then(yearOrZero(a) - yearOrZero(b), a, b));
+    private final TreeSet<Entry> colossalFailure = new TreeSet<>((a, b) -> then(Float.compare(a.rating, b.rating), a, b));
+    private final CountRanking characters = new CountRanking();
+    private final CountRanking cast = new CountRanking();
+    private final List<TreeSet<Entry>> mustSee = new ArrayList<>();
+    private final List<TreeSet<Entry>> rottenTomatoes = new ArrayList<>();
+    private final CountRanking couples = new CountRanking();
+    private final Descriptions descriptions = new Descriptions();
+
+    public LiveMovieIndex() {
+        for (int year = FIRST_YEAR; year <= LAST_YEAR; year++) {
+            this.mustSee.add(new TreeSet<>((a, b) -> then(Float.compare(ratingOrZero(b), ratingOrZero(a)), a, b)));
+            this.rottenTomatoes.add(new TreeSet<>((a, b) -> then(Float.compare(a.rating, b.rating), a, b)));
+        }
+    }
+
+    /**
+     * Adds the first movies to an empty index. Their names are interned
+     * column by column, as {@link MovieTable} does, so that names with equal
+     * counts are listed in the same order as by the table queries.
+     *
+     * @param keys   the keys of the movies
+     * @param movies the movies, in the order of a table of them
+     */
+    public void load(List<String> keys, List<Movie> movies) {
+        this.lock.writeLock().lock();
+        try {
+            if (!this.entries.isEmpty()) {
+                throw new IllegalStateException("The index is not empty");
+            }
+            int[][] cast = new int[movies.size()][];
+            int[][] characters = new int[movies.size()][];
+            int[][] directors = new int[movies.size()][];
+            for (int i = 0; i < movies.size(); i++) {
+                cast[i] = intern(movies.get(i).getCastList());
+            }
+            for (int i = 0; i < movies.size(); i++) {
+                characters[i] = intern(movies.get(i).getCharacterList());
+            }
+            for (int i = 0; i < movies.size(); i++) {
+                directors[i] = intern(movies.get(i).getDirectorList());
+            }
+            for (int i = 0; i < movies.size(); i++) {
+                put(new Entry(keys.get(i), movies.get(i), this.nextSeq++, cast[i], characters[i], directors[i]));
+            }
+            this.version++;
+            touch(EnumSet.allOf(MovieField.class));
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Applies a batch of changes at once; queries see all or none of them.
+     *
+     * @param changed the movies which were added or changed by their keys,
+     *                added movies are placed in the order of this map
+     * @param removed the keys of the movies which were removed, unknown ones
+     *                are ignored
+     */
+    public void update(Map<String, Movie> changed, Collection<String> removed) {
+        this.lock.writeLock().lock();
+        try {
+            // A movie which comes or goes changes all fields
+            EnumSet<MovieField> fields = EnumSet.noneOf(MovieField.class);
+            for (String key : removed) {
+                Entry entry = this.entries.remove(key);
+                if (entry != null) {
+                    remove(entry);
+                    fields.addAll(EnumSet.allOf(MovieField.class));
+                }
+            }
+            for (Map.Entry<String, Movie> change : changed.entrySet()) {
+                Movie movie = change.getValue();
+                Entry old = this.entries.get(change.getKey());
+                if (old != null) {
+                    remove(old);
+                    fields.addAll(MovieField.changed(old.movie, movie));
+                } else {
+                    fields.addAll(EnumSet.allOf(MovieField.class));
+                }
+                put(new Entry(change.getKey(), movie, old != null ? old.seq : this.nextSeq++,
+                        intern(movie.getCastList()), intern(movie.getCharacterList()),
+                        intern(movie.getDirectorList())));
+            }
+            this.version++;
+            touch(fields);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Folds the movies added to the description index since it was last
+     * built into a new one, if there are enough of them. The index is built
+     * while queries and updates go on, so it may run in a thread of its own;
+     * call from one thread at a time. Movies changed while it is built are
+     * left to the next rebuild.
+     *
+     * @return Whether the index was rebuilt
+     */
+    public boolean maintain() {
+        Entry[] live;
+        int added;
+        int removed;
+        this.lock.readLock().lock();
+        try {
+            if (!this.descriptions.needsRebuild()) {
+                return false;
+            }
+            live = this.all.toArray(new Entry[0]);
+            added = this.descriptions.added.size();
+            removed = this.descriptions.removed;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+        List<String> texts = new ArrayList<>(live.length);
+        for (Entry entry : live) {
+            texts.add(entry.movie.getDescription());
+        }
+        TextIndex index = new TextIndex(texts);
+        this.lock.writeLock().lock();
+        try {
+            this.descriptions.reset(index, live, added, removed);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+        return true;
+    }
+
+    /**
+     * @return The number of movies
+     */
+    public int size() {
+        this.lock.readLock().lock();
+        try {
+            return this.entries.size();
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return The number of batches applied so far, which increases with
+     * every {@link #load} and {@link #update}
+     */
+    public long version() {
+        this.lock.readLock().lock();
+        try {
+            return this.version;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param fields fields of the movies
+     * @return The last {@link #version()} which added or removed a movie or
+     * changed one of 'fields' of a movie. The answer of a query which only
+     * reads these fields stays the same as long as this does.
+     */
+    public long version(Set<MovieField> fields) {
+        this.lock.readLock().lock();
+        try {
+            long version = 0;
+            for (MovieField field : fields) {
+                version = Math.max(version, this.fieldVersions[field.ordinal()]);
+            }
+            return version;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param key the key of a movie
+     * @return The movie, or null if there is none with this key
+     */
+    public Movie movie(String key) {
+        this.lock.readLock().lock();
+        try {
+            Entry entry = this.entries.get(key);
+            return entry == null ? null : entry.movie;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return The movies in the order of their arrival, e.g. to build a
+     * {@link MovieTable} of them
+     */
+    public List<Movie> movies() {
+        this.lock.readLock().lock();
+        try {
+            return moviesOf(this.all);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return see {@link IMDBQueries#queryAllRounder(MovieTable)}
+     */
+    public List<IMDBQueries.Tuple<Movie, String>> queryAllRounder() {
+        this.lock.readLock().lock();
+        try {
+            List<IMDBQueries.Tuple<Movie, String>> returner = new ArrayList<>();
+            for (Entry entry : this.allRounder) {
+                if (returner.size() == TOP) break;
+                returner.add(new IMDBQueries.Tuple<>(entry.movie, this.names.name(entry.director)));
+            }
+            return returner;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return see {@link IMDBQueries#queryUnderTheRadar(MovieTable)}
+     */
+    public List<IMDBQueries.Tuple<Movie, Long>> queryUnderTheRadar() {
+        this.lock.readLock().lock();
+        try {
+            List<IMDBQueries.Tuple<Movie, Long>> returner = new ArrayList<>();
+            for (Entry entry : this.underTheRadar) {
+                if (returner.size() == TOP) break;
+                returner.add(new IMDBQueries.Tuple<>(entry.movie, Math.abs(entry.loss)));
+            }
+            return returner;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return see {@link IMDBQueries#queryPillarsOfStorytelling(MovieTable)}
+     */
+    public List<IMDBQueries.Tuple<Movie, Integer>> queryPillarsOfStorytelling() {
+        this.lock.readLock().lock();
+        try {
+            List<IMDBQueries.Tuple<Movie, Integer>> returner = new ArrayList<>();
+            for (Entry entry : this.pillars) {
+                if (returner.size() == TOP) break;
+                returner.add(new IMDBQueries.Tuple<>(entry.movie, entry.killAndLove));
+            }
+            return returner;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return see {@link IMDBQueries#queryRedPlanet(MovieTable)}
+     */
+    public List<Movie> queryRedPlanet() {
+        this.lock.readLock().lock();
+        try {
+            return moviesOf(this.redPlanet);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return see {@link IMDBQueries#queryColossalFailure(MovieTable)}
+     */
+    public List<Movie> queryColossalFailure() {
+        this.lock.readLock().lock();
+        try {
+            return moviesOf(this.colossalFailure);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return see {@link IMDBQueries#queryUncreativeWriters(MovieTable)}
+     */
+    public List<IMDBQueries.Tuple<String, Integer>> queryUncreativeWriters() {
+        return topNames(this.characters);
+    }
+
+    /**
+     * @return see {@link IMDBQueries#queryWorkHorse(MovieTable)}
+     */
+    public List<IMDBQueries.Tuple<String, Integer>> queryWorkHorse() {
+        return topNames(this.cast);
+    }
+
+    /**
+     * @return see {@link IMDBQueries#queryMustSee(MovieTable)}
+     */
+    public List<Movie> queryMustSee() {
+        return firstPerYear(this.mustSee);
+    }
+
+    /**
+     * @return see {@link IMDBQueries#queryRottenTomatoes(MovieTable)}
+     */
+    public List<Movie> queryRottenTomatoes() {
+        return firstPerYear(this.rottenTomatoes);
+    }
+
+    /**
+     * @return see {@link IMDBQueries#queryMagicCouple(MovieTable)}
+     */
+    public List<IMDBQueries.Tuple<IMDBQueries.Tuple<String, String>, Integer>> queryMagicCouple() {
+        this.lock.readLock().lock();
+        try {
+            List<IMDBQueries.Tuple<IMDBQueries.Tuple<String, String>, Integer>> returner = new ArrayList<>();
+            for (long key : this.couples.top(TOP)) {
+                returner.add(new IMDBQueries.Tuple<>(new IMDBQueries.Tuple<>(
+                        this.names.name((int) (key >>> 32)), this.names.name((int) key)), this.couples.count(key)));
+            }
+            return returner;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the movies whose description contains 'text', see
+     * {@link TextIndex#findSubstring}.
+     *
+     * @param text       the text to search for, also inside words
+     * @param ignoreCase whether to match regardless of case
+     * @return The movies in the order of their arrival
+     */
+    public List<Movie> searchDescriptions(String text, boolean ignoreCase) {
+        this.lock.readLock().lock();
+        try {
+            return moviesOf(this.descriptions.find(text, ignoreCase));
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    private void touch(Set<MovieField> fields) {
+        for (MovieField field : fields) {
+            this.fieldVersions[field.ordinal()] = this.version;
+        }
+    }
+
+    private void put(Entry entry) {
+        this.entries.put(entry.key, entry);
+        this.all.add(entry);
+        update(entry, 1);
+        this.descriptions.add(entry);
+    }
+
+    private void remove(Entry entry) {
+        this.all.remove(entry);
+        update(entry, -1);
+        this.descriptions.remove();
+    }
+
+    /**
+     * Adds a movie to the views of all queries (delta 1) or removes it (-1).
+     */
+    private void update(Entry entry, int delta) {
+        Movie movie = entry.movie;
+        if (entry.director != -1) {
+            change(this.allRounder, entry, delta);
+        }
+        boolean usa = movie.getCountryList().contains("USA");
+        if (usa && entry.rating > 8.0 && entry.ratingCount >= 1000
+                && entry.year > 0 && entry.year <= 2015) {
+            change(this.underTheRadar, entry, delta);
+        }
+        if (entry.killAndLove > 0) {
+            change(this.pillars, entry, delta);
+        }
+        if (movie.getDescription() != null && movie.getDescription().contains("Mars")
+                && movie.getGenreList().contains("Sci-Fi")) {
+            change(this.redPlanet, entry, delta);
+        }
+        if (usa && entry.duration > 120 && entry.rating < 5.0 && entry.rating > 0 && entry.budget > 1000000) {
+            change(this.colossalFailure, entry, delta);
+        }
+        for (int name : entry.characters) {
+            if (!isExcludedCharacter(name)) {
+                this.characters.add(name, delta);
+            }
+        }
+        for (int name : entry.cast) {
+            this.cast.add(name, delta);
+        }
+        if (entry.year >= FIRST_YEAR && entry.year <= LAST_YEAR) {
+            if (entry.ratingCount > 10000) {
+                change(this.mustSee.get(entry.year - FIRST_YEAR), entry, delta);
+            }
+            if (entry.rating > 0f) {
+                change(this.rottenTomatoes.get(entry.year - FIRST_YEAR), entry, delta);
+            }
+        }
+        for (int i = 0; i < entry.cast.length; i++) {
+            for (int j = i + 1; j < entry.cast.length; j++) {
+                this.couples.add(pairKey(entry.cast[i], entry.cast[j]), delta);
+            }
+        }
+    }
+
+    /**
+     * @return Whether Uncreative Writers leaves out the character, see
+     * {@link IMDBQueries#uncreativeWriters}
+     */
+    private boolean isExcludedCharacter(int name) {
+        if (!this.checkedCharacters.get(name)) {
+            String character = this.names.name(name);
+            this.excludedCharacters.set(name, character.isEmpty()
+                    || TextIndex.countOccurrences(character, "doctor", true) != 0
+                    || TextIndex.countOccurrences(character, "himself", true) != 0
+                    || TextIndex.countOccurrences(character, "herself", true) != 0);
+            this.checkedCharacters.set(name);
+        }
+        return this.excludedCharacters.get(name);
+    }
+
+    private List<IMDBQueries.Tuple<String, Integer>> topNames(CountRanking ranking) {
+        this.lock.readLock().lock();
+        try {
+            List<IMDBQueries.Tuple<String, Integer>> returner = new ArrayList<>();
+            for (long name : ranking.top(TOP)) {
+                returner.add(new IMDBQueries.Tuple<>(this.names.name((int) name), ranking.count(name)));
+            }
+            return returner;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    private List<Movie> firstPerYear(List<TreeSet<Entry>> years) {
+        this.lock.readLock().lock();
+        try {
+            List<Movie> returner = new ArrayList<>();
+            for (TreeSet<Entry> year : years) {
+                if (!year.isEmpty()) returner.add(year.first().movie);
+            }
+            return returner;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    private int[] intern(List<String> names) {
+        int[] ids = new int[names.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = this.names.intern(names.get(i));
+        }
+        return ids;
+    }
+
+    private static void change(TreeSet<Entry> view, Entry entry, int delta) {
+        if (delta > 0) {
+            view.add(entry);
+        } else {
+            view.remove(entry);
+        }
+    }
+
+    private static List<Movie> moviesOf(Collection<Entry> entries) {
+        List<Movie> movies = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            movies.add(entry.movie);
+        }
+        return movies;
+    }
+
+    /**
+     * @return 'cmp', or for movies which compare equal their order of arrival
+     */
+    private static int then(int cmp, Entry a, Entry b) {
+        return cmp != 0 ? cmp : Integer.compare(a.seq, b.seq);
+    }
+
+    private static float ratingOrZero(Entry entry) {
+        return entry.rating != entry.rating ? 0f : entry.rating;
+    }
+
+    private static int yearOrZero(Entry entry) {
+        return entry.year == MovieTable.MISSING_SHORT ? 0 : entry.year;
+    }
+
+    /**
+     * @return The same key for (a, b) and (b, a), as in {@link IMDBQueries}
+     */
+    private static long pairKey(int a, int b) {
+        return a < b ? (long) a << 32 | b : (long) b << 32 | a;
+    }
+
+    /**
+     * A movie with the attributes the queries need, parsed as by
+     * {@link MovieTable}, and its place in the order of arrival.
+     */
+    private static final class Entry {
+        final String key;
+        final Movie movie;
+        final int seq;
+        final float rating;
+        final int ratingCount;
+        final short year;
+        final long budget;
+        final int duration;
+        final long loss;
+        final int[] cast;
+        final int[] characters;
+        /**
+         * The first director who is in the cast, or -1.
+         */
+        final int director;
+        /**
+         * The appearances of "kill" and "love" in the description, 0 unless
+         * both appear.
+         */
+        final int killAndLove;
+
+        Entry(String key, Movie movie, int seq, int[] cast, int[] characters, int[] directors) {
+            this.key = key;
+            this.movie = movie;
+            this.seq = seq;
+            this.rating = MovieTable.parseFloat(movie.getRatingValue());
+            this.ratingCount = MovieTable.toInt(MovieTable.parseDigits(movie.getRatingCount()));
+            this.year = MovieTable.toShort(MovieTable.parseDigits(movie.getYear()));
+            this.budget = MovieTable.parseDigits(movie.getBudget());
+            this.duration = MovieTable.parseDuration(movie.getDuration());
+            long gross = MovieTable.parseDigits(movie.getGross());
+            this.loss = Math.max(0, this.budget) - Math.max(0, gross);
+            this.cast = cast;
+            this.characters = characters;
+            this.director = director(cast, directors);
+            String description = movie.getDescription();
+            int kill = description == null ? 0 : TextIndex.countOccurrences(description, "kill", true);
+            int love = kill == 0 ? 0 : TextIndex.countOccurrences(description, "love", true);
+            this.killAndLove = love == 0 ? 0 : kill + love;
+        }
+
+        private static int director(int[] cast, int[] directors) {
+            for (int director : directors) {
+                for (int actor : cast) {
+                    if (actor == director) {
+                        return director;
+                    }
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * The description index: a {@link TextIndex} over the movies up to some
+     * point, of which those removed or changed since are skipped, and the
+     * movies added or changed since, which are searched one by one.
+     */
+    private final class Descriptions {
+        private static final int MIN_REBUILD = 1024;
+
+        private TextIndex index = new TextIndex(Collections.<String>emptyList());
+        private Entry[] indexed = new Entry[0];
+        private final List<Entry> added = new ArrayList<>();
+        private int removed;
+
+        void add(Entry entry) {
+            this.added.add(entry);
+        }
+
+        void remove() {
+            this.removed++;
+        }
+
+        /**
+         * @return Whether the movies outside the index, or the stale ones in
+         * it, have grown to a quarter of the index
+         */
+        boolean needsRebuild() {
+            return this.added.size() + this.removed >= Math.max(MIN_REBUILD, this.indexed.length / 4);
+        }
+
+        /**
+         * Replaces the index by one over 'indexed', which holds the first
+         * 'added' of the movies added since the last one and in which the
+         * first 'removed' removals are already left out.
+         */
+        void reset(TextIndex index, Entry[] indexed, int added, int removed) {
+            this.index = index;
+            this.indexed = indexed;
+            this.added.subList(0, added).clear();
+            this.removed -= removed;
+        }
+
+        /**
+         * @return The live movies whose description contains 'text', in the
+         * order of their arrival
+         */
+        List<Entry> find(String text, boolean ignoreCase) {
+            List<Entry> found = new ArrayList<>();
+            Postings postings = this.index.findSubstring(text, ignoreCase);
+            for (int i = 0; i < postings.size(); i++) {
+                Entry entry = this.indexed[postings.doc(i)];
+                if (isLive(entry)) found.add(entry);
+            }
+            for (Entry entry : this.added) {
+                String description = entry.movie.getDescription();
+                if (isLive(entry) && description != null
+                        && TextIndex.countOccurrences(description, text, ignoreCase) > 0) {
+                    found.add(entry);
+                }
+            }
+            found.sort(BY_ARRIVAL);
+            return found;
+        }
+
+        private boolean isLive(Entry entry) {
+            return LiveMovieIndex.this.entries.get(entry.key) == entry;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Throughput counters of a movie load. The counters may be updated from
+ * several loader threads at once.
+ */
+public class LoadStats {
+
+    private final LongAdder files = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private volatile long startNanos;
+    private volatile long endNanos;
+
+    void start() {
+        this.startNanos = System.nanoTime();
+        this.endNanos = 0;
+    }
+
+    void stop() {
+        this.endNanos = System.nanoTime();
+    }
+
+    void addFile(long size) {
+        this.files.increment();
+        this.bytes.add(size);
+    }
+
+    /**
+     * @return The number of files read
+     */
+    public long getFiles() {
+        return this.files.sum();
+    }
+
+    /**
+     * @return The number of bytes read
+     */
+    public long getBytes() {
+        return this.bytes.sum();
+    }
+
+    /**
+     * @return The wall-clock time of the load in nanoseconds, up to now if it
+     * is still running
+     */
+    public long getElapsedNanos() {
+        long end = this.endNanos == 0 ? System.nanoTime() : this.endNanos;
+        return end - this.startNanos;
+    }
+
+    /**
+     * @return The number of files read per second
+     */
+    public double getFilesPerSecond() {
+        return perSecond(getFiles());
+    }
+
+    /**
+     * @return The number of bytes read per second
+     */
+    public double getBytesPerSecond() {
+        return perSecond(getBytes());
+    }
+
+    private double perSecond(long count) {
+        long nanos = getElapsedNanos();
+        return nanos <= 0 ? 0 : count * 1e9 / nanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d files, %d bytes in %d ms (%.0f files/s, %.1f MB/s)",
+                getFiles(), getBytes(), getElapsedNanos() / 1000000,
+                getFilesPerSecond(), getBytesPerSecond() / (1024 * 1024));
+    }
+}
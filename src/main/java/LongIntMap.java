@@ -0,0 +1,238 @@
+import java.util.Arrays;
+
+/**
+ * An open-addressing hash map from primitive long keys to int values, with
+ * linear probing. It never boxes keys or values.
+ */
+public class LongIntMap {
+
+    private static final long FREE = Long.MIN_VALUE;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+    private boolean hasFreeKey;
+    private int freeKeyValue;
+
+    public LongIntMap() {
+        this(16);
+    }
+
+    /**
+     * @param expectedSize the number of keys the map should hold without growing
+     */
+    public LongIntMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        this.keys = new long[capacity];
+        this.values = new int[capacity];
+        Arrays.fill(this.keys, FREE);
+    }
+
+    /**
+     * @param key the key
+     * @return The value of 'key', or 'missing' if it has none
+     */
+    public int get(long key, int missing) {
+        if (key == FREE) {
+            return this.hasFreeKey ? this.freeKeyValue : missing;
+        }
+        int mask = this.keys.length - 1;
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            long k = this.keys[slot];
+            if (k == key) {
+                return this.values[slot];
+            }
+            if (k == FREE) {
+                return missing;
+            }
+        }
+    }
+
+    /**
+     * @param key   the key
+     * @param value the new value of 'key'
+     */
+    public void put(long key, int value) {
+        if (key == FREE) {
+            if (!this.hasFreeKey) {
+                this.hasFreeKey = true;
+                this.size++;
+            }
+            this.freeKeyValue = value;
+            return;
+        }
+        int slot = slotOf(key);
+        if (this.keys[slot] == FREE) {
+            this.keys[slot] = key;
+            this.size++;
+            this.values[slot] = value;
+            growIfNeeded();
+        } else {
+            this.values[slot] = value;
+        }
+    }
+
+    /**
+     * Adds 'delta' to the value of 'key', which is 0 if it has none.
+     *
+     * @param key   the key
+     * @param delta the amount to add
+     * @return The new value of 'key'
+     */
+    public int addTo(long key, int delta) {
+        if (key == FREE) {
+            if (!this.hasFreeKey) {
+                this.hasFreeKey = true;
+                this.size++;
+            }
+            return this.freeKeyValue += delta;
+        }
+        int slot = slotOf(key);
+        if (this.keys[slot] == FREE) {
+            this.keys[slot] = key;
+            this.size++;
+            this.values[slot] = delta;
+            growIfNeeded();
+            return delta;
+        }
+        return this.values[slot] += delta;
+    }
+
+    /**
+     * Gives 'key' the value 'value' if it has none.
+     *
+     * @param key   the key
+     * @param value the value for a new key
+     * @return The value of 'key', i.e. 'value' if it had none
+     */
+    public int putIfAbsent(long key, int value) {
+        if (key == FREE) {
+            if (!this.hasFreeKey) {
+                this.hasFreeKey = true;
+                this.size++;
+                this.freeKeyValue = value;
+            }
+            return this.freeKeyValue;
+        }
+        int slot = slotOf(key);
+        if (this.keys[slot] == FREE) {
+            this.keys[slot] = key;
+            this.size++;
+            this.values[slot] = value;
+            growIfNeeded();
+            return value;
+        }
+        return this.values[slot];
+    }
+
+    /**
+     * Removes 'key', moving the keys after it in its probe sequence back so
+     * no tombstone is left.
+     *
+     * @param key     the key
+     * @param missing what to return if 'key' has no value
+     * @return The value 'key' had, or 'missing'
+     */
+    public int remove(long key, int missing) {
+        if (key == FREE) {
+            if (!this.hasFreeKey) {
+                return missing;
+            }
+            this.hasFreeKey = false;
+            this.size--;
+            return this.freeKeyValue;
+        }
+        int slot = slotOf(key);
+        if (this.keys[slot] == FREE) {
+            return missing;
+        }
+        int value = this.values[slot];
+        int mask = this.keys.length - 1;
+        int gap = slot;
+        for (int next = (gap + 1) & mask; this.keys[next] != FREE; next = (next + 1) & mask) {
+            // A key may fill the gap if the gap lies between its home slot and where it is now
+            int home = hash(this.keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                this.keys[gap] = this.keys[next];
+                this.values[gap] = this.values[next];
+                gap = next;
+            }
+        }
+        this.keys[gap] = FREE;
+        this.size--;
+        return value;
+    }
+
+    /**
+     * @return The number of keys
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Removes all keys, keeping the capacity.
+     */
+    public void clear() {
+        Arrays.fill(this.keys, FREE);
+        this.hasFreeKey = false;
+        this.size = 0;
+    }
+
+    /**
+     * Calls 'consumer' for every key and its value, in no particular order.
+     *
+     * @param consumer the consumer
+     */
+    public void forEach(Consumer consumer) {
+        if (this.hasFreeKey) {
+            consumer.accept(FREE, this.freeKeyValue);
+        }
+        for (int slot = 0; slot < this.keys.length; slot++) {
+            if (this.keys[slot] != FREE) {
+                consumer.accept(this.keys[slot], this.values[slot]);
+            }
+        }
+    }
+
+    /**
+     * Receives the entries of a {@link LongIntMap}.
+     */
+    public interface Consumer {
+        void accept(long key, int value);
+    }
+
+    private int slotOf(long key) {
+        int mask = this.keys.length - 1;
+        int slot = hash(key) & mask;
+        while (this.keys[slot] != key && this.keys[slot] != FREE) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void growIfNeeded() {
+        if (this.size * 2 <= this.keys.length) {
+            return;
+        }
+        long[] oldKeys = this.keys;
+        int[] oldValues = this.values;
+        this.keys = new long[oldKeys.length * 2];
+        this.values = new int[oldValues.length * 2];
+        Arrays.fill(this.keys, FREE);
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldKeys[slot] != FREE) {
+                int newSlot = slotOf(oldKeys[slot]);
+                this.keys[newSlot] = oldKeys[slot];
+                this.values[newSlot] = oldValues[slot];
+            }
+        }
+    }
+
+    static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+}
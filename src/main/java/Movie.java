@@ -6,17 +6,38 @@ public class Movie {
   private String title;
   private String year;
   private String url;
-  private List<String> genreList = new ArrayList<>();
-  private List<String> countryList = new ArrayList<>();
+  private List<String> genreList;
+  private List<String> countryList;
   private String description;
   private String budget;
   private String gross;
   private String ratingValue;
   private String ratingCount;
   private String duration;
-  private List<String> castList = new ArrayList<>();
-  private List<String> characterList = new ArrayList<>();
-  private List<String> directorList = new ArrayList<>();
+  private List<String> castList;
+  private List<String> characterList;
+  private List<String> directorList;
+
+  public Movie() {
+    this(true);
+  }
+
+  /**
+   * 
+   * @param lists
+   *          Whether to start with empty lists for the setters to fill; false
+   *          for subclasses which answer the getters themselves, so their
+   *          instances do not carry five unused lists
+   */
+  Movie(boolean lists) {
+    if (lists) {
+      this.genreList = new ArrayList<>();
+      this.countryList = new ArrayList<>();
+      this.castList = new ArrayList<>();
+      this.characterList = new ArrayList<>();
+      this.directorList = new ArrayList<>();
+    }
+  }
 
   /**
    * 
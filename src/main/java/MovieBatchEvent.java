@@ -0,0 +1,68 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Flight Recorder event for a batch of files {@link MovieReader} read in
+ * one task, which is not split any further, in one thread.
+ */
+@Name(MovieBatchEvent.NAME)
+@Label("Movie Batch Load")
+@Category({"IMDB", "Loading"})
+@Description("A batch of movie files read by one loader task")
+@StackTrace(false)
+public class MovieBatchEvent extends Event {
+
+    static final String NAME = "imdb.MovieBatch";
+
+    @Label("Files")
+    int files;
+
+    @Label("Size")
+    @DataAmount
+    long bytes;
+
+    @Label("Movies")
+    long movies;
+
+    @Label("Allocated")
+    @DataAmount
+    long allocatedBytes;
+
+    private transient long startAllocated;
+
+    /**
+     * Begins an event for a batch, which {@link #end(int, long, long)} commits.
+     */
+    static MovieBatchEvent start() {
+        MovieBatchEvent event = new MovieBatchEvent();
+        if (event.isEnabled()) {
+            event.startAllocated = ThreadAllocation.bytes();
+        }
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends and commits the event with the allocations of the calling thread
+     * since {@link #start()}.
+     *
+     * @param files  the number of files read
+     * @param bytes  their total size
+     * @param movies the number of movies read from them
+     */
+    void end(int files, long bytes, long movies) {
+        end();
+        if (shouldCommit()) {
+            this.files = files;
+            this.bytes = bytes;
+            this.movies = movies;
+            this.allocatedBytes = ThreadAllocation.bytes() - this.startAllocated;
+            commit();
+        }
+    }
+}
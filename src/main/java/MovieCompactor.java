@@ -0,0 +1,569 @@
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Turns movies into read-only copies which take a fraction of the heap of a
+ * plain {@link Movie}, which has a String per attribute and an ArrayList per
+ * list, repeated across movies:
+ * <ul>
+ * <li>names, genres and countries are shared among all movies of a
+ * compactor, and so are equal lists of genres or countries, e.g. [USA];</li>
+ * <li>lists are arrays;</li>
+ * <li>year, rating, rating count, budget, gross and duration are primitives,
+ * from which the getters format the original text again (a value which
+ * would not come out the same is kept as it is);</li>
+ * <li>descriptions are kept as Strings, as UTF-8 bytes or deflated, see
+ * {@link Descriptions}.</li>
+ * </ul>
+ * The getters return the same values as those of the original movie, but
+ * build the Strings of numbers, lists and encoded descriptions on every
+ * call; the setters throw. A compactor may be used from several threads at
+ * once, e.g. by the loader threads of
+ * {@link MovieReader#readMoviesFrom}.
+ */
+public class MovieCompactor {
+
+    /**
+     * How a compact movie keeps its description.
+     */
+    public enum Descriptions {
+        /**
+         * As a String, as a plain movie does.
+         */
+        STRING,
+        /**
+         * As UTF-8 bytes, half the size of the chars of a String before Java
+         * 9; with compact strings only smaller for non-Latin-1 text.
+         */
+        UTF8,
+        /**
+         * Deflated with a preset dictionary of frequent words, to about half
+         * the UTF-8 bytes; every read inflates it.
+         */
+        DEFLATE
+    }
+
+    /**
+     * Frequent words of descriptions, the most frequent last, where deflate
+     * finds them at the shortest distance.
+     */
+    private static final byte[] DICTIONARY = ("work like american daughter job meets some both than boy over death men "
+            + "however down police first take together money make then takes group wants school night girl each soon "
+            + "day people before just home also during against own back city friend now war year town son three "
+            + "mother help finds been being himself woman way film other off there must lives more old through years "
+            + "friends while which find where get father family story what time world about only was love not can "
+            + "new have man young them after two will all into out this life one are when has from him she but "
+            + "their they who that for her with his and the ").getBytes(StandardCharsets.UTF_8);
+
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(
+            () -> new Deflater(Deflater.BEST_COMPRESSION, true));
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    private static final String[] NONE = new String[0];
+
+    private final Descriptions descriptions;
+    private final ConcurrentHashMap<String, String> strings = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<List<String>, String[]> lists = new ConcurrentHashMap<>();
+
+    /**
+     * @param descriptions how to keep the descriptions
+     */
+    public MovieCompactor(Descriptions descriptions) {
+        this.descriptions = descriptions;
+    }
+
+    /**
+     * @param movie a movie, or null
+     * @return A compact copy of the movie; the movie itself if it is compact
+     * already or null
+     */
+    public Movie compact(Movie movie) {
+        if (movie == null || movie instanceof CompactMovie) {
+            return movie;
+        }
+        return new CompactMovie(this, movie);
+    }
+
+    /**
+     * @param movies some movies
+     * @return Compact copies of the movies, in the same order
+     */
+    public List<Movie> compactAll(List<Movie> movies) {
+        List<Movie> compact = new ArrayList<>(movies.size());
+        for (Movie movie : movies) {
+            compact.add(compact(movie));
+        }
+        return compact;
+    }
+
+    /**
+     * @return The number of distinct Strings shared among the movies
+     */
+    public int sharedStrings() {
+        return this.strings.size();
+    }
+
+    private String share(String value) {
+        if (value == null) {
+            return null;
+        }
+        String shared = this.strings.putIfAbsent(value, value);
+        return shared == null ? value : shared;
+    }
+
+    private String[] share(List<String> values) {
+        if (values == null) {
+            return null;
+        }
+        if (values.isEmpty()) {
+            return NONE;
+        }
+        String[] shared = new String[values.size()];
+        for (int i = 0; i < shared.length; i++) {
+            shared[i] = share(values.get(i));
+        }
+        return shared;
+    }
+
+    /**
+     * @return The values in one array shared by all equal lists
+     */
+    private String[] shareList(List<String> values) {
+        if (values == null || values.isEmpty()) {
+            return share(values);
+        }
+        String[] shared = this.lists.get(values);
+        if (shared == null) {
+            String[] array = share(values);
+            shared = this.lists.putIfAbsent(Arrays.asList(array), array);
+            if (shared == null) {
+                shared = array;
+            }
+        }
+        return shared;
+    }
+
+    private Object encodeDescription(String description) {
+        if (description == null || this.descriptions == Descriptions.STRING) {
+            return description;
+        }
+        byte[] utf8 = description.getBytes(StandardCharsets.UTF_8);
+        if (this.descriptions == Descriptions.UTF8) {
+            return utf8;
+        }
+        Deflater deflater = DEFLATER.get();
+        deflater.reset();
+        deflater.setDictionary(DICTIONARY);
+        deflater.setInput(utf8);
+        deflater.finish();
+        // The length of the text first, then the deflated bytes
+        byte[] buffer = new byte[5 + utf8.length + utf8.length / 1000 + 64];
+        int length = writeVarInt(buffer, utf8.length);
+        while (!deflater.finished()) {
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            length += deflater.deflate(buffer, length, buffer.length - length);
+        }
+        return Arrays.copyOf(buffer, length);
+    }
+
+    private String decodeDescription(Object description) {
+        if (description == null || this.descriptions == Descriptions.STRING) {
+            return (String) description;
+        }
+        if (this.descriptions == Descriptions.UTF8) {
+            return new String((byte[]) description, StandardCharsets.UTF_8);
+        }
+        byte[] deflated = (byte[]) description;
+        int length = 0;
+        int pos = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = deflated[pos++];
+            length |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                break;
+            }
+        }
+        byte[] utf8 = new byte[length];
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        inflater.setDictionary(DICTIONARY);
+        // A raw inflater may need a byte beyond the data, see Inflater(boolean)
+        byte[] input = Arrays.copyOfRange(deflated, pos, deflated.length + 1);
+        inflater.setInput(input);
+        try {
+            int n = 0;
+            while (n < length && !inflater.finished()) {
+                int read = inflater.inflate(utf8, n, length - n);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                n += read;
+            }
+            if (n != length) {
+                throw new IllegalStateException("Description inflated to " + n + " of " + length + " bytes");
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt description", e);
+        }
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    private static int writeVarInt(byte[] buffer, int value) {
+        int pos = 0;
+        while ((value & ~0x7f) != 0) {
+            buffer[pos++] = (byte) (value & 0x7f | 0x80);
+            value >>>= 7;
+        }
+        buffer[pos++] = (byte) value;
+        return pos;
+    }
+
+    /**
+     * @return The number in 'text' from 'from' on, with commas between
+     * groups of three digits, or -1 if it is not one
+     */
+    private static long parseGrouped(String text, int from) {
+        if (from >= text.length()) {
+            return -1;
+        }
+        long value = 0;
+        int digits = 0;
+        for (int i = from; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (++digits > 18) {
+                    return -1;
+                }
+                value = value * 10 + (c - '0');
+            } else if (c != ',') {
+                return -1;
+            }
+        }
+        return value;
+    }
+
+    private static String formatGrouped(String prefix, long value) {
+        String digits = Long.toString(value);
+        StringBuilder text = new StringBuilder(prefix.length() + digits.length() + digits.length() / 3);
+        text.append(prefix);
+        for (int i = 0; i < digits.length(); i++) {
+            if (i > 0 && (digits.length() - i) % 3 == 0) {
+                text.append(',');
+            }
+            text.append(digits.charAt(i));
+        }
+        return text.toString();
+    }
+
+    /**
+     * A read-only view of the values of an array.
+     */
+    private static final class StringArrayList extends AbstractList<String> implements RandomAccess {
+        private final String[] values;
+
+        StringArrayList(String[] values) {
+            this.values = values;
+        }
+
+        @Override
+        public String get(int index) {
+            return this.values[index];
+        }
+
+        @Override
+        public int size() {
+            return this.values.length;
+        }
+    }
+
+    /**
+     * A movie of primitives and shared values. A number which would not be
+     * formatted back to its text is marked IRREGULAR and its text kept in
+     * 'irregular'.
+     */
+    private static final class CompactMovie extends Movie {
+        private static final int IRREGULAR = -2;
+        /**
+         * The text "0" of a rating, which the getter returns for a missing
+         * one; the empty text of a duration.
+         */
+        private static final int ABSENT = -1;
+
+        private static final int YEAR = 0;
+        private static final int RATING = 1;
+        private static final int RATING_COUNT = 2;
+        private static final int BUDGET = 3;
+        private static final int GROSS = 4;
+        private static final int DURATION = 5;
+
+        /**
+         * Which knows how the description is encoded.
+         */
+        private final MovieCompactor compactor;
+        private final String title;
+        private final String url;
+        private final Object description;
+        private final String[] genres;
+        private final String[] countries;
+        private final String[] cast;
+        private final String[] characters;
+        private final String[] directors;
+        private final String budgetPrefix;
+        private final String grossPrefix;
+        private final long budget;
+        private final long gross;
+        private final int ratingCount;
+        private final short year;
+        /**
+         * In tenths.
+         */
+        private final short rating;
+        /**
+         * In minutes.
+         */
+        private final short duration;
+        private String[] irregular;
+
+        CompactMovie(MovieCompactor compactor, Movie movie) {
+            super(false);
+            this.compactor = compactor;
+            this.title = movie.getTitle();
+            this.url = movie.getUrl();
+            this.description = compactor.encodeDescription(movie.getDescription());
+            this.genres = compactor.shareList(movie.getGenreList());
+            this.countries = compactor.shareList(movie.getCountryList());
+            this.cast = compactor.share(movie.getCastList());
+            this.characters = compactor.share(movie.getCharacterList());
+            this.directors = compactor.share(movie.getDirectorList());
+
+            String year = movie.getYear();
+            long value = parseGrouped(year, 0);
+            this.year = value >= 0 && value <= Short.MAX_VALUE && Long.toString(value).equals(year)
+                    ? (short) value : (short) irregular(YEAR, year);
+
+            String rating = movie.getRatingValue();
+            int dot = rating.indexOf('.');
+            value = rating.equals("0") ? ABSENT : dot > 0 && dot == rating.length() - 2
+                    ? parseGrouped(rating.substring(0, dot) + rating.substring(dot + 1), 0) : -1;
+            this.rating = value >= ABSENT && value <= Short.MAX_VALUE && formatRating((int) value).equals(rating)
+                    ? (short) value : (short) irregular(RATING, rating);
+
+            String ratingCount = movie.getRatingCount();
+            value = parseGrouped(ratingCount, 0);
+            this.ratingCount = value >= 0 && value <= Integer.MAX_VALUE && formatGrouped("", value).equals(ratingCount)
+                    ? (int) value : irregular(RATING_COUNT, ratingCount);
+
+            String budget = movie.getBudget();
+            int digits = firstDigit(budget);
+            value = parseGrouped(budget, digits);
+            this.budgetPrefix = compactor.share(budget.substring(0, digits));
+            this.budget = value >= 0 && formatGrouped(this.budgetPrefix, value).equals(budget)
+                    ? value : irregular(BUDGET, budget);
+
+            String gross = movie.getGross();
+            digits = firstDigit(gross);
+            value = parseGrouped(gross, digits);
+            this.grossPrefix = compactor.share(gross.substring(0, digits));
+            this.gross = value >= 0 && formatGrouped(this.grossPrefix, value).equals(gross)
+                    ? value : irregular(GROSS, gross);
+
+            String duration = movie.getDuration();
+            value = duration == null ? -1 : duration.isEmpty() ? ABSENT : MovieTable.parseDuration(duration);
+            this.duration = value >= ABSENT && value <= Short.MAX_VALUE && formatDuration((int) value).equals(duration)
+                    ? (short) value : (short) irregular(DURATION, duration);
+        }
+
+        private int irregular(int field, String text) {
+            if (this.irregular == null) {
+                this.irregular = new String[DURATION + 1];
+            }
+            this.irregular[field] = text;
+            return IRREGULAR;
+        }
+
+        private static int firstDigit(String text) {
+            for (int i = 0; i < text.length(); i++) {
+                if (text.charAt(i) >= '0' && text.charAt(i) <= '9') {
+                    return i;
+                }
+            }
+            return text.length();
+        }
+
+        private static String formatRating(int tenths) {
+            return tenths == ABSENT ? "0" : tenths / 10 + "." + tenths % 10;
+        }
+
+        private static String formatDuration(int minutes) {
+            if (minutes == ABSENT) {
+                return "";
+            }
+            int hours = minutes / 60;
+            minutes %= 60;
+            return hours == 0 ? minutes + "min" : minutes == 0 ? hours + "h" : hours + "h " + minutes + "min";
+        }
+
+        private static List<String> list(String[] values) {
+            return values == null ? null : new StringArrayList(values);
+        }
+
+        @Override
+        public String getTitle() {
+            return this.title;
+        }
+
+        @Override
+        public String getYear() {
+            return this.year == IRREGULAR ? this.irregular[YEAR] : Integer.toString(this.year);
+        }
+
+        @Override
+        public String getUrl() {
+            return this.url;
+        }
+
+        @Override
+        public List<String> getGenreList() {
+            return list(this.genres);
+        }
+
+        @Override
+        public List<String> getCountryList() {
+            return list(this.countries);
+        }
+
+        @Override
+        public String getDescription() {
+            return this.compactor.decodeDescription(this.description);
+        }
+
+        @Override
+        public String getBudget() {
+            return this.budget == IRREGULAR ? this.irregular[BUDGET] : formatGrouped(this.budgetPrefix, this.budget);
+        }
+
+        @Override
+        public String getGross() {
+            return this.gross == IRREGULAR ? this.irregular[GROSS] : formatGrouped(this.grossPrefix, this.gross);
+        }
+
+        @Override
+        public String getRatingValue() {
+            return this.rating == IRREGULAR ? this.irregular[RATING] : formatRating(this.rating);
+        }
+
+        @Override
+        public String getRatingCount() {
+            return this.ratingCount == IRREGULAR ? this.irregular[RATING_COUNT] : formatGrouped("", this.ratingCount);
+        }
+
+        @Override
+        public String getDuration() {
+            return this.duration == IRREGULAR ? this.irregular[DURATION] : formatDuration(this.duration);
+        }
+
+        @Override
+        public List<String> getCastList() {
+            return list(this.cast);
+        }
+
+        @Override
+        public List<String> getCharacterList() {
+            return list(this.characters);
+        }
+
+        @Override
+        public List<String> getDirectorList() {
+            return list(this.directors);
+        }
+
+        @Override
+        public void setTitle(String title) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setYear(String year) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setUrl(String url) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setGenreList(List<String> genreList) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setCountryList(List<String> countryList) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setDescription(String description) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setBudget(String budget) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setGross(String gross) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setRatingValue(String ratingValue) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setRatingCount(String ratingCount) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setDuration(String duration) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setCastList(List<String> castList) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setCharacterList(List<String> characterList) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setDirectorList(List<String> directorList) {
+            throw readOnly();
+        }
+
+        private static UnsupportedOperationException readOnly() {
+            return new UnsupportedOperationException("A compact movie is read-only");
+        }
+
+        @Override
+        public String toString() {
+            return this.title;
+        }
+    }
+}
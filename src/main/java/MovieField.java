@@ -0,0 +1,53 @@
+import java.util.EnumSet;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * The fields of a {@link Movie}, e.g. to say which of them a query reads or
+ * an update changed.
+ */
+public enum MovieField {
+    TITLE(Movie::getTitle),
+    YEAR(Movie::getYear),
+    URL(Movie::getUrl),
+    GENRES(Movie::getGenreList),
+    COUNTRIES(Movie::getCountryList),
+    DESCRIPTION(Movie::getDescription),
+    BUDGET(Movie::getBudget),
+    GROSS(Movie::getGross),
+    RATING(Movie::getRatingValue),
+    RATING_COUNT(Movie::getRatingCount),
+    DURATION(Movie::getDuration),
+    CAST(Movie::getCastList),
+    CHARACTERS(Movie::getCharacterList),
+    DIRECTORS(Movie::getDirectorList);
+
+    private final Function<Movie, Object> getter;
+
+    MovieField(Function<Movie, Object> getter) {
+        this.getter = getter;
+    }
+
+    /**
+     * @param movie a movie
+     * @return The value of this field of the movie
+     */
+    public Object get(Movie movie) {
+        return this.getter.apply(movie);
+    }
+
+    /**
+     * @param before a movie
+     * @param after  the same movie later
+     * @return The fields whose values differ
+     */
+    public static EnumSet<MovieField> changed(Movie before, Movie after) {
+        EnumSet<MovieField> changed = EnumSet.noneOf(MovieField.class);
+        for (MovieField field : values()) {
+            if (!Objects.equals(field.get(before), field.get(after))) {
+                changed.add(field);
+            }
+        }
+        return changed;
+    }
+}
@@ -0,0 +1,67 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Flight Recorder event for one file {@link MovieReader} read: a JSON
+ * file of one movie or a segment of many.
+ */
+@Name(MovieFileEvent.NAME)
+@Label("Movie File Load")
+@Category({"IMDB", "Loading"})
+@Description("A movie file read and parsed")
+@StackTrace(false)
+public class MovieFileEvent extends Event {
+
+    static final String NAME = "imdb.MovieFile";
+
+    @Label("Path")
+    String path;
+
+    @Label("Size")
+    @DataAmount
+    long bytes;
+
+    @Label("Movies")
+    long movies;
+
+    @Label("Allocated")
+    @DataAmount
+    long allocatedBytes;
+
+    private transient long startAllocated;
+
+    /**
+     * Begins an event for a file, which {@link #end(long, long)} commits.
+     */
+    static MovieFileEvent start(String path) {
+        MovieFileEvent event = new MovieFileEvent();
+        if (event.isEnabled()) {
+            event.path = path;
+            event.startAllocated = ThreadAllocation.bytes();
+        }
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends and commits the event with the allocations of the calling thread
+     * since {@link #start(String)}.
+     *
+     * @param bytes  the size of the file
+     * @param movies the number of movies read from it
+     */
+    void end(long bytes, long movies) {
+        end();
+        if (shouldCommit()) {
+            this.bytes = bytes;
+            this.movies = movies;
+            this.allocatedBytes = ThreadAllocation.bytes() - this.startAllocated;
+            commit();
+        }
+    }
+}
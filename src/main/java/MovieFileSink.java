@@ -0,0 +1,48 @@
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.DefaultIndenter;
+import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Writes every movie to its own pretty-printed JSON file in the format of
+ * 'example_movie_avatar.json', named after the title it was searched by.
+ */
+public class MovieFileSink implements MovieSink {
+
+    private final File outputDir;
+
+    /**
+     * @param outputDir output directory for JSON files with metadata of movies.
+     */
+    public MovieFileSink(File outputDir) {
+        this.outputDir = outputDir;
+    }
+
+    @Override
+    public File write(Movie movie, String movieName) throws IOException {
+        File file = new File(this.outputDir, movieName.replaceAll("[^a-zA-Z0-9.-]", "_") + ".json");
+        try (JsonGenerator generator = MovieJson.FACTORY.createGenerator(file, JsonEncoding.UTF8)) {
+            DefaultPrettyPrinter pp = new DefaultPrettyPrinter();
+            pp.indentArraysWith(DefaultIndenter.SYSTEM_LINEFEED_INSTANCE);
+            generator.setPrettyPrinter(pp);
+            generator.writeStartArray();
+            MovieJson.writeMovie(generator, movie);
+            generator.writeEndArray();
+        }
+        return file;
+    }
+
+    /**
+     * Does nothing, every file is closed when it has been written.
+     */
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+}
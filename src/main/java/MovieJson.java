@@ -0,0 +1,228 @@
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streaming (de-)serialization of movies in the format of
+ * 'example_movie_avatar.json', without building a JSON tree.
+ */
+public final class MovieJson {
+
+    /**
+     * The factory is thread-safe and shared by all readers and writers.
+     */
+    static final JsonFactory FACTORY = new JsonFactory();
+
+    /**
+     * The field of a segment record which holds the title the movie was
+     * searched by, see {@link #writeRecord}.
+     */
+    static final String MOVIE_NAME = "movieName";
+
+    private MovieJson() {
+    }
+
+    /**
+     * Parses a movie file, i.e. a JSON array whose first element is the movie.
+     * A file holding just the movie object is accepted as well.
+     *
+     * @param data the content of the file
+     * @return The movie, or null if the array is empty
+     * @throws IOException if the data is not valid JSON
+     */
+    public static Movie readMovieFile(byte[] data) throws IOException {
+        try (JsonParser parser = FACTORY.createParser(data)) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_ARRAY) {
+                token = parser.nextToken();
+            }
+            if (token != JsonToken.START_OBJECT) {
+                return null;
+            }
+            return readMovie(parser);
+        }
+    }
+
+    /**
+     * Reads the attributes of a movie from a parser positioned on the
+     * START_OBJECT token of the movie. Unknown attributes are skipped; missing
+     * String attributes are empty, like {@code JsonNode.path(key).asText()}.
+     *
+     * @param parser the parser
+     * @return The movie, the parser is left on its END_OBJECT token
+     * @throws IOException if the data is not valid JSON
+     */
+    public static Movie readMovie(JsonParser parser) throws IOException {
+        return readRecord(parser).getValue();
+    }
+
+    /**
+     * Reads a record of a segment file like {@link #readMovie(JsonParser)}
+     * reads a movie.
+     *
+     * @param parser the parser
+     * @return The title the movie was searched by, null if the record has
+     * none, and the movie
+     * @throws IOException if the data is not valid JSON
+     */
+    public static Map.Entry<String, Movie> readRecord(JsonParser parser) throws IOException {
+        String movieName = null;
+        Movie movie = new Movie();
+        movie.setTitle("");
+        movie.setYear("");
+        movie.setUrl("");
+        movie.setDescription("");
+        movie.setBudget("");
+        movie.setGross("");
+        movie.setRatingValue("");
+        movie.setRatingCount("");
+        movie.setDuration("");
+
+        String field;
+        while ((field = parser.nextFieldName()) != null) {
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "title":
+                    movie.setTitle(readString(parser));
+                    break;
+                case "year":
+                    movie.setYear(readString(parser));
+                    break;
+                case "url":
+                    movie.setUrl(readString(parser));
+                    break;
+                case "genreList":
+                    movie.setGenreList(readStringArray(parser));
+                    break;
+                case "countryList":
+                    movie.setCountryList(readStringArray(parser));
+                    break;
+                case "description":
+                    movie.setDescription(readString(parser));
+                    break;
+                case "budget":
+                    movie.setBudget(readString(parser));
+                    break;
+                case "gross":
+                    movie.setGross(readString(parser));
+                    break;
+                case "ratingValue":
+                    movie.setRatingValue(readString(parser));
+                    break;
+                case "ratingCount":
+                    movie.setRatingCount(readString(parser));
+                    break;
+                case "duration":
+                    movie.setDuration(readString(parser));
+                    break;
+                case "castList":
+                    movie.setCastList(readStringArray(parser));
+                    break;
+                case "characterList":
+                    movie.setCharacterList(readStringArray(parser));
+                    break;
+                case "directorList":
+                    movie.setDirectorList(readStringArray(parser));
+                    break;
+                case MOVIE_NAME:
+                    movieName = readString(parser);
+                    break;
+                default:
+                    if (value == JsonToken.START_OBJECT || value == JsonToken.START_ARRAY) {
+                        parser.skipChildren();
+                    }
+            }
+        }
+        return new AbstractMap.SimpleImmutableEntry<>(movieName, movie);
+    }
+
+    /**
+     * Writes a movie as JSON object, with the attributes in the order of
+     * 'example_movie_avatar.json'.
+     *
+     * @param generator the generator
+     * @param movie     the movie
+     * @throws IOException if the movie cannot be written
+     */
+    public static void writeMovie(JsonGenerator generator, Movie movie) throws IOException {
+        writeRecord(generator, movie, null);
+    }
+
+    /**
+     * Writes a record of a segment file: the movie as JSON object which
+     * begins with the title it was searched by. Readers of plain movies skip
+     * that field; {@link #readRecord} returns it, so a movie written again
+     * by a resumed crawl can be told from a different one.
+     *
+     * @param generator the generator
+     * @param movie     the movie
+     * @param movieName the title the movie was searched by, or null to write
+     *                  a plain movie
+     * @throws IOException if the movie cannot be written
+     */
+    public static void writeRecord(JsonGenerator generator, Movie movie, String movieName) throws IOException {
+        generator.writeStartObject();
+        if (movieName != null) {
+            generator.writeStringField(MOVIE_NAME, movieName);
+        }
+        generator.writeStringField("url", movie.getUrl());
+        generator.writeStringField("title", movie.getTitle());
+        generator.writeStringField("year", movie.getYear());
+        writeStringArray(generator, "genreList", movie.getGenreList());
+        writeStringArray(generator, "countryList", movie.getCountryList());
+        generator.writeStringField("description", movie.getDescription());
+        generator.writeStringField("budget", movie.getBudget());
+        generator.writeStringField("gross", movie.getGross());
+        generator.writeStringField("ratingValue", movie.getRatingValue());
+        generator.writeStringField("ratingCount", movie.getRatingCount());
+        generator.writeStringField("duration", movie.getDuration());
+        writeStringArray(generator, "castList", movie.getCastList());
+        writeStringArray(generator, "directorList", movie.getDirectorList());
+        writeStringArray(generator, "characterList", movie.getCharacterList());
+        generator.writeEndObject();
+    }
+
+    private static void writeStringArray(JsonGenerator generator, String field, List<String> list)
+            throws IOException {
+        generator.writeArrayFieldStart(field);
+        for (String value : list) {
+            generator.writeString(value);
+        }
+        generator.writeEndArray();
+    }
+
+    private static String readString(JsonParser parser) throws IOException {
+        JsonToken token = parser.getCurrentToken();
+        if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return "";
+        }
+        return parser.getValueAsString("");
+    }
+
+    private static List<String> readStringArray(JsonParser parser) throws IOException {
+        List<String> result = new ArrayList<>();
+        if (parser.getCurrentToken() != JsonToken.START_ARRAY) {
+            if (parser.getCurrentToken() == JsonToken.START_OBJECT) {
+                parser.skipChildren();
+            }
+            return result;
+        }
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token == null) {
+                throw new JsonParseException(parser, "Unexpected end of input in array");
+            }
+            result.add(readString(parser));
+        }
+        return result;
+    }
+}
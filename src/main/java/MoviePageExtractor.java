@@ -0,0 +1,280 @@
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.select.Evaluator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Extracts the metadata of a movie from its IMDB title page like
+ * {@link IMDBSpider#parseMoviePageBySelectors} does, but without running a
+ * dozen CSS queries over the whole page: one walk over the page locates the
+ * sections (the cast table, the subtext, #titleDetails, ...) and then only
+ * these subtrees are walked, with evaluators which are compiled once.
+ */
+public final class MoviePageExtractor {
+
+    private static final Evaluator CAST_LIST = new And(new Evaluator.Tag("table"), new Evaluator.Class("cast_list"));
+    private static final Evaluator CREDIT_SUMMARY_ITEM = new And(new Evaluator.Tag("div"),
+            new Evaluator.Class("credit_summary_item"));
+    private static final Evaluator TITLE_YEAR = new Evaluator.Id("titleYear");
+    private static final Evaluator RATING_VALUE_DIV = new And(new Evaluator.Tag("div"), new Evaluator.Class("ratingValue"));
+    private static final Evaluator IMDB_RATING_DIV = new And(new Evaluator.Tag("div"), new Evaluator.Class("imdbRating"));
+    private static final Evaluator SUBTEXT = new And(new Evaluator.Tag("div"), new Evaluator.Class("subtext"));
+    private static final Evaluator STORY_LINE = new Evaluator.Id("titleStoryLine");
+    private static final Evaluator GENRE_DIV = new And(new Evaluator.Tag("div"),
+            new Evaluator.AttributeWithValueContaining("itemprop", "genre"));
+    private static final Evaluator DETAILS = new Evaluator.Id("titleDetails");
+
+    private static final Evaluator ACTOR = new And(new Evaluator.Tag("span"), new Evaluator.Class("itemprop"));
+    private static final Evaluator CHARACTER = new And(new Evaluator.Tag("td"), new Evaluator.Class("character"));
+    private static final Evaluator DIRECTOR = new And(new Evaluator.Tag("span"),
+            new Evaluator.AttributeWithValue("itemprop", "director"));
+    private static final Evaluator RATING_VALUE = new And(new Evaluator.Tag("span"),
+            new Evaluator.AttributeWithValueContaining("itemprop", "ratingValue"));
+    private static final Evaluator RATING_COUNT = new And(new Evaluator.Tag("span"),
+            new Evaluator.AttributeWithValueContaining("itemprop", "ratingCount"));
+    private static final Evaluator TIME = new Evaluator.Tag("time");
+    private static final Evaluator PARAGRAPH = new Evaluator.Tag("p");
+    private static final Evaluator GENRE = new And(new Evaluator.Tag("a"),
+            new Evaluator.AttributeWithValueStarting("href", "/genre"));
+    private static final Evaluator COUNTRY = new And(new Evaluator.Tag("a"),
+            new Evaluator.AttributeWithValueContaining("href", "/search/title?countries"));
+    private static final Evaluator GROSS = new Evaluator.ContainsOwnText("Gross:");
+    private static final Evaluator BUDGET = new Evaluator.ContainsOwnText("Budget:");
+
+    private MoviePageExtractor() {
+    }
+
+    /**
+     * Extracts the metadata of a movie from its title page.
+     *
+     * @param page  the title page
+     * @param movie the movie to fill in
+     * @throws IllegalArgumentException if the page lacks a section every
+     *                                  title page has
+     */
+    public static void extract(Element page, Movie movie) {
+        Sections sections = new Sections();
+        walk(page, element -> {
+            sections.visit(page, element);
+            return true;
+        });
+
+        // Get Cast
+        if (sections.castList != null && sections.castList.childNodeSize() > 0) {
+            Element body = firstChild(sections.castList);
+            int row = 0;
+            for (int i = 0; body != null && i < body.childNodeSize(); i++) {
+                if (!(body.childNode(i) instanceof Element) || row++ == 0) {
+                    continue;
+                }
+                Element child = (Element) body.childNode(i);
+                if (child.className().equals("odd") || child.className().equals("even")) {
+                    Element character = first(child, CHARACTER);
+                    Element role = character == null ? null : firstChild(character);
+                    if (role == null) {
+                        throw new IllegalArgumentException("Cast row without a character");
+                    }
+                    movie.getCastList().add(text(child, ACTOR));
+                    movie.getCharacterList().add(role.text());
+                }
+            }
+        }
+
+        // Get Director
+        for (Element item : sections.creditSummaryItems) {
+            for (int i = 0; i < item.childNodeSize(); i++) {
+                Node child = item.childNode(i);
+                if (child instanceof Element && DIRECTOR.matches(page, (Element) child)) {
+                    movie.getDirectorList().add(((Element) child).text().replace(",", ""));
+                }
+            }
+        }
+
+        // Get Year
+        if (sections.titleYear != null) {
+            movie.setYear(sections.titleYear.text().substring(1, 5));
+        }
+
+        Element ratingValue = first(sections.ratingValueDivs, RATING_VALUE);
+        if (ratingValue != null) movie.setRatingValue(ratingValue.text());
+        Element ratingCount = first(sections.imdbRatingDivs, RATING_COUNT);
+        if (ratingCount != null) movie.setRatingCount(ratingCount.text());
+
+        Element duration = first(require(sections.subtext, "subtext"), TIME);
+        if (duration != null) movie.setDuration(duration.text());
+
+        // Get Story
+        Element story = sections.storyLine == null ? null : first(sections.storyLine, PARAGRAPH);
+        if (story != null) movie.setDescription(story.text());
+
+        walk(require(sections.genre, "genre"), element -> {
+            if (GENRE.matches(page, element)) movie.getGenreList().add(element.text());
+            return true;
+        });
+
+        // Get Countries, Budget and Gross from #titleDetails
+        Element details = require(sections.details, "titleDetails");
+        Element[] budgetAndGross = new Element[2];
+        walk(details, element -> {
+            if (COUNTRY.matches(page, element)) {
+                movie.getCountryList().add(element.text());
+            }
+            if (budgetAndGross[0] == null && BUDGET.matches(page, element)) {
+                budgetAndGross[0] = element;
+            }
+            if (budgetAndGross[1] == null && GROSS.matches(page, element)) {
+                budgetAndGross[1] = element;
+            }
+            return true;
+        });
+        if (budgetAndGross[0] != null) movie.setBudget(budgetAndGross[0].parent().ownText());
+        if (budgetAndGross[1] != null) movie.setGross(budgetAndGross[1].parent().ownText());
+    }
+
+    /**
+     * The sections of a title page, the first of each in document order.
+     */
+    private static class Sections {
+        Element castList;
+        Element titleYear;
+        Element subtext;
+        Element storyLine;
+        Element genre;
+        Element details;
+        final List<Element> creditSummaryItems = new ArrayList<>();
+        final List<Element> ratingValueDivs = new ArrayList<>();
+        final List<Element> imdbRatingDivs = new ArrayList<>();
+
+        void visit(Element root, Element element) {
+            // Dispatch on the tag first, most elements match no section at all
+            String tag = element.tagName();
+            if (tag.equals("div")) {
+                if (subtext == null && SUBTEXT.matches(root, element)) subtext = element;
+                if (genre == null && GENRE_DIV.matches(root, element)) genre = element;
+                if (CREDIT_SUMMARY_ITEM.matches(root, element)) creditSummaryItems.add(element);
+                if (RATING_VALUE_DIV.matches(root, element)) ratingValueDivs.add(element);
+                if (IMDB_RATING_DIV.matches(root, element)) imdbRatingDivs.add(element);
+            } else if (tag.equals("table")) {
+                if (castList == null && CAST_LIST.matches(root, element)) castList = element;
+            }
+            if (element.hasAttr("id")) {
+                if (titleYear == null && TITLE_YEAR.matches(root, element)) titleYear = element;
+                if (storyLine == null && STORY_LINE.matches(root, element)) storyLine = element;
+                if (details == null && DETAILS.matches(root, element)) details = element;
+            }
+        }
+    }
+
+    /**
+     * Visits the elements below 'root', 'root' included, in document order
+     * until 'visitor' returns false.
+     */
+    private static void walk(Element root, Visitor visitor) {
+        Node node = root;
+        int depth = 0;
+        while (node != null) {
+            if (node instanceof Element && !visitor.visit((Element) node)) {
+                return;
+            }
+            if (node.childNodeSize() > 0) {
+                node = node.childNode(0);
+                depth++;
+            } else {
+                while (node.nextSibling() == null && depth > 0) {
+                    node = node.parentNode();
+                    depth--;
+                }
+                if (depth == 0) {
+                    return;
+                }
+                node = node.nextSibling();
+            }
+        }
+    }
+
+    /**
+     * @return The first element below 'root', 'root' included, which
+     * matches, or null
+     */
+    private static Element first(Element root, Evaluator evaluator) {
+        Element[] found = new Element[1];
+        walk(root, element -> {
+            if (evaluator.matches(root, element)) {
+                found[0] = element;
+                return false;
+            }
+            return true;
+        });
+        return found[0];
+    }
+
+    /**
+     * @return The first element below the first of 'roots' which has one
+     * that matches, or null
+     */
+    private static Element first(List<Element> roots, Evaluator evaluator) {
+        for (Element root : roots) {
+            Element element = first(root, evaluator);
+            if (element != null) {
+                return element;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The texts of the matching elements below 'root', separated by
+     * spaces, like {@link org.jsoup.select.Elements#text()}
+     */
+    private static String text(Element root, Evaluator evaluator) {
+        StringBuilder text = new StringBuilder();
+        walk(root, element -> {
+            if (evaluator.matches(root, element)) {
+                if (text.length() != 0) text.append(' ');
+                text.append(element.text());
+            }
+            return true;
+        });
+        return text.toString();
+    }
+
+    private static Element firstChild(Element element) {
+        for (int i = 0; i < element.childNodeSize(); i++) {
+            if (element.childNode(i) instanceof Element) {
+                return (Element) element.childNode(i);
+            }
+        }
+        return null;
+    }
+
+    private static Element require(Element section, String name) {
+        if (section == null) {
+            throw new IllegalArgumentException("The page has no " + name + " section");
+        }
+        return section;
+    }
+
+    private interface Visitor {
+        boolean visit(Element element);
+    }
+
+    /**
+     * Matches if both evaluators match.
+     */
+    private static final class And extends Evaluator {
+        private final Evaluator first;
+        private final Evaluator second;
+
+        And(Evaluator first, Evaluator second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public boolean matches(Element root, Element element) {
+            return this.first.matches(root, element) && this.second.matches(root, element);
+        }
+    }
+}
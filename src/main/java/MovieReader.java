@@ -1,14 +1,41 @@
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.JsonEOFException;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
 
 
 public class MovieReader {
 
+    /**
+     * Files per fork-join task below which a task is no longer split.
+     */
+    private static final int FILES_PER_TASK = 64;
+
     public MovieReader() {
     }
 
@@ -29,33 +56,361 @@ public class MovieReader {
      * @throws IOException
      */
     public static List<Movie> readMoviesFrom(File moviesDir) throws IOException {
-        ObjectMapper mapper = new ObjectMapper();
-        List<Movie> movies = new ArrayList<>();
-        for (File f : moviesDir.listFiles()) {
-            if (f.getName().endsWith(".json")) {
-
-           JsonNode m =  mapper.readValue(f, JsonNode.class).get(0);
-
-
-            Movie obj = new Movie();
-            obj.setTitle(getString(m, "title"));
-            obj.setYear(getString(m, "year"));
-            obj.setUrl(getString(m, "url"));
-            obj.setGenreList(getJsonArray(m, "genreList"));
-            obj.setCountryList(getJsonArray(m, "countryList"));
-            obj.setDescription(getString(m, "description"));
-            obj.setBudget(getString(m, "budget"));
-            obj.setGross(getString(m, "gross"));
-            obj.setRatingValue(getString(m, "ratingValue"));
-            obj.setRatingCount(getString(m, "ratingCount"));
-            obj.setDuration(getString(m, "duration"));
-            obj.setCastList(getJsonArray(m, ("castList")));
-            obj.setCharacterList(getJsonArray(m, ("characterList")));
-            obj.setDirectorList(getJsonArray(m, "directorList"));
-            movies.add(obj);
+        return readMoviesFrom(moviesDir, ForkJoinPool.commonPool(), new LoadStats());
+    }
+
+    /**
+     * Read movies from JSON files in directory 'moviesDir' with 'parallelism'
+     * threads, see {@link #readMoviesFrom(File, ForkJoinPool, LoadStats)}.
+     *
+     * @param moviesDir   The directory containing the set of JSON files, each ending with a
+     *                    suffix ".json".
+     * @param parallelism The number of loader threads
+     * @param stats       Receives the number of files and bytes read
+     * @return A list of movies
+     * @throws IOException
+     */
+    public static List<Movie> readMoviesFrom(File moviesDir, int parallelism, LoadStats stats)
+            throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return readMoviesFrom(moviesDir, pool, stats);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Read movies from JSON files in directory 'moviesDir', see
+     * {@link #readMoviesFrom(File)}.
+     * <p>
+     * The files are parsed with a streaming parser straight into {@link Movie}
+     * objects, spread over the threads of 'pool'. The movies are returned in
+     * the order in which the directory lists the files. Segment files written
+     * by {@link SegmentMovieSink} are read too, one per task; their movies
+     * follow those of the JSON files, in the order of the segments. A title
+     * with records in several segments, because a crawl was resumed after it
+     * had written but not yet journaled the movie, is returned once, in the
+     * place of its first record with the content of its last.
+     *
+     * @param moviesDir The directory containing the set of JSON files, each ending with a
+     *                  suffix ".json".
+     * @param pool      The pool to parse the files in
+     * @param stats     Receives the number of files and bytes read
+     * @return A list of movies
+     * @throws IOException
+     */
+    public static List<Movie> readMoviesFrom(File moviesDir, ForkJoinPool pool, LoadStats stats)
+            throws IOException {
+        return readMoviesFrom(moviesDir, pool, stats, null);
+    }
+
+    /**
+     * Read movies from JSON files in directory 'moviesDir', see
+     * {@link #readMoviesFrom(File, ForkJoinPool, LoadStats)}, and turn each
+     * movie into a compact one as soon as it is parsed, so the plain movies
+     * never pile up on the heap.
+     *
+     * @param moviesDir The directory containing the set of JSON files, each ending with a
+     *                  suffix ".json".
+     * @param pool      The pool to parse the files in
+     * @param stats     Receives the number of files and bytes read
+     * @param compactor Compacts the movies, or null to keep them as parsed
+     * @return A list of movies
+     * @throws IOException
+     */
+    public static List<Movie> readMoviesFrom(File moviesDir, ForkJoinPool pool, LoadStats stats,
+                                             MovieCompactor compactor) throws IOException {
+        stats.start();
+        List<Path> files = new ArrayList<>();
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(moviesDir.toPath(), "*.{json,ndjson,ndjson.gz}")) {
+            for (Path file : stream) {
+                if (SegmentMovieSink.segmentNumber(file.getFileName().toString()) >= 0) {
+                    segments.add(file);
+                } else if (file.getFileName().toString().endsWith(".json")) {
+                    files.add(file);
+                }
+            }
+        }
+        Collections.sort(segments);
+
+        Movie[] movies = new Movie[files.size()];
+        List<ForkJoinTask<List<Map.Entry<String, Movie>>>> segmentTasks = new ArrayList<>();
+        try {
+            for (Path segment : segments) {
+                segmentTasks.add(pool.submit(() -> {
+                    MovieFileEvent event = MovieFileEvent.start(segment.toString());
+                    List<Map.Entry<String, Movie>> segmentMovies = new ArrayList<>();
+                    try {
+                        readSegment(segment.toFile(), (movie, movieName) -> segmentMovies.add(
+                                new AbstractMap.SimpleImmutableEntry<>(movieName,
+                                        compactor == null ? movie : compactor.compact(movie))));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Could not read " + segment, e);
+                    }
+                    long size = Files.size(segment);
+                    stats.addFile(size);
+                    event.end(size, segmentMovies.size());
+                    return segmentMovies;
+                }));
+            }
+            pool.invoke(new LoadTask(files, movies, 0, movies.length, stats, compactor));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        List<Movie> result = new ArrayList<>(movies.length);
+        for (Movie movie : movies) {
+            if (movie != null) {
+                result.add(movie);
+            }
+        }
+        Map<String, Integer> places = new HashMap<>();
+        for (ForkJoinTask<List<Map.Entry<String, Movie>>> task : segmentTasks) {
+            try {
+                for (Map.Entry<String, Movie> record : task.get()) {
+                    Integer place = record.getKey() == null ? null
+                            : places.putIfAbsent(record.getKey(), result.size());
+                    if (place == null) {
+                        result.add(record.getValue());
+                    } else {
+                        result.set(place, record.getValue());
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while reading segments", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof UncheckedIOException) {
+                    throw ((UncheckedIOException) e.getCause()).getCause();
+                }
+                throw new IOException(e.getCause());
+            }
+        }
+        stats.stop();
+        return result;
+    }
+
+    /**
+     * Streams the movies of a segment file written by {@link SegmentMovieSink},
+     * one JSON object per line, gzipped if the name ends with ".gz". A last
+     * record which was cut off because the writer died is skipped.
+     *
+     * @param segment  the segment file
+     * @param consumer receives the movies in the order of the file
+     * @return The number of movies read
+     * @throws IOException if the segment cannot be read or is corrupt before its end
+     */
+    public static long readSegment(File segment, Consumer<Movie> consumer) throws IOException {
+        return readSegment(segment, (movie, movieName) -> consumer.accept(movie));
+    }
+
+    /**
+     * Streams the movies of a segment file like
+     * {@link #readSegment(File, Consumer)}, each with the title it was
+     * searched by.
+     *
+     * @param segment  the segment file
+     * @param consumer receives the movies in the order of the file
+     * @return The number of movies read
+     * @throws IOException if the segment cannot be read or is corrupt before its end
+     */
+    public static long readSegment(File segment, RecordConsumer consumer) throws IOException {
+        long[] count = new long[1];
+        readSegment(segment, 0, (movie, movieName) -> {
+            consumer.accept(movie, movieName);
+            count[0]++;
+        }, true);
+        return count[0];
+    }
+
+    /**
+     * Streams the movies of a segment file which may still grow, from where
+     * an earlier call stopped. A last record which is cut off is left for the
+     * next call, as the writer may still be writing it.
+     * <p>
+     * An uncompressed segment is read from 'offset' on, so following a
+     * segment costs as much as reading it once. A gzipped one has to be
+     * decompressed from its beginning to get to 'offset', though the records
+     * before it are not parsed again; a call costs up to the size of the
+     * segment, which {@link SegmentMovieSink} caps.
+     *
+     * @param segment  the segment file
+     * @param offset   the offset in the uncompressed content an earlier call
+     *                 returned, or 0
+     * @param consumer receives the movies after 'offset' in the order of the file
+     * @return The offset after the last complete record, to continue from
+     * @throws IOException if the segment cannot be read or is corrupt before its end
+     */
+    public static long readSegment(File segment, long offset, RecordConsumer consumer) throws IOException {
+        return readSegment(segment, offset, consumer, false);
+    }
+
+    /**
+     * @param skipTorn whether a record cut off at the end is logged and skipped
+     *                 rather than left for the next call
+     */
+    private static long readSegment(File segment, long offset, RecordConsumer consumer, boolean skipTorn)
+            throws IOException {
+        long end = offset;
+        long count = 0;
+        FileInputStream file = new FileInputStream(segment);
+        InputStream in = file;
+        try {
+            if (segment.getName().endsWith(".gz")) {
+                in = new GZIPInputStream(in, 64 * 1024);
+                // skip() would decompress through a buffer of 512 bytes
+                byte[] skipped = new byte[64 * 1024];
+                for (long left = offset; left > 0; ) {
+                    int n = in.read(skipped, 0, (int) Math.min(skipped.length, left));
+                    if (n < 0) {
+                        throw new IOException(segment + " is shorter than " + offset + " bytes");
+                    }
+                    left -= n;
+                }
+            } else {
+                file.getChannel().position(offset);
+            }
+            try (JsonParser parser = MovieJson.FACTORY.createParser(in)) {
+                JsonToken token;
+                while ((token = parser.nextToken()) != null) {
+                    if (token != JsonToken.START_OBJECT) {
+                        throw new JsonParseException(parser, "Expected a movie object");
+                    }
+                    Map.Entry<String, Movie> record = MovieJson.readRecord(parser);
+                    consumer.accept(record.getValue(), record.getKey());
+                    end = offset + parser.getCurrentLocation().getByteOffset();
+                    count++;
+                }
+            } catch (EOFException | JsonEOFException e) {
+                if (skipTorn) {
+                    Logger.getLogger("MovieReader").log(Level.WARNING,
+                            "Segment " + segment + " ends with a torn record after " + count + " movies, skipping it");
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return end;
+    }
+
+    /**
+     * Receives the records of a segment file.
+     */
+    public interface RecordConsumer {
+        /**
+         * @param movie     the movie
+         * @param movieName the title the movie was searched by, or null if
+         *                  the segment was written before titles were recorded
+         */
+        void accept(Movie movie, String movieName);
+    }
+
+    /**
+     * Read movies from JSON files in directory 'moviesDir', see
+     * {@link #readMoviesFrom(File)}, and parse their numeric attributes into
+     * a {@link MovieTable}.
+     *
+     * @param moviesDir The directory containing the set of JSON files, each ending with a
+     *                  suffix ".json".
+     * @return A table of the movies
+     * @throws IOException
+     */
+    public static MovieTable readMovieTableFrom(File moviesDir) throws IOException {
+        return new MovieTable(readMoviesFrom(moviesDir));
+    }
+
+    /**
+     * Opens the movies of directory 'moviesDir' from the binary snapshot
+     * 'snapshotFile', see {@link MovieSnapshot}. If the snapshot is missing,
+     * unreadable, fails its checksum or was written from a different state of
+     * the directory, the JSON files are read instead and the snapshot is
+     * rewritten. The checksum is checked on every open, since a torn or
+     * damaged file would otherwise only show up as wrong query results.
+     *
+     * @param moviesDir    The directory containing the set of JSON files, each ending with a
+     *                     suffix ".json".
+     * @param snapshotFile The snapshot of the directory
+     * @return A table of the movies
+     * @throws IOException
+     */
+    public static MovieTable readMovieTableFrom(File moviesDir, File snapshotFile) throws IOException {
+        long fingerprint = MovieSnapshot.fingerprint(moviesDir);
+        if (snapshotFile.exists()) {
+            try {
+                MovieSnapshot snapshot = MovieSnapshot.open(snapshotFile.toPath());
+                if (snapshot.getFingerprint() == fingerprint) {
+                    snapshot.verify();
+                    return snapshot.toTable();
+                }
+                Logger.getLogger("MovieReader").log(Level.INFO,
+                        "Snapshot " + snapshotFile + " is stale, reading " + moviesDir);
+            } catch (IOException e) {
+                Logger.getLogger("MovieReader").log(Level.WARNING,
+                        "Could not open snapshot " + snapshotFile + ", reading " + moviesDir, e);
+            }
+        }
+
+        MovieTable table = readMovieTableFrom(moviesDir);
+        try {
+            MovieSnapshot.write(table, fingerprint, snapshotFile.toPath());
+        } catch (IOException e) {
+            Logger.getLogger("MovieReader").log(Level.WARNING, "Could not write snapshot " + snapshotFile, e);
+        }
+        return table;
+    }
+
+    /**
+     * Parses the files [from, to) into the same slots of 'movies', splitting
+     * the range until it is small enough for one thread.
+     */
+    private static class LoadTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<Path> files;
+        private final Movie[] movies;
+        private final int from;
+        private final int to;
+        private final LoadStats stats;
+        private final MovieCompactor compactor;
+
+        LoadTask(List<Path> files, Movie[] movies, int from, int to, LoadStats stats, MovieCompactor compactor) {
+            this.files = files;
+            this.movies = movies;
+            this.from = from;
+            this.to = to;
+            this.stats = stats;
+            this.compactor = compactor;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from > FILES_PER_TASK) {
+                int mid = (this.from + this.to) >>> 1;
+                invokeAll(new LoadTask(this.files, this.movies, this.from, mid, this.stats, this.compactor),
+                        new LoadTask(this.files, this.movies, mid, this.to, this.stats, this.compactor));
+                return;
+            }
+            MovieBatchEvent batch = MovieBatchEvent.start();
+            long bytes = 0;
+            for (int i = this.from; i < this.to; i++) {
+                Path file = this.files.get(i);
+                MovieFileEvent event = MovieFileEvent.start(file.toString());
+                try {
+                    byte[] data = Files.readAllBytes(file);
+                    Movie movie = MovieJson.readMovieFile(data);
+                    this.movies[i] = this.compactor == null ? movie : this.compactor.compact(movie);
+                    this.stats.addFile(data.length);
+                    bytes += data.length;
+                    event.end(data.length, 1);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Could not read " + file, e);
+                }
             }
+            batch.end(this.to - this.from, bytes, this.to - this.from);
         }
-        return movies;
     }
 
 
@@ -0,0 +1,67 @@
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Where the {@link IMDBSpider} stores the movies it crawled. A sink is used
+ * by one thread at a time; the {@link CrawlPipeline} has a single writer.
+ */
+public interface MovieSink extends AutoCloseable {
+
+    /**
+     * The output formats, all of which {@link MovieReader} reads.
+     */
+    enum Format {
+        /**
+         * One pretty-printed JSON file per movie, see {@link MovieFileSink}.
+         */
+        FILES,
+        /**
+         * Segment files of one JSON object per line, see {@link SegmentMovieSink}.
+         */
+        NDJSON,
+        /**
+         * Gzipped segment files of one JSON object per line.
+         */
+        NDJSON_GZIP
+    }
+
+    /**
+     * Stores a movie. It may stay buffered until {@link #flush()}.
+     *
+     * @param movie     the movie
+     * @param movieName the title the movie was searched by
+     * @return The file the movie is stored in
+     * @throws IOException if the movie cannot be written
+     */
+    File write(Movie movie, String movieName) throws IOException;
+
+    /**
+     * Hands all movies written so far to the operating system, so they
+     * survive if the process dies.
+     *
+     * @throws IOException if the movies cannot be written
+     */
+    void flush() throws IOException;
+
+    @Override
+    void close() throws IOException;
+
+    /**
+     * @param format       the output format
+     * @param outputDir    the directory to write to
+     * @param segmentBytes the size at which a segment is closed and the next
+     *                     one begun, ignored for {@link Format#FILES}
+     * @return A sink writing 'format' to 'outputDir'
+     * @throws IOException if the sink cannot be opened
+     */
+    static MovieSink open(Format format, File outputDir, long segmentBytes) throws IOException {
+        switch (format) {
+            case NDJSON:
+                return new SegmentMovieSink(outputDir, false, segmentBytes);
+            case NDJSON_GZIP:
+                return new SegmentMovieSink(outputDir, true, segmentBytes);
+            default:
+                return new MovieFileSink(outputDir);
+        }
+    }
+}
@@ -0,0 +1,727 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A compact binary snapshot of a movie corpus which is opened through
+ * {@link FileChannel#map}, so a process starts without parsing any JSON and
+ * processes on the same host share the snapshot through the page cache.
+ * <p>
+ * The file consists of a fixed-size header followed by these sections:
+ * <pre>
+ * string offsets   int[stringCount + 1], into the string data
+ * string data      the UTF-8 bytes of all distinct Strings
+ * scalar columns   int[movieCount] of string ids per String attribute (-1 for null)
+ * numeric columns  the parsed columns of a {@link MovieTable}
+ * list columns     per list attribute int[movieCount + 1] offsets, then the string ids
+ * names            int[nameCount], the string id of every id of {@link MovieTable#names()}
+ * name columns     the name ids of the cast, characters and directors, in the
+ *                  order and with the offsets of their list columns
+ * year index       int[] offsets by year, then the ids of the movies by year
+ * </pre>
+ * So a table opens with its names as ids and decodes a name only when it is
+ * asked for. The genre and country indexes are built from the string ids of
+ * their list columns when a query first needs them.
+ * The header holds a format version, the fingerprint of the JSON directory the
+ * snapshot was written from and a CRC32 of itself and of the payload. A
+ * snapshot whose version or fingerprint does not match is stale.
+ */
+public class MovieSnapshot {
+
+    static final int MAGIC = 0x494D4442;
+    static final int FORMAT_VERSION = 3;
+    static final int HEADER_SIZE = 128;
+
+    private static final int TITLE = 0;
+    private static final int YEAR = 1;
+    private static final int URL = 2;
+    private static final int DESCRIPTION = 3;
+    private static final int BUDGET = 4;
+    private static final int GROSS = 5;
+    private static final int RATING_VALUE = 6;
+    private static final int RATING_COUNT = 7;
+    private static final int DURATION = 8;
+    private static final int SCALAR_COLUMNS = 9;
+
+    private static final int GENRES = 0;
+    private static final int COUNTRIES = 1;
+    private static final int CAST = 2;
+    private static final int CHARACTERS = 3;
+    private static final int DIRECTORS = 4;
+    private static final int LIST_COLUMNS = 5;
+    /**
+     * The list columns of the names, in the order of their name columns.
+     */
+    private static final int[] NAME_LISTS = {CAST, CHARACTERS, DIRECTORS};
+
+    private final Path file;
+    /**
+     * The mapped file. Typed as a ByteBuffer, since MappedByteBuffer has
+     * its own duplicate() only from Java 17 on; likewise position(int) is
+     * called on Buffer, as ByteBuffer has its own only from Java 9 on.
+     */
+    private final ByteBuffer buffer;
+    private final long fingerprint;
+    private final int movieCount;
+    private final int payloadCrc;
+    private final int stringOffsetsPos;
+    private final int stringDataPos;
+    private final int scalarPos;
+    private final int numericPos;
+    private final int[] listPos = new int[LIST_COLUMNS];
+    private final int namesPos;
+    private final int nameCount;
+    private final int[] nameColumnPos = new int[NAME_LISTS.length];
+    private final int yearPos;
+    private final int minYear;
+    private final int yearCount;
+
+    private MovieSnapshot(Path file, MappedByteBuffer buffer) throws IOException {
+        this.file = file;
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException(file + " is not a movie snapshot");
+        }
+        if (buffer.getInt(4) != FORMAT_VERSION) {
+            throw new IOException(file + " has snapshot version " + buffer.getInt(4)
+                    + ", expected " + FORMAT_VERSION);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(headerBytes(buffer), 0, HEADER_SIZE - 4);
+        if ((int) crc.getValue() != buffer.getInt(HEADER_SIZE - 4)) {
+            throw new IOException(file + " has a corrupt header");
+        }
+        this.movieCount = buffer.getInt(8);
+        this.fingerprint = buffer.getLong(16);
+        this.payloadCrc = buffer.getInt(24);
+        if (buffer.getLong(28) != buffer.capacity()) {
+            throw new IOException(file + " is truncated");
+        }
+        this.stringOffsetsPos = buffer.getInt(36);
+        this.stringDataPos = buffer.getInt(40);
+        this.scalarPos = buffer.getInt(44);
+        this.numericPos = buffer.getInt(48);
+        for (int i = 0; i < LIST_COLUMNS; i++) {
+            this.listPos[i] = buffer.getInt(52 + 4 * i);
+        }
+        this.namesPos = buffer.getInt(72);
+        this.nameCount = buffer.getInt(76);
+        for (int i = 0; i < NAME_LISTS.length; i++) {
+            this.nameColumnPos[i] = buffer.getInt(80 + 4 * i);
+        }
+        this.yearPos = buffer.getInt(92);
+        this.minYear = buffer.getInt(96);
+        this.yearCount = buffer.getInt(100);
+    }
+
+    /**
+     * Maps a snapshot file into memory. Only the header is checked; see
+     * {@link #verify()} for a check of the whole file.
+     *
+     * @param file the snapshot file
+     * @return The snapshot
+     * @throws IOException if the file cannot be read, is not a snapshot or has
+     *                     a different format version
+     */
+    public static MovieSnapshot open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(file + " is larger than 2 GB");
+            }
+            return new MovieSnapshot(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    /**
+     * Writes a snapshot of 'table'. The file is written next to 'file' and
+     * then moved over it, so processes which have the old snapshot mapped keep
+     * reading a consistent file.
+     *
+     * @param table       the movies to write
+     * @param fingerprint the fingerprint of the source, see {@link #fingerprint(File)}
+     * @param file        the snapshot file
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(MovieTable table, long fingerprint, Path file) throws IOException {
+        int n = table.size();
+        StringIds strings = new StringIds();
+
+        int[][] scalars = new int[SCALAR_COLUMNS][n];
+        int[][] listOffsets = new int[LIST_COLUMNS][n + 1];
+        int[][] listIds = new int[LIST_COLUMNS][];
+        for (int id = 0; id < n; id++) {
+            Movie movie = table.movie(id);
+            scalars[TITLE][id] = strings.id(movie.getTitle());
+            scalars[YEAR][id] = strings.id(movie.getYear());
+            scalars[URL][id] = strings.id(movie.getUrl());
+            scalars[DESCRIPTION][id] = strings.id(movie.getDescription());
+            scalars[BUDGET][id] = strings.id(movie.getBudget());
+            scalars[GROSS][id] = strings.id(movie.getGross());
+            scalars[RATING_VALUE][id] = strings.id(movie.getRatingValue());
+            scalars[RATING_COUNT][id] = strings.id(movie.getRatingCount());
+            scalars[DURATION][id] = strings.id(movie.getDuration());
+        }
+        for (int list = 0; list < LIST_COLUMNS; list++) {
+            int total = 0;
+            for (int id = 0; id < n; id++) {
+                total += listOf(table.movie(id), list).size();
+                listOffsets[list][id + 1] = total;
+            }
+            listIds[list] = new int[total];
+            int next = 0;
+            for (int id = 0; id < n; id++) {
+                for (String value : listOf(table.movie(id), list)) {
+                    listIds[list][next++] = strings.id(value);
+                }
+            }
+        }
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        int stringOffsetsPos;
+        int stringDataPos;
+        int scalarPos;
+        int numericPos;
+        int[] listPos = new int[LIST_COLUMNS];
+        int namesPos;
+        int[] nameColumnPos = new int[NAME_LISTS.length];
+        NameDictionary names = table.names();
+        NameColumn[] nameColumns = {table.cast(), table.characters(), table.directors()};
+        YearIndex years = table.years();
+        int yearPos;
+        int yearCount = years.maxYear() - years.minYear() + 1;
+        long length;
+        try (OutputStream raw = Files.newOutputStream(tmp)) {
+            raw.write(new byte[HEADER_SIZE]);
+            DataOutputStream out = new DataOutputStream(
+                    new CheckedOutputStream(new BufferedOutputStream(raw, 1 << 16), crc));
+
+            stringOffsetsPos = HEADER_SIZE + out.size();
+            byte[][] utf8 = new byte[strings.values.size()][];
+            int offset = 0;
+            out.writeInt(0);
+            for (int i = 0; i < utf8.length; i++) {
+                utf8[i] = strings.values.get(i).getBytes(StandardCharsets.UTF_8);
+                offset += utf8[i].length;
+                out.writeInt(offset);
+            }
+            stringDataPos = HEADER_SIZE + out.size();
+            for (byte[] bytes : utf8) {
+                out.write(bytes);
+            }
+
+            scalarPos = HEADER_SIZE + out.size();
+            for (int[] column : scalars) {
+                for (int value : column) {
+                    out.writeInt(value);
+                }
+            }
+
+            numericPos = HEADER_SIZE + out.size();
+            for (int id = 0; id < n; id++) out.writeFloat(table.rating(id));
+            for (int id = 0; id < n; id++) out.writeInt(table.ratingCount(id));
+            for (int id = 0; id < n; id++) out.writeShort(table.year(id));
+            for (int id = 0; id < n; id++) out.writeLong(table.budget(id));
+            for (int id = 0; id < n; id++) out.writeLong(table.gross(id));
+            for (int id = 0; id < n; id++) out.writeInt(table.durationMinutes(id));
+
+            for (int list = 0; list < LIST_COLUMNS; list++) {
+                listPos[list] = HEADER_SIZE + out.size();
+                for (int value : listOffsets[list]) {
+                    out.writeInt(value);
+                }
+                for (int value : listIds[list]) {
+                    out.writeInt(value);
+                }
+            }
+
+            namesPos = HEADER_SIZE + out.size();
+            for (int name = 0; name < names.size(); name++) {
+                out.writeInt(strings.id(names.name(name)));
+            }
+            for (int i = 0; i < nameColumns.length; i++) {
+                nameColumnPos[i] = HEADER_SIZE + out.size();
+                for (int position = 0; position < nameColumns[i].length(); position++) {
+                    out.writeInt(nameColumns[i].get(position));
+                }
+            }
+
+            yearPos = HEADER_SIZE + out.size();
+            for (int year = years.minYear(); year <= years.maxYear() + 1; year++) {
+                out.writeInt(years.start(year));
+            }
+            for (int position = 0; position < years.end(years.maxYear()); position++) {
+                out.writeInt(years.get(position));
+            }
+            out.flush();
+            length = HEADER_SIZE + (long) out.size();
+            if (out.size() < 0 || length > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot of " + n + " movies is larger than 2 GB");
+            }
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(0, MAGIC);
+        header.putInt(4, FORMAT_VERSION);
+        header.putInt(8, n);
+        header.putInt(12, strings.values.size());
+        header.putLong(16, fingerprint);
+        header.putInt(24, (int) crc.getValue());
+        header.putLong(28, length);
+        header.putInt(36, stringOffsetsPos);
+        header.putInt(40, stringDataPos);
+        header.putInt(44, scalarPos);
+        header.putInt(48, numericPos);
+        for (int i = 0; i < LIST_COLUMNS; i++) {
+            header.putInt(52 + 4 * i, listPos[i]);
+        }
+        header.putInt(72, namesPos);
+        header.putInt(76, names.size());
+        for (int i = 0; i < NAME_LISTS.length; i++) {
+            header.putInt(80 + 4 * i, nameColumnPos[i]);
+        }
+        header.putInt(92, yearPos);
+        header.putInt(96, years.minYear());
+        header.putInt(100, yearCount);
+        CRC32 headerCrc = new CRC32();
+        headerCrc.update(header.array(), 0, HEADER_SIZE - 4);
+        header.putInt(HEADER_SIZE - 4, (int) headerCrc.getValue());
+
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            channel.write(header, 0);
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Computes a fingerprint of the JSON files in a directory from their
+     * names, sizes and modification times. It changes whenever a file is
+     * added, removed or rewritten.
+     *
+     * @param moviesDir the directory containing the JSON files
+     * @return The fingerprint
+     * @throws IOException if the directory cannot be listed
+     */
+    public static long fingerprint(File moviesDir) throws IOException {
+        long count = 0;
+        long sum = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(moviesDir.toPath(), "*.{json,ndjson,ndjson.gz}")) {
+            for (Path path : stream) {
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                long h = path.getFileName().toString().hashCode();
+                h = h * 31 + attributes.size();
+                h = h * 31 + attributes.lastModifiedTime().toMillis();
+                // order-independent, the directory listing order is unspecified
+                sum += mix(h);
+                count++;
+            }
+        }
+        return mix(sum + count);
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * @return The fingerprint of the source the snapshot was written from
+     */
+    public long getFingerprint() {
+        return this.fingerprint;
+    }
+
+    /**
+     * @return The number of movies in the snapshot
+     */
+    public int size() {
+        return this.movieCount;
+    }
+
+    /**
+     * Checks the payload checksum. This reads the whole file, straight from
+     * the mapping.
+     *
+     * @throws IOException if the payload does not match its checksum
+     */
+    public void verify() throws IOException {
+        ByteBuffer payload = this.buffer.duplicate();
+        ((Buffer) payload).position(HEADER_SIZE);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        if ((int) crc.getValue() != this.payloadCrc) {
+            throw new IOException(this.file + " is corrupt");
+        }
+    }
+
+    /**
+     * The movies as views of the mapped file. Nothing is cached: every
+     * {@link List#get(int)} returns a new movie, and every getter of it
+     * decodes a new String or list from the file, so code which reads an
+     * attribute more than once should keep it. The setters throw
+     * {@link UnsupportedOperationException}.
+     *
+     * @return The movies as a list of read-only views, which decode their
+     * attributes from the mapped file when asked for them
+     */
+    public List<Movie> movies() {
+        return new MovieList();
+    }
+
+    /**
+     * Builds a {@link MovieTable} on top of the snapshot. The numeric and
+     * name columns are copied from the file, the movies and the names stay
+     * views of the mapped file.
+     *
+     * @return The table
+     */
+    public MovieTable toTable() {
+        int n = this.movieCount;
+        float[] rating = new float[n];
+        int[] ratingCount = new int[n];
+        short[] year = new short[n];
+        long[] budget = new long[n];
+        long[] gross = new long[n];
+        int[] duration = new int[n];
+
+        ByteBuffer columns = this.buffer.duplicate();
+        ((Buffer) columns).position(this.numericPos);
+        columns.asFloatBuffer().get(rating);
+        ((Buffer) columns).position(columns.position() + 4 * n);
+        columns.asIntBuffer().get(ratingCount);
+        ((Buffer) columns).position(columns.position() + 4 * n);
+        columns.asShortBuffer().get(year);
+        ((Buffer) columns).position(columns.position() + 2 * n);
+        columns.asLongBuffer().get(budget);
+        ((Buffer) columns).position(columns.position() + 8 * n);
+        columns.asLongBuffer().get(gross);
+        ((Buffer) columns).position(columns.position() + 8 * n);
+        columns.asIntBuffer().get(duration);
+
+        NameDictionary names = new NameDictionary(this.nameCount,
+                name -> string(this.buffer.getInt(this.namesPos + 4 * name)));
+        NameColumn[] nameColumns = new NameColumn[NAME_LISTS.length];
+        for (int i = 0; i < NAME_LISTS.length; i++) {
+            int[] offsets = ints(this.listPos[NAME_LISTS[i]], n + 1);
+            nameColumns[i] = new NameColumn(offsets, ints(this.nameColumnPos[i], offsets[n]));
+        }
+        int[] yearOffsets = ints(this.yearPos, this.yearCount + 1);
+        YearIndex years = new YearIndex(this.minYear, yearOffsets,
+                ints(this.yearPos + 4 * yearOffsets.length, yearOffsets[this.yearCount]));
+        return new MovieTable(movies(), rating, ratingCount, year, budget, gross, duration,
+                new MovieTable.Indexes(names, nameColumns[0], nameColumns[1], nameColumns[2], years,
+                        () -> attributes(GENRES), () -> attributes(COUNTRIES)));
+    }
+
+    /**
+     * Builds the index of a list column from its string ids.
+     */
+    private AttributeIndex attributes(int column) {
+        int[] offsets = ints(this.listPos[column], this.movieCount + 1);
+        int[] values = ints(this.listPos[column] + 4 * offsets.length, offsets[this.movieCount]);
+        return AttributeIndex.build(offsets, values, this::string);
+    }
+
+    private int[] ints(int pos, int count) {
+        int[] values = new int[count];
+        ByteBuffer data = this.buffer.duplicate();
+        ((Buffer) data).position(pos);
+        data.asIntBuffer().get(values);
+        return values;
+    }
+
+    String string(int stringId) {
+        if (stringId < 0) {
+            return null;
+        }
+        int start = this.buffer.getInt(this.stringOffsetsPos + 4 * stringId);
+        int end = this.buffer.getInt(this.stringOffsetsPos + 4 * (stringId + 1));
+        byte[] bytes = new byte[end - start];
+        ByteBuffer data = this.buffer.duplicate();
+        ((Buffer) data).position(this.stringDataPos + start);
+        data.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private String scalar(int column, int movieId) {
+        return string(this.buffer.getInt(this.scalarPos + 4 * (column * this.movieCount + movieId)));
+    }
+
+    private List<String> list(int column, int movieId) {
+        int pos = this.listPos[column];
+        int start = this.buffer.getInt(pos + 4 * movieId);
+        int end = this.buffer.getInt(pos + 4 * (movieId + 1));
+        int idsPos = pos + 4 * (this.movieCount + 1);
+        return new StringList(idsPos + 4 * start, end - start);
+    }
+
+    private static List<String> listOf(Movie movie, int list) {
+        switch (list) {
+            case GENRES:
+                return movie.getGenreList();
+            case COUNTRIES:
+                return movie.getCountryList();
+            case CAST:
+                return movie.getCastList();
+            case CHARACTERS:
+                return movie.getCharacterList();
+            default:
+                return movie.getDirectorList();
+        }
+    }
+
+    private static byte[] headerBytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[HEADER_SIZE];
+        ByteBuffer header = buffer.duplicate();
+        ((Buffer) header).position(0);
+        header.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Assigns dense ids to distinct Strings while writing.
+     */
+    private static class StringIds {
+        final Map<String, Integer> ids = new HashMap<>();
+        final List<String> values = new ArrayList<>();
+
+        int id(String value) {
+            if (value == null) {
+                return -1;
+            }
+            Integer id = this.ids.get(value);
+            if (id == null) {
+                id = this.values.size();
+                this.ids.put(value, id);
+                this.values.add(value);
+            }
+            return id;
+        }
+    }
+
+    private class MovieList extends AbstractList<Movie> implements RandomAccess {
+        @Override
+        public Movie get(int index) {
+            if (index < 0 || index >= MovieSnapshot.this.movieCount) {
+                throw new IndexOutOfBoundsException("Index: " + index);
+            }
+            return new MappedMovie(index);
+        }
+
+        @Override
+        public int size() {
+            return MovieSnapshot.this.movieCount;
+        }
+    }
+
+    private class StringList extends AbstractList<String> implements RandomAccess {
+        private final int pos;
+        private final int size;
+
+        StringList(int pos, int size) {
+            this.pos = pos;
+            this.size = size;
+        }
+
+        @Override
+        public String get(int index) {
+            if (index < 0 || index >= this.size) {
+                throw new IndexOutOfBoundsException("Index: " + index);
+            }
+            return string(MovieSnapshot.this.buffer.getInt(this.pos + 4 * index));
+        }
+
+        @Override
+        public int size() {
+            return this.size;
+        }
+    }
+
+    /**
+     * A read-only movie which decodes its attributes from the snapshot.
+     */
+    private class MappedMovie extends Movie {
+        private final int id;
+
+        MappedMovie(int id) {
+            super(false);
+            this.id = id;
+        }
+
+        @Override
+        public String getTitle() {
+            return scalar(TITLE, this.id);
+        }
+
+        @Override
+        public String getYear() {
+            return scalar(YEAR, this.id);
+        }
+
+        @Override
+        public String getUrl() {
+            return scalar(URL, this.id);
+        }
+
+        @Override
+        public List<String> getGenreList() {
+            return list(GENRES, this.id);
+        }
+
+        @Override
+        public List<String> getCountryList() {
+            return list(COUNTRIES, this.id);
+        }
+
+        @Override
+        public String getDescription() {
+            return scalar(DESCRIPTION, this.id);
+        }
+
+        @Override
+        public String getBudget() {
+            return scalar(BUDGET, this.id);
+        }
+
+        @Override
+        public String getGross() {
+            return scalar(GROSS, this.id);
+        }
+
+        @Override
+        public String getRatingValue() {
+            return scalar(RATING_VALUE, this.id);
+        }
+
+        @Override
+        public String getRatingCount() {
+            return scalar(RATING_COUNT, this.id);
+        }
+
+        @Override
+        public String getDuration() {
+            return scalar(DURATION, this.id);
+        }
+
+        @Override
+        public List<String> getCastList() {
+            return list(CAST, this.id);
+        }
+
+        @Override
+        public List<String> getCharacterList() {
+            return list(CHARACTERS, this.id);
+        }
+
+        @Override
+        public List<String> getDirectorList() {
+            return list(DIRECTORS, this.id);
+        }
+
+        @Override
+        public void setTitle(String title) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setYear(String year) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setUrl(String url) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setGenreList(List<String> genreList) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setCountryList(List<String> countryList) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setDescription(String description) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setBudget(String budget) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setGross(String gross) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setRatingValue(String ratingValue) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setRatingCount(String ratingCount) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setDuration(String duration) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setCastList(List<String> castList) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setCharacterList(List<String> characterList) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setDirectorList(List<String> directorList) {
+            throw readOnly();
+        }
+
+        @Override
+        public String toString() {
+            return getTitle();
+        }
+
+        private UnsupportedOperationException readOnly() {
+            return new UnsupportedOperationException("A mapped movie is read-only");
+        }
+    }
+}
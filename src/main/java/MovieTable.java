@@ -0,0 +1,401 @@
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * A column-oriented view of a list of movies. The numeric attributes which
+ * {@link Movie} keeps as Strings ("$25,000,000", "1,725,118", "2h 22min") are
+ * parsed exactly once when the table is built and stored in primitive arrays,
+ * indexed by the position of the movie in the list (its id).
+ * <p>
+ * Values which are absent or cannot be parsed are stored as a "missing"
+ * sentinel, see {@link #MISSING_FLOAT}, {@link #MISSING_INT},
+ * {@link #MISSING_SHORT} and {@link #MISSING_LONG}.
+ * <p>
+ * The cast, characters and directors are interned to ids of one
+ * {@link NameDictionary}, so that queries can count them in int arrays.
+ * Secondary indexes on the year, genres and countries let queries visit
+ * only the movies which can match.
+ */
+public class MovieTable {
+
+    public static final float MISSING_FLOAT = Float.NaN;
+    public static final int MISSING_INT = -1;
+    public static final short MISSING_SHORT = -1;
+    public static final long MISSING_LONG = -1L;
+
+    private final List<Movie> movies;
+    private final float[] rating;
+    private final int[] ratingCount;
+    private final short[] year;
+    private final long[] budget;
+    private final long[] gross;
+    private final int[] durationMinutes;
+    private final Indexes indexes;
+    private TextIndex descriptionIndex;
+
+    /**
+     * Builds the columns for the given movies.
+     *
+     * @param movies the movies, the position of a movie in this list is its id
+     */
+    public MovieTable(List<Movie> movies) {
+        this.movies = Collections.unmodifiableList(new ArrayList<>(movies));
+        int n = this.movies.size();
+        this.rating = new float[n];
+        this.ratingCount = new int[n];
+        this.year = new short[n];
+        this.budget = new long[n];
+        this.gross = new long[n];
+        this.durationMinutes = new int[n];
+
+        for (int id = 0; id < n; id++) {
+            Movie movie = this.movies.get(id);
+            this.rating[id] = parseFloat(movie.getRatingValue());
+            this.ratingCount[id] = toInt(parseDigits(movie.getRatingCount()));
+            this.year[id] = toShort(parseDigits(movie.getYear()));
+            this.budget[id] = parseDigits(movie.getBudget());
+            this.gross[id] = parseDigits(movie.getGross());
+            this.durationMinutes[id] = parseDuration(movie.getDuration());
+        }
+        this.indexes = new Indexes(this.movies, this.year);
+    }
+
+    /**
+     * Wraps already parsed columns and indexes, e.g. those of a
+     * {@link MovieSnapshot}. The list of movies is not copied.
+     */
+    MovieTable(List<Movie> movies, float[] rating, int[] ratingCount, short[] year,
+               long[] budget, long[] gross, int[] durationMinutes, Indexes indexes) {
+        this.movies = Collections.unmodifiableList(movies);
+        this.rating = rating;
+        this.ratingCount = ratingCount;
+        this.year = year;
+        this.budget = budget;
+        this.gross = gross;
+        this.durationMinutes = durationMinutes;
+        this.indexes = indexes;
+    }
+
+    /**
+     * @return The number of movies in the table
+     */
+    public int size() {
+        return this.movies.size();
+    }
+
+    /**
+     * @param id the id of a movie
+     * @return The movie with the given id
+     */
+    public Movie movie(int id) {
+        return this.movies.get(id);
+    }
+
+    /**
+     * @return The movies of this table, in id order
+     */
+    public List<Movie> movies() {
+        return this.movies;
+    }
+
+    /**
+     * @param id the id of a movie
+     * @return The IMDB rating or {@link #MISSING_FLOAT}
+     */
+    public float rating(int id) {
+        return this.rating[id];
+    }
+
+    /**
+     * @param id the id of a movie
+     * @return The IMDB rating or 0, like {@link Movie#getRatingValue()}
+     */
+    public float ratingOrZero(int id) {
+        float value = this.rating[id];
+        return value != value ? 0f : value;
+    }
+
+    /**
+     * @param id the id of a movie
+     * @return The number of IMDB votes or {@link #MISSING_INT}
+     */
+    public int ratingCount(int id) {
+        return this.ratingCount[id];
+    }
+
+    /**
+     * @param id the id of a movie
+     * @return The year of publication or {@link #MISSING_SHORT}
+     */
+    public short year(int id) {
+        return this.year[id];
+    }
+
+    /**
+     * @param id the id of a movie
+     * @return The year of publication or 0, like {@link Movie#getYear()}
+     */
+    public int yearOrZero(int id) {
+        short value = this.year[id];
+        return value == MISSING_SHORT ? 0 : value;
+    }
+
+    /**
+     * @param id the id of a movie
+     * @return The budget, in whatever currency IMDB reports, or {@link #MISSING_LONG}
+     */
+    public long budget(int id) {
+        return this.budget[id];
+    }
+
+    /**
+     * @param id the id of a movie
+     * @return The budget or 0, like {@link Movie#getBudget()}
+     */
+    public long budgetOrZero(int id) {
+        long value = this.budget[id];
+        return value == MISSING_LONG ? 0L : value;
+    }
+
+    /**
+     * @param id the id of a movie
+     * @return The gross, in whatever currency IMDB reports, or {@link #MISSING_LONG}
+     */
+    public long gross(int id) {
+        return this.gross[id];
+    }
+
+    /**
+     * @param id the id of a movie
+     * @return The gross or 0, like {@link Movie#getGross()}
+     */
+    public long grossOrZero(int id) {
+        long value = this.gross[id];
+        return value == MISSING_LONG ? 0L : value;
+    }
+
+    /**
+     * @param id the id of a movie
+     * @return The duration in minutes or {@link #MISSING_INT}
+     */
+    public int durationMinutes(int id) {
+        return this.durationMinutes[id];
+    }
+
+    /**
+     * @return The dictionary of the names in {@link #cast()},
+     * {@link #characters()} and {@link #directors()}
+     */
+    public NameDictionary names() {
+        return this.indexes.names;
+    }
+
+    /**
+     * @return The actors of every movie, as in {@link Movie#getCastList()}
+     */
+    public NameColumn cast() {
+        return this.indexes.cast;
+    }
+
+    /**
+     * @return The characters of every movie, as in {@link Movie#getCharacterList()}
+     */
+    public NameColumn characters() {
+        return this.indexes.characters;
+    }
+
+    /**
+     * @return The directors of every movie, as in {@link Movie#getDirectorList()}
+     */
+    public NameColumn directors() {
+        return this.indexes.directors;
+    }
+
+    /**
+     * @return The ids of the movies by year
+     */
+    public YearIndex years() {
+        return this.indexes.years;
+    }
+
+    /**
+     * @return The ids of the movies by genre, as in {@link Movie#getGenreList()}
+     */
+    public AttributeIndex genres() {
+        return this.indexes.genres();
+    }
+
+    /**
+     * @return The ids of the movies by country, as in {@link Movie#getCountryList()}
+     */
+    public AttributeIndex countries() {
+        return this.indexes.countries();
+    }
+
+    /**
+     * Returns the text index over the descriptions, building it on first use.
+     *
+     * @return The index, with the movie ids as document ids
+     */
+    public synchronized TextIndex descriptionIndex() {
+        if (this.descriptionIndex == null) {
+            this.descriptionIndex = new TextIndex(new AbstractList<String>() {
+                @Override
+                public String get(int id) {
+                    return MovieTable.this.movies.get(id).getDescription();
+                }
+
+                @Override
+                public int size() {
+                    return MovieTable.this.movies.size();
+                }
+            });
+        }
+        return this.descriptionIndex;
+    }
+
+    /**
+     * Parses a decimal number such as "8.1".
+     *
+     * @param text the text to parse, may be null
+     * @return the number or {@link #MISSING_FLOAT}
+     */
+    static float parseFloat(String text) {
+        if (text == null || text.isEmpty()) {
+            return MISSING_FLOAT;
+        }
+        try {
+            return Float.parseFloat(text.trim());
+        } catch (NumberFormatException e) {
+            return MISSING_FLOAT;
+        }
+    }
+
+    /**
+     * Parses the digits of a text and ignores everything else, so "$25,000,000"
+     * becomes 25000000. This is what the queries used to do with
+     * {@code replaceAll("[^\\d]", "")}.
+     *
+     * @param text the text to parse, may be null
+     * @return the number or {@link #MISSING_LONG} if the text has no digits
+     */
+    static long parseDigits(String text) {
+        if (text == null) {
+            return MISSING_LONG;
+        }
+        long value = 0;
+        boolean found = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                found = true;
+            }
+        }
+        return found ? value : MISSING_LONG;
+    }
+
+    /**
+     * Parses an IMDB duration such as "2h 22min", "2h" or "95min".
+     *
+     * @param text the text to parse, may be null
+     * @return the duration in minutes or {@link #MISSING_INT}
+     */
+    static int parseDuration(String text) {
+        if (text == null) {
+            return MISSING_INT;
+        }
+        int minutes = 0;
+        int number = 0;
+        boolean inNumber = false;
+        boolean found = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                number = number * 10 + (c - '0');
+                inNumber = true;
+            } else if (inNumber) {
+                minutes += c == 'h' ? number * 60 : number;
+                number = 0;
+                inNumber = false;
+                found = true;
+            }
+        }
+        if (inNumber) {
+            minutes += number;
+            found = true;
+        }
+        return found ? minutes : MISSING_INT;
+    }
+
+    /**
+     * The name columns and secondary indexes, built from the movies or read
+     * from a {@link MovieSnapshot}. The attribute indexes of a snapshot are
+     * built on first use.
+     */
+    static final class Indexes {
+        final NameDictionary names;
+        final NameColumn cast;
+        final NameColumn characters;
+        final NameColumn directors;
+        final YearIndex years;
+        private Supplier<AttributeIndex> genreSource;
+        private Supplier<AttributeIndex> countrySource;
+        private AttributeIndex genres;
+        private AttributeIndex countries;
+
+        Indexes(List<Movie> movies, short[] year) {
+            this.names = new NameDictionary(movies.size() * 4);
+            this.cast = NameColumn.build(movies, Movie::getCastList, this.names);
+            this.characters = NameColumn.build(movies, Movie::getCharacterList, this.names);
+            this.directors = NameColumn.build(movies, Movie::getDirectorList, this.names);
+            this.years = new YearIndex(year);
+            this.genres = AttributeIndex.build(movies, Movie::getGenreList);
+            this.countries = AttributeIndex.build(movies, Movie::getCountryList);
+        }
+
+        /**
+         * Takes the names and the year index as they are.
+         *
+         * @param genres    builds the genre index on first use
+         * @param countries builds the country index on first use
+         */
+        Indexes(NameDictionary names, NameColumn cast, NameColumn characters, NameColumn directors,
+                YearIndex years, Supplier<AttributeIndex> genres, Supplier<AttributeIndex> countries) {
+            this.names = names;
+            this.cast = cast;
+            this.characters = characters;
+            this.directors = directors;
+            this.years = years;
+            this.genreSource = genres;
+            this.countrySource = countries;
+        }
+
+        synchronized AttributeIndex genres() {
+            if (this.genres == null) {
+                this.genres = this.genreSource.get();
+                this.genreSource = null;
+            }
+            return this.genres;
+        }
+
+        synchronized AttributeIndex countries() {
+            if (this.countries == null) {
+                this.countries = this.countrySource.get();
+                this.countrySource = null;
+            }
+            return this.countries;
+        }
+    }
+
+    static int toInt(long value) {
+        return value == MISSING_LONG || value > Integer.MAX_VALUE ? MISSING_INT : (int) value;
+    }
+
+    static short toShort(long value) {
+        return value == MISSING_LONG || value > Short.MAX_VALUE ? MISSING_SHORT : (short) value;
+    }
+}
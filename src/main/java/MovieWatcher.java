@@ -0,0 +1,517 @@
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps a {@link LiveMovieIndex} in step with a directory of movies which
+ * {@link MovieReader} reads, e.g. while the {@link IMDBSpider} writes to it.
+ * A {@link WatchService} reports the files which were created, changed or
+ * deleted; only these are read and applied to the index, in one batch per
+ * burst of events. A movie file is keyed by its name; a movie of a segment
+ * file by the title it was searched by, so a movie which a resumed crawl
+ * wrote again replaces the one of the earlier segment, or by the segment and
+ * its position in it if the record has no title. As segments only grow,
+ * a segment is read on from the end of its last complete record, see
+ * {@link MovieReader#readSegment(File, long, MovieReader.RecordConsumer)},
+ * and just the movies appended since it was last read are applied. A
+ * gzipped segment cannot be entered in the middle, so each change of one
+ * decompresses it from the beginning, up to the segment size; watch an
+ * uncompressed crawl if it changes often.
+ * <p>
+ * A file which cannot be parsed, e.g. because it is still being written, is
+ * read again shortly after. If the watch service loses events, the whole
+ * directory is read again. The description index is built on loading and
+ * rebuilt in a thread of its own, see {@link LiveMovieIndex#maintain()}, so
+ * that the batches which follow are not held up by it.
+ * <p>
+ * Call with: MovieWatcher [moviesDir], then type the name of a query, "all",
+ * "search text", "size", "cache" or "quit". Queries are answered through a
+ * {@link QueryCache}.
+ */
+public class MovieWatcher implements Runnable, Closeable {
+
+    private static final Logger LOG = Logger.getLogger("MovieWatcher");
+
+    /**
+     * How long to wait for more events after the first of a burst.
+     */
+    private static final long SETTLE_MILLIS = 20;
+    private static final long RETRY_MILLIS = 100;
+    private static final int MAX_RETRIES = 50;
+
+    private final Path dir;
+    private final LiveMovieIndex index;
+    private final WatchService watchService;
+    private final ExecutorService maintenance;
+    /**
+     * The last rebuild of the description index, or null.
+     */
+    private Future<?> rebuild;
+    /**
+     * The movie files in the index.
+     */
+    private final Set<String> files = new HashSet<>();
+    /**
+     * What has been read of every segment file.
+     */
+    private final Map<String, Segment> segments = new HashMap<>();
+    /**
+     * The segment whose record of a movie is in the index, by the key of
+     * the movie.
+     */
+    private final Map<String, String> owners = new HashMap<>();
+    /**
+     * The files which could not be parsed yet, with the number of attempts.
+     */
+    private final Map<String, Integer> retries = new LinkedHashMap<>();
+    private volatile long batches;
+    private volatile long lastLagMillis;
+
+    /**
+     * @param moviesDir the directory to watch
+     * @param index     the index to keep up to date, empty until {@link #load()}
+     * @throws IOException if the directory cannot be watched
+     */
+    public MovieWatcher(File moviesDir, LiveMovieIndex index) throws IOException {
+        this.dir = moviesDir.toPath();
+        this.index = index;
+        this.watchService = this.dir.getFileSystem().newWatchService();
+        this.dir.register(this.watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        this.maintenance = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "movie-index-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Reads all movies of the directory into the index, in the order of
+     * {@link MovieReader#readMoviesFrom(File)}. Changes from then on are
+     * picked up by {@link #run()}.
+     *
+     * @throws IOException if the directory or a file cannot be read
+     */
+    public void load() throws IOException {
+        List<String> files = new ArrayList<>();
+        List<String> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.dir, "*.{json,ndjson,ndjson.gz}")) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                if (SegmentMovieSink.segmentNumber(name) >= 0) {
+                    segments.add(name);
+                } else if (name.endsWith(".json")) {
+                    files.add(name);
+                }
+            }
+        }
+        Collections.sort(segments);
+
+        List<Movie> parsed;
+        try {
+            parsed = files.parallelStream().map(name -> {
+                try {
+                    return MovieJson.readMovieFile(Files.readAllBytes(this.dir.resolve(name)));
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Could not read " + name, e);
+                }
+            }).collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        List<String> keys = new ArrayList<>();
+        List<Movie> movies = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            if (parsed.get(i) != null) {
+                this.files.add(files.get(i));
+                keys.add(files.get(i));
+                movies.add(parsed.get(i));
+            }
+        }
+        Map<String, Integer> places = new HashMap<>();
+        for (String segment : segments) {
+            File file = this.dir.resolve(segment).toFile();
+            Segment read = new Segment();
+            read.length = file.length();
+            read.offset = MovieReader.readSegment(file, 0, (movie, movieName) -> {
+                String key = key(segment, read.keys.size(), movieName);
+                read.keys.add(key);
+                this.owners.put(key, segment);
+                Integer place = places.putIfAbsent(key, keys.size());
+                if (place == null) {
+                    keys.add(key);
+                    movies.add(movie);
+                } else {
+                    movies.set(place, movie);
+                }
+            });
+            this.segments.put(segment, read);
+        }
+        this.index.load(keys, movies);
+        this.index.maintain();
+    }
+
+    /**
+     * Applies the changes of the directory to the index until {@link #close()}.
+     */
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                WatchKey key = this.watchService.poll(this.retries.isEmpty() ? 1000 : RETRY_MILLIS,
+                        TimeUnit.MILLISECONDS);
+                Set<String> changed = new LinkedHashSet<>(this.retries.keySet());
+                boolean overflow = false;
+                while (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            overflow = true;
+                        } else {
+                            changed.add(event.context().toString());
+                        }
+                    }
+                    key.reset();
+                    key = this.watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                if (overflow) {
+                    LOG.warning("Lost events of " + this.dir + ", reading all files again");
+                    changed.addAll(allFiles());
+                }
+                if (!changed.isEmpty()) {
+                    apply(changed);
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            // closed
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, "Stopped watching " + this.dir, e);
+        }
+    }
+
+    /**
+     * @return The number of batches of changes applied so far
+     */
+    public long getBatches() {
+        return this.batches;
+    }
+
+    /**
+     * @return The time from the last change of a file of the last batch to
+     * the moment its movies could be queried, in milliseconds
+     */
+    public long getLastLagMillis() {
+        return this.lastLagMillis;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.watchService.close();
+        this.maintenance.shutdown();
+    }
+
+    /**
+     * Reads the files 'names' and applies them to the index as one batch.
+     */
+    private void apply(Set<String> names) throws IOException {
+        Map<String, Movie> changed = new LinkedHashMap<>();
+        List<String> removed = new ArrayList<>();
+        long lastModified = 0;
+        for (String name : names) {
+            Path file = this.dir.resolve(name);
+            try {
+                if (SegmentMovieSink.segmentNumber(name) >= 0) {
+                    readSegment(name, changed, removed);
+                } else if (name.endsWith(".json")) {
+                    byte[] data = Files.exists(file) ? Files.readAllBytes(file) : null;
+                    if (data != null && data.length == 0) {
+                        throw new EOFException("Nothing written to " + file + " yet");
+                    }
+                    Movie movie = data == null ? null : MovieJson.readMovieFile(data);
+                    if (movie == null) {
+                        removed.add(name);
+                        this.files.remove(name);
+                    } else {
+                        changed.put(name, movie);
+                        this.files.add(name);
+                    }
+                } else {
+                    continue;
+                }
+                this.retries.remove(name);
+                if (Files.exists(file)) {
+                    lastModified = Math.max(lastModified, Files.getLastModifiedTime(file).toMillis());
+                }
+            } catch (NoSuchFileException e) {
+                // Deleted while reading, the event of the deletion follows
+                this.retries.remove(name);
+                continue;
+            } catch (IOException e) {
+                int attempts = this.retries.getOrDefault(name, 0) + 1;
+                if (attempts < MAX_RETRIES) {
+                    this.retries.put(name, attempts);
+                } else {
+                    this.retries.remove(name);
+                    LOG.log(Level.WARNING, "Could not read " + file + ", skipping it", e);
+                }
+            }
+        }
+        if (changed.isEmpty() && removed.isEmpty()) {
+            return;
+        }
+        this.index.update(changed, removed);
+        if (lastModified > 0) {
+            this.lastLagMillis = Math.max(0, System.currentTimeMillis() - lastModified);
+        }
+        this.batches++;
+        if (this.rebuild == null || this.rebuild.isDone()) {
+            this.rebuild = this.maintenance.submit(this.index::maintain);
+        }
+    }
+
+    /**
+     * Reads the movies appended to a segment since it was last read, or
+     * removes its movies if it is gone. A segment which got shorter was
+     * written anew and is read again from the beginning. A record never
+     * replaces the record of a later segment; a removed record takes its
+     * movie out of the index only if no later segment has replaced it, and
+     * no earlier segment still holds one, which then takes its place.
+     */
+    private void readSegment(String name, Map<String, Movie> changed, List<String> removed) throws IOException {
+        File file = this.dir.resolve(name).toFile();
+        Segment segment = this.segments.get(name);
+        long length = file.length();
+        if (segment != null && (!file.exists() || length < segment.length)) {
+            Set<String> orphans = new LinkedHashSet<>();
+            for (String key : segment.keys) {
+                if (name.equals(this.owners.get(key))) {
+                    orphans.add(key);
+                }
+            }
+            Map<String, Movie> found = new LinkedHashMap<>();
+            Map<String, String> owners = new HashMap<>();
+            findInOtherSegments(name, orphans, found, owners);
+            this.owners.keySet().removeAll(orphans);
+            this.owners.putAll(owners);
+            changed.putAll(found);
+            for (String key : orphans) {
+                if (!found.containsKey(key)) {
+                    changed.remove(key);
+                    removed.add(key);
+                }
+            }
+            this.segments.remove(name);
+            segment = null;
+        }
+        if (!file.exists()) {
+            return;
+        }
+        Segment read = segment != null ? segment : new Segment();
+        int known = read.keys.size();
+        try {
+            read.offset = MovieReader.readSegment(file, read.offset, (movie, movieName) -> {
+                String key = key(name, read.keys.size(), movieName);
+                read.keys.add(key);
+                String owner = this.owners.get(key);
+                if (owner == null || owner.compareTo(name) <= 0) {
+                    this.owners.put(key, name);
+                    changed.put(key, movie);
+                }
+            });
+        } catch (IOException e) {
+            // Read the same records again on the next attempt
+            read.keys.subList(known, read.keys.size()).clear();
+            throw e;
+        }
+        read.length = length;
+        this.segments.put(name, read);
+    }
+
+    /**
+     * Looks up the latest record of each of 'keys' in the segments other than
+     * 'name' which are read, the latest segment first, and puts its movie
+     * into 'found' and its segment into 'owners'. Only the records read
+     * before are looked at; those appended since follow with their events,
+     * as do segments which are gone or were written anew.
+     */
+    private void findInOtherSegments(String name, Set<String> keys, Map<String, Movie> found,
+                                     Map<String, String> owners) throws IOException {
+        List<String> names = new ArrayList<>(this.segments.keySet());
+        names.sort(Collections.reverseOrder());
+        Set<String> missing = new HashSet<>(keys);
+        for (String other : names) {
+            if (missing.isEmpty()) {
+                break;
+            }
+            Segment segment = this.segments.get(other);
+            File file = this.dir.resolve(other).toFile();
+            if (other.equals(name) || Collections.disjoint(missing, segment.keys)
+                    || !file.exists() || file.length() < segment.length) {
+                continue;
+            }
+            // Within a segment a later record of a key replaces an earlier one
+            Map<String, Movie> latest = new HashMap<>();
+            int[] position = {0};
+            try {
+                MovieReader.readSegment(file, 0, (movie, movieName) -> {
+                    int i = position[0]++;
+                    if (i < segment.keys.size() && missing.contains(segment.keys.get(i))) {
+                        latest.put(segment.keys.get(i), movie);
+                    }
+                });
+            } catch (FileNotFoundException e) {
+                continue;
+            }
+            for (Map.Entry<String, Movie> record : latest.entrySet()) {
+                missing.remove(record.getKey());
+                found.put(record.getKey(), record.getValue());
+                owners.put(record.getKey(), other);
+            }
+        }
+    }
+
+    /**
+     * @return The key of the movie at 'position' of 'segment': '/' and the
+     * title it was searched by, as no file name contains a '/', or else the
+     * segment and the position
+     */
+    private static String key(String segment, int position, String movieName) {
+        return movieName != null ? "/" + movieName : segment + "#" + position;
+    }
+
+    /**
+     * @return The names of the files of the directory and of those read
+     * before, to find both new and deleted ones
+     */
+    private Set<String> allFiles() throws IOException {
+        Set<String> names = new LinkedHashSet<>(this.files);
+        names.addAll(this.segments.keySet());
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.dir, "*.{json,ndjson,ndjson.gz}")) {
+            for (Path file : stream) {
+                names.add(file.getFileName().toString());
+            }
+        }
+        return names;
+    }
+
+    public static void main(String argv[]) throws Exception {
+        String moviesPath = argv.length > 0 ? argv[0] : "./data/movies/";
+        LiveMovieIndex index = new LiveMovieIndex();
+        MovieWatcher watcher = new MovieWatcher(new File(moviesPath), index);
+        long time = System.currentTimeMillis();
+        watcher.load();
+        System.out.println("Loaded " + index.size() + " movies in " + (System.currentTimeMillis() - time) + " ms");
+        Thread thread = new Thread(watcher, "movie-watcher");
+        thread.setDaemon(true);
+        thread.start();
+
+        QueryCache cache = new QueryCache(index, 1000);
+        Map<String, Supplier<List<?>>> queries = new LinkedHashMap<>();
+        queries.put("all-rounder", cache::queryAllRounder);
+        queries.put("under-the-radar", cache::queryUnderTheRadar);
+        queries.put("pillars-of-storytelling", cache::queryPillarsOfStorytelling);
+        queries.put("red-planet", cache::queryRedPlanet);
+        queries.put("colossal-failure", cache::queryColossalFailure);
+        queries.put("uncreative-writers", cache::queryUncreativeWriters);
+        queries.put("workhorse", cache::queryWorkHorse);
+        queries.put("must-see", cache::queryMustSee);
+        queries.put("rotten-tomatoes", cache::queryRottenTomatoes);
+        queries.put("magic-couples", cache::queryMagicCouple);
+        System.out.println("Queries: " + String.join(", ", queries.keySet()));
+
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+        String line;
+        while ((line = in.readLine()) != null && !line.trim().equals("quit")) {
+            String command = line.trim();
+            if (command.isEmpty()) {
+                continue;
+            }
+            time = System.nanoTime();
+            if (command.equals("size")) {
+                System.out.println(index.size() + " movies, " + watcher.getBatches() + " batches applied, last "
+                        + watcher.getLastLagMillis() + " ms after the change");
+            } else if (command.equals("cache")) {
+                System.out.println(cache);
+            } else if (command.startsWith("search ")) {
+                for (Movie movie : cache.searchDescriptions(command.substring(7), true)) {
+                    System.out.println("\t" + movie.getTitle());
+                }
+            } else if (command.equals("all") || queries.containsKey(command)) {
+                for (Map.Entry<String, Supplier<List<?>>> query : queries.entrySet()) {
+                    if (command.equals("all") || command.equals(query.getKey())) {
+                        System.out.println(query.getKey());
+                        for (Object row : query.getValue().get()) {
+                            System.out.println("\t" + describe(row));
+                        }
+                    }
+                }
+            } else {
+                System.out.println("Unknown command " + command);
+                continue;
+            }
+            System.out.println("Time: " + (System.nanoTime() - time) / 1000 + " us");
+        }
+        watcher.close();
+    }
+
+    private static String describe(Object item) {
+        if (item instanceof Movie) {
+            return ((Movie) item).getTitle();
+        }
+        if (item instanceof IMDBQueries.Tuple) {
+            IMDBQueries.Tuple<?, ?> tuple = (IMDBQueries.Tuple<?, ?>) item;
+            return describe(tuple.first) + "\t" + describe(tuple.second);
+        }
+        return String.valueOf(item);
+    }
+
+    /**
+     * What has been read of a segment file.
+     */
+    private static final class Segment {
+        /**
+         * The keys of its movies, in their order.
+         */
+        final List<String> keys = new ArrayList<>();
+        /**
+         * The offset in the uncompressed content after the last complete record.
+         */
+        long offset;
+        /**
+         * The length of the file when it was read.
+         */
+        long length;
+    }
+}
@@ -0,0 +1,89 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * A list-valued column of a {@link MovieTable}, e.g. the cast: the names of
+ * every movie as ids of a {@link NameDictionary}, all in one array. The names
+ * of movie 'id' are at the positions [start(id), end(id)), in list order.
+ */
+public class NameColumn {
+
+    private final int[] offsets;
+    private final int[] ids;
+
+    /**
+     * @param offsets the position of the first name of every movie, and the
+     *                end of the last one
+     * @param ids     the ids of the names of all movies
+     */
+    NameColumn(int[] offsets, int[] ids) {
+        this.offsets = offsets;
+        this.ids = ids;
+    }
+
+    /**
+     * Interns the names of a list of every movie.
+     *
+     * @param movies     the movies, in id order
+     * @param attribute  the list of names of a movie, e.g. {@link Movie#getCastList()}
+     * @param dictionary the dictionary to intern the names in
+     * @return The column
+     */
+    static NameColumn build(List<Movie> movies, Function<Movie, List<String>> attribute,
+                            NameDictionary dictionary) {
+        int[] offsets = new int[movies.size() + 1];
+        int[] ids = new int[Math.max(16, movies.size() * 4)];
+        int n = 0;
+        for (int movie = 0; movie < movies.size(); movie++) {
+            List<String> names = attribute.apply(movies.get(movie));
+            if (n + names.size() > ids.length) {
+                ids = Arrays.copyOf(ids, Math.max(ids.length * 2, n + names.size()));
+            }
+            for (int i = 0; i < names.size(); i++) {
+                ids[n++] = dictionary.intern(names.get(i));
+            }
+            offsets[movie + 1] = n;
+        }
+        return new NameColumn(offsets, Arrays.copyOf(ids, n));
+    }
+
+    /**
+     * @param movie the id of a movie
+     * @return The position of its first name
+     */
+    public int start(int movie) {
+        return this.offsets[movie];
+    }
+
+    /**
+     * @param movie the id of a movie
+     * @return The position after its last name
+     */
+    public int end(int movie) {
+        return this.offsets[movie + 1];
+    }
+
+    /**
+     * @param movie the id of a movie
+     * @return The number of its names
+     */
+    public int size(int movie) {
+        return this.offsets[movie + 1] - this.offsets[movie];
+    }
+
+    /**
+     * @return The number of names of all movies, the end of the last one
+     */
+    public int length() {
+        return this.ids.length;
+    }
+
+    /**
+     * @param position a position between start(id) and end(id) of a movie
+     * @return The id of the name at this position
+     */
+    public int get(int position) {
+        return this.ids[position];
+    }
+}
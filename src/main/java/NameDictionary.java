@@ -0,0 +1,167 @@
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+/**
+ * Interns names (of actors, characters and directors) to dense int ids
+ * 0, 1, 2, ... in the order in which they are first seen, so they can be
+ * counted in plain int arrays. The names are kept in an open-addressing
+ * table with linear probing which stores ids, not boxed Integers.
+ * <p>
+ * A dictionary read from a {@link MovieSnapshot} decodes a name only when
+ * it is first asked for, and builds its table only when a name is looked
+ * up or interned.
+ */
+public class NameDictionary {
+
+    private static final int NO_ID = -1;
+
+    private String[] names;
+    private int[] hashes;
+    /**
+     * The ids by slot, {@link #NO_ID} for a free slot.
+     */
+    private int[] slots;
+    private int size;
+    /**
+     * Decodes the names not decoded yet, null if all are given.
+     */
+    private final IntFunction<String> decoder;
+
+    public NameDictionary() {
+        this(16);
+    }
+
+    /**
+     * @param expectedSize the number of names the dictionary should hold without growing
+     */
+    public NameDictionary(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        this.names = new String[Math.max(4, expectedSize)];
+        this.hashes = new int[this.names.length];
+        this.slots = new int[capacity];
+        Arrays.fill(this.slots, NO_ID);
+        this.decoder = null;
+    }
+
+    /**
+     * A dictionary of 'size' names which are decoded on first use.
+     *
+     * @param size    the number of names
+     * @param decoder decodes the name of an id, from any thread
+     */
+    NameDictionary(int size, IntFunction<String> decoder) {
+        this.names = new String[Math.max(4, size)];
+        this.size = size;
+        this.decoder = decoder;
+    }
+
+    /**
+     * @param name a name
+     * @return The id of 'name', a new one if it has none yet
+     */
+    public int intern(String name) {
+        if (this.decoder != null) {
+            ensureTable();
+        }
+        int hash = mix(name.hashCode());
+        int mask = this.slots.length - 1;
+        int slot = hash & mask;
+        for (int id = this.slots[slot]; id != NO_ID; id = this.slots[slot]) {
+            if (this.hashes[id] == hash && this.names[id].equals(name)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+        int id = this.size++;
+        if (id == this.names.length) {
+            this.names = Arrays.copyOf(this.names, id * 2);
+            this.hashes = Arrays.copyOf(this.hashes, id * 2);
+        }
+        this.names[id] = name;
+        this.hashes[id] = hash;
+        this.slots[slot] = id;
+        if (this.size * 2 > this.slots.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    /**
+     * @param name a name
+     * @return The id of 'name', or -1 if it has none
+     */
+    public int id(String name) {
+        if (this.decoder != null) {
+            ensureTable();
+        }
+        int hash = mix(name.hashCode());
+        int mask = this.slots.length - 1;
+        for (int slot = hash & mask; this.slots[slot] != NO_ID; slot = (slot + 1) & mask) {
+            int id = this.slots[slot];
+            if (this.hashes[id] == hash && this.names[id].equals(name)) {
+                return id;
+            }
+        }
+        return NO_ID;
+    }
+
+    /**
+     * @param id the id of a name
+     * @return The name
+     */
+    public String name(int id) {
+        if (id >= this.size) {
+            throw new IndexOutOfBoundsException("No name with id " + id);
+        }
+        String name = this.names[id];
+        if (name == null) {
+            // Threads racing to decode a name store equal Strings
+            name = this.decoder.apply(id);
+            this.names[id] = name;
+        }
+        return name;
+    }
+
+    /**
+     * @return The number of names, all ids are below
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Decodes all names and builds the table, if they were left to be
+     * decoded on first use.
+     */
+    private synchronized void ensureTable() {
+        if (this.slots != null) {
+            return;
+        }
+        int[] hashes = new int[this.names.length];
+        for (int id = 0; id < this.size; id++) {
+            hashes[id] = mix(name(id).hashCode());
+        }
+        this.hashes = hashes;
+        // Half the capacity of the constructor, rehash() doubles it
+        this.slots = new int[Integer.highestOneBit(Math.max(4, this.size * 2 - 1))];
+        rehash();
+    }
+
+    private void rehash() {
+        this.slots = new int[this.slots.length * 2];
+        Arrays.fill(this.slots, NO_ID);
+        int mask = this.slots.length - 1;
+        for (int id = 0; id < this.size; id++) {
+            int slot = this.hashes[id] & mask;
+            while (this.slots[slot] != NO_ID) {
+                slot = (slot + 1) & mask;
+            }
+            this.slots[slot] = id;
+        }
+    }
+
+    private static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,165 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BinaryOperator;
+
+/**
+ * Splits the ids [0, n) of a {@link MovieTable} into ranges, scans every
+ * range in a {@link ForkJoinPool} into a partial result and merges the
+ * partial results pairwise. The left argument of a merge always covers the
+ * lower ids, so a merge which respects that gives the same result as one
+ * scan over all ids.
+ */
+public final class ParallelScan {
+
+    /**
+     * Ranges are not split below this many ids, smaller ones are not worth a task.
+     */
+    static final int MIN_RANGE = 1024;
+
+    /**
+     * Computes the partial result of a range of ids.
+     */
+    public interface RangeFunction<T> {
+        /**
+         * @param from the first id (inclusive)
+         * @param to   the last id (exclusive)
+         * @return The partial result of the ids in [from, to)
+         */
+        T apply(int from, int to);
+    }
+
+    private ParallelScan() {
+    }
+
+    /**
+     * @param pool   the pool to scan in, or null to scan in the calling thread
+     * @param n      the number of ids
+     * @param ranges the number of ranges to split the ids into, at most
+     * @param scan   computes the partial result of a range
+     * @param merge  merges the partial results of two adjacent ranges, the
+     *               lower one first; it may modify and return either
+     * @return The result of all ids
+     */
+    public static <T> T reduce(ForkJoinPool pool, int n, int ranges, RangeFunction<T> scan, BinaryOperator<T> merge) {
+        ranges = Math.min(ranges, Math.max(1, n / MIN_RANGE));
+        if (pool == null || ranges <= 1) {
+            return scan.apply(0, n);
+        }
+        return pool.invoke(new ScanTask<>(n, ranges, 0, ranges, scan, merge));
+    }
+
+    /**
+     * Runs a query over the ids [0, n) of a table.
+     *
+     * @param pool  the pool to scan in, or null to scan in the calling thread
+     * @param n     the number of ids
+     * @param query the query
+     * @return The result of the query
+     */
+    public static <P, R> R run(ForkJoinPool pool, int n, TableQuery<P, R> query) {
+        return run(pool, n, query, null);
+    }
+
+    /**
+     * Runs a query over the ids [0, n) of a table and ends 'event' with it.
+     * While the event is enabled, the allocations and time of every range,
+     * merge and the finish go into it, whichever thread they run in, and the
+     * ids the query matched, see {@link TableQuery#matched}.
+     *
+     * @param pool  the pool to scan in, or null to scan in the calling thread
+     * @param n     the number of ids
+     * @param query the query
+     * @param event the event of the query, begun, or null
+     * @return The result of the query
+     */
+    public static <P, R> R run(ForkJoinPool pool, int n, TableQuery<P, R> query, QueryEvent event) {
+        if (event == null || !event.isEnabled()) {
+            P partial = reduce(pool, n, ranges(pool, query.largePartials()), (from, to) -> {
+                P range = query.newPartial();
+                query.scan(range, from, to);
+                return range;
+            }, query::merge);
+            return event == null ? query.finish(partial) : event.end(query.finish(partial));
+        }
+
+        LongAdder matched = new LongAdder();
+        P partial = reduce(pool, n, ranges(pool, query.largePartials()), (from, to) -> {
+            long allocated = ThreadAllocation.bytes();
+            long start = System.nanoTime();
+            P range = query.newPartial();
+            query.scan(range, from, to);
+            matched.add(query.matched(range));
+            event.addBusy(System.nanoTime() - start);
+            event.addAllocated(ThreadAllocation.bytes() - allocated);
+            return range;
+        }, (left, right) -> {
+            long allocated = ThreadAllocation.bytes();
+            long start = System.nanoTime();
+            P merged = query.merge(left, right);
+            event.addBusy(System.nanoTime() - start);
+            event.addAllocated(ThreadAllocation.bytes() - allocated);
+            return merged;
+        });
+        // A query which does not count its matches gives -1 for every range
+        event.matched(matched.sum() < 0 ? -1 : matched.sum());
+        long allocated = ThreadAllocation.bytes();
+        long start = System.nanoTime();
+        R result = query.finish(partial);
+        event.addBusy(System.nanoTime() - start);
+        event.addAllocated(ThreadAllocation.bytes() - allocated);
+        return event.end(result);
+    }
+
+    /**
+     * @param pool          the pool to scan in, or null
+     * @param largePartials whether the partial results are large
+     * @return The number of ranges to split a scan into: one per thread for
+     * large partial results, else several per thread, which balances the
+     * load if some ranges take longer than others
+     */
+    static int ranges(ForkJoinPool pool, boolean largePartials) {
+        if (pool == null) {
+            return 1;
+        }
+        return largePartials ? pool.getParallelism() : pool.getParallelism() * 4;
+    }
+
+    private static class ScanTask<T> extends RecursiveTask<T> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int n;
+        private final int ranges;
+        private final int fromRange;
+        private final int toRange;
+        private final RangeFunction<T> scan;
+        private final BinaryOperator<T> merge;
+
+        ScanTask(int n, int ranges, int fromRange, int toRange, RangeFunction<T> scan, BinaryOperator<T> merge) {
+            this.n = n;
+            this.ranges = ranges;
+            this.fromRange = fromRange;
+            this.toRange = toRange;
+            this.scan = scan;
+            this.merge = merge;
+        }
+
+        @Override
+        protected T compute() {
+            if (this.toRange - this.fromRange == 1) {
+                return this.scan.apply(start(this.fromRange), start(this.toRange));
+            }
+            int mid = (this.fromRange + this.toRange) >>> 1;
+            ScanTask<T> left = new ScanTask<>(this.n, this.ranges, this.fromRange, mid, this.scan, this.merge);
+            ScanTask<T> right = new ScanTask<>(this.n, this.ranges, mid, this.toRange, this.scan, this.merge);
+            left.fork();
+            T rightResult = right.compute();
+            return this.merge.apply(left.join(), rightResult);
+        }
+
+        private int start(int range) {
+            return (int) ((long) this.n * range / this.ranges);
+        }
+    }
+}
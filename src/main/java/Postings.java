@@ -0,0 +1,58 @@
+/**
+ * A postings list: the ids of the documents containing a term, in increasing
+ * order, and the number of times the term appears in each of them.
+ */
+public class Postings {
+
+    static final Postings EMPTY = new Postings(new int[0], new int[0]);
+
+    private final int[] docs;
+    private final int[] freqs;
+
+    Postings(int[] docs, int[] freqs) {
+        this.docs = docs;
+        this.freqs = freqs;
+    }
+
+    /**
+     * @return The number of documents containing the term
+     */
+    public int size() {
+        return this.docs.length;
+    }
+
+    /**
+     * @param i the position in the postings list
+     * @return The id of the i-th document
+     */
+    public int doc(int i) {
+        return this.docs[i];
+    }
+
+    /**
+     * @param i the position in the postings list
+     * @return The number of times the term appears in the i-th document
+     */
+    public int freq(int i) {
+        return this.freqs[i];
+    }
+
+    /**
+     * @param doc a document id
+     * @return The position of the first document whose id is at least 'doc',
+     * or {@link #size()}
+     */
+    public int lowerBound(int doc) {
+        int low = 0;
+        int high = this.docs.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (this.docs[mid] < doc) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,221 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs several {@link TableQuery}s over a {@link MovieTable} in one shared
+ * scan: the ids are visited in blocks of {@link #BLOCK_SIZE}, and every query
+ * scans a block in turn while its columns are still in the CPU cache, into
+ * its own partial result. With a pool the scan is split into ranges like
+ * {@link ParallelScan#run} does.
+ * <p>
+ * The time every query spends on its blocks, merges and finishing is
+ * measured, summed over all threads. Every query ends a {@link QueryEvent}
+ * with its share of the scan.
+ */
+public class QueryBatch {
+
+    /**
+     * The number of ids every query scans before the next one takes over.
+     */
+    static final int BLOCK_SIZE = 1024;
+
+    private final MovieTable table;
+    private final ForkJoinPool pool;
+    private final List<Entry<?, ?>> entries = new ArrayList<>();
+    private long scanNanos;
+
+    /**
+     * @param table the table to query
+     * @param pool  the pool to scan in, or null to scan in the calling thread
+     */
+    public QueryBatch(MovieTable table, ForkJoinPool pool) {
+        this.table = table;
+        this.pool = pool;
+    }
+
+    /**
+     * @param name  the name of the query, for reports
+     * @param query a query which has not been run yet
+     * @return Where the result will be once the batch has run
+     */
+    public <P, R> Result<R> add(String name, TableQuery<P, R> query) {
+        Entry<P, R> entry = new Entry<>(name, query);
+        this.entries.add(entry);
+        return entry;
+    }
+
+    /**
+     * Runs all queries added so far in one scan.
+     */
+    public void run() {
+        long start = System.nanoTime();
+        boolean largePartials = false;
+        for (Entry<?, ?> entry : this.entries) {
+            largePartials |= entry.query.largePartials();
+            entry.begin(this.table.size());
+        }
+        Object[] partials = ParallelScan.reduce(this.pool, this.table.size(),
+                ParallelScan.ranges(this.pool, largePartials), this::scan, this::merge);
+        for (int i = 0; i < this.entries.size(); i++) {
+            this.entries.get(i).finish(partials[i]);
+        }
+        this.scanNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * @return The number of queries
+     */
+    public int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * @return The wall-clock time of the last {@link #run()} in milliseconds
+     */
+    public long getMillis() {
+        return this.scanNanos / 1000000;
+    }
+
+    private Object[] scan(int from, int to) {
+        Object[] partials = new Object[this.entries.size()];
+        for (int i = 0; i < partials.length; i++) {
+            partials[i] = this.entries.get(i).newPartial();
+        }
+        for (int block = from; block < to; block += BLOCK_SIZE) {
+            int end = Math.min(to, block + BLOCK_SIZE);
+            for (int i = 0; i < partials.length; i++) {
+                this.entries.get(i).scan(partials[i], block, end);
+            }
+        }
+        for (int i = 0; i < partials.length; i++) {
+            this.entries.get(i).scanned(partials[i]);
+        }
+        return partials;
+    }
+
+    private Object[] merge(Object[] left, Object[] right) {
+        for (int i = 0; i < left.length; i++) {
+            left[i] = this.entries.get(i).merge(left[i], right[i]);
+        }
+        return left;
+    }
+
+    /**
+     * The result of a query of a batch.
+     *
+     * @param <R> the result
+     */
+    public abstract static class Result<R> {
+        private final String name;
+        final LongAdder nanos = new LongAdder();
+        R value;
+
+        Result(String name) {
+            this.name = name;
+        }
+
+        /**
+         * @return The name of the query
+         */
+        public String getName() {
+            return this.name;
+        }
+
+        /**
+         * @return The result, null until the batch has run
+         */
+        public R get() {
+            return this.value;
+        }
+
+        /**
+         * @return The time the query took in the batch in milliseconds,
+         * summed over all threads
+         */
+        public long getMillis() {
+            return this.nanos.sum() / 1000000;
+        }
+    }
+
+    /**
+     * A query with its result. The partial results are passed around as
+     * Objects, as the queries of a batch have different types of them.
+     */
+    private static final class Entry<P, R> extends Result<R> {
+        final TableQuery<P, R> query;
+        private final LongAdder matched = new LongAdder();
+        private QueryEvent event;
+        private boolean profiled;
+
+        Entry(String name, TableQuery<P, R> query) {
+            super(name);
+            this.query = query;
+        }
+
+        void begin(int rows) {
+            this.event = QueryEvent.start(getName(), "batch", rows);
+            this.profiled = this.event.isEnabled();
+        }
+
+        Object newPartial() {
+            long allocated = allocated();
+            long start = System.nanoTime();
+            P partial = this.query.newPartial();
+            this.nanos.add(System.nanoTime() - start);
+            addAllocated(allocated);
+            return partial;
+        }
+
+        @SuppressWarnings("unchecked")
+        void scan(Object partial, int from, int to) {
+            long allocated = allocated();
+            long start = System.nanoTime();
+            this.query.scan((P) partial, from, to);
+            this.nanos.add(System.nanoTime() - start);
+            addAllocated(allocated);
+        }
+
+        @SuppressWarnings("unchecked")
+        void scanned(Object partial) {
+            if (this.profiled) {
+                this.matched.add(this.query.matched((P) partial));
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        Object merge(Object left, Object right) {
+            long allocated = allocated();
+            long start = System.nanoTime();
+            P merged = this.query.merge((P) left, (P) right);
+            this.nanos.add(System.nanoTime() - start);
+            addAllocated(allocated);
+            return merged;
+        }
+
+        @SuppressWarnings("unchecked")
+        void finish(Object partial) {
+            long allocated = allocated();
+            long start = System.nanoTime();
+            this.value = this.query.finish((P) partial);
+            this.nanos.add(System.nanoTime() - start);
+            addAllocated(allocated);
+            if (this.profiled) {
+                this.event.matched(this.matched.sum() < 0 ? -1 : this.matched.sum());
+                this.event.addBusy(this.nanos.sum());
+            }
+            this.event.end(this.value);
+        }
+
+        private long allocated() {
+            return this.profiled ? ThreadAllocation.bytes() : 0;
+        }
+
+        private void addAllocated(long allocated) {
+            if (this.profiled) {
+                this.event.addAllocated(ThreadAllocation.bytes() - allocated);
+            }
+        }
+    }
+}
@@ -0,0 +1,307 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * A cache of the answers of the queries of a {@link LiveMovieIndex}, for
+ * dashboards which ask the same queries over and over while the movies
+ * rarely change. An answer is kept by its query and parameters together
+ * with the version of the fields of the movies the query reads, see
+ * {@link LiveMovieIndex#version(Set)}, and is computed again once one of
+ * these fields changed. So a new description makes the description queries
+ * compute again, but not e.g. Workhorse or Magic Couples. Adding or
+ * removing a movie changes all fields.
+ * <p>
+ * Beyond a number of answers the least recently used one is evicted.
+ * Answers are shared, so they are unmodifiable. The movies an answer lists
+ * are those of the version it was computed at: the fields the query reads
+ * and the title are current, other fields may have changed since.
+ * <p>
+ * The cache may be used from any number of threads. Threads which miss the
+ * same answer at once each compute it.
+ */
+public class QueryCache {
+
+    private static final Set<MovieField> ALL_ROUNDER = EnumSet.of(
+            MovieField.TITLE, MovieField.RATING, MovieField.CAST, MovieField.DIRECTORS);
+    private static final Set<MovieField> UNDER_THE_RADAR = EnumSet.of(
+            MovieField.TITLE, MovieField.YEAR, MovieField.COUNTRIES, MovieField.RATING, MovieField.RATING_COUNT,
+            MovieField.BUDGET, MovieField.GROSS);
+    private static final Set<MovieField> PILLARS_OF_STORYTELLING = EnumSet.of(
+            MovieField.TITLE, MovieField.DESCRIPTION);
+    private static final Set<MovieField> RED_PLANET = EnumSet.of(
+            MovieField.TITLE, MovieField.YEAR, MovieField.GENRES, MovieField.DESCRIPTION);
+    private static final Set<MovieField> COLOSSAL_FAILURE = EnumSet.of(
+            MovieField.TITLE, MovieField.COUNTRIES, MovieField.RATING, MovieField.BUDGET, MovieField.DURATION);
+    private static final Set<MovieField> UNCREATIVE_WRITERS = EnumSet.of(MovieField.CHARACTERS);
+    private static final Set<MovieField> WORKHORSE = EnumSet.of(MovieField.CAST);
+    private static final Set<MovieField> MUST_SEE = EnumSet.of(
+            MovieField.TITLE, MovieField.YEAR, MovieField.RATING, MovieField.RATING_COUNT);
+    private static final Set<MovieField> ROTTEN_TOMATOES = EnumSet.of(
+            MovieField.TITLE, MovieField.YEAR, MovieField.RATING);
+    private static final Set<MovieField> MAGIC_COUPLES = EnumSet.of(MovieField.CAST);
+    private static final Set<MovieField> DESCRIPTIONS = EnumSet.of(MovieField.TITLE, MovieField.DESCRIPTION);
+
+    private final LiveMovieIndex index;
+    private final int capacity;
+    /**
+     * The answers by query and parameters, in the order of their last use.
+     */
+    private final LinkedHashMap<List<Object>, Answer> answers = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong savedNanos = new AtomicLong();
+    private final AtomicLong hitNanos = new AtomicLong();
+    private final AtomicLong missNanos = new AtomicLong();
+
+    /**
+     * @param index    the index to ask
+     * @param capacity the number of answers beyond which the least recently
+     *                 used one is evicted
+     */
+    public QueryCache(LiveMovieIndex index, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1: " + capacity);
+        }
+        this.index = index;
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return see {@link LiveMovieIndex#queryAllRounder()}
+     */
+    public List<IMDBQueries.Tuple<Movie, String>> queryAllRounder() {
+        return get("All-rounder", Collections.emptyList(), ALL_ROUNDER, this.index::queryAllRounder);
+    }
+
+    /**
+     * @return see {@link LiveMovieIndex#queryUnderTheRadar()}
+     */
+    public List<IMDBQueries.Tuple<Movie, Long>> queryUnderTheRadar() {
+        return get("Under the radar", Collections.emptyList(), UNDER_THE_RADAR, this.index::queryUnderTheRadar);
+    }
+
+    /**
+     * @return see {@link LiveMovieIndex#queryPillarsOfStorytelling()}
+     */
+    public List<IMDBQueries.Tuple<Movie, Integer>> queryPillarsOfStorytelling() {
+        return get("Pillars of storytelling", Collections.emptyList(), PILLARS_OF_STORYTELLING,
+                this.index::queryPillarsOfStorytelling);
+    }
+
+    /**
+     * @return see {@link LiveMovieIndex#queryRedPlanet()}
+     */
+    public List<Movie> queryRedPlanet() {
+        return get("Red planet", Collections.emptyList(), RED_PLANET, this.index::queryRedPlanet);
+    }
+
+    /**
+     * @return see {@link LiveMovieIndex#queryColossalFailure()}
+     */
+    public List<Movie> queryColossalFailure() {
+        return get("Colossal failure", Collections.emptyList(), COLOSSAL_FAILURE, this.index::queryColossalFailure);
+    }
+
+    /**
+     * @return see {@link LiveMovieIndex#queryUncreativeWriters()}
+     */
+    public List<IMDBQueries.Tuple<String, Integer>> queryUncreativeWriters() {
+        return get("Uncreative writers", Collections.emptyList(), UNCREATIVE_WRITERS,
+                this.index::queryUncreativeWriters);
+    }
+
+    /**
+     * @return see {@link LiveMovieIndex#queryWorkHorse()}
+     */
+    public List<IMDBQueries.Tuple<String, Integer>> queryWorkHorse() {
+        return get("Workhorse", Collections.emptyList(), WORKHORSE, this.index::queryWorkHorse);
+    }
+
+    /**
+     * @return see {@link LiveMovieIndex#queryMustSee()}
+     */
+    public List<Movie> queryMustSee() {
+        return get("Must see", Collections.emptyList(), MUST_SEE, this.index::queryMustSee);
+    }
+
+    /**
+     * @return see {@link LiveMovieIndex#queryRottenTomatoes()}
+     */
+    public List<Movie> queryRottenTomatoes() {
+        return get("Rotten tomatoes", Collections.emptyList(), ROTTEN_TOMATOES, this.index::queryRottenTomatoes);
+    }
+
+    /**
+     * @return see {@link LiveMovieIndex#queryMagicCouple()}
+     */
+    public List<IMDBQueries.Tuple<IMDBQueries.Tuple<String, String>, Integer>> queryMagicCouple() {
+        return get("Magic Couples", Collections.emptyList(), MAGIC_COUPLES, this.index::queryMagicCouple);
+    }
+
+    /**
+     * @return see {@link LiveMovieIndex#searchDescriptions}
+     */
+    public List<Movie> searchDescriptions(String text, boolean ignoreCase) {
+        return get("Search", Arrays.asList(text, ignoreCase), DESCRIPTIONS,
+                () -> this.index.searchDescriptions(text, ignoreCase));
+    }
+
+    /**
+     * Returns the cached answer to a query, or computes and caches it if
+     * there is none or one of the fields the query reads changed since.
+     *
+     * @param query      the name of the query
+     * @param parameters the parameters of the query
+     * @param reads      the fields of the movies the query reads
+     * @param compute    computes the answer from {@link #index}
+     * @return The answer, unmodifiable
+     */
+    private <T> List<T> get(String query, List<?> parameters, Set<MovieField> reads, Supplier<List<T>> compute) {
+        long start = System.nanoTime();
+        List<Object> key = new ArrayList<>(parameters.size() + 1);
+        key.add(query);
+        key.addAll(parameters);
+        // Read before computing, so an update in between makes the answer stale rather than wrong
+        long version = this.index.version(reads);
+        Answer cached;
+        synchronized (this) {
+            cached = this.answers.get(key);
+        }
+        if (cached != null && cached.version == version) {
+            this.hits.incrementAndGet();
+            this.savedNanos.addAndGet(cached.nanos);
+            this.hitNanos.addAndGet(System.nanoTime() - start);
+            @SuppressWarnings("unchecked")
+            List<T> answer = (List<T>) cached.answer;
+            return answer;
+        }
+        if (cached != null) {
+            this.invalidations.incrementAndGet();
+        }
+        this.misses.incrementAndGet();
+        List<T> answer = Collections.unmodifiableList(compute.get());
+        long nanos = System.nanoTime() - start;
+        this.missNanos.addAndGet(nanos);
+        synchronized (this) {
+            Answer current = this.answers.get(key);
+            if (current == null || current.version <= version) {
+                this.answers.put(key, new Answer(answer, version, nanos));
+                if (this.answers.size() > this.capacity) {
+                    this.answers.remove(this.answers.keySet().iterator().next());
+                    this.evictions.incrementAndGet();
+                }
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Removes all answers; the counters are kept.
+     */
+    public synchronized void clear() {
+        this.answers.clear();
+    }
+
+    /**
+     * @return The number of cached answers
+     */
+    public synchronized int size() {
+        return this.answers.size();
+    }
+
+    /**
+     * @return The number of queries answered from the cache
+     */
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    /**
+     * @return The number of queries which had to be computed
+     */
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    /**
+     * @return The number of misses because a field the answer depended on
+     * changed
+     */
+    public long getInvalidations() {
+        return this.invalidations.get();
+    }
+
+    /**
+     * @return The number of answers evicted to stay within the capacity
+     */
+    public long getEvictions() {
+        return this.evictions.get();
+    }
+
+    /**
+     * @return The fraction of the queries answered from the cache
+     */
+    public double getHitRate() {
+        long hits = getHits();
+        long total = hits + getMisses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * @return The time the answers of the hits took to compute, in
+     * nanoseconds, less the time of the hits
+     */
+    public long getSavedNanos() {
+        return this.savedNanos.get() - this.hitNanos.get();
+    }
+
+    /**
+     * @return The time of the hits in nanoseconds
+     */
+    public long getHitNanos() {
+        return this.hitNanos.get();
+    }
+
+    /**
+     * @return The time of the misses in nanoseconds, including computing
+     * their answers
+     */
+    public long getMissNanos() {
+        return this.missNanos.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d hits, %d misses (%d invalidated), hit rate %.1f%%, %d evicted, %.1f ms saved",
+                getHits(), getMisses(), getInvalidations(), 100 * getHitRate(), getEvictions(),
+                getSavedNanos() / 1e6);
+    }
+
+    private static final class Answer {
+        final List<?> answer;
+        /**
+         * The version of the fields the query reads when it was computed.
+         */
+        final long version;
+        /**
+         * The time it took to compute.
+         */
+        final long nanos;
+
+        Answer(List<?> answer, long version, long nanos) {
+            this.answer = answer;
+            this.version = version;
+            this.nanos = nanos;
+        }
+    }
+}
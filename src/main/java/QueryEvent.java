@@ -0,0 +1,141 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A Flight Recorder event for one run of a query of {@link IMDBQueries}:
+ * how many rows it read, how many of them matched, how large its result is
+ * and how much it allocated. While no recording takes these events they
+ * cost a check of {@link #isEnabled()} and nothing is measured.
+ * <p>
+ * A query which runs in a pool adds the allocations and time of every
+ * piece of work, in whichever thread, through {@link #addAllocated} and
+ * {@link #addBusy}.
+ */
+@Name(QueryEvent.NAME)
+@Label("Movie Query")
+@Category({"IMDB", "Queries"})
+@Description("A run of a movie query")
+@StackTrace(false)
+public class QueryEvent extends Event {
+
+    static final String NAME = "imdb.Query";
+
+    @Label("Query")
+    String query;
+
+    @Label("Source")
+    @Description("What the query ran on: list, table or batch")
+    String source;
+
+    @Label("Rows Scanned")
+    @Description("Movies, or postings of the description index, the query read")
+    long rowsScanned;
+
+    @Label("Rows Matched")
+    @Description("Rows which passed the filter of the query, -1 if it does not count them")
+    long rowsMatched = -1;
+
+    @Label("Result Size")
+    int resultSize = -1;
+
+    @Label("Allocated")
+    @DataAmount
+    long allocatedBytes;
+
+    @Label("Busy Time")
+    @Description("Time spent on the query, summed over all threads; in a batch only its share of the shared scan")
+    @Timespan
+    long busyNanos;
+
+    private transient long startAllocated;
+    private transient long startNanos;
+    private transient LongAdder pooledAllocated;
+    private transient LongAdder pooledBusy;
+
+    /**
+     * Begins an event for a query, which {@link #end} commits.
+     *
+     * @param query       the name of the query
+     * @param source      what the query runs on: list, table or batch
+     * @param rowsScanned the number of rows the query reads
+     * @return The event
+     */
+    static QueryEvent start(String query, String source, long rowsScanned) {
+        QueryEvent event = new QueryEvent();
+        if (event.isEnabled()) {
+            event.query = query;
+            event.source = source;
+            event.rowsScanned = rowsScanned;
+            event.startAllocated = ThreadAllocation.bytes();
+            event.startNanos = System.nanoTime();
+        }
+        event.begin();
+        return event;
+    }
+
+    /**
+     * @param rowsMatched the number of rows which passed the filter of the query
+     */
+    void matched(long rowsMatched) {
+        this.rowsMatched = rowsMatched;
+    }
+
+    /**
+     * Adds the bytes a piece of the query's work allocated, in any thread.
+     * May be called from several threads at once.
+     */
+    void addAllocated(long bytes) {
+        pooled().pooledAllocated.add(bytes);
+    }
+
+    /**
+     * Adds the time a piece of the query's work took, in any thread. May be
+     * called from several threads at once.
+     */
+    void addBusy(long nanos) {
+        pooled().pooledBusy.add(nanos);
+    }
+
+    private synchronized QueryEvent pooled() {
+        if (this.pooledAllocated == null) {
+            this.pooledAllocated = new LongAdder();
+            this.pooledBusy = new LongAdder();
+        }
+        return this;
+    }
+
+    /**
+     * Ends and commits the event, with the allocations and time of the
+     * calling thread since {@link #start}, or those added by
+     * {@link #addAllocated} and {@link #addBusy} if any were.
+     *
+     * @param result the result of the query, a collection or null
+     * @return The result
+     */
+    <R> R end(R result) {
+        end();
+        if (shouldCommit()) {
+            if (result instanceof Collection) {
+                this.resultSize = ((Collection<?>) result).size();
+            }
+            if (this.pooledAllocated == null) {
+                this.allocatedBytes = ThreadAllocation.bytes() - this.startAllocated;
+                this.busyNanos = System.nanoTime() - this.startNanos;
+            } else {
+                this.allocatedBytes = this.pooledAllocated.sum();
+                this.busyNanos = this.pooledBusy.sum();
+            }
+            commit();
+        }
+        return result;
+    }
+}
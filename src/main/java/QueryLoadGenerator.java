@@ -0,0 +1,240 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An open-loop load generator for {@link QueryServer}: requests are due at
+ * a fixed rate whether or not earlier ones have been answered, as requests
+ * of many independent users would be, and every latency is measured from
+ * the time its request was due rather than from when a connection was free
+ * to send it. So a server which stalls shows up in the percentiles instead
+ * of quietly lowering the load (coordinated omission).
+ * <p>
+ * The requests cycle through the queries given, by default all of
+ * {@link QueryServer#QUERIES}. Requests due during the warmup are sent but
+ * not measured. If the sender threads cannot keep up, the requests wait for
+ * one and that wait counts as latency; the send lag in the report shows
+ * whether that happened.
+ * <p>
+ * Call with: QueryLoadGenerator &lt;baseUrl&gt; &lt;qps&gt; [seconds] [connections] [warmupSeconds] [query,...]
+ */
+public class QueryLoadGenerator {
+
+    private final String baseUrl;
+    private final List<String> paths;
+    private final double qps;
+    private final int connections;
+
+    /**
+     * @param baseUrl     the URL of the server, e.g. {@link QueryServer#getBaseUrl()}
+     * @param paths       the paths to request in turn, e.g. /query/workhorse?k=5
+     * @param qps         the requests per second
+     * @param connections the number of threads sending requests, each over
+     *                    its own keep-alive connection
+     */
+    public QueryLoadGenerator(String baseUrl, List<String> paths, double qps, int connections) {
+        if (qps <= 0) {
+            throw new IllegalArgumentException("qps must be positive: " + qps);
+        }
+        this.baseUrl = baseUrl;
+        this.paths = paths;
+        this.qps = qps;
+        this.connections = connections;
+    }
+
+    /**
+     * Sends requests for 'warmupSeconds' and then for 'seconds', and waits
+     * for all of them to be answered.
+     *
+     * @return The latencies of the requests after the warmup
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public Report run(double seconds, double warmupSeconds) throws InterruptedException {
+        long interval = Math.max(1, (long) (1e9 / this.qps));
+        int warmup = (int) (warmupSeconds * this.qps);
+        int total = warmup + (int) (seconds * this.qps);
+        Report report = new Report(this.paths, total - warmup);
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService senders = Executors.newFixedThreadPool(this.connections, r -> {
+            Thread thread = new Thread(r, "load-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(10);
+        long measured = start + warmup * interval;
+        for (int i = 0; i < total; i++) {
+            long due = start + i * interval;
+            for (long wait = due - System.nanoTime(); wait > 0; wait = due - System.nanoTime()) {
+                LockSupport.parkNanos(wait);
+            }
+            int request = i;
+            String path = this.paths.get(i % this.paths.size());
+            senders.execute(() -> {
+                long sent = System.nanoTime();
+                boolean ok = send(path);
+                if (request >= warmup) {
+                    report.record(request - warmup, request % this.paths.size(), ok, System.nanoTime() - due,
+                            sent - due);
+                }
+            });
+        }
+        senders.shutdown();
+        senders.awaitTermination(1, TimeUnit.HOURS);
+        report.elapsedNanos = System.nanoTime() - measured;
+        return report;
+    }
+
+    private boolean send(String path) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(this.baseUrl + path).openConnection();
+            connection.setConnectTimeout(10000);
+            connection.setReadTimeout(60000);
+            int status = connection.getResponseCode();
+            // Reading the body to its end returns the connection to the keep-alive cache
+            try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                if (in != null) {
+                    byte[] buffer = new byte[8192];
+                    while (in.read(buffer) >= 0) {
+                        // drain
+                    }
+                }
+            }
+            return status == 200;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * The latencies of a run, overall and per path.
+     */
+    public static class Report {
+        private final List<String> paths;
+        private final long[] latencies;
+        private final long[] lags;
+        private final int[] pathOf;
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder completed = new LongAdder();
+        private volatile long elapsedNanos;
+
+        Report(List<String> paths, int requests) {
+            this.paths = paths;
+            this.latencies = new long[requests];
+            this.lags = new long[requests];
+            this.pathOf = new int[requests];
+            Arrays.fill(this.latencies, -1);
+        }
+
+        void record(int request, int path, boolean ok, long latency, long lag) {
+            this.pathOf[request] = path;
+            this.lags[request] = lag;
+            this.completed.increment();
+            if (ok) {
+                this.latencies[request] = latency;
+            } else {
+                this.errors.increment();
+            }
+        }
+
+        /**
+         * @return The number of requests answered with 200
+         */
+        public long getSucceeded() {
+            return this.completed.sum() - this.errors.sum();
+        }
+
+        /**
+         * @return The number of requests which failed or were not answered with 200
+         */
+        public long getErrors() {
+            return this.errors.sum();
+        }
+
+        /**
+         * @param quantile a quantile, e.g. 0.999
+         * @return The latency in milliseconds which 'quantile' of the
+         * successful requests did not exceed, 0 if there were none
+         */
+        public double getPercentileMillis(double quantile) {
+            return percentile(sorted(-1), quantile);
+        }
+
+        private long[] sorted(int path) {
+            long[] values = new long[this.latencies.length];
+            int count = 0;
+            for (int i = 0; i < this.latencies.length; i++) {
+                if (this.latencies[i] >= 0 && (path == -1 || this.pathOf[i] == path)) {
+                    values[count++] = this.latencies[i];
+                }
+            }
+            values = Arrays.copyOf(values, count);
+            Arrays.sort(values);
+            return values;
+        }
+
+        private static double percentile(long[] sorted, double quantile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(quantile * sorted.length);
+            return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)] / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            long[] all = sorted(-1);
+            long[] lags = this.lags.clone();
+            Arrays.sort(lags);
+            StringBuilder text = new StringBuilder();
+            text.append(String.format("%d requests, %d errors, %.0f answered/s%n", this.completed.sum(),
+                    getErrors(), getSucceeded() / (this.elapsedNanos / 1e9)));
+            text.append(String.format("%-48s %8s %9s %9s %9s %9s%n", "latency ms", "count", "p50", "p99", "p999",
+                    "max"));
+            text.append(line("all", all));
+            for (int path = 0; path < this.paths.size(); path++) {
+                text.append(line(this.paths.get(path), sorted(path)));
+            }
+            text.append(String.format("send lag p99 %.3f ms, max %.3f ms%n", percentile(lags, 0.99),
+                    percentile(lags, 1)));
+            return text.toString();
+        }
+
+        private static String line(String name, long[] sorted) {
+            return String.format("%-48s %8d %9.3f %9.3f %9.3f %9.3f%n", name, sorted.length,
+                    percentile(sorted, 0.5), percentile(sorted, 0.99), percentile(sorted, 0.999),
+                    percentile(sorted, 1));
+        }
+    }
+
+    public static void main(String argv[]) throws Exception {
+        if (argv.length < 2 || argv.length > 6) {
+            System.out.println("Call with: QueryLoadGenerator <baseUrl> <qps> [seconds] [connections]"
+                    + " [warmupSeconds] [query,...]");
+            System.exit(0);
+        }
+        double qps = Double.parseDouble(argv[1]);
+        double seconds = argv.length > 2 ? Double.parseDouble(argv[2]) : 30;
+        int connections = argv.length > 3 ? Integer.parseInt(argv[3]) : 64;
+        double warmupSeconds = argv.length > 4 ? Double.parseDouble(argv[4]) : 5;
+        List<String> paths = new ArrayList<>();
+        for (String query : argv.length > 5 ? argv[5].split(",") : QueryServer.QUERIES) {
+            paths.add(query.startsWith("/") ? query : "/query/" + query);
+        }
+
+        QueryLoadGenerator generator = new QueryLoadGenerator(argv[0], paths, qps, connections);
+        System.out.println(String.format("%.0f requests/s for %.0f s after %.0f s of warmup, %d connections",
+                qps, seconds, warmupSeconds, connections));
+        System.out.print(generator.run(seconds, warmupSeconds));
+    }
+}
@@ -0,0 +1,752 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * How a {@link MovieQuery} runs on a {@link MovieTable}, chosen by a simple
+ * cost model whose unit is the cost of reading a column of one movie:
+ * <ul>
+ * <li>Access: a scan of all movies, or a lookup in the index of one filter,
+ * which visits only the movies of that filter at {@link #INDEX_VISIT_COST}
+ * each. The cheaper one in estimated cost wins.</li>
+ * <li>Filters: the remaining filters run cheapest and most selective first,
+ * ordered by cost / (1 - selectivity), so a movie is rejected by the
+ * cheapest test which rejects it.</li>
+ * <li>Result: with a limit and an order the first rows are selected with an
+ * {@link IntTopK}, otherwise all rows are collected and sorted.</li>
+ * </ul>
+ * The result does not depend on the plan, as the rows of equal values are
+ * ordered by id or key. A plan keeps no state between runs, so it may run
+ * any number of times, also at once.
+ *
+ * @param <P> the partial result
+ */
+public abstract class QueryPlan<P> implements TableQuery<P, QueryResult> {
+
+    /**
+     * The cost of visiting a movie of an index, relative to visiting the
+     * next movie of a scan.
+     */
+    static final double INDEX_VISIT_COST = 2;
+
+    /**
+     * The number of movies the filters run over at a time.
+     */
+    static final int BATCH_SIZE = 1024;
+
+    final MovieTable table;
+    /**
+     * The filter whose index is visited, or null to scan all movies.
+     */
+    private final Filter.Bound driver;
+    private final Filter.Bound[] residual;
+    private final double cost;
+    private final double rows;
+
+    private QueryPlan(MovieTable table, Access access) {
+        this.table = table;
+        this.driver = access.driver;
+        this.residual = access.residual;
+        this.cost = access.cost;
+        this.rows = access.rows;
+    }
+
+    /**
+     * @param query the query
+     * @param table the table to query
+     * @return The cheapest plan of the query
+     */
+    static QueryPlan<?> create(MovieQuery query, MovieTable table) {
+        List<Filter.Bound> filters = new ArrayList<>();
+        for (Filter filter : query.filters) {
+            filters.add(filter.bind(table));
+        }
+        Access access = Access.scan(table.size(), filters);
+        for (Filter.Bound driver : filters) {
+            if (driver.candidates != null) {
+                List<Filter.Bound> others = new ArrayList<>(filters);
+                others.remove(driver);
+                Access lookup = Access.lookup(driver, others);
+                if (lookup.cost < access.cost) {
+                    access = lookup;
+                }
+            }
+        }
+        if (query.group != null) {
+            return new GroupPlan(query, table, access);
+        }
+        if (query.limit >= 0) {
+            return new TopRowsPlan(query, table, access);
+        }
+        return new AllRowsPlan(query, table, access);
+    }
+
+    /**
+     * Adds a movie which matches all filters to a partial result.
+     *
+     * @param partial the partial result
+     * @param id      the id of the movie
+     */
+    abstract void add(P partial, int id);
+
+    /**
+     * @return How the rows are combined into the result
+     */
+    abstract String describeResult();
+
+    /**
+     * Adds a batch of movies which match all filters to a partial result.
+     *
+     * @param partial the partial result
+     * @param ids     the ids of the movies
+     * @param n       the number of ids
+     * @param values  room for a value per id
+     */
+    void add(P partial, int[] ids, int n, double[] values) {
+        for (int i = 0; i < n; i++) {
+            add(partial, ids[i]);
+        }
+    }
+
+    /**
+     * Collects the movies to visit in batches of {@link #BATCH_SIZE} ids,
+     * and runs every filter over a whole batch before the next one.
+     */
+    @Override
+    public void scan(P partial, int from, int to) {
+        int[] ids = new int[BATCH_SIZE];
+        double[] values = new double[BATCH_SIZE];
+        if (this.driver == null) {
+            for (int start = from; start < to; start += BATCH_SIZE) {
+                int n = Math.min(BATCH_SIZE, to - start);
+                for (int i = 0; i < n; i++) {
+                    ids[i] = start + i;
+                }
+                filter(partial, ids, n, values);
+            }
+        } else {
+            int[] n = new int[1];
+            this.driver.candidates.forEach(from, to, id -> {
+                ids[n[0]++] = id;
+                if (n[0] == BATCH_SIZE) {
+                    filter(partial, ids, BATCH_SIZE, values);
+                    n[0] = 0;
+                }
+            });
+            filter(partial, ids, n[0], values);
+        }
+    }
+
+    private void filter(P partial, int[] ids, int n, double[] values) {
+        for (Filter.Bound filter : this.residual) {
+            if (n == 0) {
+                return;
+            }
+            n = filter.retain(ids, n, values);
+        }
+        add(partial, ids, n, values);
+    }
+
+    /**
+     * @return Whether the plan scans all movies without filters
+     */
+    boolean acceptsAll() {
+        return this.driver == null && this.residual.length == 0;
+    }
+
+    /**
+     * @return The plan as text, one step per line
+     */
+    public String explain() {
+        StringBuilder text = new StringBuilder();
+        if (this.driver == null) {
+            text.append("scan ").append(this.table.size()).append(" movies\n");
+        } else {
+            text.append("index ").append(this.driver.description).append(" (")
+                    .append(this.driver.candidates.size()).append(" of ").append(this.table.size()).append(" movies)\n");
+        }
+        for (Filter.Bound filter : this.residual) {
+            text.append("filter ").append(filter.description).append('\n');
+        }
+        text.append(describeResult()).append('\n');
+        text.append(String.format("estimated cost %.0f, rows %.0f%n", this.cost, this.rows));
+        return text.toString();
+    }
+
+    @Override
+    public String toString() {
+        return explain();
+    }
+
+    /**
+     * A way to find the matching movies with its estimated cost.
+     */
+    private static final class Access {
+        final Filter.Bound driver;
+        final Filter.Bound[] residual;
+        final double cost;
+        final double rows;
+
+        private Access(Filter.Bound driver, List<Filter.Bound> residual, double visited, double visitCost) {
+            Filter.Bound[] ordered = residual.toArray(new Filter.Bound[0]);
+            // A stable sort, so filters of equal rank keep the order of the query
+            Arrays.sort(ordered, (a, b) -> Double.compare(rank(a), rank(b)));
+            double cost = visited * visitCost;
+            double rows = visited;
+            for (Filter.Bound filter : ordered) {
+                cost += rows * filter.cost;
+                rows *= filter.selectivity;
+            }
+            this.driver = driver;
+            this.residual = ordered;
+            this.cost = cost;
+            this.rows = rows;
+        }
+
+        static Access scan(int size, List<Filter.Bound> filters) {
+            return new Access(null, filters, size, 1);
+        }
+
+        static Access lookup(Filter.Bound driver, List<Filter.Bound> others) {
+            return new Access(driver, others, driver.candidates.size(), INDEX_VISIT_COST);
+        }
+
+        private static double rank(Filter.Bound filter) {
+            return filter.cost / Math.max(1e-9, 1 - filter.selectivity);
+        }
+    }
+
+    private static String describeOrder(MovieQuery query) {
+        if (query.orderColumn != null) {
+            return " by " + query.orderColumn + (query.descending ? " desc" : "");
+        }
+        if (query.orderAggregate != -1) {
+            return " by " + query.aggregates.get(query.orderAggregate) + (query.descending ? " desc" : "");
+        }
+        if (query.group != null) {
+            return " by key" + (query.descending ? " desc" : "");
+        }
+        return " by id";
+    }
+
+    /**
+     * The first k movies in order, selected with an {@link IntTopK}.
+     */
+    private static final class TopRowsPlan extends QueryPlan<TopRows> {
+        private final MovieQuery query;
+
+        TopRowsPlan(MovieQuery query, MovieTable table, Access access) {
+            super(table, access);
+            this.query = query;
+        }
+
+        @Override
+        public TopRows newPartial() {
+            return new TopRows(this.query.limit, this.query.orderColumn != null && this.query.descending);
+        }
+
+        @Override
+        void add(TopRows top, int id) {
+            top.offer(id, this.query.orderColumn == null ? 0 : this.query.orderColumn.get(this.table, id));
+        }
+
+        @Override
+        void add(TopRows top, int[] ids, int n, double[] values) {
+            if (this.query.orderColumn == null) {
+                for (int i = 0; i < n; i++) {
+                    top.offer(ids[i], 0);
+                }
+                return;
+            }
+            this.query.orderColumn.get(this.table, ids, n, values);
+            for (int i = 0; i < n; i++) {
+                top.offer(ids[i], values[i]);
+            }
+        }
+
+        @Override
+        public TopRows merge(TopRows left, TopRows right) {
+            return left.offerAll(right);
+        }
+
+        @Override
+        public QueryResult finish(TopRows top) {
+            return QueryResult.ofMovies(this.table, top.ids());
+        }
+
+        @Override
+        String describeResult() {
+            return "top " + this.query.limit + describeOrder(this.query);
+        }
+    }
+
+    /**
+     * The first k movies by a value, then by id. The heap holds slots of
+     * the arrays of ids and values; the one slot not in the heap takes the
+     * next movie, offering it frees either that slot or another.
+     */
+    static final class TopRows {
+        private final int[] ids;
+        private final double[] values;
+        private final IntTopK top;
+        private int free;
+
+        TopRows(int k, boolean descending) {
+            this.ids = new int[k + 1];
+            this.values = new double[k + 1];
+            int[] ids = this.ids;
+            double[] values = this.values;
+            this.top = new IntTopK(k, (a, b) -> {
+                int c = descending ? Double.compare(values[b], values[a]) : Double.compare(values[a], values[b]);
+                return c != 0 ? c : Integer.compare(ids[a], ids[b]);
+            });
+        }
+
+        void offer(int id, double value) {
+            int slot = this.free;
+            this.ids[slot] = id;
+            this.values[slot] = value;
+            int displaced = this.top.offer(slot);
+            this.free = displaced == -1 ? slot + 1 : displaced;
+        }
+
+        /**
+         * Offers the movies kept by 'other', see {@link IntTopK#offerAll}.
+         *
+         * @return This
+         */
+        TopRows offerAll(TopRows other) {
+            for (int slot : other.top.toSortedArray()) {
+                offer(other.ids[slot], other.values[slot]);
+            }
+            return this;
+        }
+
+        /**
+         * @return The ids of the movies kept, in order
+         */
+        int[] ids() {
+            int[] slots = this.top.toSortedArray();
+            int[] ids = new int[slots.length];
+            for (int i = 0; i < slots.length; i++) {
+                ids[i] = this.ids[slots[i]];
+            }
+            return ids;
+        }
+    }
+
+    /**
+     * All matching movies, sorted. The values to sort by are read once the
+     * movies are known.
+     */
+    private static final class AllRowsPlan extends QueryPlan<IntList> {
+        private final MovieQuery query;
+
+        AllRowsPlan(MovieQuery query, MovieTable table, Access access) {
+            super(table, access);
+            this.query = query;
+        }
+
+        @Override
+        public IntList newPartial() {
+            return new IntList();
+        }
+
+        @Override
+        void add(IntList ids, int id) {
+            ids.add(id);
+        }
+
+        @Override
+        public IntList merge(IntList left, IntList right) {
+            left.addAll(right);
+            return left;
+        }
+
+        @Override
+        public QueryResult finish(IntList partial) {
+            int[] ids = partial.toArray();
+            if (this.query.orderColumn == null) {
+                Arrays.sort(ids);
+                return QueryResult.ofMovies(this.table, ids);
+            }
+            int[] rows = new int[ids.length];
+            double[] values = new double[ids.length];
+            for (int row = 0; row < rows.length; row++) {
+                rows[row] = row;
+                values[row] = this.query.orderColumn.get(this.table, ids[row]);
+            }
+            boolean descending = this.query.descending;
+            IntSort.sort(rows, 0, rows.length, (a, b) -> {
+                int c = descending ? Double.compare(values[b], values[a]) : Double.compare(values[a], values[b]);
+                return c != 0 ? c : Integer.compare(ids[a], ids[b]);
+            });
+            int[] sorted = new int[rows.length];
+            for (int row = 0; row < rows.length; row++) {
+                sorted[row] = ids[rows[row]];
+            }
+            return QueryResult.ofMovies(this.table, sorted);
+        }
+
+        @Override
+        String describeResult() {
+            return "sort" + describeOrder(this.query);
+        }
+    }
+
+    /**
+     * The groups of the matching movies with their aggregates.
+     */
+    private static final class GroupPlan extends QueryPlan<Groups> {
+        private final MovieQuery query;
+        private final Aggregate[] aggregates;
+        private final int denseSize;
+
+        GroupPlan(MovieQuery query, MovieTable table, Access access) {
+            super(table, access);
+            this.query = query;
+            this.aggregates = query.aggregates.toArray(new Aggregate[0]);
+            this.denseSize = query.group.denseSize(table);
+        }
+
+        @Override
+        public Groups newPartial() {
+            return new Groups(this.table, this.aggregates, this.denseSize);
+        }
+
+        @Override
+        void add(Groups groups, int id) {
+            this.query.group.keys(this.table, id, groups);
+        }
+
+        @Override
+        public void scan(Groups groups, int from, int to) {
+            if (acceptsAll()) {
+                this.query.group.keys(this.table, from, to, groups);
+            } else {
+                super.scan(groups, from, to);
+            }
+        }
+
+        @Override
+        public Groups merge(Groups left, Groups right) {
+            // Add the smaller partial result to the larger one
+            if (left.slots() >= right.slots()) {
+                left.addAll(right);
+                return left;
+            }
+            right.addAll(left);
+            return right;
+        }
+
+        @Override
+        public QueryResult finish(Groups groups) {
+            groups.compact();
+            IntComparator order = groupOrder(groups);
+            IntTopK top = this.query.limit >= 0 ? new IntTopK(this.query.limit, order) : null;
+            IntList kept = top == null ? new IntList() : null;
+            for (int slot = 0; slot < groups.slots(); slot++) {
+                if (groups.counts[slot] > 0 && (this.query.having == null
+                        || this.query.having.test(this.query.group.describe(this.table, groups.key(slot))))) {
+                    if (top != null) {
+                        top.offer(slot);
+                    } else {
+                        kept.add(slot);
+                    }
+                }
+            }
+            int[] slots;
+            if (top != null) {
+                slots = top.toSortedArray();
+            } else {
+                slots = kept.toArray();
+                IntSort.sort(slots, 0, slots.length, order);
+            }
+
+            long[] keys = new long[slots.length];
+            int[] counts = new int[slots.length];
+            double[][] values = new double[this.aggregates.length][slots.length];
+            int[][] args = new int[this.aggregates.length][slots.length];
+            for (int row = 0; row < slots.length; row++) {
+                keys[row] = groups.key(slots[row]);
+                counts[row] = groups.counts[slots[row]];
+                for (int a = 0; a < this.aggregates.length; a++) {
+                    values[a][row] = groups.value(slots[row], a);
+                    args[a][row] = groups.args[a] == null ? -1 : groups.args[a][slots[row]];
+                }
+            }
+            return QueryResult.ofGroups(this.table, this.query.group, this.query.aggregates, keys, counts, values, args);
+        }
+
+        private IntComparator groupOrder(Groups groups) {
+            int aggregate = this.query.orderAggregate;
+            boolean descending = this.query.descending;
+            if (aggregate != -1 && this.aggregates[aggregate].kind == Aggregate.Kind.COUNT) {
+                // The common case, without a detour through value()
+                int[] counts = groups.counts;
+                return (a, b) -> {
+                    int c = descending ? Integer.compare(counts[b], counts[a]) : Integer.compare(counts[a], counts[b]);
+                    return c != 0 ? c : Long.compare(groups.key(a), groups.key(b));
+                };
+            }
+            return (a, b) -> {
+                if (aggregate == -1) {
+                    int c = Long.compare(groups.key(a), groups.key(b));
+                    return descending ? -c : c;
+                }
+                int c = descending ? Double.compare(groups.value(b, aggregate), groups.value(a, aggregate))
+                        : Double.compare(groups.value(a, aggregate), groups.value(b, aggregate));
+                return c != 0 ? c : Long.compare(groups.key(a), groups.key(b));
+            };
+        }
+
+        @Override
+        String describeResult() {
+            StringBuilder text = new StringBuilder("group by ").append(this.query.group);
+            for (Aggregate aggregate : this.aggregates) {
+                text.append(", ").append(aggregate);
+            }
+            if (this.query.having != null) {
+                text.append(", having");
+            }
+            text.append(this.denseSize >= 0 ? " (array of " + this.denseSize + ")" : " (hash map)");
+            text.append('\n').append(this.query.limit >= 0 ? "top " + this.query.limit : "sort")
+                    .append(describeOrder(this.query));
+            return text.toString();
+        }
+
+        @Override
+        public boolean largePartials() {
+            return true;
+        }
+    }
+
+    /**
+     * The groups of a part of the movies with their aggregates. Groups are
+     * stored in slots: the key itself for keys below a dense size, else a
+     * slot in the order the keys appear, found with a {@link LongIntMap}. If
+     * only movies are counted, sparse keys are counted in the map itself
+     * until {@link #compact()}.
+     */
+    static final class Groups implements Group.KeySink {
+        private final MovieTable table;
+        private final Aggregate[] aggregates;
+        private final boolean dense;
+        /**
+         * Whether an aggregate reads a column, else only counts are kept.
+         */
+        private final boolean readsColumns;
+        private LongIntMap slotOfKey;
+        private LongIntMap countOfKey;
+        private long[] keys;
+        private int size;
+        int[] counts;
+        private final double[][] values;
+        final int[][] args;
+
+        Groups(MovieTable table, Aggregate[] aggregates, int denseSize) {
+            this.table = table;
+            this.aggregates = aggregates;
+            this.dense = denseSize >= 0;
+            boolean countsOnly = true;
+            for (Aggregate aggregate : aggregates) {
+                countsOnly &= aggregate.kind == Aggregate.Kind.COUNT;
+            }
+            int capacity = this.dense ? denseSize : countsOnly ? 0 : 16;
+            if (!this.dense) {
+                this.keys = new long[capacity];
+                if (countsOnly) {
+                    this.countOfKey = new LongIntMap();
+                } else {
+                    this.slotOfKey = new LongIntMap();
+                }
+            }
+            this.readsColumns = !countsOnly;
+            this.size = this.dense ? denseSize : 0;
+            this.counts = new int[capacity];
+            this.values = new double[aggregates.length][];
+            this.args = new int[aggregates.length][];
+            for (int a = 0; a < aggregates.length; a++) {
+                Aggregate.Kind kind = aggregates[a].kind;
+                if (kind != Aggregate.Kind.COUNT) {
+                    this.values[a] = new double[capacity];
+                }
+                if (kind == Aggregate.Kind.ARG_MIN || kind == Aggregate.Kind.ARG_MAX) {
+                    this.args[a] = new int[capacity];
+                }
+            }
+            initialize(0, capacity);
+        }
+
+        @Override
+        public void add(long key, int id) {
+            if (this.countOfKey != null) {
+                this.countOfKey.addTo(key, 1);
+                return;
+            }
+            int slot = this.dense ? (int) key : slotOf(key);
+            this.counts[slot]++;
+            if (!this.readsColumns) {
+                return;
+            }
+            for (int a = 0; a < this.aggregates.length; a++) {
+                if (this.values[a] != null) {
+                    update(a, slot, this.aggregates[a].column.get(this.table, id), id);
+                }
+            }
+        }
+
+        @Override
+        public void addNames(NameColumn names, int from, int to) {
+            if (!this.dense || this.readsColumns) {
+                Group.KeySink.super.addNames(names, from, to);
+                return;
+            }
+            // Only counts by name id: no need to know which movie a name belongs to
+            int[] counts = this.counts;
+            for (int pos = names.start(from); pos < names.start(to); pos++) {
+                counts[names.get(pos)]++;
+            }
+        }
+
+        /**
+         * Adds the groups of other movies.
+         */
+        void addAll(Groups other) {
+            if (this.countOfKey != null) {
+                other.countOfKey.forEach(this.countOfKey::addTo);
+                return;
+            }
+            for (int from = 0; from < other.slots(); from++) {
+                if (other.counts[from] == 0) {
+                    continue;
+                }
+                int slot = this.dense ? from : slotOf(other.key(from));
+                this.counts[slot] += other.counts[from];
+                for (int a = 0; a < this.aggregates.length; a++) {
+                    if (this.values[a] == null) {
+                        continue;
+                    }
+                    Aggregate.Kind kind = this.aggregates[a].kind;
+                    if (kind == Aggregate.Kind.SUM || kind == Aggregate.Kind.AVG) {
+                        this.values[a][slot] += other.values[a][from];
+                    } else {
+                        update(a, slot, other.values[a][from], other.args[a] == null ? -1 : other.args[a][from]);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Moves the counts of sparse keys from the map into slots.
+         */
+        void compact() {
+            if (this.countOfKey == null) {
+                return;
+            }
+            int groups = this.countOfKey.size();
+            long[] keys = new long[groups];
+            int[] counts = new int[groups];
+            int[] next = new int[1];
+            this.countOfKey.forEach((key, count) -> {
+                keys[next[0]] = key;
+                counts[next[0]++] = count;
+            });
+            this.keys = keys;
+            this.counts = counts;
+            this.size = groups;
+            this.countOfKey = null;
+        }
+
+        /**
+         * @return The number of slots, or of groups before {@link #compact()}
+         */
+        int slots() {
+            return this.countOfKey != null ? this.countOfKey.size() : this.size;
+        }
+
+        /**
+         * @param slot a slot
+         * @return The key of the group in 'slot'
+         */
+        long key(int slot) {
+            return this.dense ? slot : this.keys[slot];
+        }
+
+        /**
+         * @param slot      a slot
+         * @param aggregate the number of an aggregate
+         * @return The value of the aggregate for the group in 'slot'
+         */
+        double value(int slot, int aggregate) {
+            switch (this.aggregates[aggregate].kind) {
+                case COUNT:
+                    return this.counts[slot];
+                case AVG:
+                    return this.values[aggregate][slot] / this.counts[slot];
+                default:
+                    return this.values[aggregate][slot];
+            }
+        }
+
+        private int slotOf(long key) {
+            int slot = this.slotOfKey.putIfAbsent(key, this.size);
+            if (slot == this.size) {
+                if (slot == this.counts.length) {
+                    grow();
+                }
+                this.keys[slot] = key;
+                this.size++;
+            }
+            return slot;
+        }
+
+        private void update(int a, int slot, double value, int id) {
+            double[] values = this.values[a];
+            int[] args = this.args[a];
+            if (args != null) {
+                // Arg min or max: the first movie with the smallest or largest value
+                int c = Double.compare(value, values[slot]);
+                if (this.aggregates[a].kind == Aggregate.Kind.ARG_MAX) c = -c;
+                if (c < 0 || args[slot] == -1 || (c == 0 && id < args[slot])) {
+                    values[slot] = value;
+                    args[slot] = id;
+                }
+                return;
+            }
+            switch (this.aggregates[a].kind) {
+                case SUM:
+                case AVG:
+                    values[slot] += value;
+                    break;
+                case MIN:
+                    if (value < values[slot]) values[slot] = value;
+                    break;
+                case MAX:
+                    if (value > values[slot]) values[slot] = value;
+                    break;
+                default:
+            }
+        }
+
+        private void grow() {
+            int capacity = this.counts.length * 2;
+            this.keys = Arrays.copyOf(this.keys, capacity);
+            this.counts = Arrays.copyOf(this.counts, capacity);
+            for (int a = 0; a < this.aggregates.length; a++) {
+                if (this.values[a] != null) this.values[a] = Arrays.copyOf(this.values[a], capacity);
+                if (this.args[a] != null) this.args[a] = Arrays.copyOf(this.args[a], capacity);
+            }
+            initialize(capacity / 2, capacity);
+        }
+
+        private void initialize(int from, int to) {
+            for (int a = 0; a < this.aggregates.length; a++) {
+                Aggregate.Kind kind = this.aggregates[a].kind;
+                if (kind == Aggregate.Kind.MIN) Arrays.fill(this.values[a], from, to, Double.POSITIVE_INFINITY);
+                if (kind == Aggregate.Kind.MAX) Arrays.fill(this.values[a], from, to, Double.NEGATIVE_INFINITY);
+                if (this.args[a] != null) Arrays.fill(this.args[a], from, to, -1);
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records a run into a Flight Recorder file with the JDK's "profile"
+ * settings, which sample CPU and allocations, plus the events of
+ * the queries ({@link QueryEvent}) and of loading ({@link MovieFileEvent},
+ * {@link MovieBatchEvent}), and summarizes those per query from the file.
+ * The file can be opened in JDK Mission Control for the rest.
+ */
+public class QueryProfiler implements AutoCloseable {
+
+    private final Recording recording;
+
+    /**
+     * Starts recording.
+     *
+     * @param file where the recording is written on {@link #close()}, or
+     *             when the JVM exits before
+     * @throws IOException if the "profile" settings cannot be read or the
+     *                     file cannot be written
+     */
+    public QueryProfiler(Path file) throws IOException {
+        try {
+            this.recording = new Recording(Configuration.getConfiguration("profile"));
+        } catch (ParseException e) {
+            throw new IOException("Could not read the JFR profile settings", e);
+        }
+        this.recording.setName("IMDBQueries");
+        this.recording.enable(QueryEvent.NAME).withoutThreshold();
+        this.recording.enable(MovieFileEvent.NAME).withoutThreshold();
+        this.recording.enable(MovieBatchEvent.NAME).withoutThreshold();
+        this.recording.setToDisk(true);
+        this.recording.setDestination(file);
+        this.recording.setDumpOnExit(true);
+        this.recording.start();
+    }
+
+    /**
+     * Stops recording and writes the recording to the file.
+     */
+    @Override
+    public void close() throws IOException {
+        this.recording.stop();
+        this.recording.close();
+    }
+
+    /**
+     * Prints a line per query and source with the number of runs, their
+     * time, rows and allocations, and one for loading.
+     *
+     * @param file a recording with the events
+     * @param out  where to print
+     * @throws IOException if the file cannot be read
+     */
+    public static void printSummary(Path file, PrintStream out) throws IOException {
+        Map<String, long[]> queries = new LinkedHashMap<>();
+        long[] files = new long[4];
+        long[] batches = new long[2];
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        events.sort((a, b) -> a.getStartTime().compareTo(b.getStartTime()));
+        for (RecordedEvent event : events) {
+            String type = event.getEventType().getName();
+            if (type.equals(QueryEvent.NAME)) {
+                long[] sums = queries.computeIfAbsent(
+                        event.getString("query") + " (" + event.getString("source") + ")", k -> new long[7]);
+                sums[0]++;
+                sums[1] += event.getDuration().toNanos();
+                sums[2] += event.getLong("busyNanos");
+                sums[3] += event.getLong("rowsScanned");
+                long matched = event.getLong("rowsMatched");
+                sums[4] = sums[4] < 0 || matched < 0 ? -1 : sums[4] + matched;
+                sums[5] += event.getInt("resultSize");
+                sums[6] += event.getLong("allocatedBytes");
+            } else if (type.equals(MovieFileEvent.NAME)) {
+                files[0]++;
+                files[1] += event.getLong("bytes");
+                files[2] += event.getLong("movies");
+                files[3] += event.getLong("allocatedBytes");
+            } else if (type.equals(MovieBatchEvent.NAME)) {
+                batches[0]++;
+                batches[1] += event.getDuration().toNanos();
+            }
+        }
+
+        out.println(String.format("%-36s %5s %10s %10s %12s %12s %8s %12s", "query", "runs", "ms", "busy ms",
+                "scanned", "matched", "result", "allocated"));
+        for (Map.Entry<String, long[]> entry : queries.entrySet()) {
+            long[] sums = entry.getValue();
+            out.println(String.format("%-36s %5d %10.1f %10.1f %12d %12s %8d %12s", entry.getKey(), sums[0],
+                    sums[1] / 1e6, sums[2] / 1e6, sums[3], sums[4] < 0 ? "-" : Long.toString(sums[4]), sums[5],
+                    megabytes(sums[6])));
+        }
+        if (files[0] > 0) {
+            out.println(String.format("Loaded %d files (%s, %d movies) in %d batches of %.1f ms on average,"
+                            + " allocating %s", files[0], megabytes(files[1]), files[2], batches[0],
+                    batches[0] == 0 ? 0 : batches[1] / 1e6 / batches[0], megabytes(files[3])));
+        }
+    }
+
+    private static String megabytes(long bytes) {
+        return String.format("%.1f MB", bytes / (1024.0 * 1024));
+    }
+}
@@ -0,0 +1,171 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The result of a {@link MovieQuery}: rows which are either movies or, for a
+ * grouping query, groups with their aggregates, in the order of the query.
+ */
+public class QueryResult {
+
+    private final MovieTable table;
+    private final Group group;
+    private final List<Aggregate> aggregates;
+    /**
+     * The movie of every row, or null for groups.
+     */
+    private final int[] ids;
+    /**
+     * The key and number of movies of every group, null for movies.
+     */
+    private final long[] keys;
+    private final int[] counts;
+    /**
+     * The value and the movie (or -1) of every aggregate of every group,
+     * indexed by aggregate first.
+     */
+    private final double[][] values;
+    private final int[][] args;
+
+    private QueryResult(MovieTable table, Group group, List<Aggregate> aggregates, int[] ids,
+                        long[] keys, int[] counts, double[][] values, int[][] args) {
+        this.table = table;
+        this.group = group;
+        this.aggregates = aggregates;
+        this.ids = ids;
+        this.keys = keys;
+        this.counts = counts;
+        this.values = values;
+        this.args = args;
+    }
+
+    /**
+     * @param table the table
+     * @param ids   the movies, in order
+     * @return The result of a query without grouping
+     */
+    static QueryResult ofMovies(MovieTable table, int[] ids) {
+        return new QueryResult(table, null, null, ids, null, null, null, null);
+    }
+
+    /**
+     * @param table      the table
+     * @param group      the grouping
+     * @param aggregates the aggregates
+     * @param keys       the key of every group, in order
+     * @param counts     the number of movies of every group
+     * @param values     the value of every aggregate of every group
+     * @param args       the movie of every aggregate of every group, or -1
+     * @return The result of a grouping query
+     */
+    static QueryResult ofGroups(MovieTable table, Group group, List<Aggregate> aggregates, long[] keys,
+                                int[] counts, double[][] values, int[][] args) {
+        return new QueryResult(table, group, aggregates, null, keys, counts, values, args);
+    }
+
+    /**
+     * @return The number of rows
+     */
+    public int size() {
+        return this.ids != null ? this.ids.length : this.keys.length;
+    }
+
+    /**
+     * @return Whether the rows are groups rather than movies
+     */
+    public boolean isGrouped() {
+        return this.group != null;
+    }
+
+    /**
+     * @param row a row of a query without grouping
+     * @return The id of the movie of the row
+     */
+    public int id(int row) {
+        return this.ids[row];
+    }
+
+    /**
+     * @param row a row of a query without grouping
+     * @return The movie of the row
+     */
+    public Movie movie(int row) {
+        return this.table.movie(this.ids[row]);
+    }
+
+    /**
+     * @return The movies of a query without grouping, in order
+     */
+    public List<Movie> movies() {
+        List<Movie> movies = new ArrayList<>(this.ids.length);
+        for (int id : this.ids) {
+            movies.add(this.table.movie(id));
+        }
+        return movies;
+    }
+
+    /**
+     * @param row a row of a grouping query
+     * @return The key of the group, see {@link Group}
+     */
+    public long key(int row) {
+        return this.keys[row];
+    }
+
+    /**
+     * @param row a row of a grouping query
+     * @return The group as text, e.g. the name of an actor
+     */
+    public String label(int row) {
+        return this.group.describe(this.table, this.keys[row]);
+    }
+
+    /**
+     * @param row a row of a grouping query
+     * @return The number of movies of the group
+     */
+    public int count(int row) {
+        return this.counts[row];
+    }
+
+    /**
+     * @param row       a row of a grouping query
+     * @param aggregate the position of an aggregate in the query
+     * @return The value of the aggregate for the group; for ARG_MIN and
+     * ARG_MAX that of the movie {@link #argId} returns
+     */
+    public double value(int row, int aggregate) {
+        return this.values[aggregate][row];
+    }
+
+    /**
+     * @param row       a row of a grouping query
+     * @param aggregate the position of an ARG_MIN or ARG_MAX aggregate in the query
+     * @return The id of the movie the aggregate found
+     */
+    public int argId(int row, int aggregate) {
+        return this.args[aggregate][row];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for (int row = 0; row < size(); row++) {
+            if (this.ids != null) {
+                text.append(movie(row).getTitle());
+            } else {
+                text.append(label(row));
+                for (int a = 0; a < this.aggregates.size(); a++) {
+                    text.append('\t');
+                    int arg = this.args[a][row];
+                    text.append(arg != -1 ? this.table.movie(arg).getTitle() : formatValue(this.values[a][row]));
+                }
+            }
+            text.append('\n');
+        }
+        return text.toString();
+    }
+
+    private static String formatValue(double value) {
+        return value == Math.rint(value) && Math.abs(value) < 1e15 ? Long.toString((long) value) : Double.toString(value);
+    }
+}
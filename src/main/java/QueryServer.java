@@ -0,0 +1,342 @@
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A long-lived server which loads the movies once into a {@link MovieTable}
+ * and answers the ten queries of {@link IMDBQueries} as JSON over HTTP on
+ * localhost:
+ * <ul>
+ * <li>GET /query/NAME, NAME one of {@link #QUERIES}; the top-k queries
+ * take k=N (default 10), red-planet takes term=TEXT and genre=GENRE
+ * (default Mars and Sci-Fi)</li>
+ * <li>GET /search?text=TEXT&amp;ignoreCase=true|false, the movies whose
+ * description contains TEXT</li>
+ * <li>GET /stats, the latency of every endpoint as the server saw it</li>
+ * </ul>
+ * The JDK's HttpServer accepts and reads connections on one selector thread
+ * with non-blocking I/O, and hands complete requests to a fixed pool. Every
+ * query runs in the thread which serves its request, unsplit, so concurrent
+ * requests do not queue for a shared pool.
+ * <p>
+ * Without TCP_NODELAY every keep-alive response waits about 40 ms for a
+ * delayed ACK. {@link #main} turns it on; a program which embeds the server
+ * should run with -Dsun.net.httpserver.nodelay=true, as the JDK reads the
+ * property once, before the first server is created.
+ * <p>
+ * Call with: QueryServer &lt;moviesPath&gt; [port] [threads] [snapshotFile or -]
+ */
+public class QueryServer implements AutoCloseable {
+
+    static final String[] QUERIES = {"all-rounder", "under-the-radar", "pillars-of-storytelling", "red-planet",
+            "colossal-failure", "uncreative-writers", "workhorse", "must-see", "rotten-tomatoes", "magic-couples"};
+
+    /**
+     * The largest k a request may ask for.
+     */
+    static final int MAX_K = 1000;
+
+    /**
+     * Runs a query with the parameters of a request.
+     */
+    private interface Query {
+        List<?> run(Map<String, String> parameters);
+    }
+
+    private final MovieTable table;
+    private final IMDBQueries queries = new IMDBQueries();
+    private final Map<String, Query> routes = new LinkedHashMap<>();
+    private final Map<String, LatencyHistogram> latencies = new LinkedHashMap<>();
+    private final LongAdder badRequests = new LongAdder();
+    private final HttpServer server;
+    private final ExecutorService pool;
+
+    /**
+     * Starts a server on localhost.
+     *
+     * @param table   the movies to query
+     * @param port    the port, 0 for a free one
+     * @param threads the number of threads serving requests
+     * @throws IOException if the server cannot be started
+     */
+    public QueryServer(MovieTable table, int port, int threads) throws IOException {
+        this.table = table;
+        this.routes.put("all-rounder", p -> this.queries.queryAllRounder(table, k(p)));
+        this.routes.put("under-the-radar", p -> this.queries.queryUnderTheRadar(table, k(p)));
+        this.routes.put("pillars-of-storytelling", p -> this.queries.queryPillarsOfStorytelling(table, k(p)));
+        this.routes.put("red-planet", p -> this.queries.queryRedPlanet(table,
+                text(p, "term", "Mars"), text(p, "genre", "Sci-Fi")));
+        this.routes.put("colossal-failure", p -> this.queries.queryColossalFailure(table));
+        this.routes.put("uncreative-writers", p -> this.queries.queryUncreativeWriters(table, k(p)));
+        this.routes.put("workhorse", p -> this.queries.queryWorkHorse(table, k(p)));
+        this.routes.put("must-see", p -> this.queries.queryMustSee(table));
+        this.routes.put("rotten-tomatoes", p -> this.queries.queryRottenTomatoes(table));
+        this.routes.put("magic-couples", p -> this.queries.queryMagicCouple(table, k(p)));
+        for (String name : this.routes.keySet()) {
+            this.latencies.put("/query/" + name, new LatencyHistogram());
+        }
+        this.latencies.put("/search", new LatencyHistogram());
+        // Built before the first request rather than by it
+        table.descriptionIndex();
+
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        this.server.createContext("/query/", this::query);
+        this.server.createContext("/search", this::search);
+        this.server.createContext("/stats", this::stats);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "query-server-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server.setExecutor(this.pool);
+        this.server.start();
+    }
+
+    /**
+     * @return The URL of the server, without a trailing slash
+     */
+    public String getBaseUrl() {
+        return "http://" + this.server.getAddress().getHostString() + ":" + this.server.getAddress().getPort();
+    }
+
+    /**
+     * @return The number of requests answered with 400 or 404
+     */
+    public long getBadRequests() {
+        return this.badRequests.sum();
+    }
+
+    /**
+     * @return The latency of every endpoint, see {@link LatencyHistogram#toString()}
+     */
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, LatencyHistogram> entry : this.latencies.entrySet()) {
+            if (entry.getValue().getCount() > 0) {
+                text.append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+            }
+        }
+        return text.append(getBadRequests()).append(" bad requests\n").toString();
+    }
+
+    @Override
+    public void close() {
+        this.server.stop(0);
+        this.pool.shutdownNow();
+    }
+
+    private void query(HttpExchange exchange) throws IOException {
+        String name = exchange.getRequestURI().getPath().substring("/query/".length());
+        Query query = this.routes.get(name);
+        if (query == null) {
+            fail(exchange, 404, "Unknown query " + name + ", try one of " + String.join(", ", QUERIES));
+            return;
+        }
+        answer(exchange, "/query/" + name, name, () -> query.run(parameters(exchange)));
+    }
+
+    private void search(HttpExchange exchange) throws IOException {
+        answer(exchange, "/search", "search", () -> {
+            Map<String, String> parameters = parameters(exchange);
+            String text = text(parameters, "text", "");
+            if (text.isEmpty()) {
+                throw new IllegalArgumentException("text must not be empty");
+            }
+            Postings postings = this.table.descriptionIndex().findSubstring(text,
+                    Boolean.parseBoolean(parameters.get("ignoreCase")));
+            List<Movie> movies = new ArrayList<>(postings.size());
+            for (int i = 0; i < postings.size(); i++) {
+                movies.add(this.table.movie(postings.doc(i)));
+            }
+            return movies;
+        });
+    }
+
+    private interface Answer {
+        List<?> get();
+    }
+
+    /**
+     * Answers with {"query": name, "micros": ..., "size": ..., "rows": [...]},
+     * or with 400 if the parameters are wrong.
+     */
+    private void answer(HttpExchange exchange, String endpoint, String name, Answer answer) throws IOException {
+        long start = System.nanoTime();
+        try {
+            List<?> rows;
+            try {
+                rows = answer.get();
+            } catch (IllegalArgumentException e) {
+                fail(exchange, 400, e.getMessage());
+                return;
+            }
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            try (JsonGenerator generator = MovieJson.FACTORY.createGenerator(body)) {
+                generator.writeStartObject();
+                generator.writeStringField("query", name);
+                generator.writeNumberField("micros", (System.nanoTime() - start) / 1000);
+                generator.writeNumberField("size", rows.size());
+                generator.writeArrayFieldStart("rows");
+                for (Object row : rows) {
+                    writeValue(generator, row);
+                }
+                generator.writeEndArray();
+                generator.writeEndObject();
+            }
+            respond(exchange, 200, "application/json", body.toByteArray());
+        } finally {
+            this.latencies.get(endpoint).record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Writes a movie as its title, year, rating and URL, a tuple as an
+     * array of its two values.
+     */
+    private static void writeValue(JsonGenerator generator, Object value) throws IOException {
+        if (value instanceof Movie) {
+            Movie movie = (Movie) value;
+            generator.writeStartObject();
+            generator.writeStringField("title", movie.getTitle());
+            generator.writeStringField("year", movie.getYear());
+            generator.writeStringField("ratingValue", movie.getRatingValue());
+            generator.writeStringField("url", movie.getUrl());
+            generator.writeEndObject();
+        } else if (value instanceof IMDBQueries.Tuple) {
+            IMDBQueries.Tuple<?, ?> tuple = (IMDBQueries.Tuple<?, ?>) value;
+            generator.writeStartArray();
+            writeValue(generator, tuple.first);
+            writeValue(generator, tuple.second);
+            generator.writeEndArray();
+        } else if (value instanceof Integer || value instanceof Long) {
+            generator.writeNumber(((Number) value).longValue());
+        } else {
+            generator.writeString(String.valueOf(value));
+        }
+    }
+
+    private void stats(HttpExchange exchange) throws IOException {
+        respond(exchange, 200, "text/plain; charset=utf-8", toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void fail(HttpExchange exchange, int status, String message) throws IOException {
+        this.badRequests.increment();
+        respond(exchange, status, "text/plain; charset=utf-8", (message + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void respond(HttpExchange exchange, int status, String type, byte[] body) throws IOException {
+        try {
+            exchange.getResponseHeaders().set("Content-Type", type);
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static Map<String, String> parameters(HttpExchange exchange) {
+        Map<String, String> parameters = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                int equals = parameter.indexOf('=');
+                try {
+                    if (equals > 0) {
+                        parameters.put(URLDecoder.decode(parameter.substring(0, equals), "UTF-8"),
+                                URLDecoder.decode(parameter.substring(equals + 1), "UTF-8"));
+                    }
+                } catch (IOException e) {
+                    throw new IllegalArgumentException("Cannot decode " + parameter, e);
+                }
+            }
+        }
+        return parameters;
+    }
+
+    private static int k(Map<String, String> parameters) {
+        String k = parameters.get("k");
+        if (k == null) {
+            return 10;
+        }
+        int value;
+        try {
+            value = Integer.parseInt(k);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("k must be a number: " + k);
+        }
+        if (value < 1 || value > MAX_K) {
+            throw new IllegalArgumentException("k must be between 1 and " + MAX_K + ": " + k);
+        }
+        return value;
+    }
+
+    private static String text(Map<String, String> parameters, String name, String defaultValue) {
+        String value = parameters.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        if (value.isEmpty()) {
+            throw new IllegalArgumentException(name + " must not be empty");
+        }
+        return value;
+    }
+
+    public static void main(String argv[]) throws Exception {
+        if (argv.length < 1 || argv.length > 4) {
+            System.out.println("Call with: QueryServer <moviesPath> [port] [threads] [snapshotFile or -]");
+            System.exit(0);
+        }
+        // Without TCP_NODELAY every keep-alive response waits ~40ms for a delayed ACK
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        int port = argv.length > 1 ? Integer.parseInt(argv[1]) : 8080;
+        int threads = argv.length > 2 ? Integer.parseInt(argv[2]) : Runtime.getRuntime().availableProcessors();
+        File moviesDir = new File(argv[0]);
+
+        long time = System.currentTimeMillis();
+        MovieTable table;
+        if (argv.length > 3 && !argv[3].equals("-")) {
+            table = MovieReader.readMovieTableFrom(moviesDir, new File(argv[3]));
+        } else {
+            LoadStats stats = new LoadStats();
+            ForkJoinPool loaders = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+            try {
+                table = new MovieTable(MovieReader.readMoviesFrom(moviesDir, loaders, stats));
+            } finally {
+                loaders.shutdown();
+            }
+        }
+        QueryServer server = new QueryServer(table, port, threads);
+        System.out.println("Serving " + table.size() + " movies at " + server.getBaseUrl() + " with " + threads
+                + " threads, ready after " + (System.currentTimeMillis() - time) + " ms");
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            System.out.print(server);
+            server.close();
+        }));
+        Thread.currentThread().join();
+    }
+}
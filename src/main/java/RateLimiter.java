@@ -0,0 +1,83 @@
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket per host: each host may get 'burst' requests at once and
+ * 'permitsPerSecond' requests per second after that. A thread which has to
+ * wait reserves its token first and sleeps outside of the lock, so waiting
+ * threads of one host don't block the requests to other hosts.
+ */
+public class RateLimiter {
+
+    private final double permitsPerSecond;
+    private final double burst;
+    private final Map<String, Bucket> buckets = new HashMap<>();
+
+    /**
+     * @param permitsPerSecond the requests per second per host
+     * @param burst            the requests a host may get at once
+     */
+    public RateLimiter(double permitsPerSecond, double burst) {
+        if (permitsPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("Rate must be positive and burst at least 1");
+        }
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+    }
+
+    /**
+     * Blocks until a request to the host of 'url' is allowed.
+     *
+     * @param url the URL to request
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void acquire(String url) throws InterruptedException {
+        long waitNanos = reserve(host(url), System.nanoTime());
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * Takes a token from the bucket of 'host', going into debt if there is
+     * none left.
+     *
+     * @return The nanoseconds to wait until the token is due
+     */
+    private synchronized long reserve(String host, long now) {
+        Bucket bucket = this.buckets.get(host);
+        if (bucket == null) {
+            bucket = new Bucket(this.burst, now);
+            this.buckets.put(host, bucket);
+        }
+        bucket.tokens = Math.min(this.burst,
+                bucket.tokens + (now - bucket.time) * this.permitsPerSecond / 1e9);
+        bucket.time = now;
+        bucket.tokens -= 1;
+        if (bucket.tokens >= 0) {
+            return 0;
+        }
+        return (long) (-bucket.tokens / this.permitsPerSecond * 1e9);
+    }
+
+    private static String host(String url) {
+        try {
+            return new URL(url).getHost();
+        } catch (MalformedURLException e) {
+            return "";
+        }
+    }
+
+    private static class Bucket {
+        double tokens;
+        long time;
+
+        Bucket(double tokens, long time) {
+            this.tokens = tokens;
+            this.time = time;
+        }
+    }
+}
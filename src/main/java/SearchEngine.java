@@ -0,0 +1,492 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Ranked full-text search over the title, description, cast and character
+ * fields of the movies of a {@link MovieTable}.
+ * <p>
+ * Each field has its own inverted index and document length statistics, and a
+ * movie is scored by the weighted sum of the BM25 scores of the query terms in
+ * each field. The top k movies are retrieved document-at-a-time with the
+ * MaxScore algorithm: the postings lists are ordered by the highest score
+ * they can contribute, and lists which cannot lift a movie into the current
+ * top k on their own are only probed for movies found in the other lists.
+ */
+public class SearchEngine {
+
+    /**
+     * The searchable fields and their default weights.
+     */
+    public enum Field {
+        TITLE(2.0f),
+        DESCRIPTION(1.0f),
+        CAST(1.5f),
+        CHARACTER(1.0f);
+
+        private final float defaultWeight;
+
+        Field(float defaultWeight) {
+            this.defaultWeight = defaultWeight;
+        }
+
+        public float getDefaultWeight() {
+            return this.defaultWeight;
+        }
+    }
+
+    static final float K1 = 1.2f;
+    static final float B = 0.75f;
+
+    private final MovieTable table;
+    private final float[] weights = new float[Field.values().length];
+    private final FieldIndex[] fields = new FieldIndex[Field.values().length];
+
+    /**
+     * Indexes all fields of 'table' with the default field weights.
+     *
+     * @param table the movies to search
+     */
+    public SearchEngine(MovieTable table) {
+        this(table, new EnumMap<>(Field.class));
+    }
+
+    /**
+     * Indexes all fields of 'table'.
+     *
+     * @param table   the movies to search
+     * @param weights the weight of each field, fields without a weight get their
+     *                default weight and fields of weight 0 are not searched
+     */
+    public SearchEngine(MovieTable table, Map<Field, Float> weights) {
+        this.table = table;
+        for (Field field : Field.values()) {
+            Float weight = weights.get(field);
+            this.weights[field.ordinal()] = weight == null ? field.getDefaultWeight() : weight;
+            this.fields[field.ordinal()] = new FieldIndex(table, field, this.weights[field.ordinal()]);
+        }
+    }
+
+    /**
+     * Searches the movies for a free-text query.
+     *
+     * @param query the query, which is tokenized like the fields
+     * @param k     the number of results
+     * @return The k best matching movies, by decreasing score; equal scores are
+     * ordered by movie id
+     */
+    public List<SearchHit> search(String query, int k) {
+        List<Cursor> cursors = new ArrayList<>();
+        for (String term : queryTerms(query)) {
+            for (FieldIndex field : this.fields) {
+                TermEntry entry = field.terms.get(term);
+                if (entry != null && field.weight > 0) {
+                    cursors.add(new Cursor(field, entry));
+                }
+            }
+        }
+        if (cursors.isEmpty() || k <= 0) {
+            return new ArrayList<>();
+        }
+        cursors.sort((a, b) -> Double.compare(a.entry.maxScore, b.entry.maxScore));
+
+        int n = cursors.size();
+        double[] bound = new double[n];
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += cursors.get(i).entry.maxScore;
+            bound[i] = sum;
+        }
+
+        TopHits top = new TopHits(k);
+        int firstEssential = 0;
+        while (true) {
+            int doc = Integer.MAX_VALUE;
+            for (int i = firstEssential; i < n; i++) {
+                doc = Math.min(doc, cursors.get(i).doc());
+            }
+            if (doc == Integer.MAX_VALUE) {
+                break;
+            }
+
+            double score = 0;
+            for (int i = firstEssential; i < n; i++) {
+                Cursor cursor = cursors.get(i);
+                if (cursor.doc() == doc) {
+                    score += cursor.score();
+                    cursor.next();
+                }
+            }
+            boolean competitive = true;
+            for (int i = firstEssential - 1; i >= 0; i--) {
+                if (top.isFull() && score + bound[i] <= top.threshold()) {
+                    competitive = false;
+                    break;
+                }
+                Cursor cursor = cursors.get(i);
+                if (cursor.advance(doc) == doc) {
+                    score += cursor.score();
+                }
+            }
+
+            if (competitive && top.offer(doc, score)) {
+                while (firstEssential < n && top.isFull() && bound[firstEssential] <= top.threshold()) {
+                    firstEssential++;
+                }
+            }
+        }
+        return top.toHits(this.table);
+    }
+
+    /**
+     * The brute-force baseline of {@link #search(String, int)}: tokenizes the
+     * fields of every movie and scores it with the same statistics, without
+     * using the postings. Only meant for testing and benchmarks.
+     *
+     * @param query the query, which is tokenized like the fields
+     * @param k     the number of results
+     * @return The k best matching movies, like {@link #search(String, int)}
+     */
+    public List<SearchHit> searchByScan(String query, int k) {
+        Set<String> terms = queryTerms(query);
+        TopHits top = new TopHits(k);
+        if (terms.isEmpty() || k <= 0) {
+            return new ArrayList<>();
+        }
+        Map<String, int[]> freqs = new HashMap<>();
+        for (int doc = 0; doc < this.table.size(); doc++) {
+            Movie movie = this.table.movie(doc);
+            double score = 0;
+            boolean matched = false;
+            for (FieldIndex field : this.fields) {
+                if (field.weight <= 0) {
+                    continue;
+                }
+                freqs.clear();
+                for (String token : field.tokens(movie)) {
+                    if (terms.contains(token)) {
+                        int[] freq = freqs.computeIfAbsent(token, t -> new int[1]);
+                        freq[0]++;
+                    }
+                }
+                for (Map.Entry<String, int[]> entry : freqs.entrySet()) {
+                    score += field.score(field.terms.get(entry.getKey()), doc, entry.getValue()[0]);
+                    matched = true;
+                }
+            }
+            if (matched) {
+                top.offer(doc, score);
+            }
+        }
+        return top.toHits(this.table);
+    }
+
+    /**
+     * @return The table the engine searches
+     */
+    public MovieTable getTable() {
+        return this.table;
+    }
+
+    private static Set<String> queryTerms(String query) {
+        return new LinkedHashSet<>(Tokenizer.tokenize(query, true));
+    }
+
+    /**
+     * The statistics of one term in one field.
+     */
+    private static class TermEntry {
+        final Postings postings;
+        final double idf;
+        double maxScore;
+
+        TermEntry(Postings postings, double idf) {
+            this.postings = postings;
+            this.idf = idf;
+        }
+    }
+
+    /**
+     * The inverted index and length normalization of one field.
+     */
+    private static class FieldIndex {
+        final Field field;
+        final float weight;
+        final Map<String, TermEntry> terms = new HashMap<>();
+        /**
+         * K1 * (1 - B + B * length / averageLength) per movie.
+         */
+        final float[] norm;
+
+        FieldIndex(MovieTable table, Field field, float weight) {
+            this.field = field;
+            this.weight = weight;
+            int n = table.size();
+            int[] lengths = new int[n];
+            long totalLength = 0;
+            Map<String, IntList[]> postings = new HashMap<>();
+            Map<String, int[]> freqs = new HashMap<>();
+            for (int doc = 0; doc < n; doc++) {
+                List<String> tokens = tokens(table.movie(doc));
+                lengths[doc] = tokens.size();
+                totalLength += tokens.size();
+                freqs.clear();
+                for (String token : tokens) {
+                    int[] freq = freqs.get(token);
+                    if (freq == null) {
+                        freqs.put(token, new int[]{1});
+                    } else {
+                        freq[0]++;
+                    }
+                }
+                for (Map.Entry<String, int[]> entry : freqs.entrySet()) {
+                    IntList[] lists = postings.get(entry.getKey());
+                    if (lists == null) {
+                        lists = new IntList[]{new IntList(2), new IntList(2)};
+                        postings.put(entry.getKey(), lists);
+                    }
+                    lists[0].add(doc);
+                    lists[1].add(entry.getValue()[0]);
+                }
+            }
+
+            float averageLength = n == 0 ? 0 : (float) totalLength / n;
+            this.norm = new float[n];
+            for (int doc = 0; doc < n; doc++) {
+                this.norm[doc] = averageLength == 0 ? K1 : K1 * (1 - B + B * lengths[doc] / averageLength);
+            }
+            for (Map.Entry<String, IntList[]> entry : postings.entrySet()) {
+                IntList[] lists = entry.getValue();
+                int df = lists[0].size();
+                double idf = Math.log(1 + (n - df + 0.5) / (df + 0.5));
+                TermEntry term = new TermEntry(new Postings(lists[0].toArray(), lists[1].toArray()), idf);
+                for (int i = 0; i < df; i++) {
+                    term.maxScore = Math.max(term.maxScore, score(term, term.postings.doc(i), term.postings.freq(i)));
+                }
+                this.terms.put(entry.getKey(), term);
+            }
+        }
+
+        double score(TermEntry term, int doc, int freq) {
+            return this.weight * term.idf * freq * (K1 + 1) / (freq + this.norm[doc]);
+        }
+
+        List<String> tokens(Movie movie) {
+            switch (this.field) {
+                case TITLE:
+                    return Tokenizer.tokenize(movie.getTitle(), true);
+                case DESCRIPTION:
+                    return Tokenizer.tokenize(movie.getDescription(), true);
+                case CAST:
+                    return tokens(movie.getCastList());
+                default:
+                    return tokens(movie.getCharacterList());
+            }
+        }
+
+        private static List<String> tokens(List<String> values) {
+            List<String> tokens = new ArrayList<>();
+            for (String value : values) {
+                tokens.addAll(Tokenizer.tokenize(value, true));
+            }
+            return tokens;
+        }
+    }
+
+    /**
+     * Iterates over the postings of a term in a field.
+     */
+    private static class Cursor {
+        final FieldIndex field;
+        final TermEntry entry;
+        private int position;
+
+        Cursor(FieldIndex field, TermEntry entry) {
+            this.field = field;
+            this.entry = entry;
+        }
+
+        /**
+         * @return The current movie id, or Integer.MAX_VALUE when exhausted
+         */
+        int doc() {
+            return this.position < this.entry.postings.size()
+                    ? this.entry.postings.doc(this.position) : Integer.MAX_VALUE;
+        }
+
+        double score() {
+            return this.field.score(this.entry, doc(), this.entry.postings.freq(this.position));
+        }
+
+        void next() {
+            this.position++;
+        }
+
+        /**
+         * Moves to the first movie id at or after 'target' by galloping search.
+         *
+         * @return The new current movie id
+         */
+        int advance(int target) {
+            Postings postings = this.entry.postings;
+            int size = postings.size();
+            if (this.position >= size || postings.doc(this.position) >= target) {
+                return doc();
+            }
+            int low = this.position;
+            int step = 1;
+            int high = low + step;
+            while (high < size && postings.doc(high) < target) {
+                low = high;
+                step <<= 1;
+                high = low + step;
+            }
+            high = Math.min(high, size);
+            while (low + 1 < high) {
+                int mid = (low + high) >>> 1;
+                if (postings.doc(mid) < target) {
+                    low = mid;
+                } else {
+                    high = mid;
+                }
+            }
+            this.position = high;
+            return doc();
+        }
+    }
+
+    /**
+     * A bounded min-heap of the k best (score, movie id) pairs.
+     */
+    private static class TopHits {
+        private final int k;
+        private final double[] scores;
+        private final int[] docs;
+        private int size;
+
+        TopHits(int k) {
+            this.k = Math.max(k, 0);
+            this.scores = new double[this.k];
+            this.docs = new int[this.k];
+        }
+
+        boolean isFull() {
+            return this.size == this.k;
+        }
+
+        double threshold() {
+            return this.scores[0];
+        }
+
+        /**
+         * Adds a movie if it belongs to the top k. Movies are offered in
+         * increasing id order, so on equal scores the earlier movie stays.
+         *
+         * @return Whether the movie was added
+         */
+        boolean offer(int doc, double score) {
+            if (this.k == 0) {
+                return false;
+            }
+            if (this.size < this.k) {
+                int i = this.size++;
+                this.scores[i] = score;
+                this.docs[i] = doc;
+                siftUp(i);
+                return true;
+            }
+            if (!worse(this.scores[0], this.docs[0], score, doc)) {
+                return false;
+            }
+            this.scores[0] = score;
+            this.docs[0] = doc;
+            siftDown(0);
+            return true;
+        }
+
+        List<SearchHit> toHits(MovieTable table) {
+            Integer[] order = new Integer[this.size];
+            for (int i = 0; i < this.size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> worse(this.scores[a], this.docs[a], this.scores[b], this.docs[b]) ? 1
+                    : worse(this.scores[b], this.docs[b], this.scores[a], this.docs[a]) ? -1 : 0);
+            List<SearchHit> hits = new ArrayList<>(this.size);
+            for (int i : order) {
+                hits.add(new SearchHit(table.movie(this.docs[i]), this.docs[i], this.scores[i]));
+            }
+            return hits;
+        }
+
+        /**
+         * @return Whether (score1, doc1) ranks below (score2, doc2)
+         */
+        private static boolean worse(double score1, int doc1, double score2, int doc2) {
+            return score1 < score2 || (score1 == score2 && doc1 > doc2);
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!worse(this.scores[i], this.docs[i], this.scores[parent], this.docs[parent])) {
+                    break;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= this.size) {
+                    break;
+                }
+                if (child + 1 < this.size
+                        && worse(this.scores[child + 1], this.docs[child + 1], this.scores[child], this.docs[child])) {
+                    child++;
+                }
+                if (!worse(this.scores[child], this.docs[child], this.scores[i], this.docs[i])) {
+                    break;
+                }
+                swap(i, child);
+                i = child;
+            }
+        }
+
+        private void swap(int i, int j) {
+            double score = this.scores[i];
+            this.scores[i] = this.scores[j];
+            this.scores[j] = score;
+            int doc = this.docs[i];
+            this.docs[i] = this.docs[j];
+            this.docs[j] = doc;
+        }
+    }
+
+    public static void main(String argv[]) throws IOException {
+        if (argv.length < 2) {
+            System.out.println("Call with: SearchEngine <moviesPath> <query>");
+            System.exit(0);
+        }
+        MovieTable table = MovieReader.readMovieTableFrom(new File(argv[0]));
+        long time = System.currentTimeMillis();
+        SearchEngine engine = new SearchEngine(table);
+        System.out.println("Indexed " + table.size() + " movies in " + (System.currentTimeMillis() - time) + " ms");
+
+        String query = String.join(" ", Arrays.asList(argv).subList(1, argv.length));
+        time = System.nanoTime();
+        List<SearchHit> hits = engine.search(query, 10);
+        System.out.println("Time:" + (System.nanoTime() - time) / 1000 + " us");
+        for (SearchHit hit : hits) {
+            System.out.println("\t" + String.format("%.3f", hit.getScore()) + "\t" + hit.getMovie().getTitle());
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/**
+ * A movie found by the {@link SearchEngine}, with its score.
+ */
+public class SearchHit {
+
+    private final Movie movie;
+    private final int id;
+    private final double score;
+
+    public SearchHit(Movie movie, int id, double score) {
+        this.movie = movie;
+        this.id = id;
+        this.score = score;
+    }
+
+    /**
+     * @return The movie
+     */
+    public Movie getMovie() {
+        return this.movie;
+    }
+
+    /**
+     * @return The id of the movie in its {@link MovieTable}
+     */
+    public int getId() {
+        return this.id;
+    }
+
+    /**
+     * @return The BM25 score of the movie
+     */
+    public double getScore() {
+        return this.score;
+    }
+
+    @Override
+    public String toString() {
+        return this.movie + " (" + this.score + ")";
+    }
+}
@@ -0,0 +1,155 @@
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Appends movies to segment files of one compact JSON object per line
+ * (NDJSON), named movies-00000.ndjson, movies-00001.ndjson, ... or with
+ * .ndjson.gz if compressed. Once a segment has reached the segment size the
+ * next one is begun; a sink opened on a directory with segments continues
+ * after the last one.
+ * <p>
+ * Every record holds the title the movie was searched by. A crawl which
+ * died after writing a movie but before journaling it writes the movie
+ * again when it is resumed, in a later segment; readers keep only the last
+ * record of a title, see {@link MovieReader#readMoviesFrom(File)}.
+ * <p>
+ * The output is buffered. {@link #flush()} pushes it to the file, in
+ * compressed segments with a sync flush, so a reader sees every movie
+ * written before the last flush even if the process dies.
+ */
+public class SegmentMovieSink implements MovieSink {
+
+    static final String PREFIX = "movies-";
+    static final String SUFFIX = ".ndjson";
+    static final String GZIP_SUFFIX = ".ndjson.gz";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Writes no separator between root values, the sink ends every line itself.
+     */
+    private static final JsonFactory FACTORY = new JsonFactory().setRootValueSeparator(null);
+
+    private final File outputDir;
+    private final boolean compress;
+    private final long segmentBytes;
+    private int nextSegment;
+    private File segment;
+    private CountingOutputStream fileOut;
+    private JsonGenerator generator;
+
+    /**
+     * @param outputDir    the directory to write the segments to
+     * @param compress     whether to gzip the segments
+     * @param segmentBytes the (compressed) size at which a segment is closed
+     * @throws IOException if the directory cannot be listed
+     */
+    public SegmentMovieSink(File outputDir, boolean compress, long segmentBytes) throws IOException {
+        if (segmentBytes < 1) {
+            throw new IllegalArgumentException("The segment size must be positive");
+        }
+        this.outputDir = outputDir;
+        this.compress = compress;
+        this.segmentBytes = segmentBytes;
+        String[] names = outputDir.list();
+        if (names == null) {
+            throw new IOException("Cannot list " + outputDir);
+        }
+        for (String name : names) {
+            int number = segmentNumber(name);
+            if (number >= this.nextSegment) {
+                this.nextSegment = number + 1;
+            }
+        }
+    }
+
+    @Override
+    public synchronized File write(Movie movie, String movieName) throws IOException {
+        if (this.generator == null) {
+            openSegment();
+        }
+        MovieJson.writeRecord(this.generator, movie, movieName);
+        this.generator.writeRaw('\n');
+        File written = this.segment;
+        if (this.fileOut.count >= this.segmentBytes) {
+            closeSegment();
+        }
+        return written;
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        if (this.generator != null) {
+            this.generator.flush();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closeSegment();
+    }
+
+    /**
+     * @return The number of the segment file 'name', or -1 if it is none
+     */
+    static int segmentNumber(String name) {
+        if (!name.startsWith(PREFIX) || !(name.endsWith(SUFFIX) || name.endsWith(GZIP_SUFFIX))) {
+            return -1;
+        }
+        int end = name.length() - (name.endsWith(SUFFIX) ? SUFFIX.length() : GZIP_SUFFIX.length());
+        try {
+            return Integer.parseInt(name.substring(PREFIX.length(), end));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void openSegment() throws IOException {
+        this.segment = new File(this.outputDir,
+                String.format("%s%05d%s", PREFIX, this.nextSegment++, this.compress ? GZIP_SUFFIX : SUFFIX));
+        this.fileOut = new CountingOutputStream(new FileOutputStream(this.segment));
+        OutputStream out = this.compress
+                ? new GZIPOutputStream(this.fileOut, BUFFER_SIZE, true)
+                : new BufferedOutputStream(this.fileOut, BUFFER_SIZE);
+        this.generator = FACTORY.createGenerator(out, JsonEncoding.UTF8);
+    }
+
+    private void closeSegment() throws IOException {
+        if (this.generator != null) {
+            this.generator.close();
+            this.generator = null;
+        }
+    }
+
+    /**
+     * Counts the bytes which reach the file.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            this.out.write(b);
+            this.count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            this.out.write(b, off, len);
+            this.count += len;
+        }
+    }
+}
@@ -0,0 +1,250 @@
+/**
+ * The Space-Saving summary of a stream of long keys (Metwally et al.): a
+ * fixed number of counters, each monitoring one key. A key which is not
+ * monitored takes over the counter with the smallest count and inherits
+ * that count as its error. So every count is an upper bound of the key's
+ * true frequency and at most its error above it, and a key which is not
+ * monitored occurred at most {@link #minCount()} times, which is at most
+ * n / counters for a stream of n keys.
+ * <p>
+ * Two summaries merge into one which keeps these bounds for the
+ * concatenation of their streams (Agarwal et al., "Mergeable summaries").
+ */
+public class SpaceSaving {
+
+    private final int capacity;
+    private final long[] keys;
+    private final long[] counts;
+    private final long[] errors;
+    /**
+     * The slot of every monitored key.
+     */
+    private final LongIntMap slots;
+    /**
+     * A min-heap of the slots by count, and the position of every slot in it.
+     */
+    private final int[] heap;
+    private final int[] positions;
+    private int size;
+    private long length;
+    /**
+     * The most a key which is not monitored may have occurred, after merges.
+     */
+    private long floor;
+
+    /**
+     * @param capacity the number of counters
+     */
+    public SpaceSaving(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.keys = new long[capacity];
+        this.counts = new long[capacity];
+        this.errors = new long[capacity];
+        this.slots = new LongIntMap(capacity);
+        this.heap = new int[capacity];
+        this.positions = new int[capacity];
+    }
+
+    /**
+     * Counts one occurrence of 'key'.
+     *
+     * @param key the key
+     */
+    public void offer(long key) {
+        this.length++;
+        int slot = this.slots.get(key, -1);
+        if (slot >= 0) {
+            this.counts[slot]++;
+            siftDown(this.positions[slot]);
+            return;
+        }
+        long min = minCount();
+        if (this.size < this.capacity) {
+            slot = this.size++;
+            this.heap[slot] = slot;
+            this.positions[slot] = slot;
+        } else {
+            slot = this.heap[0];
+            this.slots.remove(this.keys[slot], -1);
+        }
+        this.keys[slot] = key;
+        this.counts[slot] = min + 1;
+        this.errors[slot] = min;
+        this.slots.put(key, slot);
+        siftUp(this.positions[slot]);
+        siftDown(this.positions[slot]);
+    }
+
+    /**
+     * @return The number of keys offered
+     */
+    public long length() {
+        return this.length;
+    }
+
+    /**
+     * @return The number of keys monitored, at most the capacity
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @return The number of counters
+     */
+    public int capacity() {
+        return this.capacity;
+    }
+
+    /**
+     * @return The most a key which is not monitored may have occurred
+     */
+    public long minCount() {
+        return this.size < this.capacity ? this.floor : Math.max(this.floor, this.counts[this.heap[0]]);
+    }
+
+    /**
+     * @param key a key
+     * @return An upper bound of how often 'key' occurred
+     */
+    public long count(long key) {
+        int slot = this.slots.get(key, -1);
+        return slot < 0 ? minCount() : this.counts[slot];
+    }
+
+    /**
+     * @param key a key
+     * @return How much {@link #count(long)} may exceed the true frequency
+     */
+    public long error(long key) {
+        int slot = this.slots.get(key, -1);
+        return slot < 0 ? minCount() : this.errors[slot];
+    }
+
+    /**
+     * @return The monitored keys, in decreasing order of count, of equal
+     * counts in increasing order of key
+     */
+    public long[] keys() {
+        int[] order = new int[this.size];
+        for (int slot = 0; slot < order.length; slot++) {
+            order[slot] = slot;
+        }
+        IntSort.sort(order, 0, order.length, (a, b) -> this.counts[a] != this.counts[b]
+                ? Long.compare(this.counts[b], this.counts[a]) : Long.compare(this.keys[a], this.keys[b]));
+        long[] keys = new long[order.length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = this.keys[order[i]];
+        }
+        return keys;
+    }
+
+    /**
+     * @return The heap this summary takes, roughly
+     */
+    public long bytes() {
+        // Three arrays of longs, two of ints and the key-to-slot map, which is at most half full
+        return (long) this.capacity * (3 * 8 + 2 * 4) + (long) this.capacity * 4 * (8 + 4);
+    }
+
+    /**
+     * Merges two summaries of the same capacity into a new one for both
+     * streams. A key monitored by only one of them is counted as if it
+     * occurred {@link #minCount()} times in the other.
+     *
+     * @param left  a summary
+     * @param right another summary
+     * @return The merged summary
+     */
+    public static SpaceSaving merge(SpaceSaving left, SpaceSaving right) {
+        int capacity = left.capacity;
+        long[] keys = new long[left.size + right.size];
+        long[] counts = new long[keys.length];
+        long[] errors = new long[keys.length];
+        int n = 0;
+        for (int slot = 0; slot < left.size; slot++) {
+            long key = left.keys[slot];
+            keys[n] = key;
+            counts[n] = left.counts[slot] + right.count(key);
+            errors[n] = left.errors[slot] + right.error(key);
+            n++;
+        }
+        for (int slot = 0; slot < right.size; slot++) {
+            long key = right.keys[slot];
+            if (left.slots.get(key, -1) < 0) {
+                keys[n] = key;
+                counts[n] = right.counts[slot] + left.minCount();
+                errors[n] = right.errors[slot] + left.minCount();
+                n++;
+            }
+        }
+
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        IntSort.sort(order, 0, n, (a, b) -> counts[a] != counts[b]
+                ? Long.compare(counts[b], counts[a]) : Long.compare(keys[a], keys[b]));
+        SpaceSaving merged = new SpaceSaving(capacity);
+        merged.length = left.length + right.length;
+        merged.floor = left.minCount() + right.minCount();
+        for (int i = 0; i < n; i++) {
+            int from = order[i];
+            if (i < capacity) {
+                int slot = merged.size++;
+                merged.keys[slot] = keys[from];
+                merged.counts[slot] = counts[from];
+                merged.errors[slot] = errors[from];
+                merged.slots.put(keys[from], slot);
+                merged.heap[slot] = slot;
+                merged.positions[slot] = slot;
+                merged.siftUp(slot);
+            } else {
+                // A key which does not fit may have occurred as often as its count
+                merged.floor = Math.max(merged.floor, counts[from]);
+                break;
+            }
+        }
+        return merged;
+    }
+
+    private void siftUp(int position) {
+        int slot = this.heap[position];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (this.counts[this.heap[parent]] <= this.counts[slot]) {
+                break;
+            }
+            move(this.heap[parent], position);
+            position = parent;
+        }
+        move(slot, position);
+    }
+
+    private void siftDown(int position) {
+        int slot = this.heap[position];
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= this.size) {
+                break;
+            }
+            if (child + 1 < this.size && this.counts[this.heap[child + 1]] < this.counts[this.heap[child]]) {
+                child++;
+            }
+            if (this.counts[this.heap[child]] >= this.counts[slot]) {
+                break;
+            }
+            move(this.heap[child], position);
+            position = child;
+        }
+        move(slot, position);
+    }
+
+    private void move(int slot, int position) {
+        this.heap[position] = slot;
+        this.positions[slot] = position;
+    }
+}
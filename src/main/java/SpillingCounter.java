@@ -0,0 +1,432 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Exact counts of long keys in a fixed amount of memory, for more distinct
+ * keys than fit into it (a hash aggregation which spills, as in the grace
+ * hash join). Every thread counts into a {@link LongIntMap} of at most
+ * 'maxKeys' keys. When one is full, its keys and counts are written to the
+ * run files of a fixed number of partitions by a hash of the key, and it
+ * starts over. Every key is in exactly one partition, so afterwards the
+ * partitions are added up independently, in parallel, and only the top k
+ * of each is kept. A partition with more than 'maxKeys' distinct keys is
+ * split again by the next bits of the hash.
+ * <p>
+ * The memory taken is about {@link #BYTES_PER_KEY} times 'maxKeys' per
+ * thread, plus a write buffer per partition and a read buffer per thread,
+ * however many keys there are: a thread adds up one partition at a time,
+ * and releases its map before it adds up the partitions of a split. If
+ * nothing was spilled and all counts fit into one map, nothing touches the
+ * disk.
+ * <p>
+ * A map holds at least {@link #MIN_KEYS} keys, as much as the write buffers
+ * of the partitions hold; with less every key would soon have a run file of
+ * its own. A smaller budget is rounded up to that.
+ */
+public class SpillingCounter implements Closeable {
+
+    /**
+     * The heap a key in memory takes at most: up to four slots of a
+     * {@link LongIntMap}, which grows at half full, and its entry when it
+     * is sorted into partitions to be spilled.
+     */
+    public static final int BYTES_PER_KEY = 4 * (8 + 4) + (8 + 4);
+
+    /**
+     * The number of partitions, a power of two.
+     */
+    public static final int PARTITIONS = 64;
+
+    private static final int PARTITION_BITS = Integer.numberOfTrailingZeros(PARTITIONS);
+    private static final int RECORD_BYTES = 8 + 4;
+    private static final int WRITE_BUFFER = 8192;
+    private static final int READ_BUFFER = 8192;
+
+    /**
+     * The fewest keys a thread counts in memory, whatever the budget.
+     */
+    public static final int MIN_KEYS = PARTITIONS * WRITE_BUFFER / RECORD_BYTES;
+
+    private final Path directory;
+    private final int maxKeys;
+    /**
+     * The bits of the hash the partitions above this one were split by.
+     */
+    private final int shift;
+    private final Object[] locks = new Object[PARTITIONS];
+    private final DataOutputStream[] writers = new DataOutputStream[PARTITIONS];
+    private final List<Buffer> buffers = new ArrayList<>();
+    private final AtomicInteger spills = new AtomicInteger();
+    private final AtomicLong spilledBytes = new AtomicLong();
+    private final AtomicInteger splits = new AtomicInteger();
+
+    /**
+     * @param tempDir the directory to create the run files in, or null for
+     *                the default temporary directory
+     * @param maxKeys the number of keys counted in memory per thread, at
+     *                least {@link #MIN_KEYS}
+     * @throws IOException if the directory for the run files cannot be created
+     */
+    public SpillingCounter(Path tempDir, int maxKeys) throws IOException {
+        this(tempDir == null ? Files.createTempDirectory("spill") : Files.createTempDirectory(tempDir, "spill"),
+                maxKeys, 0);
+    }
+
+    private SpillingCounter(Path directory, int maxKeys, int shift) {
+        if (maxKeys < MIN_KEYS) {
+            throw new IllegalArgumentException("maxKeys must be at least " + MIN_KEYS + ": " + maxKeys);
+        }
+        this.directory = directory;
+        this.maxKeys = maxKeys;
+        this.shift = shift;
+        for (int i = 0; i < PARTITIONS; i++) {
+            this.locks[i] = new Object();
+        }
+    }
+
+    /**
+     * @param pool        the pool the counting will run in, or null
+     * @param memoryBytes the heap the counts may take
+     * @return The keys per thread which fit into 'memoryBytes' besides the
+     * buffers, as every thread may be splitting a partition with its own
+     * writers, but at least {@link #MIN_KEYS}
+     */
+    public static int maxKeys(ForkJoinPool pool, long memoryBytes) {
+        int threads = pool == null ? 1 : pool.getParallelism();
+        long buffers = (long) threads * (PARTITIONS * WRITE_BUFFER + READ_BUFFER);
+        long keys = (memoryBytes - buffers) / ((long) threads * BYTES_PER_KEY);
+        return (int) Math.max(MIN_KEYS, Math.min(keys, Integer.MAX_VALUE / 4));
+    }
+
+    /**
+     * Counts the keys of the ids [0, n), in one thread per thread of 'pool'
+     * which take ranges of ids in turn.
+     *
+     * @param pool the pool to count in, or null to count in the calling thread
+     * @param n    the number of ids
+     * @param keys emits the keys of a range of ids
+     * @throws IOException if spilling fails
+     */
+    public void count(ForkJoinPool pool, int n, IMDBQueries.KeyScan keys) throws IOException {
+        AtomicInteger next = new AtomicInteger();
+        int threads = pool == null ? 1 : Math.min(pool.getParallelism(), Math.max(1, n / ParallelScan.MIN_RANGE));
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Buffer buffer = new Buffer(new LongIntMap(Math.min(this.maxKeys, 1 << 16)));
+            this.buffers.add(buffer);
+            Runnable scan = () -> {
+                for (int from = next.getAndAdd(ParallelScan.MIN_RANGE); from < n;
+                     from = next.getAndAdd(ParallelScan.MIN_RANGE)) {
+                    keys.scan(from, Math.min(n, from + ParallelScan.MIN_RANGE), buffer::offer);
+                }
+            };
+            if (pool == null) {
+                run(scan);
+            } else {
+                tasks.add(pool.submit(scan));
+            }
+        }
+        for (ForkJoinTask<?> task : tasks) {
+            join(task);
+        }
+    }
+
+    /**
+     * Adds up the counts of every partition and takes the top k of all. The
+     * counts are gone afterwards.
+     *
+     * @param pool the pool to add up the partitions in, or null to add them
+     *             up in the calling thread
+     * @param k    the number of keys to return
+     * @return The 'k' keys with the highest counts, in decreasing order of
+     * count, keys with equal counts in increasing order
+     * @throws IOException if reading or writing the run files fails
+     */
+    public List<IMDBQueries.Tuple<Long, Integer>> topK(ForkJoinPool pool, int k) throws IOException {
+        long buffered = 0;
+        for (Buffer buffer : this.buffers) {
+            buffered += buffer.counts.size();
+        }
+        if (this.spills.get() == 0 && buffered <= this.maxKeys) {
+            // Add the smaller maps to the largest one
+            LongIntMap all = new LongIntMap(0);
+            for (Buffer buffer : this.buffers) {
+                if (buffer.counts.size() > all.size()) {
+                    all = buffer.counts;
+                }
+            }
+            for (Buffer buffer : this.buffers) {
+                if (buffer.counts != all) {
+                    buffer.counts.forEach(all::addTo);
+                }
+                buffer.counts = null;
+            }
+            this.buffers.clear();
+            return IMDBQueries.topCounts(all, k);
+        }
+
+        for (Buffer buffer : this.buffers) {
+            buffer.spill();
+            buffer.counts = null;
+        }
+        this.buffers.clear();
+        for (DataOutputStream writer : this.writers) {
+            if (writer != null) {
+                writer.close();
+            }
+        }
+
+        List<ForkJoinTask<List<IMDBQueries.Tuple<Long, Integer>>>> tasks = new ArrayList<>();
+        List<IMDBQueries.Tuple<Long, Integer>> all = new ArrayList<>();
+        for (int partition = 0; partition < PARTITIONS; partition++) {
+            if (this.writers[partition] == null) {
+                continue;
+            }
+            Path run = runFile(partition);
+            if (pool == null) {
+                all.addAll(aggregate(run, k));
+            } else {
+                tasks.add(pool.submit(() -> {
+                    try {
+                        return aggregate(run, k);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Could not aggregate " + run, e);
+                    }
+                }));
+            }
+        }
+        for (ForkJoinTask<List<IMDBQueries.Tuple<Long, Integer>>> task : tasks) {
+            all.addAll(join(task));
+        }
+
+        // The partitions hold disjoint keys, so their top k only need to be merged
+        all.sort((a, b) -> !a.second.equals(b.second) ? b.second - a.second : Long.compare(a.first, b.first));
+        return new ArrayList<>(all.subList(0, Math.min(k, all.size())));
+    }
+
+    /**
+     * @return The number of times a full map was written to the run files,
+     * including those of partitions split again
+     */
+    public int getSpills() {
+        return this.spills.get();
+    }
+
+    /**
+     * @return The bytes written to the run files, including those of
+     * partitions split again
+     */
+    public long getSpilledBytes() {
+        return this.spilledBytes.get();
+    }
+
+    /**
+     * @return The number of partitions which were split again because their
+     * keys did not fit into memory
+     */
+    public int getSplits() {
+        return this.splits.get();
+    }
+
+    /**
+     * Deletes the run files.
+     */
+    @Override
+    public void close() throws IOException {
+        for (DataOutputStream writer : this.writers) {
+            if (writer != null) {
+                writer.close();
+            }
+        }
+        for (int partition = 0; partition < PARTITIONS; partition++) {
+            Files.deleteIfExists(runFile(partition));
+        }
+        if (this.shift == 0) {
+            Files.deleteIfExists(this.directory);
+        }
+    }
+
+    /**
+     * Adds up the counts of one run file, splitting it again if its keys do
+     * not fit into memory.
+     */
+    private List<IMDBQueries.Tuple<Long, Integer>> aggregate(Path run, int k) throws IOException {
+        long records = Files.size(run) / RECORD_BYTES;
+        LongIntMap counts = new LongIntMap((int) Math.min(records, this.maxKeys + 1L));
+        SpillingCounter split = null;
+        Buffer buffer = null;
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(run), READ_BUFFER))) {
+            for (long i = 0; i < records; i++) {
+                long key = in.readLong();
+                int count = in.readInt();
+                if (buffer != null) {
+                    buffer.add(key, count);
+                } else if (counts.addTo(key, count) == count && counts.size() > this.maxKeys) {
+                    // Too many keys for memory: spill what is counted so far into sub-partitions
+                    if (this.shift + 2 * PARTITION_BITS > 64) {
+                        throw new IllegalStateException("More than " + this.maxKeys + " keys agree in "
+                                + (this.shift + PARTITION_BITS) + " bits of their hash");
+                    }
+                    split = new SpillingCounter(this.directory.resolve(run.getFileName() + ".split"), this.maxKeys,
+                            this.shift + PARTITION_BITS);
+                    Files.createDirectories(split.directory);
+                    this.splits.incrementAndGet();
+                    buffer = split.new Buffer(counts);
+                    split.buffers.add(buffer);
+                    buffer.spill();
+                }
+            }
+        }
+        Files.delete(run);
+        if (split == null) {
+            return IMDBQueries.topCounts(counts, k);
+        }
+        // The split spills and drops the buffer, so the map and its arrays
+        // are released before the partitions of the split take maps of their own
+        buffer = null;
+        counts = null;
+        try {
+            return split.topK(null, k);
+        } finally {
+            this.spills.addAndGet(split.getSpills());
+            this.spilledBytes.addAndGet(split.getSpilledBytes());
+            this.splits.addAndGet(split.getSplits());
+            split.close();
+            Files.deleteIfExists(split.directory);
+        }
+    }
+
+    /**
+     * @return The partition of 'key' at this level, from the bits of its
+     * hash below those of the levels above
+     */
+    private int partition(long key) {
+        // A bijective mix, so distinct keys never agree in all bits
+        long hash = key * 0x9e3779b97f4a7c15L;
+        hash ^= hash >>> 32;
+        hash *= 0xd6e8feb86659fd93L;
+        hash ^= hash >>> 32;
+        return (int) ((hash << this.shift) >>> (64 - PARTITION_BITS));
+    }
+
+    private Path runFile(int partition) {
+        return this.directory.resolve("run-" + partition);
+    }
+
+    /**
+     * Appends entries to the run file of a partition.
+     */
+    private void write(int partition, long[] keys, int[] counts, int from, int to) throws IOException {
+        synchronized (this.locks[partition]) {
+            DataOutputStream writer = this.writers[partition];
+            if (writer == null) {
+                writer = new DataOutputStream(new BufferedOutputStream(
+                        Files.newOutputStream(runFile(partition)), WRITE_BUFFER));
+                this.writers[partition] = writer;
+            }
+            for (int i = from; i < to; i++) {
+                writer.writeLong(keys[i]);
+                writer.writeInt(counts[i]);
+            }
+        }
+        this.spilledBytes.addAndGet((long) (to - from) * RECORD_BYTES);
+    }
+
+    private static void run(Runnable scan) throws IOException {
+        try {
+            scan.run();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static <T> T join(ForkJoinTask<T> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while counting", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * The counts of one thread, spilled whenever they reach 'maxKeys' keys.
+     */
+    private final class Buffer {
+        private LongIntMap counts;
+        private long[] spillKeys;
+        private int[] spillCounts;
+
+        Buffer(LongIntMap counts) {
+            this.counts = counts;
+        }
+
+        void offer(long key) {
+            try {
+                add(key, 1);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not spill counts to " + SpillingCounter.this.directory, e);
+            }
+        }
+
+        void add(long key, int count) throws IOException {
+            this.counts.addTo(key, count);
+            if (this.counts.size() >= SpillingCounter.this.maxKeys) {
+                spill();
+            }
+        }
+
+        /**
+         * Sorts the counts by partition, appends them to the run files and
+         * clears them.
+         */
+        void spill() throws IOException {
+            int size = this.counts.size();
+            if (size == 0) {
+                return;
+            }
+            if (this.spillKeys == null || this.spillKeys.length < size) {
+                this.spillKeys = new long[size];
+                this.spillCounts = new int[size];
+            }
+            int[] starts = new int[PARTITIONS + 1];
+            this.counts.forEach((key, value) -> starts[partition(key) + 1]++);
+            for (int i = 0; i < PARTITIONS; i++) {
+                starts[i + 1] += starts[i];
+            }
+            int[] next = starts.clone();
+            this.counts.forEach((key, value) -> {
+                int i = next[partition(key)]++;
+                this.spillKeys[i] = key;
+                this.spillCounts[i] = value;
+            });
+            for (int partition = 0; partition < PARTITIONS; partition++) {
+                if (starts[partition] < starts[partition + 1]) {
+                    write(partition, this.spillKeys, this.spillCounts, starts[partition], starts[partition + 1]);
+                }
+            }
+            this.counts.clear();
+            SpillingCounter.this.spills.incrementAndGet();
+        }
+    }
+}
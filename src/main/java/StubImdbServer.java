@@ -0,0 +1,197 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+
+/**
+ * A local HTTP server which serves canned IMDB pages, so {@link IMDBSpider}
+ * can be run without the network: /find answers every search with the
+ * search page for Avatar, its first result renamed to the query, and
+ * /title/... always returns the title page of Avatar (both from
+ * src/main/resources/example).
+ */
+public class StubImdbServer implements AutoCloseable {
+
+    private static final String FIND_PAGE = "/example/imdb_find_avatar.html";
+    private static final String TITLE_PAGE = "/example/imdb_title_avatar.html";
+    private static final String LAST_MODIFIED = "Sat, 05 Nov 2016 12:00:00 GMT";
+
+    private final HttpServer server;
+    private final ExecutorService pool;
+    private final String findPage;
+    private final byte[] titlePage;
+    private final long latencyMillis;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+
+    /**
+     * Starts a server on a free port of localhost.
+     *
+     * @param latencyMillis the delay of each response, to imitate the network
+     * @param threads       the number of threads serving requests
+     * @throws IOException if the server cannot be started
+     */
+    public StubImdbServer(long latencyMillis, int threads) throws IOException {
+        this(0, latencyMillis, threads);
+    }
+
+    /**
+     * Starts a server on localhost.
+     *
+     * @param port          the port, 0 for a free one
+     * @param latencyMillis the delay of each response, to imitate the network
+     * @param threads       the number of threads serving requests
+     * @throws IOException if the server cannot be started
+     */
+    public StubImdbServer(int port, long latencyMillis, int threads) throws IOException {
+        this.findPage = new String(resource(FIND_PAGE), StandardCharsets.UTF_8);
+        this.titlePage = resource(TITLE_PAGE);
+        this.latencyMillis = latencyMillis;
+        // Without TCP_NODELAY every keep-alive response waits ~40ms for a delayed ACK
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.server.createContext("/find", exchange -> respond(exchange, findPage(exchange)));
+        this.server.createContext("/title/", exchange -> respond(exchange, this.titlePage));
+        this.pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "stub-imdb");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server.setExecutor(this.pool);
+        this.server.start();
+    }
+
+    /**
+     * @return The URL to pass to {@link IMDBSpider#setBaseUrl(String)}
+     */
+    public String getBaseUrl() {
+        return "http://" + this.server.getAddress().getHostString() + ":" + this.server.getAddress().getPort();
+    }
+
+    /**
+     * @return The number of requests served so far
+     */
+    public long getRequests() {
+        return this.requests.get();
+    }
+
+    /**
+     * @return The number of conditional requests answered with 304
+     */
+    public long getNotModified() {
+        return this.notModified.get();
+    }
+
+    @Override
+    public void close() {
+        this.server.stop(0);
+        this.pool.shutdownNow();
+    }
+
+    private byte[] findPage(HttpExchange exchange) throws IOException {
+        String title = "";
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                if (parameter.startsWith("q=")) {
+                    title = URLDecoder.decode(parameter.substring(2), "UTF-8");
+                }
+            }
+        }
+        String escaped = title.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+        return this.findPage.replaceFirst(">Avatar</a>", ">" + Matcher.quoteReplacement(escaped) + "</a>")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void respond(HttpExchange exchange, byte[] body) throws IOException {
+        this.requests.incrementAndGet();
+        try {
+            if (this.latencyMillis > 0) {
+                TimeUnit.MILLISECONDS.sleep(this.latencyMillis);
+            }
+            // The pages never change, so a conditional request is always answered with 304
+            String etag = "\"" + Integer.toHexString(Arrays.hashCode(body)) + "\"";
+            exchange.getResponseHeaders().set("ETag", etag);
+            exchange.getResponseHeaders().set("Last-Modified", LAST_MODIFIED);
+            if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                this.notModified.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static byte[] resource(String name) throws IOException {
+        try (InputStream in = StubImdbServer.class.getResourceAsStream(name)) {
+            if (in == null) {
+                throw new IOException("Missing resource " + name);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int n = in.read(buffer); n > 0; n = in.read(buffer)) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * Crawls the titles of 'moviesPath' from a stub server into 'outputDir'.
+     */
+    public static void main(String argv[]) throws Exception {
+        if (argv.length < 2) {
+            System.out.println("Call with: StubImdbServer <moviesPath> <outputDir> [latencyMillis] [cacheDir] [port] [metricsPort]");
+            System.exit(0);
+        }
+        long latency = argv.length > 2 ? Long.parseLong(argv[2]) : 50;
+        int port = argv.length > 4 ? Integer.parseInt(argv[4]) : 0;
+        int metricsPort = argv.length > 5 ? Integer.parseInt(argv[5]) : -1;
+        IMDBSpider spider = new IMDBSpider();
+        try (StubImdbServer server = new StubImdbServer(port, latency, 16)) {
+            Closeable exported = spider.getMetrics().export(metricsPort);
+            try {
+                spider.setBaseUrl(server.getBaseUrl());
+                spider.setRateLimiter(new RateLimiter(1000, 50));
+                HttpCache cache = null;
+                if (argv.length > 3) {
+                    cache = new HttpCache(new File(argv[3]), IMDBSpider.DEFAULT_CACHE_BYTES, false);
+                    spider.setCache(cache);
+                }
+                long time = System.currentTimeMillis();
+                spider.fetchIMDBMovies(argv[0], argv[1]);
+                System.out.println(server.getRequests() + " requests (" + server.getNotModified() + " not modified) in "
+                        + (System.currentTimeMillis() - time) + " ms");
+                if (cache != null) System.out.println("Cache: " + cache);
+                System.out.println("Metrics: " + spider.getMetrics());
+            } finally {
+                exported.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/**
+ * A query which scans the ids of a {@link MovieTable} once, in any number of
+ * ranges, into partial results of type 'P' which are merged and finished into
+ * the result of type 'R'. This lets {@link ParallelScan} split it over
+ * threads and {@link QueryBatch} run several queries in one scan.
+ *
+ * @param <P> the partial result, e.g. an {@link IntTopK} or a counter
+ * @param <R> the result
+ */
+public interface TableQuery<P, R> {
+
+    /**
+     * @return An empty partial result
+     */
+    P newPartial();
+
+    /**
+     * Adds the ids [from, to) to a partial result. The ranges added to one
+     * partial result are in increasing order.
+     *
+     * @param partial the partial result
+     * @param from    the first id (inclusive)
+     * @param to      the last id (exclusive)
+     */
+    void scan(P partial, int from, int to);
+
+    /**
+     * @param left  the partial result of lower ids
+     * @param right the partial result of the ids after those of 'left'
+     * @return The partial result of the ids of both, either may be reused
+     */
+    P merge(P left, P right);
+
+    /**
+     * @param partial the partial result of all ids
+     * @return The result
+     */
+    R finish(P partial);
+
+    /**
+     * @param partial a partial result which has scanned one range and has
+     *                not been merged
+     * @return The number of ids of the range which matched the query, e.g.
+     * passed its filter, or -1 if the query does not count them
+     */
+    default long matched(P partial) {
+        return -1;
+    }
+
+    /**
+     * @return Whether the partial results are large, e.g. a counter for every
+     * name, so there should be only one per thread rather than one per range
+     */
+    default boolean largePartials() {
+        return false;
+    }
+}
@@ -0,0 +1,267 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An in-memory index over a list of texts, e.g. the descriptions of a
+ * {@link MovieTable}, where the position of a text in the list is its document
+ * id. It holds
+ * <ul>
+ * <li>an inverted index from lowercase terms to postings with term frequencies,</li>
+ * <li>the same for the terms as they appear in the text (case-sensitive), and</li>
+ * <li>a trigram index from every three lowercase characters to the documents
+ * containing them, for substring queries.</li>
+ * </ul>
+ * Substring queries intersect the postings of the trigrams of the substring and
+ * then verify and count the matches in the candidate documents only.
+ */
+public class TextIndex {
+
+    private final List<String> texts;
+    private final Map<String, Postings> terms;
+    private final Map<String, Postings> exactTerms;
+    private final long[] trigrams;
+    private final int[][] trigramDocs;
+
+    /**
+     * Builds the index. The list is kept to verify substring matches, so it
+     * must not change afterwards.
+     *
+     * @param texts the texts to index, null texts are treated as empty
+     */
+    public TextIndex(List<String> texts) {
+        this.texts = texts;
+        int n = texts.size();
+        Map<String, IntList[]> terms = new HashMap<>();
+        Map<String, IntList[]> exactTerms = new HashMap<>();
+        LongIntMap trigramSlots = new LongIntMap();
+        List<IntList> trigramLists = new ArrayList<>();
+
+        Map<String, int[]> freqs = new HashMap<>();
+        Map<String, int[]> exactFreqs = new HashMap<>();
+        for (int doc = 0; doc < n; doc++) {
+            String text = texts.get(doc);
+            if (text == null) {
+                continue;
+            }
+            freqs.clear();
+            exactFreqs.clear();
+            for (String term : Tokenizer.tokenize(text, false)) {
+                increment(exactFreqs, term);
+                increment(freqs, term.toLowerCase());
+            }
+            addPostings(terms, freqs, doc);
+            addPostings(exactTerms, exactFreqs, doc);
+
+            long[] grams = trigramsOf(text);
+            for (long gram : grams) {
+                int slot = trigramSlots.get(gram, -1);
+                if (slot < 0) {
+                    slot = trigramLists.size();
+                    trigramSlots.put(gram, slot);
+                    trigramLists.add(new IntList(2));
+                }
+                IntList docs = trigramLists.get(slot);
+                if (docs.size() == 0 || docs.get(docs.size() - 1) != doc) {
+                    docs.add(doc);
+                }
+            }
+        }
+
+        this.terms = freeze(terms);
+        this.exactTerms = freeze(exactTerms);
+        this.trigrams = new long[trigramSlots.size()];
+        int[] next = new int[1];
+        trigramSlots.forEach((gram, slot) -> this.trigrams[next[0]++] = gram);
+        Arrays.sort(this.trigrams);
+        this.trigramDocs = new int[this.trigrams.length][];
+        for (int i = 0; i < this.trigrams.length; i++) {
+            this.trigramDocs[i] = trigramLists.get(trigramSlots.get(this.trigrams[i], -1)).toArray();
+        }
+    }
+
+    /**
+     * @return The number of documents
+     */
+    public int size() {
+        return this.texts.size();
+    }
+
+    /**
+     * @return The number of distinct lowercase terms
+     */
+    public int termCount() {
+        return this.terms.size();
+    }
+
+    /**
+     * @param term a term, which is lowercased
+     * @return The postings of the term ignoring case, empty if it does not appear
+     */
+    public Postings postings(String term) {
+        Postings postings = this.terms.get(term.toLowerCase());
+        return postings == null ? Postings.EMPTY : postings;
+    }
+
+    /**
+     * @param term a term
+     * @return The postings of the term with exactly this case, empty if it
+     * does not appear
+     */
+    public Postings postingsCaseSensitive(String term) {
+        Postings postings = this.exactTerms.get(term);
+        return postings == null ? Postings.EMPTY : postings;
+    }
+
+    /**
+     * Finds the documents containing 'substring' anywhere, also inside terms
+     * ("kill" matches "skills"), and counts the (possibly overlapping)
+     * appearances in each of them.
+     *
+     * @param substring  the text to search for
+     * @param ignoreCase whether to match regardless of case
+     * @return The matching documents, with the number of appearances as frequency
+     */
+    public Postings findSubstring(String substring, boolean ignoreCase) {
+        int[] candidates = candidates(substring);
+        int[] docs = new int[candidates.length];
+        int[] counts = new int[candidates.length];
+        int size = 0;
+        for (int doc : candidates) {
+            String text = this.texts.get(doc);
+            int count = text == null ? 0 : countOccurrences(text, substring, ignoreCase);
+            if (count > 0) {
+                docs[size] = doc;
+                counts[size] = count;
+                size++;
+            }
+        }
+        return new Postings(Arrays.copyOf(docs, size), Arrays.copyOf(counts, size));
+    }
+
+    /**
+     * @param substring the text to search for
+     * @return The ids of the documents which contain all lowercase trigrams of
+     * 'substring', a superset of the documents containing it; all documents if
+     * it is shorter than three characters
+     */
+    int[] candidates(String substring) {
+        if (substring.length() < 3) {
+            int[] all = new int[this.texts.size()];
+            for (int i = 0; i < all.length; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+        long[] grams = trigramsOf(substring);
+        int[][] lists = new int[grams.length][];
+        for (int i = 0; i < grams.length; i++) {
+            int slot = Arrays.binarySearch(this.trigrams, grams[i]);
+            if (slot < 0) {
+                return new int[0];
+            }
+            lists[i] = this.trigramDocs[slot];
+        }
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.length, b.length));
+        int[] result = lists[0];
+        for (int i = 1; i < lists.length && result.length > 0; i++) {
+            result = intersect(result, lists[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Counts the (possibly overlapping) appearances of 'sub' in 'text' without
+     * creating a lowercase copy of 'text'.
+     *
+     * @param text       the text to search in
+     * @param sub        the text to search for
+     * @param ignoreCase whether to match regardless of case
+     * @return the number of appearances
+     */
+    static int countOccurrences(String text, String sub, boolean ignoreCase) {
+        int length = sub.length();
+        int last = text.length() - length;
+        int count = 0;
+        for (int i = 0; i <= last; i++) {
+            if (text.regionMatches(ignoreCase, i, sub, 0, length)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Intersects two sorted arrays of ids.
+     */
+    static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[size++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * @return The lowercase trigrams of 'text', with duplicates
+     */
+    private static long[] trigramsOf(String text) {
+        int length = text.length();
+        if (length < 3) {
+            return new long[0];
+        }
+        long[] grams = new long[length - 2];
+        long c0 = Character.toLowerCase(text.charAt(0));
+        long c1 = Character.toLowerCase(text.charAt(1));
+        for (int i = 2; i < length; i++) {
+            long c2 = Character.toLowerCase(text.charAt(i));
+            grams[i - 2] = c0 << 32 | c1 << 16 | c2;
+            c0 = c1;
+            c1 = c2;
+        }
+        return grams;
+    }
+
+    private static void increment(Map<String, int[]> freqs, String term) {
+        int[] freq = freqs.get(term);
+        if (freq == null) {
+            freqs.put(term, new int[]{1});
+        } else {
+            freq[0]++;
+        }
+    }
+
+    private static void addPostings(Map<String, IntList[]> postings, Map<String, int[]> freqs, int doc) {
+        for (Map.Entry<String, int[]> entry : freqs.entrySet()) {
+            IntList[] lists = postings.get(entry.getKey());
+            if (lists == null) {
+                lists = new IntList[]{new IntList(2), new IntList(2)};
+                postings.put(entry.getKey(), lists);
+            }
+            lists[0].add(doc);
+            lists[1].add(entry.getValue()[0]);
+        }
+    }
+
+    private static Map<String, Postings> freeze(Map<String, IntList[]> postings) {
+        Map<String, Postings> frozen = new HashMap<>(postings.size() * 4 / 3 + 1);
+        for (Map.Entry<String, IntList[]> entry : postings.entrySet()) {
+            IntList[] lists = entry.getValue();
+            frozen.put(entry.getKey(), new Postings(lists[0].toArray(), lists[1].toArray()));
+        }
+        return frozen;
+    }
+}
@@ -0,0 +1,37 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * The bytes the current thread has allocated on the heap, as counted by
+ * HotSpot's thread-local allocation buffers. Two readings on the same
+ * thread give what was allocated in between, the difference is what the
+ * JFR events of the queries and the loader report.
+ */
+final class ThreadAllocation {
+
+    private static final com.sun.management.ThreadMXBean THREADS = threads();
+
+    private ThreadAllocation() {
+    }
+
+    /**
+     * @return The bytes the current thread has allocated so far, 0 if the
+     * JVM does not count them
+     */
+    static long bytes() {
+        return THREADS == null ? 0 : THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static com.sun.management.ThreadMXBean threads() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+        com.sun.management.ThreadMXBean counting = (com.sun.management.ThreadMXBean) threads;
+        if (!counting.isThreadAllocatedMemorySupported()) {
+            return null;
+        }
+        counting.setThreadAllocatedMemoryEnabled(true);
+        return counting;
+    }
+}
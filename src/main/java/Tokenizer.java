@@ -0,0 +1,37 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits text into terms: maximal runs of letters and digits. Everything else
+ * (white space, punctuation) separates terms.
+ */
+public final class Tokenizer {
+
+    private Tokenizer() {
+    }
+
+    /**
+     * @param text      the text to split, may be null
+     * @param lowerCase whether to lowercase the terms
+     * @return The terms in the order of their appearance
+     */
+    public static List<String> tokenize(String text, boolean lowerCase) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) {
+            return terms;
+        }
+        int length = text.length();
+        int start = -1;
+        for (int i = 0; i <= length; i++) {
+            boolean termChar = i < length && Character.isLetterOrDigit(text.charAt(i));
+            if (termChar && start < 0) {
+                start = i;
+            } else if (!termChar && start >= 0) {
+                String term = text.substring(start, i);
+                terms.add(lowerCase ? term.toLowerCase() : term);
+                start = -1;
+            }
+        }
+        return terms;
+    }
+}
@@ -0,0 +1,136 @@
+import java.util.Arrays;
+
+/**
+ * The ids of the movies of a {@link MovieTable} sorted by year of
+ * publication, and by id within a year, for range scans over years. Movies
+ * without a year are left out.
+ */
+public class YearIndex {
+
+    private final int minYear;
+    /**
+     * The position of the first movie of every year from 'minYear' on, and
+     * one after the last movie of the last year.
+     */
+    private final int[] offsets;
+    private final int[] ids;
+
+    /**
+     * Sorts the ids by year with a counting sort.
+     *
+     * @param year the year of every movie or {@link MovieTable#MISSING_SHORT}
+     */
+    YearIndex(short[] year) {
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (short y : year) {
+            if (y != MovieTable.MISSING_SHORT) {
+                min = Math.min(min, y);
+                max = Math.max(max, y);
+            }
+        }
+        if (min > max) {
+            min = 0;
+            max = -1;
+        }
+        this.minYear = min;
+        this.offsets = new int[max - min + 2];
+        for (short y : year) {
+            if (y != MovieTable.MISSING_SHORT) this.offsets[y - min + 1]++;
+        }
+        for (int i = 1; i < this.offsets.length; i++) {
+            this.offsets[i] += this.offsets[i - 1];
+        }
+        this.ids = new int[this.offsets[this.offsets.length - 1]];
+        int[] next = this.offsets.clone();
+        for (int id = 0; id < year.length; id++) {
+            if (year[id] != MovieTable.MISSING_SHORT) this.ids[next[year[id] - min]++] = id;
+        }
+    }
+
+    /**
+     * Takes sorted ids as they are, e.g. those of a {@link MovieSnapshot}.
+     *
+     * @param minYear the earliest year
+     * @param offsets the position of the first movie of every year from
+     *                'minYear' on, and one after the last movie
+     * @param ids     the ids by year
+     */
+    YearIndex(int minYear, int[] offsets, int[] ids) {
+        this.minYear = minYear;
+        this.offsets = offsets;
+        this.ids = ids;
+    }
+
+    /**
+     * @return The earliest year of a movie, 0 if no movie has a year
+     */
+    public int minYear() {
+        return this.minYear;
+    }
+
+    /**
+     * @return The latest year of a movie, -1 if no movie has a year
+     */
+    public int maxYear() {
+        return this.minYear + this.offsets.length - 2;
+    }
+
+    /**
+     * @param year a year
+     * @return The position of the first movie of 'year' or a later one
+     */
+    public int start(int year) {
+        int slot = Math.max(0, Math.min(year - this.minYear, this.offsets.length - 1));
+        return this.offsets[slot];
+    }
+
+    /**
+     * @param year a year
+     * @return The position after the last movie of 'year' or an earlier one
+     */
+    public int end(int year) {
+        return start(year + 1);
+    }
+
+    /**
+     * @param year a year
+     * @param id   an id
+     * @return The position of the first movie of 'year' whose id is at least
+     * 'id', or {@link #end(int)} of 'year'
+     */
+    public int lowerBound(int year, int id) {
+        int low = start(year);
+        int high = end(year);
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (this.ids[mid] < id) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @param position a position between start(year) and end(year)
+     * @return The id of the movie at this position
+     */
+    public int get(int position) {
+        return this.ids[position];
+    }
+
+    /**
+     * @param fromYear the first year (inclusive)
+     * @param toYear   the last year (inclusive)
+     * @return The ids of the movies of these years
+     */
+    public IdBitmap range(int fromYear, int toYear) {
+        int from = start(fromYear);
+        int to = end(toYear);
+        int[] sorted = Arrays.copyOfRange(this.ids, from, to);
+        Arrays.sort(sorted);
+        return IdBitmap.of(sorted, 0, sorted.length);
+    }
+}